@@ -0,0 +1,68 @@
+// k6 load test for connection efficiency under many concurrent clients: up to 10k virtual users, each holding
+// its own connection and issuing balance reads and transfers with a short think time. Run it once against the
+// servlet application and once against the reactive module, with the same database pool size, e.g.
+//   ./mvnw spring-boot:run                              then   k6 run loadtest/concurrency.js
+//   (cd reactive && ../mvnw spring-boot:run)            then   k6 run -e BASE_URL=http://localhost:8081/api/v1 loadtest/concurrency.js
+// and compare http_req_duration p99/max, http_req_failed, and the server's pool metrics
+// (hikaricp.connections.* for the servlet application, r2dbc.pool.* for the reactive one).
+import http from 'k6/http';
+import { check, sleep } from 'k6';
+import { uuidv4 } from 'https://jslib.k6.io/k6-utils/1.4.0/index.js';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080/api/v1';
+const WALLETS = parseInt(__ENV.WALLETS || '1000');
+const CLIENTS = parseInt(__ENV.CLIENTS || '10000');
+const HOLD = __ENV.HOLD || '3m';
+const THINK_SECONDS = parseFloat(__ENV.THINK_SECONDS || '1');
+const HEADERS = { headers: { 'Content-Type': 'application/json' } };
+
+export const options = {
+    scenarios: {
+        clients: {
+            executor: 'ramping-vus',
+            startVUs: 0,
+            stages: [
+                { duration: '1m', target: CLIENTS },
+                { duration: HOLD, target: CLIENTS },
+                { duration: '30s', target: 0 },
+            ],
+            gracefulRampDown: '30s',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'p(99.9)', 'max'],
+    setupTimeout: '5m',
+};
+
+export function setup() {
+    const walletIds = [];
+    for (let i = 0; i < WALLETS; i++) {
+        const res = http.post(`${BASE_URL}/wallets`, JSON.stringify({ initialBalanceInMinorUnits: 1000000000 }), HEADERS);
+        walletIds.push(res.json('walletId'));
+    }
+    return { walletIds };
+}
+
+function pick(walletIds) {
+    return walletIds[Math.floor(Math.random() * walletIds.length)];
+}
+
+export default function (data) {
+    const wallet = pick(data.walletIds);
+    if (Math.random() < 0.7) {
+        const res = http.get(`${BASE_URL}/wallets/${wallet}`, { tags: { op: 'get_wallet' } });
+        check(res, { 'wallet read': (r) => r.status === 200 });
+    } else {
+        let receiver = pick(data.walletIds);
+        while (receiver === wallet) {
+            receiver = pick(data.walletIds);
+        }
+        const res = http.post(`${BASE_URL}/transfers`, JSON.stringify({
+            senderWalletId: wallet,
+            receiverWalletId: receiver,
+            amountInMinorUnits: 1 + Math.floor(Math.random() * 100),
+            idempotencyKey: uuidv4(),
+        }), Object.assign({ tags: { op: 'transfer' } }, HEADERS));
+        check(res, { 'transfer accepted': (r) => r.status === 201 });
+    }
+    sleep(THINK_SECONDS * Math.random() * 2);
+}
@@ -0,0 +1,66 @@
+// k6 load test for the write path: random transfers and credits across a pool of wallets.
+// Used to compare platform threads against virtual threads at the same Hikari pool size, e.g.
+//   WALLET_VIRTUAL_THREADS=false ./mvnw spring-boot:run   then   k6 run loadtest/transactions.js
+//   WALLET_VIRTUAL_THREADS=true  ./mvnw spring-boot:run   then   k6 run loadtest/transactions.js
+// and comparing http_req_duration percentiles, http_req_failed, and the wallet.db.bulkhead.* metrics.
+import http from 'k6/http';
+import { check } from 'k6';
+import { uuidv4 } from 'https://jslib.k6.io/k6-utils/1.4.0/index.js';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080/api/v1';
+const WALLETS = parseInt(__ENV.WALLETS || '200');
+const RATE = parseInt(__ENV.RATE || '2000');
+const DURATION = __ENV.DURATION || '2m';
+const HEADERS = { headers: { 'Content-Type': 'application/json' } };
+
+export const options = {
+    scenarios: {
+        writes: {
+            executor: 'constant-arrival-rate',
+            rate: RATE,
+            timeUnit: '1s',
+            duration: DURATION,
+            preAllocatedVUs: Math.min(RATE, 2000),
+            maxVUs: 5000,
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+export function setup() {
+    const walletIds = [];
+    for (let i = 0; i < WALLETS; i++) {
+        const res = http.post(`${BASE_URL}/wallets`, JSON.stringify({ initialBalanceInMinorUnits: 1000000000 }), HEADERS);
+        walletIds.push(res.json('walletId'));
+    }
+    return { walletIds };
+}
+
+function pick(walletIds) {
+    return walletIds[Math.floor(Math.random() * walletIds.length)];
+}
+
+export default function (data) {
+    const sender = pick(data.walletIds);
+    if (Math.random() < 0.8) {
+        let receiver = pick(data.walletIds);
+        while (receiver === sender) {
+            receiver = pick(data.walletIds);
+        }
+        const res = http.post(`${BASE_URL}/transfers`, JSON.stringify({
+            senderWalletId: sender,
+            receiverWalletId: receiver,
+            amountInMinorUnits: 1 + Math.floor(Math.random() * 100),
+            idempotencyKey: uuidv4(),
+        }), Object.assign({ tags: { op: 'transfer' } }, HEADERS));
+        check(res, { 'transfer accepted': (r) => r.status === 201 });
+    } else {
+        const res = http.post(`${BASE_URL}/transactions`, JSON.stringify({
+            walletId: sender,
+            type: 'CREDIT',
+            amountInMinorUnits: 1 + Math.floor(Math.random() * 100),
+            idempotencyKey: uuidv4(),
+        }), Object.assign({ tags: { op: 'credit' } }, HEADERS));
+        check(res, { 'credit accepted': (r) => r.status === 201 });
+    }
+}
@@ -0,0 +1,16 @@
+package com.ofektom.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * Non-blocking variant of the wallet service: the same API on WebFlux and R2DBC, next to the servlet application
+ * and against the same database. Only com.ofektom.reactive is scanned; the main module contributes DTOs and Money.
+ */
+@SpringBootApplication
+public class ReactiveApplication {
+    
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveApplication.class, args);
+    }
+}
@@ -0,0 +1,53 @@
+package com.ofektom.reactive.controller;
+
+import com.ofektom.dto.request.BatchTransferRequest;
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferResponse;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.reactive.service.ReactiveTransactionService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive REST controller for transaction operations.
+ * Same paths, payloads and status codes as TransactionController.
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class ReactiveTransactionController {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReactiveTransactionController.class);
+    private final ReactiveTransactionService transactionService;
+    
+    public ReactiveTransactionController(ReactiveTransactionService transactionService) {
+        this.transactionService = transactionService;
+    }
+    
+    @PostMapping("/transactions")
+    public Mono<ResponseEntity<TransactionResponse>> processTransaction(@Valid @RequestBody TransactionRequest request) {
+        log.debug("POST /transactions - Processing transaction: walletId={}, type={}",
+            request.walletId(), request.type());
+        return transactionService.processTransaction(request)
+            .map(response -> ResponseEntity.status(HttpStatus.CREATED).body(response));
+    }
+    
+    @PostMapping("/transfers")
+    public Mono<ResponseEntity<TransactionResponse>> transfer(@Valid @RequestBody TransferRequest request) {
+        log.debug("POST /transfers - Processing transfer: sender={}, receiver={}",
+            request.senderWalletId(), request.receiverWalletId());
+        return transactionService.transfer(request)
+            .map(response -> ResponseEntity.status(HttpStatus.CREATED).body(response));
+    }
+    
+    @PostMapping("/transfers/batch")
+    public Mono<ResponseEntity<BatchTransferResponse>> batchTransfer(@Valid @RequestBody BatchTransferRequest request) {
+        log.debug("POST /transfers/batch - Processing batch of {} transfers", request.transfers().size());
+        return transactionService.batchTransfer(request).map(ResponseEntity::ok);
+    }
+}
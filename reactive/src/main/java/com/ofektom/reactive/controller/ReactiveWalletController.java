@@ -0,0 +1,57 @@
+package com.ofektom.reactive.controller;
+
+import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.response.TransactionPageResponse;
+import com.ofektom.dto.response.WalletResponse;
+import com.ofektom.reactive.service.ReactiveWalletService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reactive REST controller for wallet operations.
+ * Same paths, payloads and status codes as WalletController and the history endpoint of TransactionController.
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class ReactiveWalletController {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReactiveWalletController.class);
+    private final ReactiveWalletService walletService;
+    
+    public ReactiveWalletController(ReactiveWalletService walletService) {
+        this.walletService = walletService;
+    }
+    
+    @PostMapping("/wallets")
+    public Mono<ResponseEntity<WalletResponse>> createWallet(@Valid @RequestBody CreateWalletRequest request) {
+        log.info("POST /wallets - Creating new wallet");
+        return walletService.createWallet(request)
+            .map(response -> ResponseEntity.status(HttpStatus.CREATED).body(response));
+    }
+    
+    @GetMapping("/wallets/{id}")
+    public Mono<ResponseEntity<WalletResponse>> getWallet(@PathVariable String id) {
+        log.info("GET /wallets/{} - Retrieving wallet", id);
+        return walletService.getWallet(id).map(ResponseEntity::ok);
+    }
+    
+    @GetMapping("/wallets/{id}/transactions")
+    public Mono<ResponseEntity<TransactionPageResponse>> getTransactions(
+            @PathVariable String id,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        log.info("GET /wallets/{}/transactions - Retrieving transaction history", id);
+        return walletService.getTransactions(id, type, from, to, cursor, limit).map(ResponseEntity::ok);
+    }
+}
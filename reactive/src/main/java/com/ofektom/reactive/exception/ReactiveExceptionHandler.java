@@ -0,0 +1,72 @@
+package com.ofektom.reactive.exception;
+
+import com.ofektom.exception.ApiError;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.ConflictException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.exception.ValidationError;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WebFlux counterpart of DefaultExceptionHandler: the same ApiError and ValidationError bodies and status codes.
+ */
+@RestControllerAdvice
+public class ReactiveExceptionHandler {
+    
+    @ExceptionHandler(WebExchangeBindException.class)
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    public ValidationError handleValidation(WebExchangeBindException ex) {
+        Map<String, String> errors = new HashMap<>();
+        for (FieldError error : ex.getBindingResult().getFieldErrors()) {
+            errors.put(error.getField(), error.getDefaultMessage());
+        }
+        return new ValidationError(HttpStatus.UNPROCESSABLE_ENTITY.value(), "validation error", errors);
+    }
+    
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<ApiError> handleNotFoundException(NotFoundException e, ServerWebExchange exchange) {
+        return buildErrorResponse(exchange, HttpStatus.NOT_FOUND, e.getMessage());
+    }
+    
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ApiError> handleBadRequestException(BadRequestException e, ServerWebExchange exchange) {
+        return buildErrorResponse(exchange, HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<ApiError> handleConflictException(ConflictException e, ServerWebExchange exchange) {
+        return buildErrorResponse(exchange, HttpStatus.CONFLICT, e.getMessage());
+    }
+    
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ApiError> handleIllegalArgumentException(IllegalArgumentException e, ServerWebExchange exchange) {
+        return buildErrorResponse(exchange, HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<ApiError> handleIllegalStateException(IllegalStateException e, ServerWebExchange exchange) {
+        return buildErrorResponse(exchange, HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+    
+    private ResponseEntity<ApiError> buildErrorResponse(ServerWebExchange exchange, HttpStatus status, String message) {
+        ApiError apiError = new ApiError(
+            exchange.getRequest().getPath().value(),
+            message,
+            status.value(),
+            LocalDateTime.now(),
+            null
+        );
+        return new ResponseEntity<>(apiError, status);
+    }
+}
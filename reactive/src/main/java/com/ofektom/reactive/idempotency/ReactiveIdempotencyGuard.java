@@ -0,0 +1,114 @@
+package com.ofektom.reactive.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.exception.ConflictException;
+import com.ofektom.idempotency.IdempotentResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Idempotency checks against idempotency_keys with the same replay and 409 rules as IdempotencyGuard.
+ * There is no local Bloom filter or recent-key cache: every check is one indexed lookup, which keeps this module
+ * stateless next to the servlet application. Keys are claimed by the write statement itself.
+ */
+@Component
+public class ReactiveIdempotencyGuard {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReactiveIdempotencyGuard.class);
+    private static final String UNIQUE_CONSTRAINT = "uk_idempotency_key";
+    private static final String FIND_KEY =
+        "SELECT request_fingerprint, response_body FROM idempotency_keys WHERE key_value = $1";
+    private static final String FIND_KEYS =
+        "SELECT key_value FROM idempotency_keys WHERE key_value = ANY($1::varchar[])";
+    
+    private final DatabaseClient databaseClient;
+    private final ObjectMapper objectMapper;
+    
+    public ReactiveIdempotencyGuard(DatabaseClient databaseClient, ObjectMapper objectMapper) {
+        this.databaseClient = databaseClient;
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * Emits the original response if this key was already used by the same request, and completes empty if the key
+     * is unused. Errors with ConflictException if the key was used by a different request or has no stored response.
+     */
+    public Mono<TransactionResponse> replay(String idempotencyKey, String requestFingerprint) {
+        return load(idempotencyKey).map(result -> replayOrReject(idempotencyKey, requestFingerprint, result));
+    }
+    
+    // For a key that lost a unique-constraint race: the winner has committed, so its row is visible now
+    public Mono<TransactionResponse> replayCommitted(String idempotencyKey, String requestFingerprint) {
+        return load(idempotencyKey)
+            .switchIfEmpty(Mono.error(() ->
+                new ConflictException("Transaction with idempotency key already processed: " + idempotencyKey)))
+            .map(result -> replayOrReject(idempotencyKey, requestFingerprint, result));
+    }
+    
+    // Keys of the batch that are already used, in one round trip
+    public Mono<Set<String>> findDuplicates(Collection<String> idempotencyKeys) {
+        return databaseClient.sql(FIND_KEYS)
+            .bind(0, idempotencyKeys.toArray(String[]::new))
+            .map((row, metadata) -> row.get("key_value", String.class))
+            .all()
+            .collect(HashSet::new, Set::add);
+    }
+    
+    public boolean isKeyViolation(DataIntegrityViolationException e) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && message.contains(UNIQUE_CONSTRAINT);
+    }
+    
+    public String toResponseBody(TransactionResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize transaction response", e);
+        }
+    }
+    
+    private Mono<IdempotentResult> load(String idempotencyKey) {
+        return databaseClient.sql(FIND_KEY)
+            .bind(0, idempotencyKey)
+            .map((row, metadata) -> new IdempotentResult(row.get("request_fingerprint", String.class),
+                fromResponseBody(row.get("response_body", String.class))))
+            .one();
+    }
+    
+    private TransactionResponse replayOrReject(String idempotencyKey, String requestFingerprint, IdempotentResult result) {
+        if (!result.matches(requestFingerprint)) {
+            log.warn("Idempotency key reused with a different payload: idempotencyKey={}", idempotencyKey);
+            throw new ConflictException("Idempotency key already used for a different request: " + idempotencyKey);
+        }
+        if (result.response() == null) {
+            log.warn("Duplicate transaction attempt: idempotencyKey={}", idempotencyKey);
+            throw new ConflictException("Transaction with idempotency key already processed: " + idempotencyKey);
+        }
+        log.info("Replaying stored response: idempotencyKey={}, transactionId={}",
+            idempotencyKey, result.response().transactionId());
+        return result.response();
+    }
+    
+    // An unreadable body only costs the replay; the key still counts as used
+    private TransactionResponse fromResponseBody(String responseBody) {
+        if (responseBody == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(responseBody, TransactionResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Unreadable stored idempotent response: {}", e.getMessage());
+            return null;
+        }
+    }
+}
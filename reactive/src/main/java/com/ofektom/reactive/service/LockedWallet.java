@@ -0,0 +1,62 @@
+package com.ofektom.reactive.service;
+
+import com.ofektom.enums.TransactionType;
+import com.ofektom.utils.Money;
+
+/**
+ * A wallet row held under SELECT ... FOR UPDATE for the rest of a reactive write transaction.
+ * Balance changes are applied here first and written back by LedgerWrite only if the wallet is dirty.
+ */
+final class LockedWallet {
+    
+    private final long id;
+    private final String walletId;
+    private final int stripeCount;
+    private long balanceInMinorUnits;
+    private boolean dirty;
+    
+    LockedWallet(long id, String walletId, long balanceInMinorUnits, int stripeCount) {
+        this.id = id;
+        this.walletId = walletId;
+        this.balanceInMinorUnits = balanceInMinorUnits;
+        this.stripeCount = stripeCount;
+    }
+    
+    // Same rules as Wallet.processTransaction: a debit past zero throws IllegalStateException
+    void apply(TransactionType type, long amountInMinorUnits) {
+        balanceInMinorUnits = type.apply(balanceInMinorUnits, amountInMinorUnits);
+        dirty = true;
+    }
+    
+    // Moves funds drained from the wallet's stripes onto its row
+    void sweep(long sweptInMinorUnits) {
+        if (sweptInMinorUnits != 0) {
+            balanceInMinorUnits = Money.addMinorUnits(balanceInMinorUnits, sweptInMinorUnits);
+            dirty = true;
+        }
+    }
+    
+    boolean hasSufficientBalance(long amountInMinorUnits) {
+        return balanceInMinorUnits >= amountInMinorUnits;
+    }
+    
+    boolean isStriped() {
+        return stripeCount > 0;
+    }
+    
+    boolean isDirty() {
+        return dirty;
+    }
+    
+    long id() {
+        return id;
+    }
+    
+    String walletId() {
+        return walletId;
+    }
+    
+    long balanceInMinorUnits() {
+        return balanceInMinorUnits;
+    }
+}
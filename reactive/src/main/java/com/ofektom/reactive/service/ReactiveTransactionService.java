@@ -0,0 +1,361 @@
+package com.ofektom.reactive.service;
+
+import com.ofektom.dto.request.BatchTransferRequest;
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferItemResult;
+import com.ofektom.dto.response.BatchTransferResponse;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.BatchItemStatus;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.ConflictException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.idempotency.RequestFingerprint;
+import com.ofektom.reactive.idempotency.ReactiveIdempotencyGuard;
+import com.ofektom.reactive.utils.ReactiveRetrier;
+import com.ofektom.utils.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Credits, debits and transfers on R2DBC with the servlet module's guarantees: wallet rows are locked with
+ * SELECT ... FOR UPDATE in walletId order, balances are checked by TransactionType, and the new balances,
+ * ledger rows, outbox events and idempotency key are written by one statement in the same READ COMMITTED
+ * transaction. No thread waits on the database; a request holds a connection only while its transaction runs.
+ */
+@Service
+public class ReactiveTransactionService {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReactiveTransactionService.class);
+    private static final String TRANSACTION = "transaction";
+    private static final String TRANSFER = "transfer";
+    private static final String BATCH_TRANSFER = "batch_transfer";
+    
+    private static final String LOCK_WALLETS = """
+        SELECT id, wallet_id, balance_in_minor_units, stripe_count FROM wallets
+        WHERE wallet_id = ANY($1::varchar[])
+        ORDER BY wallet_id
+        FOR UPDATE
+        """;
+    // Locks every stripe of the given wallets (after their wallet rows, as HotWalletLedger does) and drains them
+    private static final String SWEEP_STRIPES = """
+        WITH drained AS (
+            SELECT id, wallet_id, balance_in_minor_units FROM wallet_stripes
+            WHERE wallet_id = ANY($1::bigint[])
+            ORDER BY wallet_id, stripe_index
+            FOR UPDATE
+        ), zeroed AS (
+            UPDATE wallet_stripes s
+            SET balance_in_minor_units = 0, version = s.version + 1, updated_at = $2
+            FROM drained d
+            WHERE s.id = d.id AND d.balance_in_minor_units <> 0
+        )
+        SELECT wallet_id, SUM(balance_in_minor_units)::bigint AS swept FROM drained GROUP BY wallet_id
+        """;
+    
+    private final DatabaseClient databaseClient;
+    private final ReactiveIdempotencyGuard idempotencyGuard;
+    private final ReactiveRetrier retrier;
+    private final TransactionalOperator readCommitted;
+    
+    public ReactiveTransactionService(DatabaseClient databaseClient,
+                                      ReactiveIdempotencyGuard idempotencyGuard,
+                                      ReactiveRetrier retrier,
+                                      ReactiveTransactionManager transactionManager) {
+        this.databaseClient = databaseClient;
+        this.idempotencyGuard = idempotencyGuard;
+        this.retrier = retrier;
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        definition.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.readCommitted = TransactionalOperator.create(transactionManager, definition);
+    }
+    
+    /**
+     * Processes a credit or debit. A retry with a used key gets the original response back without opening
+     * a write transaction; a different payload under the same key is a 409.
+     */
+    public Mono<TransactionResponse> processTransaction(TransactionRequest request) {
+        String fingerprint = RequestFingerprint.of(request);
+        return idempotencyGuard.replay(request.idempotencyKey(), fingerprint)
+            .switchIfEmpty(Mono.defer(() -> executeWrite(TRANSACTION, doProcessTransaction(request, fingerprint),
+                () -> idempotencyGuard.replayCommitted(request.idempotencyKey(), fingerprint))));
+    }
+    
+    private Mono<TransactionResponse> doProcessTransaction(TransactionRequest request, String fingerprint) {
+        return Mono.defer(() -> {
+            log.debug("Processing transaction: walletId={}, type={}, amount={}, idempotencyKey={}",
+                request.walletId(), request.type(), request.amountInMinorUnits(), request.idempotencyKey());
+            
+            TransactionType transactionType;
+            try {
+                transactionType = TransactionType.fromString(request.type());
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid transaction type: {}", request.type());
+                return Mono.error(new BadRequestException("Invalid transaction type: " + request.type()));
+            }
+            
+            LocalDateTime now = LocalDateTime.now();
+            long amount = Money.ofMinorUnits(request.amountInMinorUnits()).getAmountInMinorUnits();
+            return lockWallets(List.of(request.walletId())).flatMap(wallets -> {
+                LockedWallet wallet = wallets.get(request.walletId());
+                if (wallet == null) {
+                    log.warn("Wallet not found for transaction: {}", request.walletId());
+                    return Mono.error(new NotFoundException("Wallet not found: " + request.walletId()));
+                }
+                // Debits need the full balance of a striped wallet on its row
+                Mono<Void> sweep = transactionType == TransactionType.DEBIT ? sweep(List.of(wallet), now) : Mono.empty();
+                return sweep.then(Mono.defer(() -> {
+                    try {
+                        wallet.apply(transactionType, amount);
+                    } catch (IllegalStateException e) {
+                        log.error("Transaction failed: {}", e.getMessage());
+                        return Mono.error(new BadRequestException("Insufficient balance: " + e.getMessage()));
+                    }
+                    
+                    TransactionResponse response = newResponse(wallet.walletId(), transactionType, amount, now);
+                    LedgerWrite write = new LedgerWrite(now);
+                    write.leg(response.transactionId(), wallet, transactionType, amount, null, null);
+                    write.claim(request.idempotencyKey(), fingerprint, idempotencyGuard.toResponseBody(response));
+                    return write.flush(databaseClient, wallets.values())
+                        .doOnSuccess(done -> log.info("Transaction processed successfully: transactionId={}, walletId={}, type={}, amount={}",
+                            response.transactionId(), wallet.walletId(), transactionType, amount))
+                        .thenReturn(response);
+                }));
+            });
+        });
+    }
+    
+    /**
+     * Transfers money between two wallets atomically: both legs are written by the same statement.
+     * Retries with a used key are replayed like processTransaction.
+     */
+    public Mono<TransactionResponse> transfer(TransferRequest request) {
+        String fingerprint = RequestFingerprint.of(request);
+        return idempotencyGuard.replay(request.idempotencyKey(), fingerprint)
+            .switchIfEmpty(Mono.defer(() -> executeWrite(TRANSFER, doTransfer(request, fingerprint),
+                () -> idempotencyGuard.replayCommitted(request.idempotencyKey(), fingerprint))));
+    }
+    
+    private Mono<TransactionResponse> doTransfer(TransferRequest request, String fingerprint) {
+        return Mono.defer(() -> {
+            log.debug("Processing transfer: sender={}, receiver={}, amount={}, idempotencyKey={}",
+                request.senderWalletId(), request.receiverWalletId(),
+                request.amountInMinorUnits(), request.idempotencyKey());
+            
+            if (request.senderWalletId().equals(request.receiverWalletId())) {
+                log.error("Sender and receiver wallets cannot be the same");
+                return Mono.error(new BadRequestException("Sender and receiver wallets cannot be the same"));
+            }
+            
+            LocalDateTime now = LocalDateTime.now();
+            long amount = Money.ofMinorUnits(request.amountInMinorUnits()).getAmountInMinorUnits();
+            return lockWallets(List.of(request.senderWalletId(), request.receiverWalletId())).flatMap(wallets -> {
+                LockedWallet sender = wallets.get(request.senderWalletId());
+                if (sender == null) {
+                    log.warn("Sender wallet not found: {}", request.senderWalletId());
+                    return Mono.error(new NotFoundException("Sender wallet not found: " + request.senderWalletId()));
+                }
+                LockedWallet receiver = wallets.get(request.receiverWalletId());
+                if (receiver == null) {
+                    log.warn("Receiver wallet not found: {}", request.receiverWalletId());
+                    return Mono.error(new NotFoundException("Receiver wallet not found: " + request.receiverWalletId()));
+                }
+                
+                // A striped sender's funds are swept onto its row before the balance check
+                return sweep(List.of(sender), now).then(Mono.defer(() -> {
+                    if (!sender.hasSufficientBalance(amount)) {
+                        long balance = sender.balanceInMinorUnits();
+                        log.warn("Insufficient balance for transfer: sender={}, balance={}, amount={}",
+                            sender.walletId(), balance, amount);
+                        return Mono.error(new BadRequestException(
+                            "Insufficient balance. Current: " + balance + ", Requested: " + amount));
+                    }
+                    sender.apply(TransactionType.DEBIT, amount);
+                    receiver.apply(TransactionType.CREDIT, amount);
+                    
+                    // The sender's DEBIT leg is the transfer's response
+                    String transferId = UUID.randomUUID().toString();
+                    TransactionResponse response = newResponse(sender.walletId(), TransactionType.DEBIT, amount, now);
+                    LedgerWrite write = new LedgerWrite(now);
+                    write.leg(response.transactionId(), sender, TransactionType.DEBIT, amount, receiver, transferId);
+                    write.leg(UUID.randomUUID().toString(), receiver, TransactionType.CREDIT, amount, sender, transferId);
+                    write.claim(request.idempotencyKey(), fingerprint, idempotencyGuard.toResponseBody(response));
+                    return write.flush(databaseClient, wallets.values())
+                        .doOnSuccess(done -> log.info("Transfer completed successfully: transactionId={}, sender={}, receiver={}, amount={}",
+                            response.transactionId(), sender.walletId(), receiver.walletId(), amount))
+                        .thenReturn(response);
+                }));
+            });
+        });
+    }
+    
+    /**
+     * Applies a batch of transfers in a single database transaction, with the same per-item outcomes as the
+     * servlet module: items are evaluated in request order against running balances and never fail the batch.
+     */
+    public Mono<BatchTransferResponse> batchTransfer(BatchTransferRequest request) {
+        return executeWrite(BATCH_TRANSFER, doBatchTransfer(request),
+            () -> Mono.error(new ConflictException("One or more idempotency keys in the batch were processed concurrently")));
+    }
+    
+    private Mono<BatchTransferResponse> doBatchTransfer(BatchTransferRequest request) {
+        return Mono.defer(() -> {
+            List<TransferRequest> transfers = request.transfers();
+            log.debug("Processing batch transfer: size={}", transfers.size());
+            
+            Set<String> walletIds = new TreeSet<>();
+            for (TransferRequest transfer : transfers) {
+                walletIds.add(transfer.senderWalletId());
+                walletIds.add(transfer.receiverWalletId());
+            }
+            LocalDateTime now = LocalDateTime.now();
+            return idempotencyGuard.findDuplicates(transfers.stream().map(TransferRequest::idempotencyKey).toList())
+                .flatMap(existingKeys -> lockWallets(walletIds)
+                    .flatMap(wallets -> sweep(wallets.values(), now)
+                        .then(Mono.defer(() -> applyBatch(transfers, existingKeys, wallets, now)))));
+        });
+    }
+    
+    private Mono<BatchTransferResponse> applyBatch(List<TransferRequest> transfers, Set<String> existingKeys,
+                                                   Map<String, LockedWallet> wallets, LocalDateTime now) {
+        LedgerWrite write = new LedgerWrite(now);
+        List<BatchTransferItemResult> results = new ArrayList<>(transfers.size());
+        Set<String> seenKeys = new HashSet<>();
+        int applied = 0;
+        for (TransferRequest transfer : transfers) {
+            BatchItemStatus status = applyBatchItem(transfer, existingKeys, seenKeys, wallets);
+            String transactionId = null;
+            if (status == BatchItemStatus.APPLIED) {
+                LockedWallet sender = wallets.get(transfer.senderWalletId());
+                LockedWallet receiver = wallets.get(transfer.receiverWalletId());
+                long amount = transfer.amountInMinorUnits();
+                String transferId = UUID.randomUUID().toString();
+                TransactionResponse response = newResponse(sender.walletId(), TransactionType.DEBIT, amount, now);
+                transactionId = response.transactionId();
+                // Running balances right after this item, for the legs' outbox events
+                write.leg(transactionId, sender, TransactionType.DEBIT, amount, receiver, transferId);
+                write.leg(UUID.randomUUID().toString(), receiver, TransactionType.CREDIT, amount, sender, transferId);
+                // Each applied item's key replays like a single transfer if it is retried through POST /transfers
+                write.claim(transfer.idempotencyKey(), RequestFingerprint.of(transfer), idempotencyGuard.toResponseBody(response));
+                applied++;
+            }
+            results.add(new BatchTransferItemResult(transfer.idempotencyKey(), status.name(), transactionId,
+                describeBatchStatus(status)));
+        }
+        
+        int appliedCount = applied;
+        return write.flush(databaseClient, wallets.values())
+            .doOnSuccess(done -> log.info("Batch transfer completed: size={}, applied={}", transfers.size(), appliedCount))
+            .thenReturn(new BatchTransferResponse(appliedCount, transfers.size() - appliedCount, results));
+    }
+    
+    // Validates and applies one batch item against the locked wallets, returning its outcome
+    private BatchItemStatus applyBatchItem(TransferRequest transfer, Set<String> existingKeys,
+                                           Set<String> seenKeys, Map<String, LockedWallet> wallets) {
+        if (existingKeys.contains(transfer.idempotencyKey()) || !seenKeys.add(transfer.idempotencyKey())) {
+            return BatchItemStatus.DUPLICATE;
+        }
+        if (transfer.senderWalletId().equals(transfer.receiverWalletId())) {
+            return BatchItemStatus.INVALID;
+        }
+        LockedWallet sender = wallets.get(transfer.senderWalletId());
+        LockedWallet receiver = wallets.get(transfer.receiverWalletId());
+        if (sender == null || receiver == null) {
+            return BatchItemStatus.WALLET_NOT_FOUND;
+        }
+        long amount = Money.ofMinorUnits(transfer.amountInMinorUnits()).getAmountInMinorUnits();
+        if (!sender.hasSufficientBalance(amount)) {
+            return BatchItemStatus.INSUFFICIENT_FUNDS;
+        }
+        sender.apply(TransactionType.DEBIT, amount);
+        receiver.apply(TransactionType.CREDIT, amount);
+        return BatchItemStatus.APPLIED;
+    }
+    
+    private String describeBatchStatus(BatchItemStatus status) {
+        return switch (status) {
+            case APPLIED -> null;
+            case DUPLICATE -> "Transfer with idempotency key already processed";
+            case INSUFFICIENT_FUNDS -> "Insufficient balance";
+            case WALLET_NOT_FOUND -> "Sender or receiver wallet not found";
+            case INVALID -> "Sender and receiver wallets cannot be the same";
+            case PENDING -> "Transfer is held and will be completed in the background";
+            case BALANCE_OVERFLOW -> "Receiver balance would overflow";
+        };
+    }
+    
+    // Locks every requested wallet in one statement, in walletId order, so concurrent writers cannot deadlock
+    private Mono<Map<String, LockedWallet>> lockWallets(Collection<String> walletIds) {
+        return databaseClient.sql(LOCK_WALLETS)
+            .bind(0, walletIds.toArray(String[]::new))
+            .map((row, metadata) -> new LockedWallet(
+                row.get("id", Long.class),
+                row.get("wallet_id", String.class),
+                row.get("balance_in_minor_units", Long.class),
+                row.get("stripe_count", Integer.class)))
+            .all()
+            .collectMap(LockedWallet::walletId, wallet -> wallet, HashMap::new);
+    }
+    
+    // Drains the stripes of every striped wallet given onto its (already locked) row
+    private Mono<Void> sweep(Collection<LockedWallet> wallets, LocalDateTime now) {
+        Map<Long, LockedWallet> striped = new HashMap<>();
+        for (LockedWallet wallet : wallets) {
+            if (wallet.isStriped()) {
+                striped.put(wallet.id(), wallet);
+            }
+        }
+        if (striped.isEmpty()) {
+            return Mono.empty();
+        }
+        return databaseClient.sql(SWEEP_STRIPES)
+            .bind(0, striped.keySet().toArray(Long[]::new))
+            .bind(1, now)
+            .map((row, metadata) -> Map.entry(row.get("wallet_id", Long.class), row.get("swept", Long.class)))
+            .all()
+            .doOnNext(swept -> striped.get(swept.getKey()).sweep(swept.getValue()))
+            .then();
+    }
+    
+    /**
+     * Runs a write transaction with transient-failure retry. A concurrent duplicate idempotency key surfaces as a
+     * unique violation from the write statement; onDuplicateKey then runs outside the rolled-back transaction.
+     */
+    private <T> Mono<T> executeWrite(String operation, Mono<T> work, Supplier<Mono<T>> onDuplicateKey) {
+        return retrier.execute(operation, readCommitted.transactional(work))
+            .onErrorResume(DataIntegrityViolationException.class, e -> {
+                if (!idempotencyGuard.isKeyViolation(e)) {
+                    return Mono.error(e);
+                }
+                log.warn("Idempotency key collision during {}", operation);
+                return onDuplicateKey.get();
+            });
+    }
+    
+    private static TransactionResponse newResponse(String walletId, TransactionType type, long amountInMinorUnits,
+                                                   LocalDateTime createdAt) {
+        return new TransactionResponse(UUID.randomUUID().toString(), walletId, type.name(), amountInMinorUnits,
+            Money.toMajorUnits(amountInMinorUnits), createdAt);
+    }
+}
@@ -0,0 +1,185 @@
+package com.ofektom.reactive.service;
+
+import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.response.TransactionPageResponse;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.dto.response.WalletResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.repository.TransactionHistoryRow;
+import com.ofektom.utils.Money;
+import com.ofektom.utils.TransactionCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Wallet creation, balance reads and keyset-paged history on R2DBC.
+ * Reads are single statements outside an explicit transaction; the balance of a striped wallet is its row plus
+ * the sum of its stripes, as in the servlet module.
+ */
+@Service
+public class ReactiveWalletService {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReactiveWalletService.class);
+    
+    private static final String INSERT_WALLET = """
+        INSERT INTO wallets (id, wallet_id, balance_in_minor_units, opening_balance_in_minor_units, stripe_count,
+                             created_at, updated_at, version)
+        VALUES (nextval('wallets_seq'), $1, $2, $2, 0, $3, $3, 0)
+        """;
+    private static final String FIND_WALLET = """
+        SELECT w.wallet_id, w.created_at, w.updated_at,
+               (w.balance_in_minor_units + COALESCE((SELECT SUM(s.balance_in_minor_units) FROM wallet_stripes s
+                                                     WHERE s.wallet_id = w.id), 0))::bigint AS balance
+        FROM wallets w
+        WHERE w.wallet_id = $1
+        """;
+    private static final String FIND_WALLET_PK = "SELECT id FROM wallets WHERE wallet_id = $1";
+    
+    private final DatabaseClient databaseClient;
+    private final int maxPageSize;
+    
+    public ReactiveWalletService(DatabaseClient databaseClient,
+                                 @Value("${wallet.history.max-page-size:500}") int maxPageSize) {
+        this.databaseClient = databaseClient;
+        this.maxPageSize = maxPageSize;
+    }
+    
+    public Mono<WalletResponse> createWallet(CreateWalletRequest request) {
+        return Mono.defer(() -> {
+            log.debug("Creating new wallet");
+            long balance = request != null && request.initialBalanceInMinorUnits() != null
+                ? Money.ofMinorUnits(request.initialBalanceInMinorUnits()).getAmountInMinorUnits()
+                : 0L;
+            String walletId = UUID.randomUUID().toString();
+            LocalDateTime now = LocalDateTime.now();
+            return databaseClient.sql(INSERT_WALLET)
+                .bind(0, walletId)
+                .bind(1, balance)
+                .bind(2, now)
+                .then()
+                .doOnSuccess(done -> log.info("Wallet created successfully: walletId={}, initialBalance={}", walletId, balance))
+                .thenReturn(new WalletResponse(walletId, balance, Money.toMajorUnits(balance), now, now, null));
+        });
+    }
+    
+    // Errors with NotFoundException if the wallet does not exist
+    public Mono<WalletResponse> getWallet(String walletId) {
+        log.debug("Retrieving wallet: {}", walletId);
+        return databaseClient.sql(FIND_WALLET)
+            .bind(0, walletId)
+            .map((row, metadata) -> {
+                long balance = row.get("balance", Long.class);
+                return new WalletResponse(row.get("wallet_id", String.class), balance, Money.toMajorUnits(balance),
+                    row.get("created_at", LocalDateTime.class), row.get("updated_at", LocalDateTime.class), null);
+            })
+            .one()
+            .switchIfEmpty(Mono.error(() -> {
+                log.warn("Wallet not found: {}", walletId);
+                return new NotFoundException("Wallet not found: " + walletId);
+            }));
+    }
+    
+    /**
+     * Returns one page of a wallet's transactions, newest first, with the same filters, limits and cursor
+     * format as TransactionHistoryServiceImpl, so a cursor from either module works on the other.
+     */
+    public Mono<TransactionPageResponse> getTransactions(String walletId, String type, LocalDateTime from,
+                                                         LocalDateTime to, String cursor, int limit) {
+        return Mono.defer(() -> {
+            log.debug("Retrieving transactions: walletId={}, type={}, from={}, to={}, limit={}", walletId, type, from, to, limit);
+            
+            if (limit < 1 || limit > maxPageSize) {
+                return Mono.error(new BadRequestException("Limit must be between 1 and " + maxPageSize));
+            }
+            TransactionType transactionType = null;
+            if (type != null) {
+                try {
+                    transactionType = TransactionType.fromString(type);
+                } catch (IllegalArgumentException e) {
+                    return Mono.error(new BadRequestException("Invalid transaction type: " + type));
+                }
+            }
+            TransactionCursor after = cursor == null || cursor.isBlank() ? null : TransactionCursor.decode(cursor);
+            TransactionType typeFilter = transactionType;
+            
+            return databaseClient.sql(FIND_WALLET_PK)
+                .bind(0, walletId)
+                .map((row, metadata) -> row.get("id", Long.class))
+                .one()
+                .switchIfEmpty(Mono.error(() -> {
+                    log.warn("Wallet not found: {}", walletId);
+                    return new NotFoundException("Wallet not found: " + walletId);
+                }))
+                // One extra row tells us whether another page exists without a COUNT
+                .flatMap(walletPk -> findHistoryPage(walletPk, typeFilter, from, to, after, limit + 1).collectList())
+                .map(rows -> toPage(walletId, rows, limit));
+        });
+    }
+    
+    // Assembled per call like TransactionHistoryRepositoryImpl, so the cursor stays an index range condition
+    private Flux<TransactionHistoryRow> findHistoryPage(long walletPk, TransactionType type,
+                                                        LocalDateTime from, LocalDateTime to,
+                                                        TransactionCursor after, int limit) {
+        StringBuilder sql = new StringBuilder(
+            "SELECT id, transaction_id, transaction_type, amount_in_minor_units, created_at FROM transactions WHERE wallet_id = $1");
+        List<Object> params = new ArrayList<>();
+        params.add(walletPk);
+        if (type != null) {
+            params.add(type.name());
+            sql.append(" AND transaction_type = $").append(params.size());
+        }
+        if (from != null) {
+            params.add(from);
+            sql.append(" AND created_at >= $").append(params.size());
+        }
+        if (to != null) {
+            params.add(to);
+            sql.append(" AND created_at < $").append(params.size());
+        }
+        if (after != null) {
+            params.add(after.createdAt());
+            int createdAt = params.size();
+            params.add(after.id());
+            sql.append(" AND created_at <= $").append(createdAt)
+                .append(" AND (created_at < $").append(createdAt).append(" OR id < $").append(params.size()).append(')');
+        }
+        params.add(limit);
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT $").append(params.size());
+        
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < params.size(); i++) {
+            spec = spec.bind(i, params.get(i));
+        }
+        return spec.map((row, metadata) -> new TransactionHistoryRow(
+                row.get("id", Long.class),
+                row.get("transaction_id", String.class),
+                TransactionType.valueOf(row.get("transaction_type", String.class)),
+                row.get("amount_in_minor_units", Long.class),
+                row.get("created_at", LocalDateTime.class)))
+            .all();
+    }
+    
+    private TransactionPageResponse toPage(String walletId, List<TransactionHistoryRow> rows, int limit) {
+        boolean hasMore = rows.size() > limit;
+        List<TransactionHistoryRow> page = hasMore ? rows.subList(0, limit) : rows;
+        List<TransactionResponse> transactions = page.stream().map(row -> row.toResponse(walletId)).toList();
+        String nextCursor = null;
+        if (hasMore) {
+            TransactionHistoryRow last = page.get(page.size() - 1);
+            nextCursor = new TransactionCursor(last.createdAt(), last.id()).encode();
+        }
+        return new TransactionPageResponse(transactions, nextCursor);
+    }
+}
@@ -0,0 +1,74 @@
+package com.ofektom.reactive.utils;
+
+import com.ofektom.exception.ConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.R2dbcException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Reactive counterpart of TransientFailureRetrier: resubscribes to a write transaction the database rejected
+ * for a transient concurrency reason, with bounded jittered backoff. The backoff is a timer, not a sleeping thread.
+ */
+@Component
+public class ReactiveRetrier {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReactiveRetrier.class);
+    
+    // PostgreSQL: serialization_failure, deadlock_detected, lock_not_available
+    private static final Set<String> TRANSIENT_SQL_STATES = Set.of("40001", "40P01", "55P03");
+    
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final MeterRegistry meterRegistry;
+    private final Counter exhausted;
+    
+    public ReactiveRetrier(@Value("${wallet.retry.max-attempts:4}") int maxAttempts,
+                           @Value("${wallet.retry.initial-backoff-ms:5}") long initialBackoffMs,
+                           @Value("${wallet.retry.max-backoff-ms:100}") long maxBackoffMs,
+                           MeterRegistry meterRegistry) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = Duration.ofMillis(initialBackoffMs);
+        this.maxBackoff = Duration.ofMillis(maxBackoffMs);
+        this.meterRegistry = meterRegistry;
+        this.exhausted = Counter.builder("wallet.tx.retries.exhausted")
+            .description("Operations that still failed transiently after the last retry")
+            .register(meterRegistry);
+    }
+    
+    // Must wrap the whole transactional publisher so every attempt opens a fresh transaction
+    public <T> Mono<T> execute(String operation, Mono<T> work) {
+        return work.retryWhen(Retry.backoff(maxAttempts - 1, initialBackoff)
+            .maxBackoff(maxBackoff)
+            .jitter(1.0)
+            .filter(ReactiveRetrier::isTransient)
+            .doBeforeRetry(signal -> {
+                meterRegistry.counter("wallet.tx.retries", "operation", operation).increment();
+                log.debug("Retrying {} after transient failure (attempt {}): {}",
+                    operation, signal.totalRetries() + 1, signal.failure().getMessage());
+            })
+            .onRetryExhaustedThrow((spec, signal) -> {
+                exhausted.increment();
+                log.warn("Giving up on {} after {} attempts: {}", operation, maxAttempts, signal.failure().getMessage());
+                return new ConflictException("Operation could not be completed due to concurrent updates, please retry");
+            }));
+    }
+    
+    private static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof R2dbcException r2dbc && TRANSIENT_SQL_STATES.contains(r2dbc.getSqlState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
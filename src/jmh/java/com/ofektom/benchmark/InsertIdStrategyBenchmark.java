@@ -0,0 +1,117 @@
+package com.ofektom.benchmark;
+
+import com.ofektom.Application;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.model.Transaction;
+import com.ofektom.model.Wallet;
+import com.ofektom.repository.TransactionRepository;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.utils.Money;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts per second for wallet creation and transaction recording through the repositories, with the entities'
+ * pooled-lo sequence ids versus IDENTITY columns (what both used before sequences, restored by
+ * benchmark/identity-ids.xml). IDENTITY needs the row's id back from every INSERT, so Hibernate cannot batch them.
+ * Needs PostgreSQL: -Dbenchmark.db.url (plus username/password). Each strategy gets Hibernate's DDL in its own
+ * throwaway schema, dropped afterwards, so only the id generation differs between the two runs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class InsertIdStrategyBenchmark {
+    
+    private static final int BATCH_SIZE = 100;
+    private static final int WALLETS = 1_000;
+    
+    @Param({"pooled-lo", "identity"})
+    public String idStrategy;
+    
+    private ConfigurableApplicationContext context;
+    private WalletRepository walletRepository;
+    private TransactionRepository transactionRepository;
+    private TransactionTemplate transactionTemplate;
+    private final List<Long> walletPks = new ArrayList<>(WALLETS);
+    
+    @Setup(Level.Trial)
+    public void startApplication() {
+        String url = System.getProperty("benchmark.db.url");
+        if (url == null) {
+            throw new IllegalStateException("InsertIdStrategyBenchmark needs PostgreSQL; set -Dbenchmark.db.url");
+        }
+        String schema = "insert_benchmark_" + idStrategy.replace('-', '_');
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(Application.class)
+            .web(WebApplicationType.NONE)
+            .properties(
+                "spring.datasource.url=" + url,
+                "spring.datasource.username=" + System.getProperty("benchmark.db.username", "postgres"),
+                "spring.datasource.password=" + System.getProperty("benchmark.db.password", ""),
+                "spring.datasource.hikari.schema=" + schema,
+                "spring.flyway.enabled=false",
+                "spring.jpa.hibernate.ddl-auto=create-drop",
+                "spring.jpa.properties.hibernate.default_schema=" + schema,
+                "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+                "wallet.outbox.relay.enabled=false",
+                "spring.jpa.show-sql=false",
+                "logging.level.org.hibernate.SQL=WARN",
+                "logging.level.com.ofektom=WARN");
+        if ("identity".equals(idStrategy)) {
+            builder.properties("spring.jpa.mapping-resources=benchmark/identity-ids.xml");
+        }
+        context = builder.run();
+        walletRepository = context.getBean(WalletRepository.class);
+        transactionRepository = context.getBean(TransactionRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        for (int i = 0; i < WALLETS / BATCH_SIZE; i++) {
+            createWallets().forEach(wallet -> walletPks.add(wallet.getId()));
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+    
+    // BATCH_SIZE new wallets in one transaction, as bulk onboarding without COPY would write them
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Wallet> createWallets() {
+        return transactionTemplate.execute(status -> {
+            List<Wallet> wallets = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                wallets.add(new Wallet());
+            }
+            return walletRepository.saveAll(wallets);
+        });
+    }
+    
+    // BATCH_SIZE ledger rows for one wallet in one transaction, the insert pattern of batch transfers and journals
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Transaction> recordTransactions() {
+        Long walletPk = walletPks.get(ThreadLocalRandom.current().nextInt(walletPks.size()));
+        return transactionTemplate.execute(status -> {
+            Wallet wallet = walletRepository.getReferenceById(walletPk);
+            List<Transaction> transactions = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                transactions.add(Transaction.create(wallet, TransactionType.CREDIT,
+                    Money.ofMinorUnits(1L + ThreadLocalRandom.current().nextInt(100))));
+            }
+            return transactionRepository.saveAll(transactions);
+        });
+    }
+}
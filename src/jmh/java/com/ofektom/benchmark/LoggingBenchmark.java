@@ -0,0 +1,116 @@
+package com.ofektom.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import com.ofektom.utils.Money;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caller-side cost of the service's INFO line through a synchronous file appender versus the prod profile's
+ * AsyncAppender (same queue size and discarding threshold), plus eager String.format versus parameterized
+ * messages for a disabled level. Async throughput includes INFO events dropped once the queue is nearly full.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+    
+    private static final String MESSAGE = "Transaction processed successfully: transactionId={}, walletId={}, type={}, amount={}";
+    
+    private final String transactionId = UUID.randomUUID().toString();
+    private final String walletId = UUID.randomUUID().toString();
+    private final Money amount = Money.ofMinorUnits(12_345L);
+    private final long balance = 1_000_00L;
+    
+    private LoggerContext context;
+    private Path logFile;
+    private Logger syncLogger;
+    private Logger asyncLogger;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = new LoggerContext();
+        logFile = Files.createTempFile("logging-benchmark", ".log");
+        
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss} - %msg%n");
+        encoder.start();
+        
+        FileAppender<ILoggingEvent> file = new FileAppender<>();
+        file.setContext(context);
+        file.setFile(logFile.toString());
+        file.setEncoder(encoder);
+        file.start();
+        
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(context);
+        async.setQueueSize(8192);
+        async.setDiscardingThreshold(2048);
+        async.setNeverBlock(false);
+        async.addAppender(file);
+        async.start();
+        
+        syncLogger = logger("benchmark.sync", file);
+        asyncLogger = logger("benchmark.async", async);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.stop();
+        Files.deleteIfExists(logFile);
+    }
+    
+    @Benchmark
+    public void syncInfo() {
+        syncLogger.info(MESSAGE, transactionId, walletId, "CREDIT", amount);
+    }
+    
+    @Benchmark
+    public void asyncInfo() {
+        asyncLogger.info(MESSAGE, transactionId, walletId, "CREDIT", amount);
+    }
+    
+    @Benchmark
+    public void disabledDebugFormat() {
+        syncLogger.debug(String.format("Insufficient balance. Current: %d, Requested: %d", balance, amount.getAmountInMinorUnits()));
+    }
+    
+    @Benchmark
+    public void disabledDebugParameterized() {
+        syncLogger.debug("Insufficient balance. Current: {}, Requested: {}", balance, amount.getAmountInMinorUnits());
+    }
+    
+    @Benchmark
+    public String insufficientBalanceFormat() {
+        return String.format("Insufficient balance. Current: %d, Requested: %d", balance, amount.getAmountInMinorUnits());
+    }
+    
+    @Benchmark
+    public String insufficientBalanceConcat() {
+        return "Insufficient balance. Current: " + balance + ", Requested: " + amount.getAmountInMinorUnits();
+    }
+    
+    private ch.qos.logback.classic.Logger logger(String name, Appender<ILoggingEvent> appender) {
+        ch.qos.logback.classic.Logger logger = context.getLogger(name);
+        logger.setLevel(ch.qos.logback.classic.Level.INFO);
+        logger.setAdditive(false);
+        logger.addAppender(appender);
+        return logger;
+    }
+}
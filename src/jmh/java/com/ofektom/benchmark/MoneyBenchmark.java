@@ -0,0 +1,58 @@
+package com.ofektom.benchmark;
+
+import com.ofektom.utils.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money value-object operations. Run with -prof gc to see bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+    
+    private Money balance;
+    private Money amount;
+    
+    @Setup
+    public void setUp() {
+        balance = Money.ofMinorUnits(1_000_000_00L);
+        amount = Money.ofMinorUnits(12_345L);
+    }
+    
+    @Benchmark
+    public Money add() {
+        return balance.add(amount);
+    }
+    
+    @Benchmark
+    public Money subtract() {
+        return balance.subtract(amount);
+    }
+    
+    @Benchmark
+    public long addMinorUnits() {
+        return Money.addMinorUnits(balance.getAmountInMinorUnits(), amount.getAmountInMinorUnits());
+    }
+    
+    @Benchmark
+    public long subtractMinorUnits() {
+        return Money.subtractMinorUnits(balance.getAmountInMinorUnits(), amount.getAmountInMinorUnits());
+    }
+    
+    @Benchmark
+    public BigDecimal toMajorUnits() {
+        return amount.toMajorUnits();
+    }
+    
+    @Benchmark
+    public String toStringFormat() {
+        return amount.toString();
+    }
+}
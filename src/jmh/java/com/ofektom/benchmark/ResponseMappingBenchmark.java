@@ -0,0 +1,48 @@
+package com.ofektom.benchmark;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.dto.response.WalletResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.model.Transaction;
+import com.ofektom.model.Wallet;
+import com.ofektom.utils.Money;
+import com.ofektom.utils.ResponseMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DTO mapping behind the services' mapToTransactionResponse and mapToWalletResponse.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseMappingBenchmark {
+    
+    private Wallet wallet;
+    private Transaction transaction;
+    
+    @Setup
+    public void setUp() {
+        LocalDateTime now = LocalDateTime.now();
+        wallet = new Wallet(1L, UUID.randomUUID().toString(), 1_000_000_00L, now, now, 0L);
+        transaction = Transaction.create(wallet, TransactionType.CREDIT, Money.ofMinorUnits(12_345L));
+        transaction.setTransactionId(UUID.randomUUID().toString());
+        transaction.setCreatedAt(now);
+    }
+    
+    @Benchmark
+    public TransactionResponse toTransactionResponse() {
+        return ResponseMapper.toTransactionResponse(transaction, wallet.getWalletId());
+    }
+    
+    @Benchmark
+    public WalletResponse toWalletResponse() {
+        return ResponseMapper.toWalletResponse(wallet, wallet.getBalance());
+    }
+}
@@ -0,0 +1,120 @@
+package com.ofektom.benchmark;
+
+import com.ofektom.Application;
+import com.ofektom.dto.request.BatchTransferRequest;
+import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferResponse;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.service.TransactionService;
+import com.ofektom.service.WalletService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end processTransaction, transfer and batchTransfer through the real service beans, against an
+ * in-memory H2 database in PostgreSQL mode. Absolute numbers are not production numbers; the point is to
+ * catch throughput and p99 regressions in the service, locking and Hibernate batching code between releases.
+ * Point -Dbenchmark.db.url (plus username/password) at a local PostgreSQL for realistic figures.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ServiceEndToEndBenchmark {
+    
+    private static final int WALLETS = 1_000;
+    private static final int BATCH_SIZE = 100;
+    
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private final List<String> walletIds = new ArrayList<>(WALLETS);
+    
+    @Setup(Level.Trial)
+    public void startApplication() {
+        String url = System.getProperty("benchmark.db.url");
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(Application.class)
+            .web(WebApplicationType.NONE)
+            .properties(
+                "spring.jpa.show-sql=false",
+                "logging.level.org.hibernate.SQL=WARN",
+                "logging.level.com.ofektom=WARN");
+        if (url == null) {
+            // Flyway migrations are PostgreSQL-specific, so H2 gets its schema from Hibernate (and no outbox relay)
+            builder.properties(
+                "spring.datasource.url=jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "spring.datasource.driver-class-name=org.h2.Driver",
+                "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "spring.jpa.hibernate.ddl-auto=create",
+                "spring.flyway.enabled=false",
+                "wallet.outbox.relay.enabled=false");
+        } else {
+            builder.properties(
+                "spring.datasource.url=" + url,
+                "spring.datasource.username=" + System.getProperty("benchmark.db.username", "postgres"),
+                "spring.datasource.password=" + System.getProperty("benchmark.db.password", ""));
+        }
+        context = builder.run();
+        transactionService = context.getBean(TransactionService.class);
+        WalletService walletService = context.getBean(WalletService.class);
+        for (int i = 0; i < WALLETS; i++) {
+            walletIds.add(walletService.createWallet(new CreateWalletRequest(1_000_000_000_00L)).walletId());
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+    
+    private String randomWallet() {
+        return walletIds.get(ThreadLocalRandom.current().nextInt(WALLETS));
+    }
+    
+    private TransferRequest randomTransfer() {
+        String sender = randomWallet();
+        String receiver = randomWallet();
+        while (receiver.equals(sender)) {
+            receiver = randomWallet();
+        }
+        return new TransferRequest(sender, receiver, 1L + ThreadLocalRandom.current().nextInt(100),
+            UUID.randomUUID().toString());
+    }
+    
+    @Benchmark
+    public TransactionResponse processTransaction() {
+        String type = ThreadLocalRandom.current().nextBoolean() ? "CREDIT" : "DEBIT";
+        return transactionService.processTransaction(new TransactionRequest(
+            randomWallet(), type, 1L + ThreadLocalRandom.current().nextInt(100), UUID.randomUUID().toString()));
+    }
+    
+    @Benchmark
+    public TransactionResponse transfer() {
+        return transactionService.transfer(randomTransfer());
+    }
+    
+    // Insert throughput: one transaction with BATCH_SIZE keys, transactions and wallet updates
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public BatchTransferResponse batchTransfer() {
+        List<TransferRequest> transfers = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            transfers.add(randomTransfer());
+        }
+        return transactionService.batchTransfer(new BatchTransferRequest(transfers));
+    }
+}
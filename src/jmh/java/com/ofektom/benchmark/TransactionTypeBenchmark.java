@@ -0,0 +1,56 @@
+package com.ofektom.benchmark;
+
+import com.ofektom.enums.TransactionType;
+import com.ofektom.utils.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and applying transaction types, as done once per processTransaction call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionTypeBenchmark {
+    
+    @Param({"CREDIT", "debit"})
+    private String type;
+    
+    private Money balance;
+    private Money amount;
+    
+    @Setup
+    public void setUp() {
+        balance = Money.ofMinorUnits(1_000_000_00L);
+        amount = Money.ofMinorUnits(12_345L);
+    }
+    
+    @Benchmark
+    public TransactionType fromString() {
+        return TransactionType.fromString(type);
+    }
+    
+    @Benchmark
+    public long creditMinorUnits() {
+        return TransactionType.CREDIT.apply(balance.getAmountInMinorUnits(), amount.getAmountInMinorUnits());
+    }
+    
+    @Benchmark
+    public long debitMinorUnits() {
+        return TransactionType.DEBIT.apply(balance.getAmountInMinorUnits(), amount.getAmountInMinorUnits());
+    }
+    
+    @Benchmark
+    public Money credit() {
+        return TransactionType.CREDIT.apply(balance, amount);
+    }
+    
+    @Benchmark
+    public Money debit() {
+        return TransactionType.DEBIT.apply(balance, amount);
+    }
+}
@@ -0,0 +1,44 @@
+package com.ofektom.benchmark;
+
+import com.ofektom.enums.TransactionType;
+import com.ofektom.model.Wallet;
+import com.ofektom.utils.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory part of a credit/debit: Wallet.processTransaction on an already loaded entity.
+ * Credit and debit are applied in pairs so the balance stays constant across iterations.
+ * With the primitive balance kernels gc.alloc.rate.norm should be close to 0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WalletBenchmark {
+    
+    private Wallet wallet;
+    private Money amount;
+    
+    @Setup
+    public void setUp() {
+        wallet = new Wallet();
+        wallet.setBalanceInMinorUnits(1_000_000_00L);
+        amount = Money.ofMinorUnits(12_345L);
+    }
+    
+    @Benchmark
+    public long creditThenDebit() {
+        wallet.processTransaction(TransactionType.CREDIT, amount);
+        wallet.processTransaction(TransactionType.DEBIT, amount);
+        return wallet.getBalanceInMinorUnits();
+    }
+    
+    @Benchmark
+    public boolean hasSufficientBalance() {
+        return wallet.hasSufficientBalance(amount);
+    }
+}
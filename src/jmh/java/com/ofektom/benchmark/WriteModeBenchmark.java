@@ -0,0 +1,145 @@
+package com.ofektom.benchmark;
+
+import com.ofektom.Application;
+import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.service.TransactionService;
+import com.ofektom.service.WalletService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * processTransaction under wallet.write-mode=locking (SELECT ... FOR UPDATE, then UPDATE and INSERTs at commit)
+ * versus conditional (one UPDATE ... RETURNING with the INSERTs in a CTE), for many wallets with low contention
+ * and for a handful of contended ones. Needs PostgreSQL: -Dbenchmark.db.url (plus username/password).
+ * JDBC round trips per operation (statements executed plus commits and rollbacks) are printed after each iteration.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class WriteModeBenchmark {
+    
+    private static final Set<String> ROUND_TRIPS = Set.of(
+        "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch",
+        "commit", "rollback");
+    
+    @Param({"locking", "conditional"})
+    public String writeMode;
+    
+    @Param({"1000", "8"})
+    public int wallets;
+    
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong operations = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private TransactionService transactionService;
+    private final List<String> walletIds = new ArrayList<>();
+    
+    @Setup(Level.Trial)
+    public void startApplication() {
+        String url = System.getProperty("benchmark.db.url");
+        if (url == null) {
+            throw new IllegalStateException("WriteModeBenchmark needs PostgreSQL; set -Dbenchmark.db.url");
+        }
+        context = new SpringApplicationBuilder(Application.class)
+            .web(WebApplicationType.NONE)
+            .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? counting(dataSource) : bean;
+                }
+            }))
+            .properties(
+                "wallet.write-mode=" + writeMode,
+                "spring.datasource.url=" + url,
+                "spring.datasource.username=" + System.getProperty("benchmark.db.username", "postgres"),
+                "spring.datasource.password=" + System.getProperty("benchmark.db.password", ""),
+                "spring.jpa.show-sql=false",
+                "logging.level.org.hibernate.SQL=WARN",
+                "logging.level.com.ofektom=WARN")
+            .run();
+        transactionService = context.getBean(TransactionService.class);
+        WalletService walletService = context.getBean(WalletService.class);
+        for (int i = 0; i < wallets; i++) {
+            walletIds.add(walletService.createWallet(new CreateWalletRequest(1_000_000_000_00L)).walletId());
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+    
+    @Setup(Level.Iteration)
+    public void resetCounters() {
+        roundTrips.set(0);
+        operations.set(0);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void reportRoundTrips() {
+        System.out.printf("%n%s, %d wallets: %.2f JDBC round trips per operation%n",
+            writeMode, wallets, (double) roundTrips.get() / Math.max(1L, operations.get()));
+    }
+    
+    @Benchmark
+    public TransactionResponse processTransaction() {
+        String type = ThreadLocalRandom.current().nextBoolean() ? "CREDIT" : "DEBIT";
+        TransactionResponse response = transactionService.processTransaction(new TransactionRequest(
+            walletIds.get(ThreadLocalRandom.current().nextInt(wallets)), type,
+            1L + ThreadLocalRandom.current().nextInt(100), UUID.randomUUID().toString()));
+        operations.incrementAndGet();
+        return response;
+    }
+    
+    private DataSource counting(DataSource target) {
+        return new DelegatingDataSource(target) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return countingProxy(Connection.class, super.getConnection());
+            }
+        };
+    }
+    
+    // Counts statement executions and transaction ends; statements created by the connection are wrapped too
+    @SuppressWarnings("unchecked")
+    private <T> T countingProxy(Class<T> type, T target) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (ROUND_TRIPS.contains(method.getName())) {
+                roundTrips.incrementAndGet();
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof java.sql.Statement && method.getReturnType().isInterface()) {
+                return countingProxy((Class<Object>) method.getReturnType(), result);
+            }
+            return result;
+        });
+    }
+}
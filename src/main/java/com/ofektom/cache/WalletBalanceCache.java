@@ -0,0 +1,93 @@
+package com.ofektom.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ofektom.dto.response.WalletResponse;
+import com.ofektom.model.Wallet;
+import com.ofektom.utils.ResponseMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Bounded read-through cache of wallet responses keyed by walletId.
+ * Writers refresh entries only after their transaction commits, so rolled-back balances never leak,
+ * and an entry is only replaced by one with a higher Wallet.version, so a slow reader cannot
+ * overwrite a newer balance with the one it loaded earlier.
+ * Striped (hot) wallets are never cached: their stripe credits do not bump the wallet version.
+ */
+@Component
+public class WalletBalanceCache {
+    
+    private record Entry(WalletResponse response, long version) {
+    }
+    
+    private final Cache<String, Entry> cache;
+    
+    public WalletBalanceCache(@Value("${wallet.cache.max-size:100000}") long maxSize,
+                              @Value("${wallet.cache.ttl:PT30S}") Duration ttl,
+                              MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "wallet-balances");
+    }
+    
+    public Optional<WalletResponse> get(String walletId) {
+        Entry entry = cache.getIfPresent(walletId);
+        return entry == null ? Optional.empty() : Optional.of(entry.response());
+    }
+    
+    // Stores a freshly loaded wallet unless a newer version is already cached
+    public void put(Wallet wallet, WalletResponse response) {
+        if (wallet.isStriped() || wallet.getVersion() == null) {
+            return;
+        }
+        Entry loaded = new Entry(response, wallet.getVersion());
+        cache.asMap().merge(wallet.getWalletId(), loaded,
+            (current, candidate) -> candidate.version() > current.version() ? candidate : current);
+    }
+    
+    public void evict(String walletId) {
+        cache.invalidate(walletId);
+    }
+    
+    /**
+     * Refreshes the entry from the wallet's final state once the surrounding transaction commits
+     * (Hibernate has bumped the version by then); does nothing if it rolls back.
+     */
+    public void refreshAfterCommit(Wallet wallet) {
+        afterCommit(() -> {
+            if (wallet.isStriped()) {
+                evict(wallet.getWalletId());
+            } else {
+                put(wallet, ResponseMapper.toWalletResponse(wallet, wallet.getBalance()));
+            }
+        });
+    }
+    
+    public void evictAfterCommit(String walletId) {
+        afterCommit(() -> evict(walletId));
+    }
+    
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
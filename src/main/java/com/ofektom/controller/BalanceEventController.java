@@ -0,0 +1,45 @@
+package com.ofektom.controller;
+
+import com.ofektom.outbox.BalanceEventStream;
+import com.ofektom.service.WalletService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * REST controller for the balance event stream.
+ * Server-sent events for one wallet or for all wallets; the event id is the outbox position, so a client
+ * resumes with the standard Last-Event-ID header (or ?after=) instead of polling balances.
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class BalanceEventController {
+    
+    private static final Logger log = LoggerFactory.getLogger(BalanceEventController.class);
+    private final BalanceEventStream balanceEventStream;
+    private final WalletService walletService;
+    
+    public BalanceEventController(BalanceEventStream balanceEventStream, WalletService walletService) {
+        this.balanceEventStream = balanceEventStream;
+        this.walletService = walletService;
+    }
+    
+    @GetMapping(value = "/wallets/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamWalletEvents(@PathVariable String id,
+                                         @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                         @RequestParam(required = false) Long after) {
+        log.info("GET /wallets/{}/events - Subscribing: lastEventId={}, after={}", id, lastEventId, after);
+        // 404 for unknown wallets rather than a stream that never emits
+        walletService.getWallet(id);
+        return balanceEventStream.subscribe(id, lastEventId != null ? lastEventId : after);
+    }
+    
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAllEvents(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                      @RequestParam(required = false) Long after) {
+        log.info("GET /events - Subscribing to all wallets: lastEventId={}, after={}", lastEventId, after);
+        return balanceEventStream.subscribe(null, lastEventId != null ? lastEventId : after);
+    }
+}
@@ -0,0 +1,73 @@
+package com.ofektom.controller;
+
+import com.ofektom.enums.ExportFormat;
+import com.ofektom.service.StatementExportService;
+import com.ofektom.service.StatementExportService.StatementQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * REST controller for statement exports.
+ * Streams transactions for one wallet or for all wallets in a date window as CSV or NDJSON, optionally gzipped.
+ */
+@RestController
+@RequestMapping("/api/v1")
+public class StatementController {
+    
+    private static final Logger log = LoggerFactory.getLogger(StatementController.class);
+    private final StatementExportService statementExportService;
+    
+    public StatementController(StatementExportService statementExportService) {
+        this.statementExportService = statementExportService;
+    }
+    
+    @GetMapping("/wallets/{id}/statement")
+    public ResponseEntity<StreamingResponseBody> exportWalletStatement(
+            @PathVariable String id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        log.info("GET /wallets/{}/statement - Exporting statement: from={}, to={}, format={}", id, from, to, format);
+        return stream(statementExportService.prepare(id, from, to), ExportFormat.fromString(format), gzip, "statement-" + id);
+    }
+    
+    @GetMapping("/statements")
+    public ResponseEntity<StreamingResponseBody> exportStatements(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        log.info("GET /statements - Exporting statements for all wallets: from={}, to={}, format={}", from, to, format);
+        return stream(statementExportService.prepare(null, from, to), ExportFormat.fromString(format), gzip, "statements");
+    }
+    
+    // gzip is a download of a .gz file rather than Content-Encoding, so clients keep the compressed bytes
+    private ResponseEntity<StreamingResponseBody> stream(StatementQuery query, ExportFormat format, boolean gzip,
+                                                         String baseName) {
+        String filename = baseName + "." + format.getExtension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = output -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(output, 64 * 1024);
+                statementExportService.export(query, format, compressed);
+                compressed.finish();
+            } else {
+                statementExportService.export(query, format, output);
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : format.getMediaType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+            .body(body);
+    }
+}
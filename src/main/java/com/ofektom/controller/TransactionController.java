@@ -1,16 +1,23 @@
 package com.ofektom.controller;
 
+import com.ofektom.dto.request.BatchTransferRequest;
 import com.ofektom.dto.request.TransactionRequest;
 import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferResponse;
+import com.ofektom.dto.response.TransactionPageResponse;
 import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.service.TransactionHistoryService;
 import com.ofektom.service.TransactionService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+
 /**
  * REST controller for transaction operations.
  * Handles credit/debit transactions and wallet-to-wallet transfers.
@@ -21,14 +28,17 @@ public class TransactionController {
     
     private static final Logger log = LoggerFactory.getLogger(TransactionController.class);
     private final TransactionService transactionService;
+    private final TransactionHistoryService transactionHistoryService;
     
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService,
+                                 TransactionHistoryService transactionHistoryService) {
         this.transactionService = transactionService;
+        this.transactionHistoryService = transactionHistoryService;
     }
     
     @PostMapping("/transactions")
     public ResponseEntity<TransactionResponse> processTransaction(@Valid @RequestBody TransactionRequest request) {
-        log.info("POST /transactions - Processing transaction: walletId={}, type={}", 
+        log.debug("POST /transactions - Processing transaction: walletId={}, type={}", 
             request.walletId(), request.type());
         TransactionResponse response = transactionService.processTransaction(request);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
@@ -36,10 +46,29 @@ public class TransactionController {
     
     @PostMapping("/transfers")
     public ResponseEntity<TransactionResponse> transfer(@Valid @RequestBody TransferRequest request) {
-        log.info("POST /transfers - Processing transfer: sender={}, receiver={}", 
+        log.debug("POST /transfers - Processing transfer: sender={}, receiver={}", 
             request.senderWalletId(), request.receiverWalletId());
         TransactionResponse response = transactionService.transfer(request);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
+    
+    @PostMapping("/transfers/batch")
+    public ResponseEntity<BatchTransferResponse> batchTransfer(@Valid @RequestBody BatchTransferRequest request) {
+        log.debug("POST /transfers/batch - Processing batch of {} transfers", request.transfers().size());
+        BatchTransferResponse response = transactionService.batchTransfer(request);
+        return ResponseEntity.ok(response);
+    }
+    
+    @GetMapping("/wallets/{id}/transactions")
+    public ResponseEntity<TransactionPageResponse> getTransactions(
+            @PathVariable String id,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        log.debug("GET /wallets/{}/transactions - Retrieving transaction history", id);
+        TransactionPageResponse response = transactionHistoryService.getTransactions(id, type, from, to, cursor, limit);
+        return ResponseEntity.ok(response);
+    }
 }
-
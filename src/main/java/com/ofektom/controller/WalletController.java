@@ -1,14 +1,23 @@
 package com.ofektom.controller;
 
 import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.request.HotWalletRequest;
 import com.ofektom.dto.response.WalletResponse;
+import com.ofektom.enums.BulkInputFormat;
+import com.ofektom.service.WalletProvisioningService;
 import com.ofektom.service.WalletService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * REST controller for wallet operations.
@@ -20,22 +29,42 @@ public class WalletController {
     
     private static final Logger log = LoggerFactory.getLogger(WalletController.class);
     private final WalletService walletService;
+    private final WalletProvisioningService walletProvisioningService;
     
-    public WalletController(WalletService walletService) {
+    public WalletController(WalletService walletService, WalletProvisioningService walletProvisioningService) {
         this.walletService = walletService;
+        this.walletProvisioningService = walletProvisioningService;
     }
     
     @PostMapping("/wallets")
     public ResponseEntity<WalletResponse> createWallet(@Valid @RequestBody CreateWalletRequest request) {
-        log.info("POST /wallets - Creating new wallet");
+        log.debug("POST /wallets - Creating new wallet");
         WalletResponse response = walletService.createWallet(request);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
     
+    @PostMapping(value = "/wallets/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"},
+        produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> provisionWallets(HttpServletRequest request) throws IOException {
+        BulkInputFormat format = request.getContentType().startsWith("text/csv") ? BulkInputFormat.CSV : BulkInputFormat.NDJSON;
+        log.info("POST /wallets/bulk - Provisioning wallets from {} stream", format);
+        InputStream body = request.getInputStream();
+        StreamingResponseBody stream = output -> walletProvisioningService.provisionWallets(body, format, output);
+        return ResponseEntity.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_NDJSON).body(stream);
+    }
+    
     @GetMapping("/wallets/{id}")
     public ResponseEntity<WalletResponse> getWallet(@PathVariable String id) {
-        log.info("GET /wallets/{} - Retrieving wallet", id);
+        log.debug("GET /wallets/{} - Retrieving wallet", id);
         WalletResponse response = walletService.getWallet(id);
         return ResponseEntity.ok(response);
     }
+    
+    @PutMapping("/wallets/{id}/stripes")
+    public ResponseEntity<WalletResponse> configureStripes(@PathVariable String id,
+                                                           @Valid @RequestBody HotWalletRequest request) {
+        log.info("PUT /wallets/{}/stripes - Configuring {} stripes", id, request.stripeCount());
+        WalletResponse response = walletService.configureStripes(id, request);
+        return ResponseEntity.ok(response);
+    }
 }
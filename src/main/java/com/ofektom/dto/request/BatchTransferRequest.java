@@ -0,0 +1,17 @@
+package com.ofektom.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Request DTO for applying many wallet-to-wallet transfers in one call.
+ */
+public record BatchTransferRequest(
+    @NotEmpty(message = "At least one transfer is required")
+    @Size(max = 1000, message = "A batch may contain at most 1000 transfers")
+    List<@Valid TransferRequest> transfers
+) {
+}
@@ -0,0 +1,16 @@
+package com.ofektom.dto.request;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Request DTO for switching a wallet into (or out of) hot-wallet striped mode.
+ */
+public record HotWalletRequest(
+    @NotNull(message = "Stripe count is required")
+    @Min(value = 0, message = "Stripe count cannot be negative")
+    @Max(value = 64, message = "Stripe count cannot exceed 64")
+    Integer stripeCount
+) {
+}
@@ -0,0 +1,25 @@
+package com.ofektom.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * One balance change from the outbox, as delivered to sinks and SSE subscribers.
+ * position is the resume offset (also the SSE event id); balanceAfterInMinorUnits is null for credits
+ * to striped hot wallets, whose total is not known at write time.
+ */
+public record BalanceEventResponse(
+    long position,
+    String eventType,
+    String walletId,
+    String counterpartyWalletId,
+    String transactionId,
+    String transferId,
+    Long amountInMinorUnits,
+    Long balanceAfterInMinorUnits,
+    
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    LocalDateTime createdAt
+) {
+}
@@ -0,0 +1,15 @@
+package com.ofektom.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of a single transfer within a batch.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchTransferItemResult(
+    String idempotencyKey,
+    String status,
+    String transactionId,
+    String message
+) {
+}
@@ -0,0 +1,13 @@
+package com.ofektom.dto.response;
+
+import java.util.List;
+
+/**
+ * Response DTO for batch transfers, with one result per submitted transfer (in request order).
+ */
+public record BatchTransferResponse(
+    int applied,
+    int rejected,
+    List<BatchTransferItemResult> results
+) {
+}
@@ -0,0 +1,15 @@
+package com.ofektom.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One line of the bulk provisioning response stream: the created wallet, or why the input line was rejected.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkWalletResult(
+    long line,
+    String walletId,
+    Long balanceInMinorUnits,
+    String error
+) {
+}
@@ -0,0 +1,13 @@
+package com.ofektom.dto.response;
+
+import java.util.List;
+
+/**
+ * Response DTO for one page of a wallet's transaction history.
+ * nextCursor is null on the last page.
+ */
+public record TransactionPageResponse(
+    List<TransactionResponse> transactions,
+    String nextCursor
+) {
+}
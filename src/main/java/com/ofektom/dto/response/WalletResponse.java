@@ -1,12 +1,14 @@
 package com.ofektom.dto.response;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 /**
  * Response DTO for wallet information.
+ * consistencyToken is only set when read replicas are configured; see ConsistencyToken.
  */
 public record WalletResponse(
     String walletId,
@@ -17,6 +19,9 @@ public record WalletResponse(
     LocalDateTime createdAt,
     
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
-    LocalDateTime updatedAt
+    LocalDateTime updatedAt,
+    
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    String consistencyToken
 ) {
 }
@@ -0,0 +1,25 @@
+package com.ofektom.enums;
+
+import com.ofektom.model.Transaction;
+
+/**
+ * Kind of balance change published on the wallet event stream.
+ * Transfer legs are distinguished from plain credits and debits so consumers need not inspect transferId.
+ */
+public enum BalanceEventType {
+    CREDITED,
+    DEBITED,
+    TRANSFER_SENT,
+    TRANSFER_RECEIVED;
+    
+    public static BalanceEventType of(TransactionType transactionType, boolean transferLeg) {
+        if (transactionType == TransactionType.CREDIT) {
+            return transferLeg ? TRANSFER_RECEIVED : CREDITED;
+        }
+        return transferLeg ? TRANSFER_SENT : DEBITED;
+    }
+    
+    public static BalanceEventType of(Transaction transaction) {
+        return of(transaction.getTransactionType(), transaction.getTransferId() != null);
+    }
+}
@@ -0,0 +1,17 @@
+package com.ofektom.enums;
+
+/**
+ * Per-item outcome of a batch transfer.
+ * Only APPLIED items change balances; every other status leaves the batch running.
+ * PENDING is a cross-shard item whose sender was debited but whose receiver's shard could not be reached yet.
+ * BALANCE_OVERFLOW is an item whose credit would not fit in the receiver's balance.
+ */
+public enum BatchItemStatus {
+    APPLIED,
+    DUPLICATE,
+    INSUFFICIENT_FUNDS,
+    WALLET_NOT_FOUND,
+    INVALID,
+    PENDING,
+    BALANCE_OVERFLOW
+}
@@ -0,0 +1,10 @@
+package com.ofektom.enums;
+
+/**
+ * Body formats accepted by bulk wallet provisioning.
+ * NDJSON lines are CreateWalletRequest objects; CSV lines hold one initialBalanceInMinorUnits value.
+ */
+public enum BulkInputFormat {
+    NDJSON,
+    CSV
+}
@@ -0,0 +1,37 @@
+package com.ofektom.enums;
+
+import com.ofektom.exception.BadRequestException;
+
+/**
+ * Output formats for statement exports.
+ * CSV has a header row; NDJSON lines are TransactionResponse objects.
+ */
+public enum ExportFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+    
+    private final String mediaType;
+    private final String extension;
+    
+    ExportFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+    
+    public String getMediaType() {
+        return mediaType;
+    }
+    
+    public String getExtension() {
+        return extension;
+    }
+    
+    // Parses export format from string (case-insensitive)
+    public static ExportFormat fromString(String format) {
+        try {
+            return valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid export format: " + format);
+        }
+    }
+}
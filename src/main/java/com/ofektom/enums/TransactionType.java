@@ -9,22 +9,27 @@ import com.ofektom.utils.Money;
 public enum TransactionType {
     CREDIT {
         @Override
-        public Money apply(Money balance, Money amount) {
-            return balance.add(amount);
+        public long apply(long balanceInMinorUnits, long amountInMinorUnits) {
+            return Money.addMinorUnits(balanceInMinorUnits, amountInMinorUnits);
         }
     },
     DEBIT {
         @Override
-        public Money apply(Money balance, Money amount) {
-            if (balance.isLessThan(amount)) {
+        public long apply(long balanceInMinorUnits, long amountInMinorUnits) {
+            if (balanceInMinorUnits < amountInMinorUnits) {
                 throw new IllegalStateException("Insufficient balance");
             }
-            return balance.subtract(amount);
+            return Money.subtractMinorUnits(balanceInMinorUnits, amountInMinorUnits);
         }
     };
     
+    // Applies transaction to a minor-unit balance using Strategy pattern (allocation-free)
+    public abstract long apply(long balanceInMinorUnits, long amountInMinorUnits);
+    
     // Applies transaction to balance using Strategy pattern
-    public abstract Money apply(Money balance, Money amount);
+    public Money apply(Money balance, Money amount) {
+        return Money.ofMinorUnits(apply(balance.getAmountInMinorUnits(), amount.getAmountInMinorUnits()));
+    }
     
     // Parses transaction type from string (case-insensitive)
     public static TransactionType fromString(String type) {
@@ -2,6 +2,7 @@ package com.ofektom.exception;
 
 
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -47,6 +48,15 @@ public class DefaultExceptionHandler {
         return buildErrorResponse(request, HttpStatus.CONFLICT, e.getMessage());
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ApiError> handleServiceUnavailableException(
+            ServiceUnavailableException e, HttpServletRequest request) {
+        ResponseEntity<ApiError> response = buildErrorResponse(request, HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<ApiError> handleIllegalArgumentException(
             IllegalArgumentException e, HttpServletRequest request) {
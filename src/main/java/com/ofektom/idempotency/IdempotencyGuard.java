@@ -0,0 +1,279 @@
+package com.ofektom.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.exception.ConflictException;
+import com.ofektom.model.IdempotencyKey;
+import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Layered duplicate detection in front of idempotency_keys.
+ * A recent-key cache answers obvious retries without a query, and a Bloom filter of committed keys lets
+ * obviously-new keys skip the existence SELECT entirely. Only "maybe" answers reach the database.
+ * Used keys resolve to the original request fingerprint and response, so retries are replayed rather than rejected.
+ * <p>
+ * Both layers are local to this instance and only hold keys after their transaction commits, so keys
+ * written by other instances are missed; that is safe because the uk_idempotency_key constraint still
+ * rejects the insert at commit. Batch transfers cannot recover from that rejection item by item, so they use
+ * findCommittedDuplicates, which skips the Bloom filter. With sharding, keys live on the shard of the wallet they were used with, so the
+ * constraint only catches reuse against wallets of the same shard.
+ */
+@Component
+public class IdempotencyGuard {
+    
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyGuard.class);
+    private final IdempotencyRepository idempotencyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate readOnly;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, IdempotentResult> recentKeys;
+    private final long expectedKeys;
+    private final double falsePositiveProbability;
+    private final Duration ttl;
+    private volatile BloomFilter bloomFilter;
+    
+    private final Counter recentHits;
+    private final Counter bloomNegatives;
+    private final Counter databaseHits;
+    private final Counter falsePositives;
+    
+    public IdempotencyGuard(IdempotencyRepository idempotencyRepository,
+                            JdbcTemplate jdbcTemplate,
+                            ShardRouter shardRouter,
+                            PlatformTransactionManager transactionManager,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${wallet.idempotency.bloom.expected-keys:10000000}") long expectedKeys,
+                            @Value("${wallet.idempotency.bloom.false-positive-probability:0.01}") double falsePositiveProbability,
+                            @Value("${wallet.idempotency.recent-cache-size:100000}") long recentCacheSize,
+                            @Value("${wallet.idempotency.ttl:P7D}") Duration ttl) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.ttl = ttl;
+        this.recentKeys = Caffeine.newBuilder().maximumSize(recentCacheSize).build();
+        this.bloomFilter = BloomFilter.create(expectedKeys, falsePositiveProbability);
+        this.recentHits = lookups(meterRegistry, "recent_hit");
+        this.bloomNegatives = lookups(meterRegistry, "bloom_negative");
+        this.databaseHits = lookups(meterRegistry, "db_hit");
+        this.falsePositives = lookups(meterRegistry, "bloom_false_positive");
+    }
+    
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("wallet.idempotency.lookups")
+            .description("Idempotency duplicate checks by the layer that answered them")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+    
+    @PostConstruct
+    public void warmUp() {
+        rebuild();
+    }
+    
+    // Reloads the Bloom filter from every unexpired key; keys committed meanwhile are only missed, never wrong.
+    // PgJDBC only honours the fetch size with autocommit off, so each shard is streamed inside a transaction.
+    public void rebuild() {
+        BloomFilter rebuilt = BloomFilter.create(expectedKeys, falsePositiveProbability);
+        JdbcTemplate cursor = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursor.setFetchSize(10_000);
+        long[] loaded = new long[1];
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(ttl));
+        shardRouter.forEachShard(shard -> readOnly.executeWithoutResult(status -> cursor.query(
+            "SELECT key_value FROM idempotency_keys WHERE created_at >= ?",
+            rs -> {
+                rebuilt.put(rs.getString(1));
+                loaded[0]++;
+            },
+            cutoff)));
+        bloomFilter = rebuilt;
+        log.info("Idempotency bloom filter rebuilt with {} keys", loaded[0]);
+    }
+    
+    public boolean isSaturated() {
+        return bloomFilter.isSaturated();
+    }
+    
+    // True if the key has already been used; hits the database only when the Bloom filter says "maybe"
+    public boolean isKnownDuplicate(String idempotencyKey) {
+        return find(idempotencyKey).isPresent();
+    }
+    
+    /**
+     * Returns the original response if this key was already used by the same request.
+     * Throws ConflictException if the key was used by a different request, or if no response was stored for it.
+     */
+    public Optional<TransactionResponse> replay(String idempotencyKey, String requestFingerprint) {
+        return find(idempotencyKey).map(result -> replayOrReject(idempotencyKey, requestFingerprint, result));
+    }
+    
+    // For a key that lost a unique-constraint race: the winner has committed, so go straight to the database
+    public TransactionResponse replayCommitted(String idempotencyKey, String requestFingerprint) {
+        IdempotentResult result = load(idempotencyKey).orElseThrow(() ->
+            new ConflictException("Transaction with idempotency key already processed: " + idempotencyKey));
+        return replayOrReject(idempotencyKey, requestFingerprint, result);
+    }
+    
+    private TransactionResponse replayOrReject(String idempotencyKey, String requestFingerprint, IdempotentResult result) {
+        if (!result.matches(requestFingerprint)) {
+            log.warn("Idempotency key reused with a different payload: idempotencyKey={}", idempotencyKey);
+            throw new ConflictException("Idempotency key already used for a different request: " + idempotencyKey);
+        }
+        if (result.response() == null) {
+            log.warn("Duplicate transaction attempt: idempotencyKey={}", idempotencyKey);
+            throw new ConflictException("Transaction with idempotency key already processed: " + idempotencyKey);
+        }
+        log.info("Replaying stored response: idempotencyKey={}, transactionId={}", 
+            idempotencyKey, result.response().transactionId());
+        return result.response();
+    }
+    
+    private Optional<IdempotentResult> find(String idempotencyKey) {
+        IdempotentResult recent = recentKeys.getIfPresent(idempotencyKey);
+        if (recent != null) {
+            recentHits.increment();
+            return Optional.of(recent);
+        }
+        if (!bloomFilter.mightContain(idempotencyKey)) {
+            bloomNegatives.increment();
+            return Optional.empty();
+        }
+        Optional<IdempotentResult> stored = load(idempotencyKey);
+        (stored.isPresent() ? databaseHits : falsePositives).increment();
+        return stored;
+    }
+    
+    private Optional<IdempotentResult> load(String idempotencyKey) {
+        Optional<IdempotentResult> stored = idempotencyRepository.findByKeyValue(idempotencyKey)
+            .map(key -> new IdempotentResult(key.getRequestFingerprint(), fromResponseBody(key.getResponseBody())));
+        // Later retries of the same key are answered from memory; a key without a response may belong to a
+        // cross-shard transfer that is still in flight, so it is read again next time
+        stored.filter(result -> result.response() != null).ifPresent(result -> recentKeys.put(idempotencyKey, result));
+        return stored;
+    }
+    
+    // Batch variant: returns the subset of keys already used, with at most one query for the "maybe" keys
+    public Set<String> findDuplicates(Collection<String> idempotencyKeys) {
+        Set<String> duplicates = new HashSet<>();
+        List<String> uncertain = new ArrayList<>();
+        for (String key : idempotencyKeys) {
+            if (recentKeys.getIfPresent(key) != null) {
+                recentHits.increment();
+                duplicates.add(key);
+            } else if (bloomFilter.mightContain(key)) {
+                uncertain.add(key);
+            } else {
+                bloomNegatives.increment();
+            }
+        }
+        if (!uncertain.isEmpty()) {
+            List<String> existing = idempotencyRepository.findExistingKeyValues(uncertain);
+            databaseHits.increment(existing.size());
+            falsePositives.increment(uncertain.size() - existing.size());
+            duplicates.addAll(existing);
+        }
+        return duplicates;
+    }
+    
+    // Batch variant that never trusts a Bloom negative: every key the recent-key cache does not hold goes into one
+    // query. For callers that report used keys per item and have no per-request fallback after a failed commit
+    public Set<String> findCommittedDuplicates(Collection<String> idempotencyKeys) {
+        Set<String> duplicates = new HashSet<>();
+        List<String> unknown = new ArrayList<>();
+        for (String key : idempotencyKeys) {
+            if (recentKeys.getIfPresent(key) != null) {
+                recentHits.increment();
+                duplicates.add(key);
+            } else {
+                unknown.add(key);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            List<String> existing = idempotencyRepository.findExistingKeyValues(unknown);
+            databaseHits.increment(existing.size());
+            duplicates.addAll(existing);
+        }
+        return duplicates;
+    }
+    
+    // Builds the row that claims a key, carrying what a retry needs to be replayed
+    public IdempotencyKey newKey(String idempotencyKey, IdempotentResult result) {
+        return IdempotencyKey.of(idempotencyKey, result.requestFingerprint(), toResponseBody(result.response()));
+    }
+    
+    // Remembers the key once the surrounding transaction commits (immediately if there is none)
+    public void recordAfterCommit(String idempotencyKey, IdempotentResult result) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(idempotencyKey, result);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(idempotencyKey, result);
+            }
+        });
+    }
+    
+    public void record(String idempotencyKey, IdempotentResult result) {
+        bloomFilter.put(idempotencyKey);
+        recentKeys.put(idempotencyKey, result);
+    }
+    
+    public String toResponseBody(TransactionResponse response) {
+        if (response == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize transaction response", e);
+        }
+    }
+    
+    // An unreadable body only costs the replay; the key still counts as used
+    private TransactionResponse fromResponseBody(String responseBody) {
+        if (responseBody == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(responseBody, TransactionResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Unreadable stored idempotent response: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.ofektom.idempotency;
+
+import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.sharding.ShardRouter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expires idempotency keys older than wallet.idempotency.ttl.
+ * Deletes in small batches, each in its own short transaction, so the purge never holds long locks or
+ * produces one huge WAL burst. A retry arriving after its key expired is treated as a new request.
+ * Every shard is purged in turn.
+ */
+@Component
+public class IdempotencyPurgeJob {
+    
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyPurgeJob.class);
+    private final IdempotencyRepository idempotencyRepository;
+    private final IdempotencyGuard idempotencyGuard;
+    private final ShardRouter shardRouter;
+    private final Duration ttl;
+    private final int batchSize;
+    private final AtomicLong estimatedTableSize = new AtomicLong();
+    
+    public IdempotencyPurgeJob(IdempotencyRepository idempotencyRepository,
+                               IdempotencyGuard idempotencyGuard,
+                               ShardRouter shardRouter,
+                               MeterRegistry meterRegistry,
+                               @Value("${wallet.idempotency.ttl:P7D}") Duration ttl,
+                               @Value("${wallet.idempotency.purge-batch-size:1000}") int batchSize) {
+        this.idempotencyRepository = idempotencyRepository;
+        this.idempotencyGuard = idempotencyGuard;
+        this.shardRouter = shardRouter;
+        this.ttl = ttl;
+        this.batchSize = batchSize;
+        Gauge.builder("wallet.idempotency.table.size", estimatedTableSize, AtomicLong::get)
+            .description("Estimated row count of idempotency_keys")
+            .register(meterRegistry);
+    }
+    
+    @Scheduled(fixedDelayString = "${wallet.idempotency.purge-interval-ms:600000}")
+    public void purgeExpiredKeys() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(ttl);
+        long[] purged = new long[1];
+        long[] tableSize = new long[1];
+        shardRouter.forEachShard(shard -> {
+            int deleted;
+            do {
+                deleted = idempotencyRepository.deleteExpiredBatch(cutoff, batchSize);
+                purged[0] += deleted;
+            } while (deleted == batchSize);
+            tableSize[0] += Math.max(0L, idempotencyRepository.estimateRowCount());
+        });
+        
+        estimatedTableSize.set(tableSize[0]);
+        if (purged[0] > 0) {
+            log.info("Purged {} idempotency keys created before {}", purged[0], cutoff);
+        }
+        
+        // Expired keys still occupy filter bits; rebuild once more keys were added than it was sized for
+        if (idempotencyGuard.isSaturated()) {
+            idempotencyGuard.rebuild();
+        }
+    }
+}
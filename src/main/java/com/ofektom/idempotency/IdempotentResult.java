@@ -0,0 +1,14 @@
+package com.ofektom.idempotency;
+
+import com.ofektom.dto.response.TransactionResponse;
+
+/**
+ * What a used idempotency key resolved to: the fingerprint of the request that claimed it and the response it got.
+ * Either may be null for keys written before replay support.
+ */
+public record IdempotentResult(String requestFingerprint, TransactionResponse response) {
+    
+    public boolean matches(String fingerprint) {
+        return requestFingerprint == null || requestFingerprint.equals(fingerprint);
+    }
+}
@@ -0,0 +1,40 @@
+package com.ofektom.idempotency;
+
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.request.TransferRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * SHA-256 fingerprints of write requests, used to tell a genuine retry from a different request reusing a key.
+ * Only fields that change the outcome are hashed; the idempotency key itself is not.
+ */
+public final class RequestFingerprint {
+    
+    private RequestFingerprint() {
+    }
+    
+    public static String of(TransactionRequest request) {
+        // Type is normalised the same way TransactionType.fromString accepts it
+        String type = request.type() == null ? "" : request.type().toUpperCase(Locale.ROOT);
+        return sha256("transaction|" + request.walletId() + "|" + type + "|" + request.amountInMinorUnits());
+    }
+    
+    public static String of(TransferRequest request) {
+        return sha256("transfer|" + request.senderWalletId() + "|" + request.receiverWalletId()
+            + "|" + request.amountInMinorUnits());
+    }
+    
+    private static String sha256(String canonical) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
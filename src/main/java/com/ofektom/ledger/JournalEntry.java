@@ -0,0 +1,36 @@
+package com.ofektom.ledger;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.utils.Money;
+
+import java.time.LocalDateTime;
+
+/**
+ * Result of one applied ledger command, waiting to be written to the database.
+ * idempotencyKey and requestFingerprint are null for the credit leg of a transfer; counterpartyWalletId and
+ * transferId are only set on transfer legs.
+ */
+public record JournalEntry(
+    String transactionId,
+    long walletPk,
+    String walletId,
+    String transactionType,
+    long amountInMinorUnits,
+    long balanceAfter,
+    String idempotencyKey,
+    String requestFingerprint,
+    String counterpartyWalletId,
+    String transferId,
+    LocalDateTime createdAt
+) {
+    public TransactionResponse toResponse() {
+        return new TransactionResponse(
+            transactionId,
+            walletId,
+            transactionType,
+            amountInMinorUnits,
+            Money.toMajorUnits(amountInMinorUnits),
+            createdAt
+        );
+    }
+}
@@ -0,0 +1,223 @@
+package com.ofektom.ledger;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.BalanceEventType;
+import com.ofektom.enums.TransactionType;
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Persists ledger results asynchronously in batches.
+ * Each flush is one database transaction holding JDBC-batched inserts into transactions, outbox_events and
+ * idempotency_keys plus one absolute balance update per touched wallet. A failed flush is retried up to
+ * maxAttempts times, then split in halves until the failing entry is isolated; that entry is moved to
+ * journal_dead_letters (with its balance update) for repair, and the rest of the batch is written normally.
+ * An entry is only dead-lettered when the database accepts the dead letter, so an outage never drops entries.
+ */
+public class JournalWriter implements Runnable {
+    
+    private static final Logger log = LoggerFactory.getLogger(JournalWriter.class);
+    
+    // A raw nextval() reserves a whole pooled-lo block, so these ids never collide with Hibernate's;
+    // the transfer counterparty is resolved by walletId in the insert itself (a null id yields null)
+    private static final String INSERT_TRANSACTION =
+        "INSERT INTO transactions (id, transaction_id, wallet_id, transaction_type, amount_in_minor_units, created_at, "
+            + "counterparty_wallet_id, transfer_id) "
+            + "VALUES (nextval('transactions_seq'), ?, ?, ?, ?, ?, (SELECT id FROM wallets WHERE wallet_id = ?), ?)";
+    private static final String INSERT_OUTBOX_EVENT =
+        "INSERT INTO outbox_events (id, event_type, wallet_id, counterparty_wallet_id, transaction_id, transfer_id, "
+            + "amount_in_minor_units, balance_after_in_minor_units, created_at) "
+            + "VALUES (nextval('outbox_events_seq'), ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_IDEMPOTENCY_KEY =
+        "INSERT INTO idempotency_keys (id, key_value, request_fingerprint, response_body, created_at) "
+            + "VALUES (nextval('idempotency_keys_seq'), ?, ?, ?, ?)";
+    private static final String UPDATE_BALANCE =
+        "UPDATE wallets SET balance_in_minor_units = ?, version = version + 1, updated_at = ? WHERE id = ?";
+    private static final String INSERT_DEAD_LETTER =
+        "INSERT INTO journal_dead_letters (transaction_id, wallet_id, transaction_type, amount_in_minor_units, "
+            + "balance_after_in_minor_units, idempotency_key, request_fingerprint, counterparty_wallet_id, transfer_id, "
+            + "entry_created_at, error, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON CONFLICT (transaction_id) DO NOTHING";
+    private static final long MAX_BACKOFF_MS = 1000L;
+    
+    private final BlockingQueue<JournalEntry> queue;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxAttempts;
+    private final Counter deadLetters;
+    private final Function<TransactionResponse, String> responseSerializer;
+    private final Consumer<List<JournalEntry>> onFlushed;
+    private final Thread thread;
+    private volatile boolean running = true;
+    
+    public JournalWriter(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, int capacity,
+                         int batchSize, long flushIntervalMs, int maxAttempts, Counter deadLetters,
+                         Function<TransactionResponse, String> responseSerializer, Consumer<List<JournalEntry>> onFlushed) {
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxAttempts = maxAttempts;
+        this.deadLetters = deadLetters;
+        this.responseSerializer = responseSerializer;
+        this.onFlushed = onFlushed;
+        this.thread = new Thread(this, "ledger-journal");
+    }
+    
+    public void start() {
+        thread.start();
+    }
+    
+    // Flushes everything still queued, then stops
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+    }
+    
+    // Blocks when the journal is full, slowing partitions down to the database's pace
+    public void append(List<JournalEntry> entries) throws InterruptedException {
+        for (JournalEntry entry : entries) {
+            queue.put(entry);
+        }
+    }
+    
+    public int backlog() {
+        return queue.size();
+    }
+    
+    @Override
+    public void run() {
+        List<JournalEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                JournalEntry first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flushWithRetry(batch);
+                onFlushed.accept(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    // Halves are flushed in order, so the last absolute balance written per wallet is still its latest
+    private void flushWithRetry(List<JournalEntry> batch) throws InterruptedException {
+        while (true) {
+            RuntimeException failure = tryFlush(batch);
+            if (failure == null) {
+                return;
+            }
+            if (batch.size() > 1) {
+                int half = batch.size() / 2;
+                log.warn("Journal flush of {} entries kept failing, splitting the batch: {}", batch.size(), failure.getMessage());
+                flushWithRetry(batch.subList(0, half));
+                flushWithRetry(batch.subList(half, batch.size()));
+                return;
+            }
+            if (tryDeadLetter(batch.get(0), failure)) {
+                return;
+            }
+            // The dead letter failed too, so the database is the problem rather than the entry
+            Thread.sleep(MAX_BACKOFF_MS);
+        }
+    }
+    
+    // Returns the last failure, or null once flushed; integrity violations fail the same way on every attempt
+    private RuntimeException tryFlush(List<JournalEntry> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> flush(batch));
+                return null;
+            } catch (DataIntegrityViolationException e) {
+                return e;
+            } catch (RuntimeException e) {
+                log.error("Journal flush of {} entries failed (attempt {}/{}): {}", batch.size(), attempt, maxAttempts, e.getMessage());
+                if (attempt >= maxAttempts) {
+                    return e;
+                }
+                Thread.sleep(Math.min(MAX_BACKOFF_MS, 10L * attempt));
+            }
+        }
+    }
+    
+    // The balance is still written: callers were told the entry succeeded and later entries build on it
+    private boolean tryDeadLetter(JournalEntry entry, RuntimeException failure) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                jdbcTemplate.update(INSERT_DEAD_LETTER, entry.transactionId(), entry.walletId(), entry.transactionType(),
+                    entry.amountInMinorUnits(), entry.balanceAfter(), entry.idempotencyKey(), entry.requestFingerprint(),
+                    entry.counterpartyWalletId(), entry.transferId(), Timestamp.valueOf(entry.createdAt()),
+                    String.valueOf(failure.getMessage()), now);
+                jdbcTemplate.update(UPDATE_BALANCE, entry.balanceAfter(), now, entry.walletPk());
+            });
+        } catch (RuntimeException e) {
+            log.error("Journal dead letter for transactionId={} failed, retrying the entry: {}", entry.transactionId(), e.getMessage());
+            return false;
+        }
+        deadLetters.increment();
+        log.error("Journal entry dead-lettered: transactionId={}, walletId={}, type={}, amount={}, idempotencyKey={}: {}",
+            entry.transactionId(), entry.walletId(), entry.transactionType(), entry.amountInMinorUnits(),
+            entry.idempotencyKey(), failure.getMessage());
+        return true;
+    }
+    
+    private void flush(List<JournalEntry> batch) {
+        List<Object[]> transactions = new ArrayList<>(batch.size());
+        List<Object[]> events = new ArrayList<>(batch.size());
+        List<Object[]> keys = new ArrayList<>(batch.size());
+        Map<Long, JournalEntry> latestByWallet = new LinkedHashMap<>();
+        for (JournalEntry entry : batch) {
+            Timestamp createdAt = Timestamp.valueOf(entry.createdAt());
+            transactions.add(new Object[] {entry.transactionId(), entry.walletPk(), entry.transactionType(),
+                entry.amountInMinorUnits(), createdAt, entry.counterpartyWalletId(), entry.transferId()});
+            BalanceEventType eventType = BalanceEventType.of(TransactionType.valueOf(entry.transactionType()),
+                entry.transferId() != null);
+            events.add(new Object[] {eventType.name(), entry.walletId(), entry.counterpartyWalletId(),
+                entry.transactionId(), entry.transferId(), entry.amountInMinorUnits(), entry.balanceAfter(), createdAt});
+            if (entry.idempotencyKey() != null) {
+                keys.add(new Object[] {entry.idempotencyKey(), entry.requestFingerprint(),
+                    responseSerializer.apply(entry.toResponse()), createdAt});
+            }
+            // Partitions apply in order, so the last entry per wallet carries its current balance
+            latestByWallet.put(entry.walletPk(), entry);
+        }
+        
+        List<Object[]> balances = new ArrayList<>(latestByWallet.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (JournalEntry entry : latestByWallet.values()) {
+            balances.add(new Object[] {entry.balanceAfter(), now, entry.walletPk()});
+        }
+        
+        jdbcTemplate.batchUpdate(INSERT_TRANSACTION, transactions);
+        jdbcTemplate.batchUpdate(INSERT_OUTBOX_EVENT, events);
+        jdbcTemplate.batchUpdate(INSERT_IDEMPOTENCY_KEY, keys);
+        jdbcTemplate.batchUpdate(UPDATE_BALANCE, balances);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ofektom.ledger;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A unit of work submitted to a ledger partition's ring buffer.
+ * The partition thread completes the result future once the command has been applied in memory.
+ */
+public final class LedgerCommand {
+    
+    enum Kind {
+        // Credit/debit that produces a transaction record
+        APPLY,
+        // Credit leg of a transfer (receiving side); its idempotency key belongs to the debit leg
+        SETTLE,
+        // Loads the receiving wallet of a transfer and reserves headroom for its SETTLE
+        RESERVE_CREDIT,
+        // Gives back a reservation whose debit was rejected
+        RELEASE_CREDIT
+    }
+    
+    final Kind kind;
+    final String walletId;
+    final TransactionType type;
+    final long amountInMinorUnits;
+    final String idempotencyKey;
+    final String requestFingerprint;
+    // The other wallet and the shared transfer id when this is one leg of a transfer
+    final String counterpartyWalletId;
+    final String transferId;
+    final CompletableFuture<TransactionResponse> result = new CompletableFuture<>();
+    private TransactionResponse outcome;
+    private RuntimeException failure;
+    
+    private LedgerCommand(Kind kind, String walletId, TransactionType type, long amountInMinorUnits,
+                          String idempotencyKey, String requestFingerprint, String counterpartyWalletId, String transferId) {
+        this.kind = kind;
+        this.walletId = walletId;
+        this.type = type;
+        this.amountInMinorUnits = amountInMinorUnits;
+        this.idempotencyKey = idempotencyKey;
+        this.requestFingerprint = requestFingerprint;
+        this.counterpartyWalletId = counterpartyWalletId;
+        this.transferId = transferId;
+    }
+    
+    public static LedgerCommand apply(String walletId, TransactionType type, long amountInMinorUnits,
+                                      String idempotencyKey, String requestFingerprint) {
+        return new LedgerCommand(Kind.APPLY, walletId, type, amountInMinorUnits, idempotencyKey, requestFingerprint, null, null);
+    }
+    
+    public static LedgerCommand transferDebit(String senderWalletId, String receiverWalletId, long amountInMinorUnits,
+                                              String idempotencyKey, String requestFingerprint, String transferId) {
+        return new LedgerCommand(Kind.APPLY, senderWalletId, TransactionType.DEBIT, amountInMinorUnits,
+            idempotencyKey, requestFingerprint, receiverWalletId, transferId);
+    }
+    
+    public static LedgerCommand settle(String receiverWalletId, String senderWalletId, long amountInMinorUnits, String transferId) {
+        return new LedgerCommand(Kind.SETTLE, receiverWalletId, TransactionType.CREDIT, amountInMinorUnits,
+            null, null, senderWalletId, transferId);
+    }
+    
+    public static LedgerCommand reserveCredit(String receiverWalletId, long amountInMinorUnits) {
+        return new LedgerCommand(Kind.RESERVE_CREDIT, receiverWalletId, TransactionType.CREDIT, amountInMinorUnits,
+            null, null, null, null);
+    }
+    
+    public static LedgerCommand releaseCredit(String receiverWalletId, long amountInMinorUnits) {
+        return new LedgerCommand(Kind.RELEASE_CREDIT, receiverWalletId, TransactionType.CREDIT, amountInMinorUnits,
+            null, null, null, null);
+    }
+    
+    // Outcome is recorded on the partition thread and only published after the journal append
+    void complete(TransactionResponse response) {
+        this.outcome = response;
+    }
+    
+    void fail(RuntimeException e) {
+        this.failure = e;
+    }
+    
+    void publish() {
+        if (failure != null) {
+            result.completeExceptionally(failure);
+        } else {
+            result.complete(outcome);
+        }
+    }
+    
+    public CompletableFuture<TransactionResponse> result() {
+        return result;
+    }
+}
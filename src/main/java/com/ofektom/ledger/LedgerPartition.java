@@ -0,0 +1,191 @@
+package com.ofektom.ledger;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.exception.ServiceUnavailableException;
+import com.ofektom.utils.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-writer owner of a subset of wallets (LMAX style).
+ * Commands are queued in a bounded ring buffer and applied one at a time by the partition's own
+ * thread, so balance updates need no locks; results are handed to the JournalWriter for persistence.
+ */
+public class LedgerPartition implements Runnable {
+    
+    private static final Logger log = LoggerFactory.getLogger(LedgerPartition.class);
+    private static final int MAX_DRAIN = 256;
+    
+    /**
+     * Loads a wallet the partition has not seen yet (e.g. created after startup).
+     */
+    @FunctionalInterface
+    public interface WalletLoader {
+        Optional<LoadedWallet> load(String walletId);
+    }
+    
+    public record LoadedWallet(long walletPk, long balanceInMinorUnits) {
+    }
+    
+    private final int index;
+    private final BlockingQueue<LedgerCommand> ringBuffer;
+    private final WalletBalanceTable balances = new WalletBalanceTable();
+    private final WalletLoader walletLoader;
+    private final JournalWriter journalWriter;
+    private final Thread thread;
+    private volatile boolean running = true;
+    
+    public LedgerPartition(int index, int ringBufferSize, WalletLoader walletLoader, JournalWriter journalWriter) {
+        this.index = index;
+        this.ringBuffer = new ArrayBlockingQueue<>(ringBufferSize);
+        this.walletLoader = walletLoader;
+        this.journalWriter = journalWriter;
+        this.thread = new Thread(this, "ledger-partition-" + index);
+    }
+    
+    // Seeds a balance during the startup rebuild; must be called before start()
+    public void preload(String walletId, long walletPk, long balanceInMinorUnits) {
+        balances.add(walletId, walletPk, balanceInMinorUnits);
+    }
+    
+    public void start() {
+        log.info("Starting ledger partition {} with {} wallets", index, balances.size());
+        thread.start();
+    }
+    
+    // Stops accepting work once the ring buffer has been drained
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+    }
+    
+    // Blocks while the ring buffer is full, which pushes back on callers instead of dropping work
+    public LedgerCommand submit(LedgerCommand command) {
+        if (!running) {
+            throw new ServiceUnavailableException("Ledger partition " + index + " is stopped", 1);
+        }
+        try {
+            ringBuffer.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while submitting to ledger partition " + index, 1);
+        }
+        return command;
+    }
+    
+    public int queueDepth() {
+        return ringBuffer.size();
+    }
+    
+    @Override
+    public void run() {
+        List<LedgerCommand> batch = new ArrayList<>(MAX_DRAIN);
+        List<JournalEntry> journal = new ArrayList<>(MAX_DRAIN);
+        while (running || !ringBuffer.isEmpty()) {
+            try {
+                LedgerCommand first = ringBuffer.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                ringBuffer.drainTo(batch, MAX_DRAIN - 1);
+                for (LedgerCommand command : batch) {
+                    execute(command, journal);
+                }
+                // Journal first, then release callers, so a completed response is always queued for persistence
+                journalWriter.append(journal);
+                for (LedgerCommand command : batch) {
+                    command.publish();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+                journal.clear();
+            }
+        }
+    }
+    
+    private void execute(LedgerCommand command, List<JournalEntry> journal) {
+        try {
+            int slot = resolve(command.walletId);
+            switch (command.kind) {
+                case RESERVE_CREDIT -> {
+                    checkCreditHeadroom(slot, command.amountInMinorUnits);
+                    balances.setReservedCredits(slot, balances.reservedCredits(slot) + command.amountInMinorUnits);
+                    command.complete(null);
+                }
+                case RELEASE_CREDIT -> {
+                    balances.setReservedCredits(slot, balances.reservedCredits(slot) - command.amountInMinorUnits);
+                    command.complete(null);
+                }
+                case SETTLE -> {
+                    // Reserved before the sender was debited, so this cannot overflow
+                    balances.setReservedCredits(slot, balances.reservedCredits(slot) - command.amountInMinorUnits);
+                    long balance = balances.balance(slot) + command.amountInMinorUnits;
+                    balances.setBalance(slot, balance);
+                    journal.add(new JournalEntry(UUID.randomUUID().toString(), balances.walletPk(slot), command.walletId,
+                        TransactionType.CREDIT.name(), command.amountInMinorUnits, balance, null, null,
+                        command.counterpartyWalletId, command.transferId, LocalDateTime.now()));
+                    command.complete(null);
+                }
+                case APPLY -> command.complete(apply(slot, command, journal));
+            }
+        } catch (RuntimeException e) {
+            command.fail(e);
+        }
+    }
+    
+    private TransactionResponse apply(int slot, LedgerCommand command, List<JournalEntry> journal) {
+        long current = balances.balance(slot);
+        long balance;
+        if (command.type == TransactionType.DEBIT) {
+            if (current < command.amountInMinorUnits) {
+                throw new BadRequestException(
+                    "Insufficient balance: " + current + " < " + command.amountInMinorUnits);
+            }
+            balance = current - command.amountInMinorUnits;
+        } else {
+            checkCreditHeadroom(slot, command.amountInMinorUnits);
+            balance = current + command.amountInMinorUnits;
+        }
+        balances.setBalance(slot, balance);
+        
+        String transactionId = UUID.randomUUID().toString();
+        LocalDateTime createdAt = LocalDateTime.now();
+        JournalEntry entry = new JournalEntry(transactionId, balances.walletPk(slot), command.walletId, command.type.name(),
+            command.amountInMinorUnits, balance, command.idempotencyKey, command.requestFingerprint,
+            command.counterpartyWalletId, command.transferId, createdAt);
+        journal.add(entry);
+        return entry.toResponse();
+    }
+    
+    // Throws IllegalArgumentException if the credit would not fit next to the reserved transfer credits
+    private void checkCreditHeadroom(int slot, long amountInMinorUnits) {
+        Money.addMinorUnits(Money.addMinorUnits(balances.balance(slot), balances.reservedCredits(slot)), amountInMinorUnits);
+    }
+    
+    // Finds the wallet's slot, loading it from the database on first use
+    private int resolve(String walletId) {
+        int slot = balances.slotOf(walletId);
+        if (slot >= 0) {
+            return slot;
+        }
+        LoadedWallet loaded = walletLoader.load(walletId)
+            .orElseThrow(() -> new NotFoundException("Wallet not found: " + walletId));
+        return balances.add(walletId, loaded.walletPk(), loaded.balanceInMinorUnits());
+    }
+}
@@ -0,0 +1,65 @@
+package com.ofektom.ledger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Balances owned by one ledger partition, held in primitive arrays indexed by a per-wallet slot.
+ * Not thread-safe: only the owning partition thread may touch it once the partition has started.
+ */
+final class WalletBalanceTable {
+    
+    private final Map<String, Integer> slots = new HashMap<>();
+    private long[] walletPks = new long[1024];
+    private long[] balances = new long[1024];
+    // Incoming transfer credits whose sender may already be debited; credits must leave room for them
+    private long[] reservedCredits = new long[1024];
+    private int size;
+    
+    // Returns the slot for the wallet, or -1 if the partition has not loaded it
+    int slotOf(String walletId) {
+        Integer slot = slots.get(walletId);
+        return slot == null ? -1 : slot;
+    }
+    
+    int add(String walletId, long walletPk, long balance) {
+        Integer existing = slots.get(walletId);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == balances.length) {
+            walletPks = Arrays.copyOf(walletPks, size * 2);
+            balances = Arrays.copyOf(balances, size * 2);
+            reservedCredits = Arrays.copyOf(reservedCredits, size * 2);
+        }
+        walletPks[size] = walletPk;
+        balances[size] = balance;
+        slots.put(walletId, size);
+        return size++;
+    }
+    
+    long walletPk(int slot) {
+        return walletPks[slot];
+    }
+    
+    long balance(int slot) {
+        return balances[slot];
+    }
+    
+    void setBalance(int slot, long balance) {
+        balances[slot] = balance;
+    }
+    
+    long reservedCredits(int slot) {
+        return reservedCredits[slot];
+    }
+    
+    void setReservedCredits(int slot, long reserved) {
+        reservedCredits[slot] = reserved;
+    }
+    
+    int size() {
+        return size;
+    }
+}
@@ -7,19 +7,32 @@ import java.time.LocalDateTime;
 /**
  * Entity to track idempotency keys and prevent duplicate transaction processing.
  * Uses unique constraint at database level for thread-safe idempotency checks.
+ * Also stores a fingerprint of the original request and its serialized response so retries can be replayed.
  */
 @Entity
 @Table(name = "idempotency_keys", 
-    uniqueConstraints = @UniqueConstraint(name = "uk_idempotency_key", columnNames = "key_value"))
+    uniqueConstraints = @UniqueConstraint(name = IdempotencyKey.UNIQUE_CONSTRAINT, columnNames = "key_value"),
+    indexes = @Index(name = "idx_idempotency_created_at", columnList = "created_at"))
 public class IdempotencyKey {
     
+    public static final String UNIQUE_CONSTRAINT = "uk_idempotency_key";
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "idempotency_keys_seq")
+    @SequenceGenerator(name = "idempotency_keys_seq", sequenceName = "idempotency_keys_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "key_value", unique = true, nullable = false, length = 255)
     private String keyValue;
     
+    // SHA-256 of the request payload; null for keys written before replay support
+    @Column(name = "request_fingerprint", length = 64)
+    private String requestFingerprint;
+    
+    // Compact JSON of the original TransactionResponse
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+    
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
@@ -48,6 +61,22 @@ public class IdempotencyKey {
         this.keyValue = keyValue;
     }
     
+    public String getRequestFingerprint() {
+        return requestFingerprint;
+    }
+    
+    public void setRequestFingerprint(String requestFingerprint) {
+        this.requestFingerprint = requestFingerprint;
+    }
+    
+    public String getResponseBody() {
+        return responseBody;
+    }
+    
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -68,5 +97,12 @@ public class IdempotencyKey {
         key.setKeyValue(keyValue);
         return key;
     }
+    
+    public static IdempotencyKey of(String keyValue, String requestFingerprint, String responseBody) {
+        IdempotencyKey key = of(keyValue);
+        key.setRequestFingerprint(requestFingerprint);
+        key.setResponseBody(responseBody);
+        return key;
+    }
 }
 
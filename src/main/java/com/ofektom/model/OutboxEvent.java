@@ -0,0 +1,111 @@
+package com.ofektom.model;
+
+import com.ofektom.enums.BalanceEventType;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row for one balance change, inserted in the same transaction as its ledger row.
+ * Wallets are stored by walletId so events can be published without joins; position is assigned later by
+ * the relay (see OutboxRelay) and is not mapped here.
+ */
+@Entity
+@Table(name = "outbox_events")
+public class OutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_events_seq")
+    @SequenceGenerator(name = "outbox_events_seq", sequenceName = "outbox_events_seq", allocationSize = 50)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 20, updatable = false)
+    private BalanceEventType eventType;
+    
+    @Column(name = "wallet_id", nullable = false, length = 36, updatable = false)
+    private String walletId;
+    
+    @Column(name = "counterparty_wallet_id", length = 36, updatable = false)
+    private String counterpartyWalletId;
+    
+    @Column(name = "transaction_id", nullable = false, length = 36, updatable = false)
+    private String transactionId;
+    
+    @Column(name = "transfer_id", length = 36, updatable = false)
+    private String transferId;
+    
+    @Column(name = "amount_in_minor_units", nullable = false, updatable = false)
+    private Long amountInMinorUnits;
+    
+    // Null when the wallet's total is not known at write time (credits to striped hot wallets)
+    @Column(name = "balance_after_in_minor_units", updatable = false)
+    private Long balanceAfterInMinorUnits;
+    
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    public OutboxEvent() {
+    }
+    
+    // Call after the transaction was saved, so its transactionId and createdAt are set
+    public static OutboxEvent of(Transaction transaction, String walletId, Long balanceAfterInMinorUnits) {
+        return of(transaction, walletId,
+            transaction.getCounterparty() != null ? transaction.getCounterparty().getWalletId() : null, balanceAfterInMinorUnits);
+    }
+    
+    // Cross-shard transfer legs have no counterparty row on their shard, so the counterparty is named explicitly
+    public static OutboxEvent of(Transaction transaction, String walletId, String counterpartyWalletId,
+                                 Long balanceAfterInMinorUnits) {
+        OutboxEvent event = new OutboxEvent();
+        event.eventType = BalanceEventType.of(transaction);
+        event.walletId = walletId;
+        event.counterpartyWalletId = counterpartyWalletId;
+        event.transactionId = transaction.getTransactionId();
+        event.transferId = transaction.getTransferId();
+        event.amountInMinorUnits = transaction.getAmountInMinorUnits();
+        event.balanceAfterInMinorUnits = balanceAfterInMinorUnits;
+        event.createdAt = transaction.getCreatedAt();
+        return event;
+    }
+    
+    public static OutboxEvent of(Transaction transaction, Long balanceAfterInMinorUnits) {
+        return of(transaction, transaction.getWallet().getWalletId(), balanceAfterInMinorUnits);
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public BalanceEventType getEventType() {
+        return eventType;
+    }
+    
+    public String getWalletId() {
+        return walletId;
+    }
+    
+    public String getCounterpartyWalletId() {
+        return counterpartyWalletId;
+    }
+    
+    public String getTransactionId() {
+        return transactionId;
+    }
+    
+    public String getTransferId() {
+        return transferId;
+    }
+    
+    public Long getAmountInMinorUnits() {
+        return amountInMinorUnits;
+    }
+    
+    public Long getBalanceAfterInMinorUnits() {
+        return balanceAfterInMinorUnits;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -5,30 +5,43 @@ import com.ofektom.utils.Money;
 import jakarta.persistence.*;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 /**
  * Transaction entity representing a wallet transaction.
  * Records credit/debit operations and transfers for audit purposes.
+ * The table is range-partitioned by created_at and owned by Flyway, so keys include created_at.
  */
 @Entity
 @Table(name = "transactions", indexes = {
-    @Index(name = "idx_transaction_wallet_id", columnList = "wallet_id"),
-    @Index(name = "idx_transaction_transaction_id", columnList = "transaction_id", unique = true)
+    @Index(name = "idx_transaction_wallet_created", columnList = "wallet_id, created_at, id"),
+    @Index(name = "uk_transaction_transaction_id", columnList = "transaction_id, created_at", unique = true)
 })
 public class Transaction {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+    @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
     private Long id;
     
-    @Column(name = "transaction_id", unique = true, nullable = false, length = 36)
+    @Column(name = "transaction_id", nullable = false, length = 36)
     private String transactionId;
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "wallet_id", nullable = false)
     private Wallet wallet;
     
+    // The other wallet of a transfer leg (receiver on the DEBIT, sender on the CREDIT); null for plain credits and debits
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "counterparty_wallet_id")
+    private Wallet counterparty;
+    
+    // Shared by the two legs of one transfer; null for plain credits and debits and for transfers recorded
+    // before double entry, which only have the sender's DEBIT
+    @Column(name = "transfer_id", length = 36)
+    private String transferId;
+    
     @Enumerated(EnumType.STRING)
     @Column(name = "transaction_type", nullable = false, length = 10)
     private TransactionType transactionType;
@@ -89,6 +102,22 @@ public class Transaction {
         this.wallet = wallet;
     }
     
+    public Wallet getCounterparty() {
+        return counterparty;
+    }
+    
+    public void setCounterparty(Wallet counterparty) {
+        this.counterparty = counterparty;
+    }
+    
+    public String getTransferId() {
+        return transferId;
+    }
+    
+    public void setTransferId(String transferId) {
+        this.transferId = transferId;
+    }
+    
     public TransactionType getTransactionType() {
         return transactionType;
     }
@@ -105,6 +134,10 @@ public class Transaction {
         return createdAt;
     }
     
+    public Long getAmountInMinorUnits() {
+        return amountInMinorUnits;
+    }
+    
     public Money getAmount() {
         return Money.ofMinorUnits(amountInMinorUnits);
     }
@@ -120,5 +153,19 @@ public class Transaction {
         transaction.setAmount(amount);
         return transaction;
     }
+    
+    // Double entry: the sender's DEBIT leg (first) and the receiver's CREDIT leg, linked by one transfer id
+    public static List<Transaction> createTransferLegs(Wallet sender, Wallet receiver, Money amount) {
+        String transferId = UUID.randomUUID().toString();
+        return List.of(leg(sender, receiver, TransactionType.DEBIT, amount, transferId),
+            leg(receiver, sender, TransactionType.CREDIT, amount, transferId));
+    }
+    
+    private static Transaction leg(Wallet wallet, Wallet counterparty, TransactionType type, Money amount, String transferId) {
+        Transaction transaction = create(wallet, type, amount);
+        transaction.setCounterparty(counterparty);
+        transaction.setTransferId(transferId);
+        return transaction;
+    }
 }
 
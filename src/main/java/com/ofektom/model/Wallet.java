@@ -1,11 +1,13 @@
 package com.ofektom.model;
 
 import com.ofektom.enums.TransactionType;
+import com.ofektom.sharding.ShardContext;
+import com.ofektom.sharding.WalletIds;
 import com.ofektom.utils.Money;
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 /**
  * Wallet domain entity representing a user's wallet.
@@ -15,15 +17,24 @@ import java.util.UUID;
 @Table(name = "wallets", indexes = @Index(name = "idx_wallet_wallet_id", columnList = "wallet_id", unique = true))
 public class Wallet {
     
+    // Ids handed out per sequence call; bulk loaders that bypass Hibernate must reserve ids the same way
+    public static final int ID_ALLOCATION_SIZE = 50;
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "wallets_seq")
+    @SequenceGenerator(name = "wallets_seq", sequenceName = "wallets_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     
     @Column(name = "wallet_id", unique = true, nullable = false, length = 36)
     private String walletId;
     
+    // Primitive so balance updates never box; new wallets start at zero
     @Column(name = "balance_in_minor_units", nullable = false)
-    private Long balanceInMinorUnits;
+    private long balanceInMinorUnits;
+    
+    // Balance the wallet was created with, the starting point for reconciliation; null for wallets that predate it
+    @Column(name = "opening_balance_in_minor_units", updatable = false)
+    private Long openingBalanceInMinorUnits;
     
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -31,6 +42,11 @@ public class Wallet {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
     
+    // Number of striped sub-balance rows (hot-wallet mode); 0 means all funds live on this row
+    @ColumnDefault("0")
+    @Column(name = "stripe_count", nullable = false)
+    private Integer stripeCount;
+    
     @Version
     private Long version;
     
@@ -70,6 +86,22 @@ public class Wallet {
         this.updatedAt = updatedAt;
     }
     
+    public Long getOpeningBalanceInMinorUnits() {
+        return openingBalanceInMinorUnits;
+    }
+    
+    public Integer getStripeCount() {
+        return stripeCount;
+    }
+    
+    public void setStripeCount(Integer stripeCount) {
+        this.stripeCount = stripeCount;
+    }
+    
+    public boolean isStriped() {
+        return stripeCount != null && stripeCount > 0;
+    }
+    
     public Long getVersion() {
         return version;
     }
@@ -80,11 +112,15 @@ public class Wallet {
     
     @PrePersist
     protected void onCreate() {
+        // Sharded deployments embed the shard the wallet is being created on
         if (walletId == null) {
-            walletId = UUID.randomUUID().toString();
+            walletId = WalletIds.generate(ShardContext.current());
         }
-        if (balanceInMinorUnits == null) {
-            balanceInMinorUnits = 0L;
+        if (stripeCount == null) {
+            stripeCount = 0;
+        }
+        if (openingBalanceInMinorUnits == null) {
+            openingBalanceInMinorUnits = balanceInMinorUnits;
         }
         LocalDateTime now = LocalDateTime.now();
         if (createdAt == null) {
@@ -104,7 +140,7 @@ public class Wallet {
         return walletId;
     }
 
-    public Long getBalanceInMinorUnits() {
+    public long getBalanceInMinorUnits() {
         return balanceInMinorUnits;
     }
 
@@ -126,28 +162,29 @@ public class Wallet {
     
     // Credits the wallet with the specified amount
     public void credit(Money amount) {
-        Money newBalance = getBalance().add(amount);
-        setBalance(newBalance);
+        balanceInMinorUnits = Money.addMinorUnits(balanceInMinorUnits, amount.getAmountInMinorUnits());
     }
     
     // Debits the wallet with the specified amount (validates sufficient balance)
     public void debit(Money amount) {
-        Money currentBalance = getBalance();
-        if (currentBalance.isLessThan(amount)) {
+        if (balanceInMinorUnits < amount.getAmountInMinorUnits()) {
             throw new IllegalStateException("Insufficient balance");
         }
-        Money newBalance = currentBalance.subtract(amount);
-        setBalance(newBalance);
+        balanceInMinorUnits = Money.subtractMinorUnits(balanceInMinorUnits, amount.getAmountInMinorUnits());
     }
     
-    // Processes a transaction using the Strategy pattern (CREDIT or DEBIT)
+    // Processes a transaction using the Strategy pattern (CREDIT or DEBIT), on the primitive balance
     public void processTransaction(TransactionType type, Money amount) {
-        Money newBalance = type.apply(getBalance(), amount);
-        setBalance(newBalance);
+        balanceInMinorUnits = type.apply(balanceInMinorUnits, amount.getAmountInMinorUnits());
     }
     
     // Checks if wallet has sufficient balance for the given amount
     public boolean hasSufficientBalance(Money amount) {
-        return getBalance().isGreaterThanOrEqual(amount);
+        return balanceInMinorUnits >= amount.getAmountInMinorUnits();
+    }
+    
+    // Checks that crediting the amount cannot overflow the balance
+    public boolean hasCreditHeadroom(Money amount) {
+        return balanceInMinorUnits <= Long.MAX_VALUE - amount.getAmountInMinorUnits();
     }
 }
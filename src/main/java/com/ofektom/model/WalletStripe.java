@@ -0,0 +1,98 @@
+package com.ofektom.model;
+
+import com.ofektom.utils.Money;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Striped sub-balance of a hot wallet.
+ * Credits land on one stripe so concurrent credits lock different rows; the wallet's
+ * total balance is its own row balance plus the sum of all its stripes.
+ */
+@Entity
+@Table(name = "wallet_stripes",
+    uniqueConstraints = @UniqueConstraint(name = "uk_wallet_stripe", columnNames = {"wallet_id", "stripe_index"}))
+public class WalletStripe {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "wallet_stripes_seq")
+    @SequenceGenerator(name = "wallet_stripes_seq", sequenceName = "wallet_stripes_seq", allocationSize = 50)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "wallet_id", nullable = false)
+    private Wallet wallet;
+    
+    @Column(name = "stripe_index", nullable = false)
+    private Integer stripeIndex;
+    
+    @Column(name = "balance_in_minor_units", nullable = false)
+    private Long balanceInMinorUnits;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @Version
+    private Long version;
+    
+    public WalletStripe() {
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public Wallet getWallet() {
+        return wallet;
+    }
+    
+    public void setWallet(Wallet wallet) {
+        this.wallet = wallet;
+    }
+    
+    public Integer getStripeIndex() {
+        return stripeIndex;
+    }
+    
+    public void setStripeIndex(Integer stripeIndex) {
+        this.stripeIndex = stripeIndex;
+    }
+    
+    public Long getBalanceInMinorUnits() {
+        return balanceInMinorUnits;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    @PrePersist
+    @PreUpdate
+    protected void onWrite() {
+        if (balanceInMinorUnits == null) {
+            balanceInMinorUnits = 0L;
+        }
+        updatedAt = LocalDateTime.now();
+    }
+    
+    // Credits this stripe with the specified amount
+    public void credit(Money amount) {
+        this.balanceInMinorUnits = Money.ofMinorUnits(balanceInMinorUnits).add(amount).getAmountInMinorUnits();
+    }
+    
+    // Empties the stripe and returns what it held
+    public Money drain() {
+        Money drained = Money.ofMinorUnits(balanceInMinorUnits);
+        this.balanceInMinorUnits = 0L;
+        return drained;
+    }
+    
+    public static WalletStripe of(Wallet wallet, int stripeIndex) {
+        WalletStripe stripe = new WalletStripe();
+        stripe.setWallet(wallet);
+        stripe.setStripeIndex(stripeIndex);
+        stripe.balanceInMinorUnits = 0L;
+        return stripe;
+    }
+}
@@ -0,0 +1,19 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+
+import java.util.List;
+
+/**
+ * Destination the outbox relay publishes balance events to.
+ * Delivery is at-least-once: publish must throw if the batch was not accepted, and the same events
+ * (same positions) are offered again on the next relay pass, so consumers deduplicate by position.
+ */
+public interface BalanceEventSink {
+    
+    // Stable name; the sink's delivered offset is stored under it
+    String name();
+    
+    // Events are in position order and never empty
+    void publish(List<BalanceEventResponse> events);
+}
@@ -0,0 +1,241 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.ServiceUnavailableException;
+import com.ofektom.sharding.ShardRouter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-sent event fan-out of sequenced outbox events.
+ * One thread per instance tails the outbox by position (a single indexed query per tick, however many
+ * subscribers there are) and pushes matching events to every subscriber. A subscriber resuming from an
+ * offset first replays from the table, a page per tick, until it reaches the tail. All sends happen on
+ * that thread, so each subscriber sees its events exactly once and in position order.
+ * With wallet.shard.urls set, positions are per shard: each shard with subscribers is tailed separately, and a
+ * wallet's subscription is served from its own shard. The all-wallets stream is rejected then, since one
+ * Last-Event-ID cannot name a position on every shard.
+ */
+@Component
+public class BalanceEventStream {
+    
+    private static final Logger log = LoggerFactory.getLogger(BalanceEventStream.class);
+    private static final String SELECT_HEAD = "SELECT COALESCE(MAX(position), 0) FROM outbox_events WHERE position IS NOT NULL";
+    private static final String SELECT_AFTER =
+        "SELECT " + OutboxEventRows.COLUMNS + " FROM outbox_events WHERE position > ? ORDER BY position LIMIT ?";
+    private static final String SELECT_RANGE =
+        "SELECT " + OutboxEventRows.COLUMNS + " FROM outbox_events WHERE position > ? AND position <= ? "
+            + "ORDER BY position LIMIT ?";
+    private static final String SELECT_WALLET_RANGE =
+        "SELECT " + OutboxEventRows.COLUMNS + " FROM outbox_events WHERE wallet_id = ? AND position > ? AND position <= ? "
+            + "ORDER BY position LIMIT ?";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        runnable -> new Thread(runnable, "balance-event-stream"));
+    private final long pollMs;
+    private final long heartbeatMs;
+    private final long timeoutMs;
+    private final int maxSubscribers;
+    private final int pageSize;
+    // Per shard, the highest position already fanned out to caught-up subscribers; -1 while nobody is subscribed
+    private final long[] heads;
+    private long lastHeartbeat = System.currentTimeMillis();
+    
+    public BalanceEventStream(JdbcTemplate jdbcTemplate,
+                              ShardRouter shardRouter,
+                              MeterRegistry meterRegistry,
+                              @Value("${wallet.outbox.stream.poll-ms:250}") long pollMs,
+                              @Value("${wallet.outbox.stream.heartbeat:PT15S}") Duration heartbeat,
+                              @Value("${wallet.outbox.stream.timeout:PT30M}") Duration timeout,
+                              @Value("${wallet.outbox.stream.max-subscribers:1000}") int maxSubscribers,
+                              @Value("${wallet.outbox.batch-size:500}") int pageSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.heads = new long[shardRouter.shardCount()];
+        Arrays.fill(heads, -1L);
+        this.pollMs = pollMs;
+        this.heartbeatMs = heartbeat.toMillis();
+        this.timeoutMs = timeout.toMillis();
+        this.maxSubscribers = maxSubscribers;
+        this.pageSize = Math.max(1, pageSize);
+        Gauge.builder("wallet.outbox.stream.subscribers", subscribers, List::size)
+            .description("Open balance event stream subscriptions on this instance")
+            .register(meterRegistry);
+    }
+    
+    @PostConstruct
+    public void start() {
+        executor.scheduleWithFixedDelay(this::pollSafely, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter().complete());
+    }
+    
+    /**
+     * Opens a subscription for one wallet (or all wallets when walletId is null).
+     * Events after the given position are delivered first; without one the stream starts at the current tail.
+     * The emitter times out after wallet.outbox.stream.timeout; clients reconnect with Last-Event-ID.
+     * Positions are those of the wallet's shard; the all-wallets stream is not available with sharding.
+     */
+    public SseEmitter subscribe(String walletId, Long afterPosition) {
+        if (walletId == null && shardRouter.isSharded()) {
+            throw new BadRequestException("The all-wallets event stream is not available with sharding; subscribe per wallet");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ServiceUnavailableException("Too many event stream subscribers", 5);
+        }
+        int shard = walletId == null ? 0 : shardRouter.shardOf(walletId);
+        long start = afterPosition != null ? Math.max(0L, afterPosition)
+            : shardRouter.on(shard, () -> jdbcTemplate.queryForObject(SELECT_HEAD, Long.class));
+        SseEmitter emitter = newEmitter();
+        Subscriber subscriber = new Subscriber(walletId, shard, emitter, start);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        log.debug("Balance event subscription opened: walletId={}, after={}", walletId, start);
+        return emitter;
+    }
+    
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            log.warn("Balance event stream poll failed: {}", e.getMessage());
+        }
+    }
+    
+    // Package-private so tests can drive single ticks
+    SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMs);
+    }
+    
+    // One tick: every shard with subscribers is tailed with its own head, on that shard
+    void poll() {
+        boolean heartbeat = System.currentTimeMillis() - lastHeartbeat >= heartbeatMs;
+        for (int shard = 0; shard < heads.length; shard++) {
+            int current = shard;
+            List<Subscriber> onShard = subscribers.stream().filter(subscriber -> subscriber.shard() == current).toList();
+            if (onShard.isEmpty()) {
+                heads[shard] = -1L;
+                continue;
+            }
+            shardRouter.on(shard, () -> {
+                pollShard(current, onShard, heartbeat);
+                return null;
+            });
+        }
+        if (heartbeat) {
+            lastHeartbeat = System.currentTimeMillis();
+        }
+    }
+    
+    private void pollShard(int shard, List<Subscriber> onShard, boolean heartbeat) {
+        long head = heads[shard];
+        if (head < 0) {
+            head = jdbcTemplate.queryForObject(SELECT_HEAD, Long.class);
+        }
+        List<BalanceEventResponse> fresh = jdbcTemplate.query(SELECT_AFTER, OutboxEventRows.MAPPER, head, pageSize);
+        long newHead = fresh.isEmpty() ? head : fresh.get(fresh.size() - 1).position();
+        
+        for (Subscriber subscriber : onShard) {
+            try {
+                // Catching up is bounded by the current head; the fresh page then covers (head, newHead]
+                if (subscriber.lastSent < head) {
+                    catchUp(subscriber, head);
+                }
+                if (subscriber.lastSent >= head) {
+                    for (BalanceEventResponse event : fresh) {
+                        if (subscriber.matches(event) && event.position() > subscriber.lastSent) {
+                            send(subscriber, event);
+                        }
+                    }
+                    subscriber.lastSent = Math.max(subscriber.lastSent, newHead);
+                }
+                if (heartbeat) {
+                    subscriber.emitter().send(SseEmitter.event().comment("keepalive"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client went away; the emitter's callbacks may not fire until the container notices
+                subscribers.remove(subscriber);
+                subscriber.emitter().completeWithError(e);
+            }
+        }
+        heads[shard] = newHead;
+    }
+    
+    private void catchUp(Subscriber subscriber, long head) throws IOException {
+        List<BalanceEventResponse> page = subscriber.walletId() == null
+            ? jdbcTemplate.query(SELECT_RANGE, OutboxEventRows.MAPPER, subscriber.lastSent, head, pageSize)
+            : jdbcTemplate.query(SELECT_WALLET_RANGE, OutboxEventRows.MAPPER, subscriber.walletId(), subscriber.lastSent,
+                head, pageSize);
+        for (BalanceEventResponse event : page) {
+            send(subscriber, event);
+        }
+        subscriber.lastSent = page.size() < pageSize ? head : page.get(page.size() - 1).position();
+    }
+    
+    private void send(Subscriber subscriber, BalanceEventResponse event) throws IOException {
+        subscriber.emitter().send(SseEmitter.event()
+            .id(Long.toString(event.position()))
+            .name(event.eventType())
+            .data(event, MediaType.APPLICATION_JSON));
+        subscriber.lastSent = event.position();
+    }
+    
+    // lastSent is only read and written on the stream thread
+    private static final class Subscriber {
+        private final String walletId;
+        private final int shard;
+        private final SseEmitter emitter;
+        private long lastSent;
+        
+        private Subscriber(String walletId, int shard, SseEmitter emitter, long lastSent) {
+            this.walletId = walletId;
+            this.shard = shard;
+            this.emitter = emitter;
+            this.lastSent = lastSent;
+        }
+        
+        private String walletId() {
+            return walletId;
+        }
+        
+        private int shard() {
+            return shard;
+        }
+        
+        private SseEmitter emitter() {
+            return emitter;
+        }
+        
+        private boolean matches(BalanceEventResponse event) {
+            return walletId == null || walletId.equals(event.walletId());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Stand-in for a message broker: publishes every event as a Spring application event, delivered
+ * synchronously to @EventListener methods for BalanceEventResponse. A listener that throws fails the batch.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.outbox.in-process.enabled", havingValue = "true")
+public class InProcessBalanceEventSink implements BalanceEventSink {
+    
+    private final ApplicationEventPublisher eventPublisher;
+    
+    public InProcessBalanceEventSink(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+    
+    @Override
+    public String name() {
+        return "in-process";
+    }
+    
+    @Override
+    public void publish(List<BalanceEventResponse> events) {
+        events.forEach(eventPublisher::publishEvent);
+    }
+}
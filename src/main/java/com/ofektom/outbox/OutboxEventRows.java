@@ -0,0 +1,28 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Shared projection of sequenced outbox rows for the relay and the event stream.
+ */
+final class OutboxEventRows {
+    
+    static final String COLUMNS = "position, event_type, wallet_id, counterparty_wallet_id, transaction_id, transfer_id, "
+        + "amount_in_minor_units, balance_after_in_minor_units, created_at";
+    
+    static final RowMapper<BalanceEventResponse> MAPPER = (rs, rowNum) -> new BalanceEventResponse(
+        rs.getLong("position"),
+        rs.getString("event_type"),
+        rs.getString("wallet_id"),
+        rs.getString("counterparty_wallet_id"),
+        rs.getString("transaction_id"),
+        rs.getString("transfer_id"),
+        rs.getLong("amount_in_minor_units"),
+        rs.getObject("balance_after_in_minor_units", Long.class),
+        rs.getTimestamp("created_at").toLocalDateTime()
+    );
+    
+    private OutboxEventRows() {
+    }
+}
@@ -0,0 +1,173 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+import com.ofektom.sharding.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drains the outbox in two steps. Sequencing gives newly committed rows consecutive positions under a
+ * transaction-scoped advisory lock, so positions become visible in increasing order and tailing by position
+ * never skips a row. Dispatch then hands each sink the events after its stored offset and advances the offset
+ * in the same transaction once the sink accepted them. Both steps are safe to run on every instance.
+ * Each shard has its own outbox, positions and sink offsets, so sinks see every shard's events in per-shard order.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+    
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+    
+    // Rows from concurrent transactions on one wallet are serialized by its row lock, so created_at orders them
+    private static final String SEQUENCE = """
+        WITH batch AS (
+            SELECT id FROM outbox_events WHERE position IS NULL ORDER BY created_at, id LIMIT ?
+        ), numbered AS (
+            SELECT id, nextval('outbox_event_position_seq') AS position FROM batch
+        )
+        UPDATE outbox_events o SET position = n.position FROM numbered n WHERE o.id = n.id
+        """;
+    private static final String TRY_LOCK = "SELECT pg_try_advisory_xact_lock(hashtext(?))";
+    private static final String SELECT_AFTER =
+        "SELECT " + OutboxEventRows.COLUMNS + " FROM outbox_events WHERE position > ? ORDER BY position LIMIT ?";
+    private static final String INIT_OFFSET =
+        "INSERT INTO outbox_sink_offsets (sink, position, updated_at) VALUES (?, 0, ?) ON CONFLICT (sink) DO NOTHING";
+    private static final String UPDATE_OFFSET = "UPDATE outbox_sink_offsets SET position = ?, updated_at = ? WHERE sink = ?";
+    private static final String PURGE_BATCH = """
+        DELETE FROM outbox_events WHERE id IN (
+            SELECT id FROM outbox_events WHERE position <= ? AND created_at < ? LIMIT ?
+        )
+        """;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+    private final List<BalanceEventSink> sinks;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final Duration retention;
+    private final Counter sequenced;
+    
+    public OutboxRelay(JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       ShardRouter shardRouter,
+                       List<BalanceEventSink> sinks,
+                       MeterRegistry meterRegistry,
+                       @Value("${wallet.outbox.batch-size:500}") int batchSize,
+                       @Value("${wallet.outbox.retention:P3D}") Duration retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardRouter = shardRouter;
+        this.sinks = sinks;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = Math.max(1, batchSize);
+        this.retention = retention;
+        this.sequenced = Counter.builder("wallet.outbox.sequenced")
+            .description("Outbox events given a stream position")
+            .register(meterRegistry);
+        log.info("Outbox relay publishing to sinks: {}", sinks.stream().map(BalanceEventSink::name).toList());
+    }
+    
+    // Sequencing runs even without sinks: the event stream tails positions directly
+    @Scheduled(fixedDelayString = "${wallet.outbox.relay-interval-ms:200}")
+    public void relay() {
+        shardRouter.forEachShard(shard -> relayShard());
+    }
+    
+    private void relayShard() {
+        int count;
+        do {
+            count = sequenceBatch();
+        } while (count == batchSize);
+        for (BalanceEventSink sink : sinks) {
+            try {
+                do {
+                    count = dispatchBatch(sink);
+                } while (count == batchSize);
+            } catch (RuntimeException e) {
+                meterRegistry.counter("wallet.outbox.publish.failures", "sink", sink.name()).increment();
+                log.warn("Publishing outbox events to sink {} failed, will retry: {}", sink.name(), e.getMessage());
+            }
+        }
+    }
+    
+    private int sequenceBatch() {
+        Integer count = transactionTemplate.execute(status -> {
+            if (!tryLock("outbox-sequencer")) {
+                return 0;
+            }
+            return jdbcTemplate.update(SEQUENCE, batchSize);
+        });
+        sequenced.increment(count);
+        return count;
+    }
+    
+    // The offset only moves if publish returned, so a failed batch is offered again from the same position
+    private int dispatchBatch(BalanceEventSink sink) {
+        Integer count = transactionTemplate.execute(status -> {
+            if (!tryLock("outbox-sink:" + sink.name())) {
+                return 0;
+            }
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.update(INIT_OFFSET, sink.name(), now);
+            Long offset = jdbcTemplate.queryForObject(
+                "SELECT position FROM outbox_sink_offsets WHERE sink = ?", Long.class, sink.name());
+            List<BalanceEventResponse> events = jdbcTemplate.query(SELECT_AFTER, OutboxEventRows.MAPPER, offset, batchSize);
+            if (events.isEmpty()) {
+                return 0;
+            }
+            sink.publish(events);
+            jdbcTemplate.update(UPDATE_OFFSET, events.get(events.size() - 1).position(), now, sink.name());
+            return events.size();
+        });
+        meterRegistry.counter("wallet.outbox.published", "sink", sink.name()).increment(count);
+        return count;
+    }
+    
+    /**
+     * Deletes events older than wallet.outbox.retention that every configured sink has already received.
+     * Stream subscribers resuming from an offset that has been purged continue from the oldest retained event.
+     */
+    @Scheduled(fixedDelayString = "${wallet.outbox.purge-interval-ms:600000}")
+    public void purge() {
+        shardRouter.forEachShard(shard -> purgeShard());
+    }
+    
+    private void purgeShard() {
+        Map<String, Long> offsets = new HashMap<>();
+        jdbcTemplate.query("SELECT sink, position FROM outbox_sink_offsets",
+            rs -> { offsets.put(rs.getString(1), rs.getLong(2)); });
+        long floor = sinks.stream().mapToLong(sink -> offsets.getOrDefault(sink.name(), 0L)).min().orElse(Long.MAX_VALUE);
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(retention));
+        
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(PURGE_BATCH, floor, cutoff, batchSize);
+            purged += deleted;
+        } while (deleted == batchSize);
+        if (purged > 0) {
+            log.info("Purged {} outbox events up to position {} created before {}", purged, floor, cutoff);
+        }
+    }
+    
+    private boolean tryLock(String name) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(TRY_LOCK, Boolean.class, name));
+    }
+}
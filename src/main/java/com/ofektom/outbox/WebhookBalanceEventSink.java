@@ -0,0 +1,45 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Posts each relay batch as a JSON array to wallet.outbox.webhook.url.
+ * Any non-2xx response or I/O error fails the batch, which is redelivered on the next pass.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.outbox.webhook.url")
+public class WebhookBalanceEventSink implements BalanceEventSink {
+    
+    private final RestClient restClient;
+    
+    public WebhookBalanceEventSink(@Value("${wallet.outbox.webhook.url}") String url,
+                                   @Value("${wallet.outbox.webhook.timeout:PT5S}") Duration timeout) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        this.restClient = RestClient.builder().baseUrl(url).requestFactory(requestFactory).build();
+    }
+    
+    @Override
+    public String name() {
+        return "webhook";
+    }
+    
+    @Override
+    public void publish(List<BalanceEventResponse> events) {
+        restClient.post()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(events)
+            .retrieve()
+            .toBodilessEntity();
+    }
+}
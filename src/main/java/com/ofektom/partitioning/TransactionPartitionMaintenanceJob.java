@@ -0,0 +1,128 @@
+package com.ofektom.partitioning;
+
+import com.ofektom.sharding.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the monthly partitions of transactions ahead of the clock and retires old ones.
+ * Partitions are created wallet.partitions.months-ahead months in advance (there is no default partition,
+ * so a missing month would reject inserts), and partitions that ended more than
+ * wallet.partitions.retention-months ago are detached and moved into the transactions_archive schema.
+ * Each shard has its own partitions and is maintained in turn.
+ */
+@Component
+public class TransactionPartitionMaintenanceJob {
+    
+    private static final Logger log = LoggerFactory.getLogger(TransactionPartitionMaintenanceJob.class);
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyy_MM");
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    
+    public TransactionPartitionMaintenanceJob(JdbcTemplate jdbcTemplate,
+                                              ShardRouter shardRouter,
+                                              @Value("${wallet.partitions.months-ahead:3}") int monthsAhead,
+                                              @Value("${wallet.partitions.retention-months:24}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.monthsAhead = Math.max(1, monthsAhead);
+        this.retentionMonths = retentionMonths;
+    }
+    
+    // Runs at startup and then periodically; each step is idempotent
+    @Scheduled(fixedDelayString = "${wallet.partitions.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        shardRouter.forEachShard(shard -> {
+            if (!isPartitioned()) {
+                return;
+            }
+            createUpcomingPartitions();
+            if (retentionMonths > 0) {
+                archiveExpiredPartitions();
+            }
+        });
+    }
+    
+    private void createUpcomingPartitions() {
+        LocalDateTime horizon = LocalDate.now().withDayOfMonth(1).plusMonths(monthsAhead + 1L).atStartOfDay();
+        LocalDateTime from = partitions().stream()
+            .map(Partition::upperBound)
+            .max(LocalDateTime::compareTo)
+            .orElse(LocalDate.now().withDayOfMonth(1).atStartOfDay());
+        while (from.isBefore(horizon)) {
+            LocalDateTime to = from.plusMonths(1);
+            String name = "transactions_" + NAME_FORMAT.format(from);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF transactions "
+                + "FOR VALUES FROM ('" + BOUND_FORMAT.format(from) + "') TO ('" + BOUND_FORMAT.format(to) + "')");
+            log.info("Created transactions partition {} for [{}, {})", name, from, to);
+            from = to;
+        }
+    }
+    
+    // DETACH ... CONCURRENTLY cannot run inside a transaction, so each statement here auto-commits
+    private void archiveExpiredPartitions() {
+        LocalDateTime expiry = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths).atStartOfDay();
+        String detachMode = serverVersion() >= 140000 ? " CONCURRENTLY" : "";
+        for (Partition partition : partitions()) {
+            if (partition.upperBound().isAfter(expiry)) {
+                continue;
+            }
+            jdbcTemplate.execute("ALTER TABLE transactions DETACH PARTITION " + partition.name() + detachMode);
+            jdbcTemplate.execute("ALTER TABLE " + partition.name() + " SET SCHEMA transactions_archive");
+            log.info("Archived transactions partition {} (rows before {}) to transactions_archive",
+                partition.name(), partition.upperBound());
+        }
+    }
+    
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'transactions'::regclass",
+            (rs, rowNum) -> new Partition(rs.getString(1), upperBound(rs.getString(2))));
+    }
+    
+    private static LocalDateTime upperBound(String bound) {
+        Matcher matcher = UPPER_BOUND.matcher(bound);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected partition bound: " + bound);
+        }
+        return LocalDateTime.parse(matcher.group(1), BOUND_FORMAT);
+    }
+    
+    // False before the partitioning migration has run, and on databases other than PostgreSQL
+    private boolean isPartitioned() {
+        try {
+            return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('transactions'))",
+                Boolean.class));
+        } catch (DataAccessException e) {
+            log.debug("Transactions partitioning not available: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    private int serverVersion() {
+        Integer version = jdbcTemplate.queryForObject("SELECT current_setting('server_version_num')::int", Integer.class);
+        return version != null ? version : 0;
+    }
+    
+    private record Partition(String name, LocalDateTime upperBound) {
+    }
+}
@@ -0,0 +1,252 @@
+package com.ofektom.reconciliation;
+
+import com.ofektom.sharding.ShardRouter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Proves that every wallet's stored balance (plus its stripes) equals its checkpoint plus the transactions
+ * recorded since, including single-entry transfers it received before double entry. Wallet-id ranges are reconciled in
+ * parallel, each in one REPEATABLE READ transaction so balances and ledger rows are read at the same instant.
+ * Checkpoints only advance to now minus wallet.reconciliation.settle-window, so a transaction that commits
+ * late is still after the checkpoint; each run therefore reads roughly one day of rows, not the whole table.
+ * Every shard is reconciled in the same run, its ranges sharing the pool with the other shards'.
+ */
+@Component
+public class LedgerReconciliationJob {
+    
+    private static final Logger log = LoggerFactory.getLogger(LedgerReconciliationJob.class);
+    
+    // Per wallet: current balance, checkpoint, and the net movement since the checkpoint (all of it, and the
+    // part up to the new cutoff that the checkpoint will absorb). Double-entry transfers appear as the wallet's
+    // own legs; transfers recorded before that only have the sender's DEBIT and are counted for the receiver here.
+    private static final String RANGE_QUERY = """
+        SELECT w.id,
+               w.opening_balance_in_minor_units AS opening,
+               w.balance_in_minor_units
+                   + COALESCE((SELECT SUM(s.balance_in_minor_units) FROM wallet_stripes s WHERE s.wallet_id = w.id), 0) AS actual,
+               sn.balance_in_minor_units AS snapshot_balance,
+               sn.last_transaction_id AS snapshot_last_id,
+               own.total + incoming.total AS unreconciled,
+               own.settled + incoming.settled AS settled,
+               GREATEST(own.last_id, incoming.last_id) AS settled_last_id
+        FROM wallets w
+        LEFT JOIN wallet_balance_snapshots sn ON sn.wallet_id = w.id
+        CROSS JOIN LATERAL (
+            SELECT COALESCE(SUM(CASE t.transaction_type WHEN 'CREDIT' THEN t.amount_in_minor_units
+                                                        ELSE -t.amount_in_minor_units END), 0) AS total,
+                   COALESCE(SUM(CASE t.transaction_type WHEN 'CREDIT' THEN t.amount_in_minor_units
+                                                        ELSE -t.amount_in_minor_units END)
+                            FILTER (WHERE t.created_at <= ?), 0) AS settled,
+                   MAX(t.id) FILTER (WHERE t.created_at <= ?) AS last_id
+            FROM transactions t
+            WHERE t.wallet_id = w.id AND t.created_at > COALESCE(sn.snapshot_at, '-infinity')
+        ) own
+        CROSS JOIN LATERAL (
+            SELECT COALESCE(SUM(t.amount_in_minor_units), 0) AS total,
+                   COALESCE(SUM(t.amount_in_minor_units) FILTER (WHERE t.created_at <= ?), 0) AS settled,
+                   MAX(t.id) FILTER (WHERE t.created_at <= ?) AS last_id
+            FROM transactions t
+            WHERE t.counterparty_wallet_id = w.id AND t.transfer_id IS NULL
+              AND t.created_at > COALESCE(sn.snapshot_at, '-infinity')
+        ) incoming
+        WHERE w.id BETWEEN ? AND ?
+        """;
+    
+    // A concurrent run on another instance may already have moved the checkpoint further
+    private static final String UPSERT_SNAPSHOT = """
+        INSERT INTO wallet_balance_snapshots (wallet_id, balance_in_minor_units, last_transaction_id, snapshot_at)
+        VALUES (?, ?, ?, ?)
+        ON CONFLICT (wallet_id) DO UPDATE
+            SET balance_in_minor_units = EXCLUDED.balance_in_minor_units,
+                last_transaction_id = EXCLUDED.last_transaction_id,
+                snapshot_at = EXCLUDED.snapshot_at
+            WHERE wallet_balance_snapshots.snapshot_at < EXCLUDED.snapshot_at
+        """;
+    
+    // Ranges start at every range-size'th wallet, since ids have gaps (pooled blocks, and per-shard id ranges)
+    private static final String RANGE_STARTS =
+        "SELECT id FROM (SELECT id, row_number() OVER (ORDER BY id) AS n FROM wallets) w WHERE (n - 1) % ? = 0 ORDER BY id";
+    
+    private static final String INSERT_DRIFT =
+        "INSERT INTO reconciliation_drift (run_at, wallet_id, expected_in_minor_units, actual_in_minor_units) "
+            + "VALUES (?, ?, ?, ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate repeatableRead;
+    private final Duration settleWindow;
+    private final int parallelism;
+    private final long rangeSize;
+    private final Timer duration;
+    private final AtomicLong driftedWallets = new AtomicLong();
+    private final AtomicLong totalDrift = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean();
+    
+    public LedgerReconciliationJob(JdbcTemplate jdbcTemplate,
+                                   ShardRouter shardRouter,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${wallet.reconciliation.settle-window:PT10M}") Duration settleWindow,
+                                   @Value("${wallet.reconciliation.parallelism:4}") int parallelism,
+                                   @Value("${wallet.reconciliation.range-size:10000}") long rangeSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.repeatableRead = new TransactionTemplate(transactionManager);
+        this.repeatableRead.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.settleWindow = settleWindow;
+        this.parallelism = Math.max(1, parallelism);
+        this.rangeSize = Math.max(1L, rangeSize);
+        this.duration = Timer.builder("wallet.reconciliation.duration")
+            .description("Time taken by a full ledger reconciliation run")
+            .register(meterRegistry);
+        Gauge.builder("wallet.reconciliation.drifted.wallets", driftedWallets, AtomicLong::get)
+            .description("Wallets whose balance disagreed with the ledger in the last run")
+            .register(meterRegistry);
+        Gauge.builder("wallet.reconciliation.drift.total", totalDrift, AtomicLong::get)
+            .description("Sum of absolute balance drift in minor units in the last run")
+            .register(meterRegistry);
+    }
+    
+    @Scheduled(cron = "${wallet.reconciliation.cron:0 30 2 * * *}")
+    public void scheduledRun() {
+        reconcile();
+    }
+    
+    // Reconciles every wallet once; returns null if a run is already in progress on this instance
+    public ReconciliationResult reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Ledger reconciliation already running, skipping");
+            return null;
+        }
+        try {
+            return duration.record(this::runAllRanges);
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    private ReconciliationResult runAllRanges() {
+        LocalDateTime runAt = LocalDateTime.now();
+        LocalDateTime cutoff = runAt.minus(settleWindow);
+        ReconciliationResult total = ReconciliationResult.empty(cutoff);
+        
+        // Pool threads do not inherit the shard binding, so every range binds its own shard
+        List<Callable<ReconciliationResult>> ranges = new ArrayList<>();
+        shardRouter.forEachShard(shard -> {
+            List<Long> starts = jdbcTemplate.queryForList(RANGE_STARTS, Long.class, rangeSize);
+            for (int i = 0; i < starts.size(); i++) {
+                long from = starts.get(i);
+                long to = i + 1 < starts.size() ? starts.get(i + 1) - 1 : Long.MAX_VALUE;
+                ranges.add(() -> shardRouter.on(shard,
+                    () -> repeatableRead.execute(status -> reconcileRange(from, to, runAt, cutoff))));
+            }
+        });
+        if (ranges.isEmpty()) {
+            return total;
+        }
+        
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        int failedRanges = 0;
+        try {
+            for (Future<ReconciliationResult> range : pool.invokeAll(ranges)) {
+                try {
+                    total = total.plus(range.get());
+                } catch (ExecutionException e) {
+                    failedRanges++;
+                    log.error("Reconciliation of a wallet range failed: {}", e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during ledger reconciliation", e);
+        } finally {
+            pool.shutdown();
+        }
+        
+        driftedWallets.set(total.walletsDrifted());
+        totalDrift.set(total.totalAbsoluteDrift());
+        if (total.walletsDrifted() > 0 || failedRanges > 0) {
+            log.warn("Ledger reconciliation found drift: checked={}, drifted={}, totalDrift={}, baselined={}, failedRanges={}, runAt={}",
+                total.walletsChecked(), total.walletsDrifted(), total.totalAbsoluteDrift(), total.walletsBaselined(),
+                failedRanges, runAt);
+        } else {
+            log.info("Ledger reconciliation clean: checked={}, baselined={}, cutoff={}",
+                total.walletsChecked(), total.walletsBaselined(), cutoff);
+        }
+        return total;
+    }
+    
+    private ReconciliationResult reconcileRange(long fromId, long toId, LocalDateTime runAt, LocalDateTime cutoff) {
+        Timestamp cutoffTs = Timestamp.valueOf(cutoff);
+        List<Object[]> snapshots = new ArrayList<>();
+        List<Object[]> drifts = new ArrayList<>();
+        long[] counts = new long[4];
+        
+        jdbcTemplate.query(RANGE_QUERY, (ResultSet rs) -> {
+            counts[0]++;
+            long walletPk = rs.getLong("id");
+            long actual = rs.getLong("actual");
+            long unreconciled = rs.getLong("unreconciled");
+            long settled = rs.getLong("settled");
+            Long snapshotBalance = nullableLong(rs, "snapshot_balance");
+            Long base = snapshotBalance != null ? snapshotBalance : nullableLong(rs, "opening");
+            Long settledLastId = nullableLong(rs, "settled_last_id");
+            
+            long checkpoint;
+            if (base == null) {
+                // Wallet predates opening balances and has no checkpoint: take its current balance as given once
+                checkpoint = actual - unreconciled + settled;
+                counts[1]++;
+            } else {
+                long expected = base + unreconciled;
+                if (expected != actual) {
+                    drifts.add(new Object[] {Timestamp.valueOf(runAt), walletPk, expected, actual});
+                    counts[2]++;
+                    counts[3] += Math.abs(actual - expected);
+                    log.debug("Ledger drift: walletPk={}, expected={}, actual={}", walletPk, expected, actual);
+                }
+                checkpoint = base + settled;
+            }
+            
+            // Nothing settled since an existing checkpoint means it is still exact; skip the write
+            if (snapshotBalance == null || settledLastId != null) {
+                Long lastId = settledLastId != null ? settledLastId : nullableLong(rs, "snapshot_last_id");
+                snapshots.add(new Object[] {walletPk, checkpoint, lastId, cutoffTs});
+            }
+        }, cutoffTs, cutoffTs, cutoffTs, cutoffTs, fromId, toId);
+        
+        jdbcTemplate.batchUpdate(UPSERT_SNAPSHOT, snapshots);
+        jdbcTemplate.batchUpdate(INSERT_DRIFT, drifts);
+        return new ReconciliationResult(cutoff, counts[0], counts[1], counts[2], counts[3]);
+    }
+    
+    private static Long nullableLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+}
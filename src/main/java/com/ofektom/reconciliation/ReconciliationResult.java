@@ -0,0 +1,29 @@
+package com.ofektom.reconciliation;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of one reconciliation run (or of one wallet-id range within it).
+ * totalAbsoluteDrift is the sum of |actual - expected| over the drifted wallets, in minor units.
+ */
+public record ReconciliationResult(
+    LocalDateTime cutoff,
+    long walletsChecked,
+    long walletsBaselined,
+    long walletsDrifted,
+    long totalAbsoluteDrift
+) {
+    public static ReconciliationResult empty(LocalDateTime cutoff) {
+        return new ReconciliationResult(cutoff, 0L, 0L, 0L, 0L);
+    }
+    
+    public ReconciliationResult plus(ReconciliationResult other) {
+        return new ReconciliationResult(
+            cutoff,
+            walletsChecked + other.walletsChecked,
+            walletsBaselined + other.walletsBaselined,
+            walletsDrifted + other.walletsDrifted,
+            totalAbsoluteDrift + other.totalAbsoluteDrift
+        );
+    }
+}
@@ -0,0 +1,39 @@
+package com.ofektom.replica;
+
+import com.ofektom.exception.BadRequestException;
+
+import java.util.Locale;
+
+/**
+ * Read-your-writes token: a PostgreSQL WAL position in its usual text form (e.g. "16/B374D848").
+ * Data read under a token is at least as new as that position, so a client that sends back the newest token it
+ * has seen never reads an older state than one it already saw or wrote.
+ */
+public final class ConsistencyToken {
+    
+    public static final String HEADER = "X-Consistency-Token";
+    
+    private ConsistencyToken() {
+    }
+    
+    public static String encode(long lsn) {
+        return (Long.toHexString(lsn >>> 32) + "/" + Long.toHexString(lsn & 0xFFFFFFFFL)).toUpperCase(Locale.ROOT);
+    }
+    
+    public static long decode(String token) {
+        int separator = token.indexOf('/');
+        try {
+            if (separator < 1) {
+                throw new NumberFormatException(token);
+            }
+            long high = Long.parseLong(token.substring(0, separator), 16);
+            long low = Long.parseLong(token.substring(separator + 1), 16);
+            if (high > 0xFFFFFFFFL || low > 0xFFFFFFFFL || high < 0 || low < 0) {
+                throw new NumberFormatException(token);
+            }
+            return high << 32 | low;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid consistency token: " + token);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ofektom.replica;
+
+import com.ofektom.exception.ApiError;
+import com.ofektom.exception.ValidationError;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds X-Consistency-Token to successful write responses. The controller has returned, so the write has committed
+ * and the primary's current position covers it; this costs one query per write, and only while replicas are on.
+ */
+@ControllerAdvice
+public class ConsistencyTokenAdvice implements ResponseBodyAdvice<Object> {
+    
+    private final ReplicaRouter replicaRouter;
+    
+    public ConsistencyTokenAdvice(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
+    
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return replicaRouter.isEnabled();
+    }
+    
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        boolean write = request.getMethod() == HttpMethod.POST || request.getMethod() == HttpMethod.PUT;
+        if (write && body != null && !(body instanceof ApiError) && !(body instanceof ValidationError)) {
+            String token = replicaRouter.currentPrimaryToken();
+            if (token != null) {
+                response.getHeaders().set(ConsistencyToken.HEADER, token);
+            }
+        }
+        return body;
+    }
+}
@@ -0,0 +1,49 @@
+package com.ofektom.replica;
+
+import com.ofektom.exception.BadRequestException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Makes the request's X-Consistency-Token the minimum WAL position its read-only transactions may see.
+ * Statement exports stream on another thread and so only get the lag bound, not the token.
+ */
+@Component
+public class ConsistencyTokenFilter extends OncePerRequestFilter {
+    
+    private final ReplicaRouter replicaRouter;
+    
+    public ConsistencyTokenFilter(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
+    
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !replicaRouter.isEnabled();
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String token = request.getHeader(ConsistencyToken.HEADER);
+        if (token != null && !token.isBlank()) {
+            try {
+                replicaRouter.requireAtLeast(ConsistencyToken.decode(token.trim()));
+            } catch (BadRequestException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            replicaRouter.clear();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ofektom.replica;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the auto-configured DataSource when wallet.replica.urls is set: the primary pool keeps every
+ * spring.datasource.* setting, each replica gets its own read-only pool, and the application-wide DataSource
+ * routes between them per transaction. Flyway, Hibernate schema checks and all writes still go to the primary.
+ * Backs off when wallet.shard.urls is set, whose configuration rejects the combination at startup.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "wallet.replica.urls")
+@ConditionalOnExpression("'${wallet.shard.urls:}'.isEmpty()")
+public class ReplicaDataSourceConfig {
+    
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+    
+    // Replica pools start without connecting, so a replica that is down at startup only means reads use the primary
+    @Bean
+    public ReplicaPools replicaPools(HikariDataSource primaryDataSource,
+                                     DataSourceProperties properties,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${wallet.replica.urls}") List<String> urls,
+                                     @Value("${wallet.replica.username:${spring.datasource.username:}}") String username,
+                                     @Value("${wallet.replica.password:${spring.datasource.password:}}") String password,
+                                     @Value("${wallet.replica.pool-size:10}") int poolSize) {
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            String name = "replica-" + replicas.size();
+            HikariConfig config = new HikariConfig();
+            config.setPoolName(name);
+            config.setJdbcUrl(url.trim());
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setDriverClassName(properties.determineDriverClassName());
+            config.setMaximumPoolSize(poolSize);
+            config.setReadOnly(true);
+            config.setInitializationFailTimeout(-1);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.put(name, new HikariDataSource(config));
+        }
+        return new ReplicaPools(primaryDataSource, replicas);
+    }
+    
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaPools replicaPools, ReplicaRouter replicaRouter) {
+        Map<Object, Object> targets = new HashMap<>(replicaPools.replicas());
+        targets.put(ReplicaRouter.PRIMARY, replicaPools.primary());
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(replicaRouter);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(replicaPools.primary());
+        routing.afterPropertiesSet();
+        
+        // Defaults are given so the proxy never opens a connection just to learn them
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routing);
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return proxy;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ofektom.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * The primary connection pool and one pool per read replica, keyed by replica name (replica-0, replica-1, ...).
+ * Only exists when wallet.replica.urls is set.
+ */
+public record ReplicaPools(DataSource primary, Map<String, HikariDataSource> replicas) implements AutoCloseable {
+    
+    @Override
+    public void close() {
+        replicas.values().forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,198 @@
+package com.ofektom.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which pool each connection comes from and tracks how far every read replica has replayed the primary's WAL.
+ * Read-only transactions go to a replica whose lag is within wallet.replica.max-lag and which has replayed the
+ * request's consistency token; otherwise, and for every read-write transaction, the primary is used.
+ * Lag is measured against sampled primary positions rather than replay timestamps, so an idle replica is not lagging.
+ * Without wallet.replica.urls everything is a no-op.
+ */
+@Component
+public class ReplicaRouter {
+    
+    static final String PRIMARY = "primary";
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRouter.class);
+    private static final String PRIMARY_POSITION = "SELECT (pg_current_wal_lsn() - '0/0'::pg_lsn)::bigint";
+    private static final String REPLAY_POSITION = "SELECT (pg_last_wal_replay_lsn() - '0/0'::pg_lsn)::bigint";
+    
+    private record Sample(long atNanos, long lsn) {
+    }
+    
+    // replayedLsn is -1 while the replica cannot be read or is not in recovery
+    private record ReplicaState(long replayedLsn, long lagNanos) {
+        private static final ReplicaState UNAVAILABLE = new ReplicaState(-1, Long.MAX_VALUE);
+    }
+    
+    private final ReplicaPools pools;
+    private final JdbcTemplate primary;
+    private final Map<String, JdbcTemplate> replicas = new HashMap<>();
+    private final List<String> replicaNames;
+    private final Map<String, ReplicaState> states = new ConcurrentHashMap<>();
+    private final Map<String, Counter> routedReads = new HashMap<>();
+    private final Deque<Sample> primarySamples = new ArrayDeque<>();
+    private final long maxLagNanos;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Counter primaryFallbacks;
+    private volatile long primaryLsn;
+    
+    private final ThreadLocal<Long> requiredLsn = new ThreadLocal<>();
+    private final ThreadLocal<Long> servedLsn = new ThreadLocal<>();
+    
+    public ReplicaRouter(ObjectProvider<ReplicaPools> replicaPools,
+                         MeterRegistry meterRegistry,
+                         @Value("${wallet.replica.max-lag:PT1S}") Duration maxLag) {
+        this.pools = replicaPools.getIfAvailable();
+        this.maxLagNanos = maxLag.toNanos();
+        this.primary = pools == null ? null : new JdbcTemplate(pools.primary());
+        this.replicaNames = pools == null ? List.of() : List.copyOf(pools.replicas().keySet());
+        for (String name : replicaNames) {
+            HikariDataSource replica = pools.replicas().get(name);
+            replicas.put(name, new JdbcTemplate(replica));
+            states.put(name, ReplicaState.UNAVAILABLE);
+            routedReads.put(name, Counter.builder("wallet.replica.reads")
+                .description("Read-only transactions served by a replica")
+                .tag("replica", name)
+                .register(meterRegistry));
+            Gauge.builder("wallet.replica.lag", states, s -> lagSeconds(s.get(name)))
+                .description("How far the replica's replayed WAL trails the primary, in seconds (NaN while unavailable)")
+                .tag("replica", name)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        }
+        this.primaryFallbacks = Counter.builder("wallet.replica.fallbacks")
+            .description("Read-only transactions sent to the primary because no replica was fresh enough")
+            .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return pools != null;
+    }
+    
+    // Called with the client's token for the duration of a request; reads must reflect at least this position
+    public void requireAtLeast(long lsn) {
+        requiredLsn.set(lsn);
+    }
+    
+    public boolean hasRequirement() {
+        return requiredLsn.get() != null;
+    }
+    
+    public void clear() {
+        requiredLsn.remove();
+        servedLsn.remove();
+    }
+    
+    // Lower bound of what the current thread's last read-only transaction saw, or null when routing is off
+    public String servedToken() {
+        Long lsn = servedLsn.get();
+        return lsn == null ? null : ConsistencyToken.encode(lsn);
+    }
+    
+    // The primary's position right now: a token covering every write that has already committed
+    public String currentPrimaryToken() {
+        if (primary == null) {
+            return null;
+        }
+        Long lsn = primary.queryForObject(PRIMARY_POSITION, Long.class);
+        return lsn == null ? null : ConsistencyToken.encode(lsn);
+    }
+    
+    // Lookup key for ReplicaRoutingDataSource; replicas are tried round-robin so load spreads evenly
+    Object route() {
+        if (pools == null || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        Long required = requiredLsn.get();
+        long minimum = required == null ? 0 : required;
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(1, replicaNames.size()));
+        for (int i = 0; i < replicaNames.size(); i++) {
+            String name = replicaNames.get((start + i) % replicaNames.size());
+            ReplicaState state = states.get(name);
+            if (state.lagNanos() <= maxLagNanos && state.replayedLsn() >= minimum) {
+                servedLsn.set(Math.max(minimum, state.replayedLsn()));
+                routedReads.get(name).increment();
+                return name;
+            }
+        }
+        primaryFallbacks.increment();
+        servedLsn.set(Math.max(minimum, primaryLsn));
+        return PRIMARY;
+    }
+    
+    /**
+     * Samples the primary's WAL position, then each replica's replayed position. A replica's lag is the age of the
+     * newest primary sample it has replayed past; if it has replayed the latest sample, it is not lagging.
+     */
+    @Scheduled(fixedDelayString = "${wallet.replica.poll-interval-ms:100}")
+    public void poll() {
+        if (pools == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            Long lsn = primary.queryForObject(PRIMARY_POSITION, Long.class);
+            if (lsn != null) {
+                primaryLsn = lsn;
+                primarySamples.addLast(new Sample(now, lsn));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not read primary WAL position: {}", e.getMessage());
+        }
+        // Samples older than twice the allowed lag can only prove a lag we would reject anyway
+        while (primarySamples.size() > 1 && now - primarySamples.peekFirst().atNanos() > 2 * maxLagNanos) {
+            primarySamples.removeFirst();
+        }
+        
+        for (String name : replicaNames) {
+            ReplicaState previous = states.get(name);
+            ReplicaState current;
+            try {
+                Long replayed = replicas.get(name).queryForObject(REPLAY_POSITION, Long.class);
+                current = replayed == null ? ReplicaState.UNAVAILABLE : new ReplicaState(replayed, lagNanos(replayed, now));
+            } catch (DataAccessException e) {
+                current = ReplicaState.UNAVAILABLE;
+            }
+            states.put(name, current);
+            if ((previous.lagNanos() <= maxLagNanos) != (current.lagNanos() <= maxLagNanos)) {
+                log.info("Replica {} is now {}", name, current.lagNanos() <= maxLagNanos ? "serving reads" : "lagging or unavailable");
+            }
+        }
+    }
+    
+    private long lagNanos(long replayedLsn, long now) {
+        for (var samples = primarySamples.descendingIterator(); samples.hasNext(); ) {
+            Sample sample = samples.next();
+            if (sample.lsn() <= replayedLsn) {
+                return sample == primarySamples.peekLast() ? 0 : now - sample.atNanos();
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+    
+    private static double lagSeconds(ReplicaState state) {
+        return state.lagNanos() == Long.MAX_VALUE ? Double.NaN : state.lagNanos() / 1e9;
+    }
+}
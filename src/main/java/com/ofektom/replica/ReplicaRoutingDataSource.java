@@ -0,0 +1,22 @@
+package com.ofektom.replica;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Picks the primary or a replica pool per physical connection, as decided by ReplicaRouter.
+ * Wrapped in a LazyConnectionDataSourceProxy so the connection is only taken once the transaction's
+ * read-only flag is known.
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    
+    private final ReplicaRouter router;
+    
+    ReplicaRoutingDataSource(ReplicaRouter router) {
+        this.router = router;
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return router.route();
+    }
+}
@@ -2,8 +2,15 @@ package com.ofektom.repository;
 
 import com.ofektom.model.IdempotencyKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -16,5 +23,20 @@ public interface IdempotencyRepository extends JpaRepository<IdempotencyKey, Lon
     
     // Checks if idempotency key exists (for quick duplicate detection)
     boolean existsByKeyValue(String keyValue);
+    
+    // Returns which of the given keys already exist, in a single query (for batch duplicate detection)
+    @Query("SELECT k.keyValue FROM IdempotencyKey k WHERE k.keyValue IN :keyValues")
+    List<String> findExistingKeyValues(@Param("keyValues") Collection<String> keyValues);
+    
+    // Deletes up to batchSize expired keys in one short transaction (oldest-first via idx_idempotency_created_at)
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE id IN "
+        + "(SELECT id FROM idempotency_keys WHERE created_at < :cutoff ORDER BY created_at LIMIT :batchSize)",
+        nativeQuery = true)
+    int deleteExpiredBatch(@Param("cutoff") LocalDateTime cutoff, @Param("batchSize") int batchSize);
+    
+    // Planner statistics estimate; avoids a full COUNT(*) on a large table
+    @Query(value = "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE relname = 'idempotency_keys'", nativeQuery = true)
+    long estimateRowCount();
 }
-
@@ -0,0 +1,13 @@
+package com.ofektom.repository;
+
+import com.ofektom.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interface for outbox inserts on the JPA write path.
+ * Sequencing, relaying and purging work on the table directly (see OutboxRelay).
+ */
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+}
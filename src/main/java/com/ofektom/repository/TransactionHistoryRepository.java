@@ -0,0 +1,17 @@
+package com.ofektom.repository;
+
+import com.ofektom.enums.TransactionType;
+import com.ofektom.utils.TransactionCursor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Custom repository fragment for reading a wallet's transaction history with keyset pagination.
+ */
+public interface TransactionHistoryRepository {
+    
+    // Newest first; filters and cursor are optional (null), and only the predicates in use are rendered
+    List<TransactionHistoryRow> findHistoryPage(Long walletPk, TransactionType type, LocalDateTime from,
+                                                LocalDateTime to, TransactionCursor after, int limit);
+}
@@ -0,0 +1,63 @@
+package com.ofektom.repository;
+
+import com.ofektom.enums.TransactionType;
+import com.ofektom.utils.TransactionCursor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Keyset pagination over (wallet_id, created_at, id), matching idx_transaction_wallet_created.
+ * The query is assembled per call instead of using "(:param IS NULL OR ...)" so each filter combination
+ * gets its own plan and the cursor stays an index range condition.
+ */
+public class TransactionHistoryRepositoryImpl implements TransactionHistoryRepository {
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Override
+    public List<TransactionHistoryRow> findHistoryPage(Long walletPk, TransactionType type, LocalDateTime from,
+                                                       LocalDateTime to, TransactionCursor after, int limit) {
+        StringBuilder jpql = new StringBuilder(
+            "SELECT new com.ofektom.repository.TransactionHistoryRow("
+                + "t.id, t.transactionId, t.transactionType, t.amountInMinorUnits, t.createdAt) "
+                + "FROM Transaction t WHERE t.wallet.id = :walletPk");
+        if (type != null) {
+            jpql.append(" AND t.transactionType = :type");
+        }
+        if (from != null) {
+            jpql.append(" AND t.createdAt >= :from");
+        }
+        if (to != null) {
+            jpql.append(" AND t.createdAt < :to");
+        }
+        if (after != null) {
+            // The redundant "<=" bound lets the planner turn the cursor into an index range start
+            jpql.append(" AND t.createdAt <= :afterCreatedAt"
+                + " AND (t.createdAt < :afterCreatedAt OR t.id < :afterId)");
+        }
+        jpql.append(" ORDER BY t.createdAt DESC, t.id DESC");
+        
+        TypedQuery<TransactionHistoryRow> query = entityManager.createQuery(jpql.toString(), TransactionHistoryRow.class)
+            .setParameter("walletPk", walletPk)
+            .setMaxResults(limit);
+        if (type != null) {
+            query.setParameter("type", type);
+        }
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        if (after != null) {
+            query.setParameter("afterCreatedAt", after.createdAt());
+            query.setParameter("afterId", after.id());
+        }
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,30 @@
+package com.ofektom.repository;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.utils.Money;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row of a wallet's transaction history, selected straight from the transactions table.
+ * Carries the primary key only as the keyset tie-breaker; no entity is hydrated.
+ */
+public record TransactionHistoryRow(
+    Long id,
+    String transactionId,
+    TransactionType transactionType,
+    Long amountInMinorUnits,
+    LocalDateTime createdAt
+) {
+    public TransactionResponse toResponse(String walletId) {
+        return new TransactionResponse(
+            transactionId,
+            walletId,
+            transactionType.name(),
+            amountInMinorUnits,
+            Money.toMajorUnits(amountInMinorUnits),
+            createdAt
+        );
+    }
+}
@@ -4,13 +4,16 @@ import com.ofektom.model.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 /**
  * Repository interface for Transaction persistence operations.
+ * History paging lives in the TransactionHistoryRepository fragment.
  */
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
-    Optional<Transaction> findByTransactionId(String transactionId);
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, TransactionHistoryRepository {
+    // The time window lets PostgreSQL prune to the partitions it covers instead of probing every month
+    Optional<Transaction> findByTransactionIdAndCreatedAtBetween(String transactionId, LocalDateTime from, LocalDateTime to);
 }
 
@@ -8,6 +8,8 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import jakarta.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -22,8 +24,21 @@ public interface WalletRepository extends JpaRepository<Wallet, Long> {
     @Query("SELECT w FROM Wallet w WHERE w.walletId = :walletId")
     Optional<Wallet> findByWalletIdWithLock(@Param("walletId") String walletId);
     
+    // Locks all given wallets in one statement; rows are locked in walletId order so concurrent batches cannot deadlock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM Wallet w WHERE w.walletId IN :walletIds ORDER BY w.walletId")
+    List<Wallet> findAllByWalletIdInWithLock(@Param("walletIds") Collection<String> walletIds);
+    
     // Finds wallet by business identifier without locking (for read operations)
     Optional<Wallet> findByWalletId(String walletId);
     
     boolean existsByWalletId(String walletId);
+    
+    // Resolves the primary key only, for queries that filter child tables by wallet
+    @Query("SELECT w.id FROM Wallet w WHERE w.walletId = :walletId")
+    Optional<Long> findIdByWalletId(@Param("walletId") String walletId);
+    
+    // Lists wallets running in hot-wallet (striped) mode
+    @Query("SELECT w FROM Wallet w WHERE w.stripeCount > 0")
+    List<Wallet> findAllStriped();
 }
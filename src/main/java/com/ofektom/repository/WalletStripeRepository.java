@@ -0,0 +1,35 @@
+package com.ofektom.repository;
+
+import com.ofektom.model.WalletStripe;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for hot-wallet stripe persistence operations.
+ * Queries filter on the wallet foreign key directly so only stripe rows are read and locked.
+ */
+@Repository
+public interface WalletStripeRepository extends JpaRepository<WalletStripe, Long> {
+    
+    // Locks a single stripe (credit path) without touching the parent wallet row
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM WalletStripe s WHERE s.wallet.id = :walletPk AND s.stripeIndex = :stripeIndex")
+    Optional<WalletStripe> findStripeWithLock(@Param("walletPk") Long walletPk, @Param("stripeIndex") Integer stripeIndex);
+    
+    // Locks every stripe of a wallet in index order (debit/sweep path)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM WalletStripe s WHERE s.wallet.id = :walletPk ORDER BY s.stripeIndex")
+    List<WalletStripe> findAllByWalletPkWithLock(@Param("walletPk") Long walletPk);
+    
+    // The wallet row plus every stripe, read by one statement so both come from the same snapshot
+    @Query("SELECT w.balanceInMinorUnits + COALESCE((SELECT SUM(s.balanceInMinorUnits) FROM WalletStripe s "
+        + "WHERE s.wallet.id = w.id), 0) FROM Wallet w WHERE w.id = :walletPk")
+    long totalBalanceByWalletPk(@Param("walletPk") Long walletPk);
+}
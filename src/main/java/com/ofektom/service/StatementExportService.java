@@ -0,0 +1,22 @@
+package com.ofektom.service;
+
+import com.ofektom.enums.ExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+
+/**
+ * Service interface for statement exports.
+ * prepare() validates the request and resolves the wallet before anything is streamed, so errors still
+ * get a proper status code; export() then writes every matching transaction to the output.
+ */
+public interface StatementExportService {
+    
+    // walletPk and walletId are null for an export across all wallets
+    record StatementQuery(Long walletPk, String walletId, LocalDateTime from, LocalDateTime to) {
+    }
+    
+    StatementQuery prepare(String walletId, LocalDateTime from, LocalDateTime to);
+    void export(StatementQuery query, ExportFormat format, OutputStream output) throws IOException;
+}
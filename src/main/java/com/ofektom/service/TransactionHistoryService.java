@@ -0,0 +1,14 @@
+package com.ofektom.service;
+
+import com.ofektom.dto.response.TransactionPageResponse;
+
+import java.time.LocalDateTime;
+
+/**
+ * Service interface for reading transaction history.
+ * Independent of the execution engine that wrote the transactions.
+ */
+public interface TransactionHistoryService {
+    TransactionPageResponse getTransactions(String walletId, String type, LocalDateTime from, LocalDateTime to,
+                                            String cursor, int limit);
+}
@@ -1,7 +1,9 @@
 package com.ofektom.service;
 
+import com.ofektom.dto.request.BatchTransferRequest;
 import com.ofektom.dto.request.TransactionRequest;
 import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferResponse;
 import com.ofektom.dto.response.TransactionResponse;
 
 /**
@@ -11,5 +13,6 @@ import com.ofektom.dto.response.TransactionResponse;
 public interface TransactionService {
     TransactionResponse processTransaction(TransactionRequest request);
     TransactionResponse transfer(TransferRequest request);
+    BatchTransferResponse batchTransfer(BatchTransferRequest request);
 }
 
@@ -0,0 +1,15 @@
+package com.ofektom.service;
+
+import com.ofektom.enums.BulkInputFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Service interface for bulk wallet provisioning.
+ * Defines contract for streaming many wallet creations from one request body.
+ */
+public interface WalletProvisioningService {
+    void provisionWallets(InputStream input, BulkInputFormat format, OutputStream output) throws IOException;
+}
@@ -1,6 +1,7 @@
 package com.ofektom.service;
 
 import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.request.HotWalletRequest;
 import com.ofektom.dto.response.WalletResponse;
 
 /**
@@ -10,4 +11,5 @@ import com.ofektom.dto.response.WalletResponse;
 public interface WalletService {
     WalletResponse createWallet(CreateWalletRequest request);
     WalletResponse getWallet(String walletId);
+    WalletResponse configureStripes(String walletId, HotWalletRequest request);
 }
@@ -0,0 +1,79 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.BalanceEventType;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.model.Wallet;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Single-statement credit/debit for wallet.write-mode=conditional.
+ * The balance check is the UPDATE's WHERE clause instead of a prior SELECT ... FOR UPDATE, and the ledger row,
+ * outbox event and idempotency key are inserted by the same statement, so an operation is one round trip
+ * plus the commit. Concurrent writers to one wallet queue on its row lock and PostgreSQL re-evaluates the
+ * WHERE clause against the committed balance, so there are no lost updates and no deadlocks to retry.
+ */
+@Component
+public class ConditionalLedgerWriter {
+    
+    // Every insert selects FROM the updated row, so nothing is written when the condition fails; a raw
+    // nextval() reserves a whole pooled-lo block, so these ids never collide with Hibernate's
+    private static final String APPLY = """
+        WITH wallet AS (
+            UPDATE wallets
+            SET balance_in_minor_units = balance_in_minor_units + ?, version = version + 1, updated_at = ?
+            WHERE wallet_id = ? AND stripe_count = 0 AND balance_in_minor_units + ? >= 0
+            RETURNING id, wallet_id, balance_in_minor_units, version, created_at, updated_at
+        ), ledger AS (
+            INSERT INTO transactions (id, transaction_id, wallet_id, transaction_type, amount_in_minor_units, created_at)
+            SELECT nextval('transactions_seq'), ?, id, ?, ?, ? FROM wallet
+        ), outbox AS (
+            INSERT INTO outbox_events (id, event_type, wallet_id, transaction_id, amount_in_minor_units,
+                                       balance_after_in_minor_units, created_at)
+            SELECT nextval('outbox_events_seq'), ?, wallet_id, ?, ?, balance_in_minor_units, ? FROM wallet
+        ), claim AS (
+            INSERT INTO idempotency_keys (id, key_value, request_fingerprint, response_body, created_at)
+            SELECT nextval('idempotency_keys_seq'), ?, ?, ?, ? FROM wallet
+        )
+        SELECT id, wallet_id, balance_in_minor_units, version, created_at, updated_at FROM wallet
+        """;
+    
+    // The updated row as the entity would see it after commit, so the balance cache can merge it by version
+    private static final RowMapper<Wallet> UPDATED_WALLET = (rs, rowNum) -> {
+        Wallet wallet = new Wallet(rs.getLong("id"), rs.getString("wallet_id"), rs.getLong("balance_in_minor_units"),
+            rs.getTimestamp("created_at").toLocalDateTime(), rs.getTimestamp("updated_at").toLocalDateTime(),
+            rs.getLong("version"));
+        wallet.setStripeCount(0);
+        return wallet;
+    };
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    public ConditionalLedgerWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    /**
+     * Applies the transaction described by response and claims its idempotency key.
+     * Returns the updated wallet (new balance and version), or empty if nothing was written: the wallet does not
+     * exist, is striped, or a debit would overdraw it. A duplicate key fails the whole statement with a unique violation.
+     */
+    public Optional<Wallet> apply(TransactionResponse response, TransactionType type, String idempotencyKey,
+                              String requestFingerprint, String responseBody) {
+        long amount = response.amountInMinorUnits();
+        long delta = type == TransactionType.CREDIT ? amount : -amount;
+        Timestamp createdAt = Timestamp.valueOf(response.createdAt());
+        List<Wallet> updated = jdbcTemplate.query(APPLY, UPDATED_WALLET,
+            delta, createdAt, response.walletId(), delta,
+            response.transactionId(), type.name(), amount, createdAt,
+            BalanceEventType.of(type, false).name(), response.transactionId(), amount, createdAt,
+            idempotencyKey, requestFingerprint, responseBody, createdAt);
+        return updated.stream().findFirst();
+    }
+}
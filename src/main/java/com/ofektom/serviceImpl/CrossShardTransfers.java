@@ -0,0 +1,366 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.cache.WalletBalanceCache;
+import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.exception.ServiceUnavailableException;
+import com.ofektom.idempotency.IdempotencyGuard;
+import com.ofektom.idempotency.IdempotentResult;
+import com.ofektom.model.IdempotencyKey;
+import com.ofektom.model.OutboxEvent;
+import com.ofektom.model.Transaction;
+import com.ofektom.model.Wallet;
+import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.repository.OutboxEventRepository;
+import com.ofektom.repository.TransactionRepository;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.DatabaseBulkhead;
+import com.ofektom.utils.LedgerMetrics;
+import com.ofektom.utils.Money;
+import com.ofektom.utils.ResponseMapper;
+import com.ofektom.utils.TransientFailureRetrier;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Transfers between wallets on different shards, run as a saga of local transactions.
+ * Hold: on the sender's shard, debit the sender, write the DEBIT leg, a HELD row in transfer_holds and the
+ * idempotency key without a response. Credit: on the receiver's shard, credit the receiver and write the CREDIT leg,
+ * deduplicated by transfer_receipts. Finalize: mark the hold COMMITTED and store the response on the key.
+ * If the receiver cannot be credited, the hold is compensated: a reversing CREDIT, the hold RELEASED and the key
+ * dropped so the request can be retried. Holds left HELD by a crash or an unreachable shard are driven forward by
+ * recover(), which claims them first so instances do not run the same holds; every step is idempotent, so recovery
+ * and a slow request may still safely race.
+ */
+@Component
+public class CrossShardTransfers {
+    
+    private static final Logger log = LoggerFactory.getLogger(CrossShardTransfers.class);
+    private static final String TRANSFER = "transfer";
+    private static final String COMMITTED = "COMMITTED";
+    private static final String RELEASED = "RELEASED";
+    
+    private static final String INSERT_HOLD =
+        "INSERT INTO transfer_holds (transfer_id, sender_wallet_id, receiver_wallet_id, amount_in_minor_units, "
+            + "idempotency_key, request_fingerprint, response_body, status, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, 'HELD', ?, ?)";
+    private static final String INSERT_RECEIPT =
+        "INSERT INTO transfer_receipts (transfer_id, receiver_wallet_id, created_at) VALUES (?, ?, ?) "
+            + "ON CONFLICT (transfer_id) DO NOTHING";
+    private static final String SETTLE_HOLD =
+        "UPDATE transfer_holds SET status = ?, reversal_transaction_id = ?, updated_at = ? "
+            + "WHERE transfer_id = ? AND status = 'HELD'";
+    private static final String LOCK_HELD =
+        "SELECT transfer_id FROM transfer_holds WHERE transfer_id = ? AND status = 'HELD' FOR UPDATE";
+    private static final String STORE_RESPONSE = "UPDATE idempotency_keys SET response_body = ? WHERE key_value = ?";
+    private static final String DROP_KEY = "DELETE FROM idempotency_keys WHERE key_value = ?";
+    // Pushing updated_at forward is the claim: other instances skip the locked rows now and see the holds as
+    // fresh until stale-after passes again, which is also when a crashed claimer's holds become due
+    private static final String CLAIM_STALE =
+        "UPDATE transfer_holds SET updated_at = ? WHERE transfer_id IN ("
+            + "SELECT transfer_id FROM transfer_holds WHERE status = 'HELD' AND updated_at < ? "
+            + "ORDER BY updated_at LIMIT ? FOR UPDATE SKIP LOCKED) "
+            + "RETURNING transfer_id, sender_wallet_id, receiver_wallet_id, amount_in_minor_units, idempotency_key, "
+            + "request_fingerprint, response_body";
+    
+    private static final RowMapper<Hold> HOLD_MAPPER = (rs, rowNum) -> new Hold(
+        rs.getString("transfer_id"),
+        rs.getString("sender_wallet_id"),
+        rs.getString("receiver_wallet_id"),
+        rs.getLong("amount_in_minor_units"),
+        rs.getString("idempotency_key"),
+        rs.getString("request_fingerprint"),
+        rs.getString("response_body"));
+    
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final IdempotencyRepository idempotencyRepository;
+    private final OutboxEventRepository outboxEventRepository;
+    private final IdempotencyGuard idempotencyGuard;
+    private final HotWalletLedger hotWalletLedger;
+    private final WalletBalanceCache walletBalanceCache;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransientFailureRetrier retrier;
+    private final DatabaseBulkhead bulkhead;
+    private final LedgerMetrics metrics;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate readCommitted;
+    private final Duration staleAfter;
+    private final int recoveryBatchSize;
+    
+    public CrossShardTransfers(WalletRepository walletRepository,
+                               TransactionRepository transactionRepository,
+                               IdempotencyRepository idempotencyRepository,
+                               OutboxEventRepository outboxEventRepository,
+                               IdempotencyGuard idempotencyGuard,
+                               HotWalletLedger hotWalletLedger,
+                               WalletBalanceCache walletBalanceCache,
+                               ShardRouter shardRouter,
+                               JdbcTemplate jdbcTemplate,
+                               TransientFailureRetrier retrier,
+                               DatabaseBulkhead bulkhead,
+                               LedgerMetrics metrics,
+                               MeterRegistry meterRegistry,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${wallet.shard.saga.stale-after:PT30S}") Duration staleAfter,
+                               @Value("${wallet.shard.saga.recovery-batch-size:100}") int recoveryBatchSize) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.idempotencyRepository = idempotencyRepository;
+        this.outboxEventRepository = outboxEventRepository;
+        this.idempotencyGuard = idempotencyGuard;
+        this.hotWalletLedger = hotWalletLedger;
+        this.walletBalanceCache = walletBalanceCache;
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.retrier = retrier;
+        this.bulkhead = bulkhead;
+        this.metrics = metrics;
+        this.meterRegistry = meterRegistry;
+        this.readCommitted = new TransactionTemplate(transactionManager);
+        this.readCommitted.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        this.staleAfter = staleAfter;
+        this.recoveryBatchSize = Math.max(1, recoveryBatchSize);
+    }
+    
+    // One in-flight transfer as recorded on the sender's shard
+    private record Hold(String transferId, String senderWalletId, String receiverWalletId, long amountInMinorUnits,
+                        String idempotencyKey, String requestFingerprint, String responseBody) {
+    }
+    
+    /**
+     * Runs the saga for a transfer whose wallets live on different shards; the caller has already checked the key.
+     * Returns the sender's DEBIT leg like a local transfer. If the receiver's shard cannot be reached after the
+     * hold, the request gets a 503: recovery completes the transfer, and a retry with the same key replays it.
+     */
+    public TransactionResponse transfer(TransferRequest request, String fingerprint) {
+        String senderWalletId = request.senderWalletId();
+        String receiverWalletId = request.receiverWalletId();
+        
+        // A missing receiver is the one failure that would need compensating, so rule it out before any funds move
+        if (!shardRouter.onWallet(receiverWalletId, () -> walletRepository.existsByWalletId(receiverWalletId))) {
+            log.warn("Receiver wallet not found: {}", receiverWalletId);
+            throw new NotFoundException("Receiver wallet not found: " + receiverWalletId);
+        }
+        
+        String transferId = UUID.randomUUID().toString();
+        TransactionResponse response;
+        try {
+            response = shardRouter.onWallet(senderWalletId, () -> write(() -> hold(request, fingerprint, transferId)));
+        } catch (DataIntegrityViolationException e) {
+            if (!isIdempotencyKeyViolation(e)) {
+                throw e;
+            }
+            // Another request claimed the key first; it may still be in flight, which replays as a 409
+            log.warn("Idempotency key collision during {}", TRANSFER);
+            return shardRouter.onWallet(senderWalletId,
+                () -> idempotencyGuard.replayCommitted(request.idempotencyKey(), fingerprint));
+        }
+        Hold hold = new Hold(transferId, senderWalletId, receiverWalletId, request.amountInMinorUnits(),
+            request.idempotencyKey(), fingerprint, idempotencyGuard.toResponseBody(response));
+        
+        if (!complete(hold, response)) {
+            throw new ServiceUnavailableException("Transfer " + transferId + " is held and will be completed shortly; "
+                + "retry with the same idempotency key for its result", staleAfter.toSeconds());
+        }
+        
+        log.info("Cross-shard transfer completed: transactionId={}, transferId={}, sender={}, receiver={}, amount={}",
+            response.transactionId(), transferId, senderWalletId, receiverWalletId, request.amountInMinorUnits());
+        return response;
+    }
+    
+    /**
+     * Drives holds that have been HELD longer than wallet.shard.saga.stale-after to COMMITTED or RELEASED.
+     * A hold whose receiver's shard is still unreachable stays HELD and is retried on the next run.
+     */
+    @Scheduled(fixedDelayString = "${wallet.shard.saga.recovery-interval-ms:10000}")
+    public void recover() {
+        if (!shardRouter.isSharded()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp staleBefore = Timestamp.valueOf(now.minus(staleAfter));
+        shardRouter.forEachShard(shard -> {
+            List<Hold> holds = readCommitted.execute(status -> jdbcTemplate.query(CLAIM_STALE, HOLD_MAPPER,
+                Timestamp.valueOf(now), staleBefore, recoveryBatchSize));
+            for (Hold hold : holds) {
+                log.info("Recovering cross-shard transfer: transferId={}, sender={}, receiver={}",
+                    hold.transferId(), hold.senderWalletId(), hold.receiverWalletId());
+                try {
+                    complete(hold, null);
+                } catch (NotFoundException | IllegalArgumentException e) {
+                    // Already logged and released; nothing is waiting for this error
+                }
+            }
+        });
+    }
+    
+    // Credit, then finalize or compensate; false if the hold is still in flight. response is null during recovery
+    private boolean complete(Hold hold, TransactionResponse response) {
+        try {
+            shardRouter.onWallet(hold.receiverWalletId(), () -> write(() -> credit(hold)));
+        } catch (NotFoundException | IllegalArgumentException e) {
+            log.warn("Cross-shard transfer {} cannot be credited, releasing the hold: {}", hold.transferId(), e.getMessage());
+            try {
+                shardRouter.onWallet(hold.senderWalletId(), () -> write(() -> release(hold)));
+                outcome("released");
+            } catch (RuntimeException releaseFailure) {
+                log.warn("Releasing cross-shard transfer {} failed, recovery will retry: {}",
+                    hold.transferId(), releaseFailure.getMessage());
+                outcome("pending");
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            log.warn("Crediting cross-shard transfer {} failed, recovery will retry: {}", hold.transferId(), e.getMessage());
+            outcome("pending");
+            return false;
+        }
+        
+        // The receiver has the funds now, so a failed finalize is only a delayed replay for the client
+        try {
+            shardRouter.onWallet(hold.senderWalletId(), () -> write(() -> commit(hold, response)));
+            outcome("committed");
+        } catch (RuntimeException e) {
+            log.warn("Finalizing cross-shard transfer {} failed, recovery will retry: {}", hold.transferId(), e.getMessage());
+            outcome("pending");
+        }
+        return true;
+    }
+    
+    // Sender's shard: debit, DEBIT leg, hold row and the key without a response, all in one commit
+    private TransactionResponse hold(TransferRequest request, String fingerprint, String transferId) {
+        metrics.timeCommit(TRANSFER);
+        Wallet sender = metrics.time(LedgerMetrics.LOCK_WAIT, TRANSFER,
+                () -> walletRepository.findByWalletIdWithLock(request.senderWalletId()))
+            .orElseThrow(() -> {
+                log.warn("Sender wallet not found: {}", request.senderWalletId());
+                return new NotFoundException("Sender wallet not found: " + request.senderWalletId());
+            });
+        
+        // A striped sender's funds are swept onto its row before the balance check
+        hotWalletLedger.sweep(sender);
+        
+        Money amount = Money.ofMinorUnits(request.amountInMinorUnits());
+        if (!sender.hasSufficientBalance(amount)) {
+            long balance = sender.getBalanceInMinorUnits();
+            log.warn("Insufficient balance for transfer: sender={}, balance={}, amount={}",
+                sender.getWalletId(), balance, amount.getAmountInMinorUnits());
+            metrics.rejected(TRANSFER, "insufficient_funds");
+            throw new BadRequestException(
+                "Insufficient balance. Current: " + balance + ", Requested: " + amount.getAmountInMinorUnits());
+        }
+        metrics.time(LedgerMetrics.APPLY, TRANSFER, () -> sender.debit(amount));
+        
+        // The receiver has no row on this shard, so the leg's counterparty is only named in its outbox event
+        Transaction debit = Transaction.create(sender, TransactionType.DEBIT, amount);
+        debit.setTransferId(transferId);
+        Transaction saved = metrics.time(LedgerMetrics.SAVE, TRANSFER, () -> {
+            walletRepository.save(sender);
+            Transaction leg = transactionRepository.save(debit);
+            outboxEventRepository.save(OutboxEvent.of(leg, sender.getWalletId(), request.receiverWalletId(),
+                sender.getBalanceInMinorUnits()));
+            idempotencyRepository.save(IdempotencyKey.of(request.idempotencyKey(), fingerprint, null));
+            return leg;
+        });
+        walletBalanceCache.refreshAfterCommit(sender);
+        TransactionResponse response = ResponseMapper.toTransactionResponse(saved, sender.getWalletId());
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update(INSERT_HOLD, transferId, request.senderWalletId(), request.receiverWalletId(),
+            request.amountInMinorUnits(), request.idempotencyKey(), fingerprint,
+            idempotencyGuard.toResponseBody(response), now, now);
+        return response;
+    }
+    
+    // Receiver's shard: the receipt row makes a repeated credit of the same transfer a no-op
+    private Void credit(Hold hold) {
+        Wallet receiver = walletRepository.findByWalletIdWithLock(hold.receiverWalletId())
+            .orElseThrow(() -> new NotFoundException("Receiver wallet not found: " + hold.receiverWalletId()));
+        if (jdbcTemplate.update(INSERT_RECEIPT, hold.transferId(), receiver.getId(),
+                Timestamp.valueOf(LocalDateTime.now())) == 0) {
+            return null;
+        }
+        Money amount = Money.ofMinorUnits(hold.amountInMinorUnits());
+        receiver.credit(amount);
+        Transaction credit = Transaction.create(receiver, TransactionType.CREDIT, amount);
+        credit.setTransferId(hold.transferId());
+        walletRepository.save(receiver);
+        Transaction saved = transactionRepository.save(credit);
+        outboxEventRepository.save(OutboxEvent.of(saved, receiver.getWalletId(), hold.senderWalletId(),
+            receiver.getBalanceInMinorUnits()));
+        walletBalanceCache.refreshAfterCommit(receiver);
+        return null;
+    }
+    
+    // Sender's shard: only the first of request and recovery to get here stores the response
+    private Void commit(Hold hold, TransactionResponse response) {
+        if (jdbcTemplate.update(SETTLE_HOLD, COMMITTED, null, Timestamp.valueOf(LocalDateTime.now()), hold.transferId()) == 0) {
+            return null;
+        }
+        jdbcTemplate.update(STORE_RESPONSE, hold.responseBody(), hold.idempotencyKey());
+        if (response != null) {
+            idempotencyGuard.recordAfterCommit(hold.idempotencyKey(), new IdempotentResult(hold.requestFingerprint(), response));
+        }
+        return null;
+    }
+    
+    // Sender's shard: the wallet is locked before the hold, in the same order the hold was written; the reversal is a
+    // CREDIT under the same transferId as the DEBIT leg it reverses, and the hold records its transactionId
+    private Void release(Hold hold) {
+        Wallet sender = walletRepository.findByWalletIdWithLock(hold.senderWalletId())
+            .orElseThrow(() -> new IllegalStateException("Sender of held transfer not found: " + hold.transferId()));
+        if (jdbcTemplate.queryForList(LOCK_HELD, String.class, hold.transferId()).isEmpty()) {
+            return null;
+        }
+        Money amount = Money.ofMinorUnits(hold.amountInMinorUnits());
+        sender.credit(amount);
+        walletRepository.save(sender);
+        Transaction credit = Transaction.create(sender, TransactionType.CREDIT, amount);
+        credit.setTransferId(hold.transferId());
+        Transaction reversal = transactionRepository.save(credit);
+        outboxEventRepository.save(OutboxEvent.of(reversal, sender.getWalletId(), hold.receiverWalletId(),
+            sender.getBalanceInMinorUnits()));
+        jdbcTemplate.update(SETTLE_HOLD, RELEASED, reversal.getTransactionId(), Timestamp.valueOf(LocalDateTime.now()),
+            hold.transferId());
+        jdbcTemplate.update(DROP_KEY, hold.idempotencyKey());
+        walletBalanceCache.refreshAfterCommit(sender);
+        return null;
+    }
+    
+    // One saga step: a local transaction with transient-failure retry, holding a database bulkhead permit
+    private <T> T write(Supplier<T> step) {
+        return bulkhead.execute(TRANSFER, () -> retrier.execute(TRANSFER, () -> readCommitted.execute(status -> step.get())));
+    }
+    
+    // committed, released, or pending when a step failed and the hold waits for recovery
+    private void outcome(String outcome) {
+        meterRegistry.counter("wallet.shard.transfers", "outcome", outcome).increment();
+    }
+    
+    private boolean isIdempotencyKeyViolation(DataIntegrityViolationException e) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && message.contains(IdempotencyKey.UNIQUE_CONSTRAINT);
+    }
+}
@@ -0,0 +1,124 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.model.Wallet;
+import com.ofektom.model.WalletStripe;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.repository.WalletStripeRepository;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Balance operations for hot wallets, whose funds are split across striped sub-balance rows.
+ * Credits lock a single random stripe; anything that needs the full balance (debits, transfers out)
+ * first locks the wallet row and sweeps every stripe back into it, so Wallet.debit keeps enforcing
+ * the no-negative-balance rule on one number.
+ * <p>
+ * Lock order is always wallet row, then stripes by index. The in-memory registry only decides
+ * whether credits may take the stripe fast path; a stale entry just means a credit goes to the
+ * wallet row, which is still counted in the total.
+ */
+@Component
+public class HotWalletLedger {
+    
+    private static final Logger log = LoggerFactory.getLogger(HotWalletLedger.class);
+    private final WalletRepository walletRepository;
+    private final WalletStripeRepository walletStripeRepository;
+    private final ShardRouter shardRouter;
+    private final Map<String, HotWallet> hotWallets = new ConcurrentHashMap<>();
+    
+    public HotWalletLedger(WalletRepository walletRepository, WalletStripeRepository walletStripeRepository,
+                           ShardRouter shardRouter) {
+        this.walletRepository = walletRepository;
+        this.walletStripeRepository = walletStripeRepository;
+        this.shardRouter = shardRouter;
+    }
+    
+    public record HotWallet(Long walletPk, String walletId, int stripeCount) {
+    }
+    
+    // Reloads the set of striped wallets so changes made on other instances are picked up
+    @Scheduled(fixedDelayString = "${wallet.hot.registry-refresh-ms:30000}")
+    public void refresh() {
+        Map<String, HotWallet> current = new ConcurrentHashMap<>();
+        shardRouter.forEachShard(shard -> {
+            for (Wallet wallet : walletRepository.findAllStriped()) {
+                current.put(wallet.getWalletId(), new HotWallet(wallet.getId(), wallet.getWalletId(), wallet.getStripeCount()));
+            }
+        });
+        hotWallets.keySet().retainAll(current.keySet());
+        hotWallets.putAll(current);
+        log.debug("Hot wallet registry refreshed: {} striped wallets", current.size());
+    }
+    
+    public Optional<HotWallet> find(String walletId) {
+        return Optional.ofNullable(hotWallets.get(walletId));
+    }
+    
+    // Locks one randomly chosen stripe; empty if the wallet is no longer striped
+    public Optional<WalletStripe> lockRandomStripe(HotWallet hotWallet) {
+        int stripeIndex = ThreadLocalRandom.current().nextInt(hotWallet.stripeCount());
+        Optional<WalletStripe> stripe = walletStripeRepository.findStripeWithLock(hotWallet.walletPk(), stripeIndex);
+        if (stripe.isEmpty()) {
+            hotWallets.remove(hotWallet.walletId());
+        }
+        return stripe;
+    }
+    
+    // Moves every stripe balance onto the (already locked) wallet row
+    public void sweep(Wallet lockedWallet) {
+        if (lockedWallet.isStriped()) {
+            drainInto(lockedWallet, walletStripeRepository.findAllByWalletPkWithLock(lockedWallet.getId()));
+        }
+    }
+    
+    private void drainInto(Wallet lockedWallet, List<WalletStripe> stripes) {
+        Money swept = Money.zero();
+        for (WalletStripe stripe : stripes) {
+            swept = swept.add(stripe.drain());
+        }
+        if (!swept.isZero()) {
+            lockedWallet.credit(swept);
+            log.debug("Swept {} from stripes into wallet {}", swept, lockedWallet.getWalletId());
+        }
+    }
+    
+    // Total spendable balance: the wallet row plus all its stripes. Both are read in one statement; reading the row
+    // and the stripes separately could miss, or count twice, funds a concurrent sweep moves between them
+    public Money totalBalance(Wallet wallet) {
+        if (!wallet.isStriped()) {
+            return wallet.getBalance();
+        }
+        return Money.ofMinorUnits(walletStripeRepository.totalBalanceByWalletPk(wallet.getId()));
+    }
+    
+    // Resizes the wallet to stripeCount empty stripes (0 turns hot mode off); wallet must be locked
+    public void restripe(Wallet lockedWallet, int stripeCount) {
+        List<WalletStripe> stripes = walletStripeRepository.findAllByWalletPkWithLock(lockedWallet.getId());
+        drainInto(lockedWallet, stripes);
+        for (WalletStripe stripe : stripes) {
+            if (stripe.getStripeIndex() >= stripeCount) {
+                walletStripeRepository.delete(stripe);
+            }
+        }
+        for (int i = stripes.size(); i < stripeCount; i++) {
+            walletStripeRepository.save(WalletStripe.of(lockedWallet, i));
+        }
+        lockedWallet.setStripeCount(stripeCount);
+        if (stripeCount > 0) {
+            hotWallets.put(lockedWallet.getWalletId(),
+                new HotWallet(lockedWallet.getId(), lockedWallet.getWalletId(), stripeCount));
+        } else {
+            hotWallets.remove(lockedWallet.getWalletId());
+        }
+    }
+}
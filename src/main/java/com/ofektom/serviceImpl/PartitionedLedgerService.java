@@ -0,0 +1,343 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.cache.WalletBalanceCache;
+import com.ofektom.dto.request.BatchTransferRequest;
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferItemResult;
+import com.ofektom.dto.response.BatchTransferResponse;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.BatchItemStatus;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.ConflictException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.exception.ServiceUnavailableException;
+import com.ofektom.ledger.JournalEntry;
+import com.ofektom.ledger.JournalWriter;
+import com.ofektom.ledger.LedgerCommand;
+import com.ofektom.ledger.LedgerPartition;
+import com.ofektom.idempotency.IdempotencyGuard;
+import com.ofektom.idempotency.IdempotentResult;
+import com.ofektom.idempotency.RequestFingerprint;
+import com.ofektom.service.TransactionService;
+import com.ofektom.sharding.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * In-memory execution engine for transaction operations, selected with wallet.engine.type=partitioned.
+ * Each wallet is owned by one of N single-threaded partitions (hashed by walletId) that hold balances
+ * in memory; results are journaled to the transactions table asynchronously in batches.
+ * <p>
+ * Trade-offs compared to TransactionServiceImpl: a response is returned once the command is applied in
+ * memory and queued for the journal, not after a database commit, and GET /wallets reads the database
+ * so it can lag by one journal flush. Balances are rebuilt from the wallets table on startup, and this
+ * engine must be the only writer of wallet balances while it runs.
+ */
+@Service
+@ConditionalOnProperty(name = "wallet.engine.type", havingValue = "partitioned")
+public class PartitionedLedgerService implements TransactionService {
+    
+    private static final Logger log = LoggerFactory.getLogger(PartitionedLedgerService.class);
+    private final IdempotencyGuard idempotencyGuard;
+    private final WalletBalanceCache walletBalanceCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LedgerPartition[] partitions;
+    private final JournalWriter journalWriter;
+    private final long responseTimeoutMs;
+    
+    // Keys applied in memory but not yet flushed; the database check covers everything older
+    private final Set<String> unflushedKeys = ConcurrentHashMap.newKeySet();
+    
+    public PartitionedLedgerService(IdempotencyGuard idempotencyGuard,
+                                    WalletBalanceCache walletBalanceCache,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    ShardRouter shardRouter,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${wallet.engine.partitions:4}") int partitionCount,
+                                    @Value("${wallet.engine.ring-buffer-size:8192}") int ringBufferSize,
+                                    @Value("${wallet.engine.journal-batch-size:500}") int journalBatchSize,
+                                    @Value("${wallet.engine.journal-flush-ms:5}") long journalFlushMs,
+                                    @Value("${wallet.engine.journal-max-attempts:5}") int journalMaxAttempts,
+                                    @Value("${wallet.engine.response-timeout-ms:10000}") long responseTimeoutMs) {
+        // The journal batches writes of many wallets into one transaction, which cannot span shards
+        if (shardRouter.isSharded()) {
+            throw new IllegalStateException("wallet.engine.type=partitioned does not support wallet.shard.urls");
+        }
+        this.idempotencyGuard = idempotencyGuard;
+        this.walletBalanceCache = walletBalanceCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.responseTimeoutMs = responseTimeoutMs;
+        this.journalWriter = new JournalWriter(jdbcTemplate, transactionTemplate, ringBufferSize * partitionCount,
+            journalBatchSize, journalFlushMs, journalMaxAttempts,
+            Counter.builder("wallet.engine.journal.dead.letters")
+                .description("Journal entries moved to journal_dead_letters after they could not be written")
+                .register(meterRegistry),
+            idempotencyGuard::toResponseBody, this::onJournalFlushed);
+        this.partitions = new LedgerPartition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new LedgerPartition(i, ringBufferSize, this::loadWallet, journalWriter);
+        }
+    }
+    
+    /**
+     * Rebuilds every partition's balances from the database, then starts the partition threads.
+     * Hot-wallet stripes are folded back into their wallet rows first: with a single writer per wallet
+     * there is no row contention left to stripe around.
+     */
+    @PostConstruct
+    public void start() {
+        transactionTemplate.executeWithoutResult(status -> {
+            int folded = jdbcTemplate.update(
+                "UPDATE wallets w SET balance_in_minor_units = w.balance_in_minor_units + s.total, stripe_count = 0 "
+                    + "FROM (SELECT wallet_id, SUM(balance_in_minor_units) AS total FROM wallet_stripes GROUP BY wallet_id) s "
+                    + "WHERE s.wallet_id = w.id");
+            jdbcTemplate.update("DELETE FROM wallet_stripes");
+            if (folded > 0) {
+                log.info("Folded stripes of {} hot wallets back into their wallet rows", folded);
+            }
+        });
+        
+        // Streams the wallets table through a cursor instead of materialising it
+        JdbcTemplate cursor = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursor.setFetchSize(10_000);
+        long[] loaded = new long[1];
+        transactionTemplate.executeWithoutResult(status -> cursor.query(
+            "SELECT id, wallet_id, balance_in_minor_units FROM wallets",
+            rs -> {
+                String walletId = rs.getString("wallet_id");
+                partitionFor(walletId).preload(walletId, rs.getLong("id"), rs.getLong("balance_in_minor_units"));
+                loaded[0]++;
+            }));
+        log.info("Ledger rebuilt from database: {} wallets across {} partitions", loaded[0], partitions.length);
+        
+        journalWriter.start();
+        for (LedgerPartition partition : partitions) {
+            partition.start();
+        }
+    }
+    
+    // Drains every ring buffer, then flushes the remaining journal before shutdown
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (LedgerPartition partition : partitions) {
+            partition.stop();
+        }
+        journalWriter.stop();
+        log.info("Ledger partitions stopped and journal flushed");
+    }
+    
+    @Override
+    public TransactionResponse processTransaction(TransactionRequest request) {
+        log.debug("Processing transaction: walletId={}, type={}, amount={}, idempotencyKey={}", 
+            request.walletId(), request.type(), request.amountInMinorUnits(), request.idempotencyKey());
+        
+        TransactionType transactionType;
+        try {
+            transactionType = TransactionType.fromString(request.type());
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid transaction type: {}", request.type());
+            throw new BadRequestException("Invalid transaction type: " + request.type());
+        }
+        
+        String fingerprint = RequestFingerprint.of(request);
+        Optional<TransactionResponse> replay = idempotencyGuard.replay(request.idempotencyKey(), fingerprint);
+        if (replay.isPresent()) {
+            return replay.get();
+        }
+        
+        claimIdempotencyKey(request.idempotencyKey());
+        LedgerCommand command = LedgerCommand.apply(
+            request.walletId(), transactionType, request.amountInMinorUnits(), request.idempotencyKey(), fingerprint);
+        try {
+            return await(partitionFor(request.walletId()).submit(command));
+        } catch (RuntimeException e) {
+            releaseIfRejected(command, request.idempotencyKey());
+            throw e;
+        }
+    }
+    
+    /**
+     * Transfers between wallets that may live on different partitions: the receiver partition first reserves
+     * headroom for the credit, then the sender partition debits, then the receiver partition credits. Once the
+     * debit is applied the credit cannot fail: wallets are never removed and the reservation rules out overflow.
+     */
+    @Override
+    public TransactionResponse transfer(TransferRequest request) {
+        log.debug("Processing transfer: sender={}, receiver={}, amount={}, idempotencyKey={}", 
+            request.senderWalletId(), request.receiverWalletId(), 
+            request.amountInMinorUnits(), request.idempotencyKey());
+        
+        if (request.senderWalletId().equals(request.receiverWalletId())) {
+            log.error("Sender and receiver wallets cannot be the same");
+            throw new BadRequestException("Sender and receiver wallets cannot be the same");
+        }
+        
+        String fingerprint = RequestFingerprint.of(request);
+        Optional<TransactionResponse> replay = idempotencyGuard.replay(request.idempotencyKey(), fingerprint);
+        if (replay.isPresent()) {
+            return replay.get();
+        }
+        
+        claimIdempotencyKey(request.idempotencyKey());
+        LedgerPartition receiverPartition = partitionFor(request.receiverWalletId());
+        LedgerCommand reservation = LedgerCommand.reserveCredit(request.receiverWalletId(), request.amountInMinorUnits());
+        try {
+            await(receiverPartition.submit(reservation));
+        } catch (RuntimeException e) {
+            unflushedKeys.remove(request.idempotencyKey());
+            // A reservation applied after the caller gave up is given back
+            reservation.result().thenRunAsync(() -> receiverPartition.submit(
+                LedgerCommand.releaseCredit(request.receiverWalletId(), request.amountInMinorUnits())));
+            throw e instanceof NotFoundException
+                ? new NotFoundException("Receiver wallet not found: " + request.receiverWalletId()) : e;
+        }
+        
+        String transferId = UUID.randomUUID().toString();
+        LedgerCommand debitCommand = LedgerCommand.transferDebit(request.senderWalletId(), request.receiverWalletId(),
+            request.amountInMinorUnits(), request.idempotencyKey(), fingerprint, transferId);
+        LedgerCommand settleCommand = LedgerCommand.settle(
+            request.receiverWalletId(), request.senderWalletId(), request.amountInMinorUnits(), transferId);
+        // The debit's outcome decides the reservation even if the caller stops waiting: settled once applied,
+        // released if rejected. Submitted off the sender's partition thread, which must never block on another.
+        debitCommand.result().whenCompleteAsync((response, failure) -> receiverPartition.submit(failure == null
+            ? settleCommand : LedgerCommand.releaseCredit(request.receiverWalletId(), request.amountInMinorUnits())));
+        TransactionResponse debit;
+        try {
+            debit = await(partitionFor(request.senderWalletId()).submit(debitCommand));
+        } catch (RuntimeException e) {
+            releaseIfRejected(debitCommand, request.idempotencyKey());
+            throw e instanceof NotFoundException
+                ? new NotFoundException("Sender wallet not found: " + request.senderWalletId()) : e;
+        }
+        
+        // The credit is queued even if the caller stops waiting, so the key stays claimed from here on
+        await(settleCommand);
+        
+        log.info("Transfer completed successfully: transactionId={}, sender={}, receiver={}, amount={}", 
+            debit.transactionId(), request.senderWalletId(), request.receiverWalletId(), request.amountInMinorUnits());
+        
+        return debit;
+    }
+    
+    // Applies each item as an individual transfer and reports per-item outcomes
+    @Override
+    public BatchTransferResponse batchTransfer(BatchTransferRequest request) {
+        List<BatchTransferItemResult> results = new ArrayList<>(request.transfers().size());
+        int applied = 0;
+        for (TransferRequest transfer : request.transfers()) {
+            BatchItemStatus status;
+            String transactionId = null;
+            String message = null;
+            try {
+                transactionId = transfer(transfer).transactionId();
+                status = BatchItemStatus.APPLIED;
+                applied++;
+            } catch (ConflictException e) {
+                status = BatchItemStatus.DUPLICATE;
+                message = e.getMessage();
+            } catch (NotFoundException e) {
+                status = BatchItemStatus.WALLET_NOT_FOUND;
+                message = e.getMessage();
+            } catch (BadRequestException e) {
+                status = transfer.senderWalletId().equals(transfer.receiverWalletId())
+                    ? BatchItemStatus.INVALID : BatchItemStatus.INSUFFICIENT_FUNDS;
+                message = e.getMessage();
+            } catch (IllegalArgumentException e) {
+                status = BatchItemStatus.BALANCE_OVERFLOW;
+                message = e.getMessage();
+            }
+            results.add(new BatchTransferItemResult(transfer.idempotencyKey(), status.name(), transactionId, message));
+        }
+        return new BatchTransferResponse(applied, results.size() - applied, results);
+    }
+    
+    private LedgerPartition partitionFor(String walletId) {
+        return partitions[Math.floorMod(walletId.hashCode(), partitions.length)];
+    }
+    
+    // A key still in flight has no stored response yet, so its retry is rejected rather than replayed
+    private void claimIdempotencyKey(String idempotencyKey) {
+        if (!unflushedKeys.add(idempotencyKey)) {
+            log.warn("Duplicate transaction attempt: idempotencyKey={}", idempotencyKey);
+            throw new ConflictException("Transaction with idempotency key already processed: " + idempotencyKey);
+        }
+        if (idempotencyGuard.isKnownDuplicate(idempotencyKey)) {
+            unflushedKeys.remove(idempotencyKey);
+            log.warn("Duplicate transaction attempt: idempotencyKey={}", idempotencyKey);
+            throw new ConflictException("Transaction with idempotency key already processed: " + idempotencyKey);
+        }
+    }
+    
+    // A command that timed out may still be applied later, so only a definite rejection frees its key
+    private void releaseIfRejected(LedgerCommand command, String idempotencyKey) {
+        if (command.result().isCompletedExceptionally()) {
+            unflushedKeys.remove(idempotencyKey);
+        }
+    }
+    
+    // Flushed keys move from the unflushed set to the idempotency guard, and cached balances can be reloaded
+    private void onJournalFlushed(List<JournalEntry> flushed) {
+        for (JournalEntry entry : flushed) {
+            if (entry.idempotencyKey() != null) {
+                idempotencyGuard.record(entry.idempotencyKey(),
+                    new IdempotentResult(entry.requestFingerprint(), entry.toResponse()));
+                unflushedKeys.remove(entry.idempotencyKey());
+            }
+            walletBalanceCache.evict(entry.walletId());
+        }
+    }
+    
+    // Runs on a partition thread for wallets created after startup
+    private Optional<LedgerPartition.LoadedWallet> loadWallet(String walletId) {
+        return jdbcTemplate.query(
+            "SELECT id, balance_in_minor_units FROM wallets WHERE wallet_id = ?",
+            (rs, rowNum) -> new LedgerPartition.LoadedWallet(rs.getLong("id"), rs.getLong("balance_in_minor_units")),
+            walletId).stream().findFirst();
+    }
+    
+    // A command that did not answer in time may still be applied, so the caller is told to retry with the same key
+    private TransactionResponse await(LedgerCommand command) {
+        CompletableFuture<TransactionResponse> result = command.result();
+        try {
+            return result.get(responseTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            log.error("Ledger command failed", e.getCause());
+            throw new ServiceUnavailableException("Ledger command failed, please retry", 1);
+        } catch (TimeoutException e) {
+            throw new ServiceUnavailableException("Ledger partition did not respond in time; "
+                + "retry with the same idempotency key for its result", Math.max(1L, responseTimeoutMs / 1000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for ledger partition, please retry", 1);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.ofektom.serviceImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.ExportFormat;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.service.StatementExportService;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Service implementation for statement exports.
+ * Rows come from a forward-only server-side cursor (a fetch size inside a read-only transaction, which is
+ * what makes the PostgreSQL driver stop buffering the whole result) and are written straight to the
+ * response, so heap use is bounded by one fetch block regardless of how many rows are exported.
+ */
+@Service
+public class StatementExportServiceImpl implements StatementExportService {
+    
+    private static final Logger log = LoggerFactory.getLogger(StatementExportServiceImpl.class);
+    private static final String CSV_HEADER =
+        "transaction_id,wallet_id,transaction_type,amount_in_minor_units,amount_in_major_units,created_at";
+    
+    private final WalletRepository walletRepository;
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate cursor;
+    private final TransactionTemplate readOnly;
+    private final ObjectWriter responseWriter;
+    
+    public StatementExportServiceImpl(WalletRepository walletRepository,
+                                      ShardRouter shardRouter,
+                                      JdbcTemplate jdbcTemplate,
+                                      PlatformTransactionManager transactionManager,
+                                      ObjectMapper objectMapper,
+                                      @Value("${wallet.export.fetch-size:1000}") int fetchSize) {
+        this.walletRepository = walletRepository;
+        this.shardRouter = shardRouter;
+        // Own template so the fetch size never leaks into other queries
+        this.cursor = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursor.setFetchSize(fetchSize);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.responseWriter = objectMapper.writerFor(TransactionResponse.class);
+    }
+    
+    /**
+     * Validates the date window and resolves the wallet. A single-wallet export may be unbounded;
+     * an export across all wallets needs both from and to.
+     */
+    @Override
+    public StatementQuery prepare(String walletId, LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new BadRequestException("'from' must be before 'to'");
+        }
+        if (walletId == null) {
+            if (from == null || to == null) {
+                throw new BadRequestException("Exports across all wallets require both 'from' and 'to'");
+            }
+            return new StatementQuery(null, null, from, to);
+        }
+        Long walletPk = shardRouter.onWallet(walletId, () -> walletRepository.findIdByWalletId(walletId))
+            .orElseThrow(() -> {
+                log.warn("Wallet not found: {}", walletId);
+                return new NotFoundException("Wallet not found: " + walletId);
+            });
+        return new StatementQuery(walletPk, walletId, from, to);
+    }
+    
+    /**
+     * Streams the statement. Single-wallet exports walk idx_transaction_wallet_created in order; exports
+     * across all wallets are grouped by wallet so they can use the same index instead of a global sort,
+     * and stream one shard after another.
+     */
+    @Override
+    public void export(StatementQuery query, ExportFormat format, OutputStream output) throws IOException {
+        StringBuilder sql = new StringBuilder(
+            "SELECT t.transaction_id, w.wallet_id, t.transaction_type, t.amount_in_minor_units, t.created_at "
+                + "FROM transactions t JOIN wallets w ON w.id = t.wallet_id WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (query.walletPk() != null) {
+            sql.append(" AND t.wallet_id = ?");
+            args.add(query.walletPk());
+        }
+        if (query.from() != null) {
+            sql.append(" AND t.created_at >= ?");
+            args.add(Timestamp.valueOf(query.from()));
+        }
+        if (query.to() != null) {
+            sql.append(" AND t.created_at < ?");
+            args.add(Timestamp.valueOf(query.to()));
+        }
+        sql.append(" ORDER BY t.wallet_id, t.created_at, t.id");
+        
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        long[] exported = new long[1];
+        try {
+            shardRouter.forEachShard(shard -> {
+                if (query.walletId() != null && shard != shardRouter.shardOf(query.walletId())) {
+                    return;
+                }
+                readOnly.executeWithoutResult(status -> cursor.query(sql.toString(), rs -> {
+                    try {
+                        writeRow(rs, format, writer);
+                    } catch (IOException e) {
+                        // Client went away; abandon the cursor instead of reading the rest of the result
+                        throw new UncheckedIOException(e);
+                    }
+                    exported[0]++;
+                }, args.toArray()));
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        
+        log.info("Statement exported: walletId={}, from={}, to={}, format={}, rows={}",
+            query.walletId(), query.from(), query.to(), format, exported[0]);
+    }
+    
+    private void writeRow(ResultSet rs, ExportFormat format, Writer writer) throws SQLException, IOException {
+        long amountInMinorUnits = rs.getLong("amount_in_minor_units");
+        LocalDateTime createdAt = rs.getTimestamp("created_at").toLocalDateTime();
+        if (format == ExportFormat.CSV) {
+            // Every column is a UUID, enum name, number or timestamp, so no quoting is needed
+            writer.write(rs.getString("transaction_id"));
+            writer.write(',');
+            writer.write(rs.getString("wallet_id"));
+            writer.write(',');
+            writer.write(rs.getString("transaction_type"));
+            writer.write(',');
+            writer.write(Long.toString(amountInMinorUnits));
+            writer.write(',');
+            writer.write(Money.toMajorUnits(amountInMinorUnits).toPlainString());
+            writer.write(',');
+            writer.write(createdAt.toString());
+        } else {
+            writer.write(responseWriter.writeValueAsString(new TransactionResponse(
+                rs.getString("transaction_id"),
+                rs.getString("wallet_id"),
+                rs.getString("transaction_type"),
+                amountInMinorUnits,
+                Money.toMajorUnits(amountInMinorUnits),
+                createdAt
+            )));
+        }
+        writer.write('\n');
+    }
+}
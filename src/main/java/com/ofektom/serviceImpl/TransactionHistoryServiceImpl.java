@@ -0,0 +1,96 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.dto.response.TransactionPageResponse;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.repository.TransactionHistoryRow;
+import com.ofektom.repository.TransactionRepository;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.service.TransactionHistoryService;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.TransactionCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Service implementation for transaction history.
+ * Pages newest-first with a (createdAt, id) keyset cursor, so every page costs the same index range scan
+ * no matter how deep into a wallet's history it is.
+ */
+@Service
+public class TransactionHistoryServiceImpl implements TransactionHistoryService {
+    
+    private static final Logger log = LoggerFactory.getLogger(TransactionHistoryServiceImpl.class);
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final ShardRouter shardRouter;
+    private final int maxPageSize;
+    
+    @Autowired
+    public TransactionHistoryServiceImpl(WalletRepository walletRepository,
+                                         TransactionRepository transactionRepository,
+                                         ShardRouter shardRouter,
+                                         @Value("${wallet.history.max-page-size:500}") int maxPageSize) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.shardRouter = shardRouter;
+        this.maxPageSize = maxPageSize;
+    }
+    
+    /**
+     * Returns one page of a wallet's transactions, optionally filtered by type and by a [from, to) window.
+     * Throws NotFoundException if the wallet does not exist.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public TransactionPageResponse getTransactions(String walletId, String type, LocalDateTime from, LocalDateTime to,
+                                                   String cursor, int limit) {
+        log.debug("Retrieving transactions: walletId={}, type={}, from={}, to={}, limit={}", walletId, type, from, to, limit);
+        
+        if (limit < 1 || limit > maxPageSize) {
+            throw new BadRequestException("Limit must be between 1 and " + maxPageSize);
+        }
+        
+        TransactionType transactionType = null;
+        if (type != null) {
+            try {
+                transactionType = TransactionType.fromString(type);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid transaction type: " + type);
+            }
+        }
+        TransactionCursor after = cursor == null || cursor.isBlank() ? null : TransactionCursor.decode(cursor);
+        
+        // The transaction is open already, but its connection is only taken from the wallet's shard at the first query
+        TransactionType filter = transactionType;
+        List<TransactionHistoryRow> rows = shardRouter.onWallet(walletId, () -> {
+            Long walletPk = walletRepository.findIdByWalletId(walletId)
+                .orElseThrow(() -> {
+                    log.warn("Wallet not found: {}", walletId);
+                    return new NotFoundException("Wallet not found: " + walletId);
+                });
+            
+            // One extra row tells us whether another page exists without a COUNT
+            return transactionRepository.findHistoryPage(walletPk, filter, from, to, after, limit + 1);
+        });
+        boolean hasMore = rows.size() > limit;
+        List<TransactionHistoryRow> page = hasMore ? rows.subList(0, limit) : rows;
+        
+        List<TransactionResponse> transactions = page.stream().map(row -> row.toResponse(walletId)).toList();
+        String nextCursor = null;
+        if (hasMore) {
+            TransactionHistoryRow last = page.get(page.size() - 1);
+            nextCursor = new TransactionCursor(last.createdAt(), last.id()).encode();
+        }
+        return new TransactionPageResponse(transactions, nextCursor);
+    }
+}
@@ -1,72 +1,188 @@
 package com.ofektom.serviceImpl;
 
+import com.ofektom.dto.request.BatchTransferRequest;
 import com.ofektom.dto.request.TransactionRequest;
 import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferItemResult;
+import com.ofektom.dto.response.BatchTransferResponse;
 import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.BatchItemStatus;
 import com.ofektom.enums.TransactionType;
 import com.ofektom.exception.BadRequestException;
 import com.ofektom.exception.ConflictException;
 import com.ofektom.exception.NotFoundException;
+import com.ofektom.exception.ServiceUnavailableException;
+import com.ofektom.idempotency.IdempotencyGuard;
+import com.ofektom.idempotency.IdempotentResult;
+import com.ofektom.idempotency.RequestFingerprint;
 import com.ofektom.model.IdempotencyKey;
+import com.ofektom.model.OutboxEvent;
 import com.ofektom.model.Transaction;
 import com.ofektom.model.Wallet;
+import com.ofektom.model.WalletStripe;
 import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.repository.OutboxEventRepository;
 import com.ofektom.repository.TransactionRepository;
 import com.ofektom.repository.WalletRepository;
+import com.ofektom.repository.WalletStripeRepository;
 import com.ofektom.service.TransactionService;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.cache.WalletBalanceCache;
+import com.ofektom.utils.DatabaseBulkhead;
+import com.ofektom.utils.LedgerMetrics;
 import com.ofektom.utils.Money;
+import com.ofektom.utils.RequestCoalescer;
+import com.ofektom.utils.RequestCoalescer.Pending;
+import com.ofektom.utils.ResponseMapper;
+import com.ofektom.utils.TransientFailureRetrier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * Service implementation for transaction operations.
  * Handles credit/debit transactions and wallet-to-wallet transfers with idempotency and concurrency safety.
+ * Every operation runs at READ COMMITTED with wallet row locks taken in walletId order, and is
+ * retried as a whole when the database reports a deadlock or serialization failure.
+ * Every ledger row gets an outbox event in the same transaction, so the event stream never diverges from the ledger.
+ * With wallet.write-mode=conditional, credits and debits skip the row lock and run as one conditional UPDATE
+ * (see ConditionalLedgerWriter); transfers and hot wallets always use the locking path.
+ * With wallet.coalescing.enabled, concurrent credits and debits to the same wallet are group-committed:
+ * one row lock, one balance update and one commit per window, with a response or error per caller.
+ * With sharding, each operation runs on its wallet's shard; transfers across shards go through CrossShardTransfers.
  */
 @Service
+@ConditionalOnProperty(name = "wallet.engine.type", havingValue = "jpa", matchIfMissing = true)
 public class TransactionServiceImpl implements TransactionService {
     
     private static final Logger log = LoggerFactory.getLogger(TransactionServiceImpl.class);
+    private static final String TRANSFER = "transfer";
+    private static final String BATCH_TRANSFER = "batch_transfer";
+    private static final String COALESCED = "coalesced";
     private final WalletRepository walletRepository;
     private final TransactionRepository transactionRepository;
     private final IdempotencyRepository idempotencyRepository;
-
+    private final IdempotencyGuard idempotencyGuard;
+    private final OutboxEventRepository outboxEventRepository;
+    private final WalletStripeRepository walletStripeRepository;
+    private final HotWalletLedger hotWalletLedger;
+    private final ConditionalLedgerWriter conditionalLedgerWriter;
+    private final CrossShardTransfers crossShardTransfers;
+    private final ShardRouter shardRouter;
+    private final WalletBalanceCache walletBalanceCache;
+    private final TransientFailureRetrier retrier;
+    private final DatabaseBulkhead bulkhead;
+    private final LedgerMetrics metrics;
+    private final TransactionTemplate readCommitted;
+    private final boolean conditionalWrites;
+    private final RequestCoalescer<CoalescedRequest, TransactionResponse> coalescer;
+    private final Counter coalescingFallbacks;
+    
     @Autowired
     public TransactionServiceImpl(WalletRepository walletRepository, 
                                  TransactionRepository transactionRepository,
-                                 IdempotencyRepository idempotencyRepository) {
+                                 IdempotencyRepository idempotencyRepository,
+                                 IdempotencyGuard idempotencyGuard,
+                                 OutboxEventRepository outboxEventRepository,
+                                 WalletStripeRepository walletStripeRepository,
+                                 HotWalletLedger hotWalletLedger,
+                                 ConditionalLedgerWriter conditionalLedgerWriter,
+                                 CrossShardTransfers crossShardTransfers,
+                                 ShardRouter shardRouter,
+                                 WalletBalanceCache walletBalanceCache,
+                                 TransientFailureRetrier retrier,
+                                 DatabaseBulkhead bulkhead,
+                                 LedgerMetrics metrics,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${wallet.write-mode:locking}") String writeMode,
+                                 @Value("${wallet.coalescing.enabled:false}") boolean coalescing,
+                                 @Value("${wallet.coalescing.window:1ms}") Duration coalescingWindow,
+                                 @Value("${wallet.coalescing.max-batch-size:200}") int coalescingMaxBatchSize) {
         this.walletRepository = walletRepository;
         this.transactionRepository = transactionRepository;
         this.idempotencyRepository = idempotencyRepository;
+        this.idempotencyGuard = idempotencyGuard;
+        this.outboxEventRepository = outboxEventRepository;
+        this.walletStripeRepository = walletStripeRepository;
+        this.hotWalletLedger = hotWalletLedger;
+        this.conditionalLedgerWriter = conditionalLedgerWriter;
+        this.crossShardTransfers = crossShardTransfers;
+        this.shardRouter = shardRouter;
+        this.walletBalanceCache = walletBalanceCache;
+        this.retrier = retrier;
+        this.bulkhead = bulkhead;
+        this.metrics = metrics;
+        this.readCommitted = new TransactionTemplate(transactionManager);
+        this.readCommitted.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        if (!"locking".equals(writeMode) && !"conditional".equals(writeMode)) {
+            throw new IllegalArgumentException("wallet.write-mode must be locking or conditional: " + writeMode);
+        }
+        this.conditionalWrites = "conditional".equals(writeMode);
+        this.coalescer = coalescing ? new RequestCoalescer<>("wallet.coalescing", coalescingWindow,
+            coalescingMaxBatchSize, this::flushCoalesced, meterRegistry) : null;
+        this.coalescingFallbacks = Counter.builder("wallet.coalescing.fallbacks")
+            .description("Coalesced batches re-run one request at a time after an idempotency key collision")
+            .register(meterRegistry);
     }
     
     /**
      * Processes a credit or debit transaction on a wallet.
-     * Ensures idempotency and prevents negative balances.
+     * Ensures idempotency and prevents negative balances. A retry with a used key gets the original
+     * response back without opening a write transaction; a different payload under the same key is a 409.
      */
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public TransactionResponse processTransaction(TransactionRequest request) {
+        String operation = operationTag(request.type());
+        return metrics.observe(operation, () -> shardRouter.onWallet(request.walletId(), () -> {
+            String fingerprint = RequestFingerprint.of(request);
+            Optional<TransactionResponse> replay = metrics.time(LedgerMetrics.IDEMPOTENCY_CHECK, operation,
+                () -> idempotencyGuard.replay(request.idempotencyKey(), fingerprint));
+            if (replay.isPresent()) {
+                return replay.get();
+            }
+            // Unparseable types skip coalescing and get their 400 from doProcessTransaction; a batch is flushed
+            // by one of its callers, which is bound to the wallet's shard like the others
+            if (coalescer != null && !"transaction".equals(operation)) {
+                return coalescer.submit(request.walletId(), new CoalescedRequest(request, fingerprint, operation));
+            }
+            return writeTransaction(request, fingerprint, operation);
+        }));
+    }
+    
+    private TransactionResponse writeTransaction(TransactionRequest request, String fingerprint, String operation) {
+        return executeWrite(operation,
+            () -> readCommitted.execute(status -> doProcessTransaction(request, fingerprint, operation)),
+            () -> idempotencyGuard.replayCommitted(request.idempotencyKey(), fingerprint));
+    }
+    
+    private TransactionResponse doProcessTransaction(TransactionRequest request, String fingerprint, String operation) {
         log.debug("Processing transaction: walletId={}, type={}, amount={}, idempotencyKey={}", 
             request.walletId(), request.type(), request.amountInMinorUnits(), request.idempotencyKey());
         
-        // Idempotency check - prevents duplicate processing
-        if (idempotencyRepository.existsByKeyValue(request.idempotencyKey())) {
-            log.warn("Duplicate transaction attempt: idempotencyKey={}", request.idempotencyKey());
-            throw new ConflictException("Transaction with idempotency key already processed: " + request.idempotencyKey());
-        }
-        
-        // Find wallet with pessimistic lock for concurrent safety
-        Wallet wallet = walletRepository.findByWalletIdWithLock(request.walletId())
-            .orElseThrow(() -> {
-                log.warn("Wallet not found for transaction: {}", request.walletId());
-                return new NotFoundException("Wallet not found: " + request.walletId());
-            });
-        
         // Parse and validate transaction type
         TransactionType transactionType;
         try {
@@ -77,122 +193,657 @@ public class TransactionServiceImpl implements TransactionService {
         }
         
         Money amount = Money.ofMinorUnits(request.amountInMinorUnits());
+        metrics.timeCommit(operation);
+        
+        // Conditional mode writes non-striped wallets in one statement; hot wallets continue below
+        if (conditionalWrites && hotWalletLedger.find(request.walletId()).isEmpty()) {
+            Optional<TransactionResponse> response = applyConditionally(request, transactionType, amount, fingerprint, operation);
+            if (response.isPresent()) {
+                return response.get();
+            }
+        }
+        
+        // Credits to hot wallets only lock one striped sub-balance row
+        if (transactionType == TransactionType.CREDIT) {
+            Optional<HotWalletLedger.HotWallet> hotWallet = hotWalletLedger.find(request.walletId());
+            if (hotWallet.isPresent()) {
+                Optional<TransactionResponse> response = creditStripe(hotWallet.get(), amount, request.idempotencyKey(), fingerprint);
+                if (response.isPresent()) {
+                    return response.get();
+                }
+            }
+        }
+        
+        // Find wallet with pessimistic lock for concurrent safety
+        Wallet wallet = metrics.time(LedgerMetrics.LOCK_WAIT, operation,
+                () -> walletRepository.findByWalletIdWithLock(request.walletId()))
+            .orElseThrow(() -> {
+                log.warn("Wallet not found for transaction: {}", request.walletId());
+                return new NotFoundException("Wallet not found: " + request.walletId());
+            });
+        
+        // Debits need the full balance of a striped wallet on its row
+        if (transactionType == TransactionType.DEBIT) {
+            hotWalletLedger.sweep(wallet);
+        }
         
         // Process transaction using domain method (validates business rules)
         try {
-            wallet.processTransaction(transactionType, amount);
+            metrics.time(LedgerMetrics.APPLY, operation, () -> wallet.processTransaction(transactionType, amount));
         } catch (IllegalStateException e) {
             log.error("Transaction failed: {}", e.getMessage());
+            metrics.rejected(operation, "insufficient_funds");
             throw new BadRequestException("Insufficient balance: " + e.getMessage());
         }
         
         // Create transaction record for audit trail
         Transaction transaction = Transaction.create(wallet, transactionType, amount);
         
-        // Save idempotency key first (within transaction) to prevent race conditions
-        try {
-            idempotencyRepository.save(IdempotencyKey.of(request.idempotencyKey()));
-        } catch (DataIntegrityViolationException e) {
-            // Race condition - another thread already saved this key
-            log.warn("Idempotency key already exists (race condition): {}", request.idempotencyKey());
-            throw new ConflictException("Idempotency key already exists: " + request.idempotencyKey());
-        }
+        // Save wallet, transaction and its outbox event
+        Transaction savedTransaction = metrics.time(LedgerMetrics.SAVE, operation, () -> {
+            walletRepository.save(wallet);
+            Transaction saved = transactionRepository.save(transaction);
+            outboxEventRepository.save(OutboxEvent.of(saved, wallet.getBalanceInMinorUnits()));
+            return saved;
+        });
+        walletBalanceCache.refreshAfterCommit(wallet);
+        TransactionResponse response = mapToTransactionResponse(savedTransaction);
         
-        // Save wallet and transaction
-        walletRepository.save(wallet);
-        Transaction savedTransaction = transactionRepository.save(transaction);
+        // Claim the idempotency key with the response it will replay; inserted in the same commit
+        claimIdempotencyKey(request.idempotencyKey(), new IdempotentResult(fingerprint, response));
         
         log.info("Transaction processed successfully: transactionId={}, walletId={}, type={}, amount={}", 
             savedTransaction.getTransactionId(), wallet.getWalletId(), transactionType, amount);
         
-        return mapToTransactionResponse(savedTransaction);
+        return response;
     }
     
     /**
      * Transfers money between two wallets atomically.
      * Ensures both debit and credit operations succeed or fail together.
+     * Retries with a used key are replayed like processTransaction. The key lives on the sender's shard;
+     * wallets on different shards are transferred by a hold/credit/finalize saga instead of one transaction.
      */
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public TransactionResponse transfer(TransferRequest request) {
+        return metrics.observe(TRANSFER, () -> shardRouter.onWallet(request.senderWalletId(), () -> {
+            String fingerprint = RequestFingerprint.of(request);
+            Optional<TransactionResponse> replay = metrics.time(LedgerMetrics.IDEMPOTENCY_CHECK, TRANSFER,
+                () -> idempotencyGuard.replay(request.idempotencyKey(), fingerprint));
+            if (replay.isPresent()) {
+                return replay.get();
+            }
+            if (!shardRouter.sameShard(request.senderWalletId(), request.receiverWalletId())) {
+                return crossShardTransfers.transfer(request, fingerprint);
+            }
+            return executeWrite(TRANSFER,
+                () -> readCommitted.execute(status -> doTransfer(request, fingerprint)),
+                () -> idempotencyGuard.replayCommitted(request.idempotencyKey(), fingerprint));
+        }));
+    }
+    
+    private TransactionResponse doTransfer(TransferRequest request, String fingerprint) {
         log.debug("Processing transfer: sender={}, receiver={}, amount={}, idempotencyKey={}", 
             request.senderWalletId(), request.receiverWalletId(), 
             request.amountInMinorUnits(), request.idempotencyKey());
         
-        // Idempotency check - prevents duplicate processing
-        if (idempotencyRepository.existsByKeyValue(request.idempotencyKey())) {
-            log.warn("Duplicate transfer attempt: idempotencyKey={}", request.idempotencyKey());
-            throw new ConflictException("Transfer with idempotency key already processed: " + request.idempotencyKey());
-        }
-        
         // Validate sender and receiver are different
         if (request.senderWalletId().equals(request.receiverWalletId())) {
             log.error("Sender and receiver wallets cannot be the same");
             throw new BadRequestException("Sender and receiver wallets cannot be the same");
         }
         
-        // Find both wallets with pessimistic locks (ensures atomic operation)
-        Wallet sender = walletRepository.findByWalletIdWithLock(request.senderWalletId())
-            .orElseThrow(() -> {
-                log.warn("Sender wallet not found: {}", request.senderWalletId());
-                return new NotFoundException("Sender wallet not found: " + request.senderWalletId());
-            });
+        metrics.timeCommit(TRANSFER);
         
-        Wallet receiver = walletRepository.findByWalletIdWithLock(request.receiverWalletId())
-            .orElseThrow(() -> {
-                log.warn("Receiver wallet not found: {}", request.receiverWalletId());
-                return new NotFoundException("Receiver wallet not found: " + request.receiverWalletId());
-            });
+        // Lock both wallets in one statement, always in walletId order, so opposite-direction
+        // transfers between the same pair cannot deadlock
+        Map<String, Wallet> locked = new HashMap<>();
+        for (Wallet wallet : metrics.time(LedgerMetrics.LOCK_WAIT, TRANSFER, () -> walletRepository.findAllByWalletIdInWithLock(
+                List.of(request.senderWalletId(), request.receiverWalletId())))) {
+            locked.put(wallet.getWalletId(), wallet);
+        }
+        
+        Wallet sender = locked.get(request.senderWalletId());
+        if (sender == null) {
+            log.warn("Sender wallet not found: {}", request.senderWalletId());
+            throw new NotFoundException("Sender wallet not found: " + request.senderWalletId());
+        }
+        
+        Wallet receiver = locked.get(request.receiverWalletId());
+        if (receiver == null) {
+            log.warn("Receiver wallet not found: {}", request.receiverWalletId());
+            throw new NotFoundException("Receiver wallet not found: " + request.receiverWalletId());
+        }
+        
+        // A striped sender's funds are swept onto its row before the balance check
+        hotWalletLedger.sweep(sender);
         
         Money amount = Money.ofMinorUnits(request.amountInMinorUnits());
         
         // Validate sufficient balance before processing
         if (!sender.hasSufficientBalance(amount)) {
+            long balance = sender.getBalanceInMinorUnits();
             log.warn("Insufficient balance for transfer: sender={}, balance={}, amount={}", 
-                sender.getWalletId(), sender.getBalance(), amount);
+                sender.getWalletId(), balance, amount.getAmountInMinorUnits());
+            metrics.rejected(TRANSFER, "insufficient_funds");
             throw new BadRequestException(
-                String.format("Insufficient balance. Current: %d, Requested: %d", 
-                    sender.getBalance().getAmountInMinorUnits(), amount.getAmountInMinorUnits())
-            );
+                "Insufficient balance. Current: " + balance + ", Requested: " + amount.getAmountInMinorUnits());
         }
         
         // Atomic transfer - both operations in same transaction (all-or-nothing)
+        metrics.time(LedgerMetrics.APPLY, TRANSFER, () -> {
+            sender.debit(amount);
+            receiver.credit(amount);
+        });
+        
+        // Both wallets, both legs and their outbox events are flushed at commit as batched statements;
+        // the sender's DEBIT leg is the transfer's response
+        List<Transaction> legs = Transaction.createTransferLegs(sender, receiver, amount);
+        Transaction savedTransfer = metrics.time(LedgerMetrics.SAVE, TRANSFER, () -> {
+            walletRepository.saveAll(List.of(sender, receiver));
+            List<Transaction> saved = transactionRepository.saveAll(legs);
+            outboxEventRepository.saveAll(List.of(OutboxEvent.of(saved.get(0), sender.getBalanceInMinorUnits()),
+                OutboxEvent.of(saved.get(1), receiver.getBalanceInMinorUnits())));
+            return saved.get(0);
+        });
+        walletBalanceCache.refreshAfterCommit(sender);
+        walletBalanceCache.refreshAfterCommit(receiver);
+        TransactionResponse response = mapToTransactionResponse(savedTransfer);
+        
+        // Save idempotency key with the response a retry will get
+        claimIdempotencyKey(request.idempotencyKey(), new IdempotentResult(fingerprint, response));
+        
+        log.info("Transfer completed successfully: transactionId={}, sender={}, receiver={}, amount={}", 
+            savedTransfer.getTransactionId(), sender.getWalletId(), receiver.getWalletId(), amount);
+        
+        return response;
+    }
+    
+    /**
+     * Applies a batch of transfers in a single database transaction.
+     * All idempotency keys are checked in one query and all touched wallets are locked in one
+     * sorted SELECT ... FOR UPDATE, so row locks alone guarantee consistency (READ COMMITTED is enough).
+     * Items that cannot be applied are reported individually and never fail the rest of the batch.
+     */
+    @Override
+    public BatchTransferResponse batchTransfer(BatchTransferRequest request) {
+        return metrics.observe(BATCH_TRANSFER, () -> shardRouter.isSharded()
+            ? batchAcrossShards(request.transfers())
+            : writeBatch(request));
+    }
+    
+    private BatchTransferResponse writeBatch(BatchTransferRequest request) {
+        return executeWrite(BATCH_TRANSFER,
+            () -> readCommitted.execute(status -> doBatchTransfer(request)),
+            () -> {
+                throw new ConflictException("One or more idempotency keys in the batch were processed concurrently");
+            });
+    }
+    
+    /**
+     * Sharded batches: items whose wallets share a shard are applied as one batch per shard, and the rest one by
+     * one as cross-shard transfers. Items are still evaluated in request order within each group, and results
+     * come back in request order; a key repeated anywhere in the request is a DUPLICATE after its first use.
+     */
+    private BatchTransferResponse batchAcrossShards(List<TransferRequest> transfers) {
+        BatchTransferItemResult[] results = new BatchTransferItemResult[transfers.size()];
+        Map<Integer, List<Integer>> sameShard = new TreeMap<>();
+        List<Integer> crossShard = new ArrayList<>();
+        Set<String> seenKeys = new HashSet<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            if (!seenKeys.add(transfer.idempotencyKey())) {
+                results[i] = batchItemResult(transfer, BatchItemStatus.DUPLICATE, null);
+            } else if (shardRouter.sameShard(transfer.senderWalletId(), transfer.receiverWalletId())) {
+                sameShard.computeIfAbsent(shardRouter.shardOf(transfer.senderWalletId()), shard -> new ArrayList<>()).add(i);
+            } else {
+                crossShard.add(i);
+            }
+        }
+        
+        for (Map.Entry<Integer, List<Integer>> group : sameShard.entrySet()) {
+            List<Integer> indexes = group.getValue();
+            BatchTransferResponse partial = shardRouter.on(group.getKey(),
+                () -> writeBatch(new BatchTransferRequest(indexes.stream().map(transfers::get).toList())));
+            for (int j = 0; j < indexes.size(); j++) {
+                results[indexes.get(j)] = partial.results().get(j);
+            }
+        }
+        for (int i : crossShard) {
+            results[i] = crossShardBatchItem(transfers.get(i));
+        }
+        
+        int applied = 0;
+        for (BatchTransferItemResult result : results) {
+            if (BatchItemStatus.APPLIED.name().equals(result.status())) {
+                applied++;
+            }
+        }
+        log.info("Batch transfer completed across shards: size={}, applied={}, crossShard={}",
+            transfers.size(), applied, crossShard.size());
+        return new BatchTransferResponse(applied, transfers.size() - applied, List.of(results));
+    }
+    
+    // Runs one cross-shard item as its own saga and maps its outcome like the partitioned engine does
+    private BatchTransferItemResult crossShardBatchItem(TransferRequest transfer) {
+        if (shardRouter.onWallet(transfer.senderWalletId(), () -> idempotencyGuard.isKnownDuplicate(transfer.idempotencyKey()))) {
+            return batchItemResult(transfer, BatchItemStatus.DUPLICATE, null);
+        }
+        BatchItemStatus status;
+        String transactionId = null;
+        try {
+            transactionId = shardRouter.onWallet(transfer.senderWalletId(),
+                () -> crossShardTransfers.transfer(transfer, RequestFingerprint.of(transfer))).transactionId();
+            status = BatchItemStatus.APPLIED;
+        } catch (ConflictException e) {
+            status = BatchItemStatus.DUPLICATE;
+        } catch (NotFoundException e) {
+            status = BatchItemStatus.WALLET_NOT_FOUND;
+        } catch (BadRequestException e) {
+            metrics.rejected(BATCH_TRANSFER, "insufficient_funds");
+            status = BatchItemStatus.INSUFFICIENT_FUNDS;
+        } catch (ServiceUnavailableException e) {
+            status = BatchItemStatus.PENDING;
+        }
+        return batchItemResult(transfer, status, transactionId);
+    }
+    
+    private BatchTransferItemResult batchItemResult(TransferRequest transfer, BatchItemStatus status, String transactionId) {
+        return new BatchTransferItemResult(transfer.idempotencyKey(), status.name(), transactionId, describeBatchStatus(status));
+    }
+    
+    private BatchTransferResponse doBatchTransfer(BatchTransferRequest request) {
+        List<TransferRequest> transfers = request.transfers();
+        log.debug("Processing batch transfer: size={}", transfers.size());
+        
+        metrics.timeCommit(BATCH_TRANSFER);
+        
+        // One round trip for every key not recently seen here. A Bloom negative is not enough: a key stored by
+        // another instance would only surface at commit, failing the whole batch instead of its own item
+        Set<String> existingKeys = metrics.time(LedgerMetrics.IDEMPOTENCY_CHECK, BATCH_TRANSFER,
+            () -> idempotencyGuard.findCommittedDuplicates(transfers.stream().map(TransferRequest::idempotencyKey).toList()));
+        
+        // Lock every touched wallet in one statement, in walletId order
+        Set<String> walletIds = new TreeSet<>();
+        for (TransferRequest transfer : transfers) {
+            walletIds.add(transfer.senderWalletId());
+            walletIds.add(transfer.receiverWalletId());
+        }
+        Map<String, Wallet> wallets = new HashMap<>();
+        for (Wallet wallet : metrics.time(LedgerMetrics.LOCK_WAIT, BATCH_TRANSFER,
+                () -> walletRepository.findAllByWalletIdInWithLock(walletIds))) {
+            hotWalletLedger.sweep(wallet);
+            wallets.put(wallet.getWalletId(), wallet);
+        }
+        
+        // Apply the moves in memory; items are evaluated in request order against running balances
+        BatchItemStatus[] statuses = new BatchItemStatus[transfers.size()];
+        Transaction[] records = new Transaction[transfers.size()];
+        List<Transaction> legs = new ArrayList<>(transfers.size() * 2);
+        List<Long> legBalances = new ArrayList<>(transfers.size() * 2);
+        int applied = 0;
+        Set<String> seenKeys = new HashSet<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            statuses[i] = applyBatchItem(transfer, existingKeys, seenKeys, wallets);
+            if (statuses[i] == BatchItemStatus.INSUFFICIENT_FUNDS) {
+                metrics.rejected(BATCH_TRANSFER, "insufficient_funds");
+            } else if (statuses[i] == BatchItemStatus.BALANCE_OVERFLOW) {
+                metrics.rejected(BATCH_TRANSFER, "balance_overflow");
+            }
+            if (statuses[i] == BatchItemStatus.APPLIED) {
+                Wallet sender = wallets.get(transfer.senderWalletId());
+                Wallet receiver = wallets.get(transfer.receiverWalletId());
+                List<Transaction> itemLegs = Transaction.createTransferLegs(sender, receiver,
+                    Money.ofMinorUnits(transfer.amountInMinorUnits()));
+                records[i] = itemLegs.get(0);
+                legs.addAll(itemLegs);
+                // Running balances right after this item, for the legs' outbox events
+                legBalances.add(sender.getBalanceInMinorUnits());
+                legBalances.add(receiver.getBalanceInMinorUnits());
+                applied++;
+            }
+        }
+        
+        // Keys, balances, both legs of every transfer and their outbox events are flushed together at commit
+        // so Hibernate can batch the statements
+        metrics.time(LedgerMetrics.SAVE, BATCH_TRANSFER, () -> {
+            walletRepository.saveAll(wallets.values());
+            List<Transaction> saved = transactionRepository.saveAll(legs);
+            List<OutboxEvent> events = new ArrayList<>(saved.size());
+            for (int i = 0; i < saved.size(); i++) {
+                events.add(OutboxEvent.of(saved.get(i), legBalances.get(i)));
+            }
+            outboxEventRepository.saveAll(events);
+        });
+        wallets.values().forEach(walletBalanceCache::refreshAfterCommit);
+        
+        // Each applied item's key replays like a single transfer if it is retried through POST /transfers
+        List<IdempotencyKey> newKeys = new ArrayList<>(applied);
+        for (int i = 0; i < transfers.size(); i++) {
+            if (records[i] != null) {
+                TransferRequest transfer = transfers.get(i);
+                IdempotentResult result = new IdempotentResult(
+                    RequestFingerprint.of(transfer), mapToTransactionResponse(records[i], transfer.senderWalletId()));
+                newKeys.add(idempotencyGuard.newKey(transfer.idempotencyKey(), result));
+                idempotencyGuard.recordAfterCommit(transfer.idempotencyKey(), result);
+            }
+        }
+        idempotencyRepository.saveAll(newKeys);
+        
+        List<BatchTransferItemResult> results = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            results.add(new BatchTransferItemResult(
+                transfers.get(i).idempotencyKey(),
+                statuses[i].name(),
+                records[i] != null ? records[i].getTransactionId() : null,
+                describeBatchStatus(statuses[i])
+            ));
+        }
+        
+        log.info("Batch transfer completed: size={}, applied={}", transfers.size(), applied);
+        
+        return new BatchTransferResponse(applied, transfers.size() - applied, results);
+    }
+    
+    // Validates and applies one batch item against the locked wallets, returning its outcome
+    private BatchItemStatus applyBatchItem(TransferRequest transfer, Set<String> existingKeys,
+                                           Set<String> seenKeys, Map<String, Wallet> wallets) {
+        if (existingKeys.contains(transfer.idempotencyKey()) || !seenKeys.add(transfer.idempotencyKey())) {
+            return BatchItemStatus.DUPLICATE;
+        }
+        if (transfer.senderWalletId().equals(transfer.receiverWalletId())) {
+            return BatchItemStatus.INVALID;
+        }
+        Wallet sender = wallets.get(transfer.senderWalletId());
+        Wallet receiver = wallets.get(transfer.receiverWalletId());
+        if (sender == null || receiver == null) {
+            return BatchItemStatus.WALLET_NOT_FOUND;
+        }
+        Money amount = Money.ofMinorUnits(transfer.amountInMinorUnits());
+        if (!sender.hasSufficientBalance(amount)) {
+            return BatchItemStatus.INSUFFICIENT_FUNDS;
+        }
+        // Checked before either wallet changes, so an overflow rejects this item instead of the whole batch
+        if (!receiver.hasCreditHeadroom(amount)) {
+            return BatchItemStatus.BALANCE_OVERFLOW;
+        }
         sender.debit(amount);
         receiver.credit(amount);
+        return BatchItemStatus.APPLIED;
+    }
+    
+    private String describeBatchStatus(BatchItemStatus status) {
+        return switch (status) {
+            case APPLIED -> null;
+            case DUPLICATE -> "Transfer with idempotency key already processed";
+            case INSUFFICIENT_FUNDS -> "Insufficient balance";
+            case WALLET_NOT_FOUND -> "Sender or receiver wallet not found";
+            case INVALID -> "Sender and receiver wallets cannot be the same";
+            case PENDING -> "Transfer is held and will be completed in the background";
+            case BALANCE_OVERFLOW -> "Receiver balance would overflow";
+        };
+    }
+    
+    /**
+     * Flushes one coalescing window for a wallet as a single transaction. Callers are completed only after it
+     * commits. If a concurrent request claimed one of the keys first, the whole batch rolls back and each
+     * request is re-run on its own, so one collision never fails the others.
+     */
+    private void flushCoalesced(List<Pending<CoalescedRequest, TransactionResponse>> batch) {
+        if (batch.size() > 1) {
+            try {
+                List<CoalescedOutcome> outcomes = bulkhead.execute(COALESCED,
+                    () -> retrier.execute(COALESCED, () -> readCommitted.execute(status -> doCoalesced(batch))));
+                for (int i = 0; i < batch.size(); i++) {
+                    complete(batch.get(i), outcomes.get(i));
+                }
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (!isIdempotencyKeyViolation(e)) {
+                    throw e;
+                }
+                log.warn("Idempotency key collision in a coalesced batch of {}, applying requests individually", batch.size());
+                coalescingFallbacks.increment();
+            }
+        }
+        for (Pending<CoalescedRequest, TransactionResponse> pending : batch) {
+            CoalescedRequest item = pending.item();
+            try {
+                pending.complete(writeTransaction(item.request(), item.fingerprint(), item.operation()));
+            } catch (RuntimeException e) {
+                pending.fail(e);
+            }
+        }
+    }
+    
+    // Applies the batch in arrival order against the running balance; one outcome per request, in order
+    private List<CoalescedOutcome> doCoalesced(List<Pending<CoalescedRequest, TransactionResponse>> batch) {
+        String walletId = batch.get(0).item().request().walletId();
+        metrics.timeCommit(COALESCED);
         
-        // Save idempotency key to prevent duplicate processing
-        try {
-            idempotencyRepository.save(IdempotencyKey.of(request.idempotencyKey()));
-        } catch (DataIntegrityViolationException e) {
-            // Race condition - another thread already saved this key
-            log.warn("Idempotency key already exists (race condition): {}", request.idempotencyKey());
-            throw new ConflictException("Idempotency key already exists: " + request.idempotencyKey());
+        Set<String> existingKeys = metrics.time(LedgerMetrics.IDEMPOTENCY_CHECK, COALESCED,
+            () -> idempotencyGuard.findDuplicates(batch.stream().map(p -> p.item().request().idempotencyKey()).toList()));
+        Optional<Wallet> locked = metrics.time(LedgerMetrics.LOCK_WAIT, COALESCED,
+            () -> walletRepository.findByWalletIdWithLock(walletId));
+        
+        List<CoalescedOutcome> outcomes = new ArrayList<>(batch.size());
+        if (locked.isEmpty()) {
+            log.warn("Wallet not found for transaction: {}", walletId);
+            for (int i = 0; i < batch.size(); i++) {
+                outcomes.add(CoalescedOutcome.failed(new NotFoundException("Wallet not found: " + walletId)));
+            }
+            return outcomes;
         }
+        Wallet wallet = locked.get();
         
-        // Save both wallets
-        walletRepository.save(sender);
-        walletRepository.save(receiver);
+        // Stripes are only swept when the batch debits; otherwise credits land on the row and the total stays split
+        boolean debits = batch.stream().anyMatch(p -> "debit".equals(p.item().operation()));
+        if (debits) {
+            hotWalletLedger.sweep(wallet);
+        }
+        boolean exactBalance = debits || !wallet.isStriped();
         
-        // Create transfer transaction record (debit transaction from sender's perspective)
-        Transaction transfer = Transaction.create(sender, TransactionType.DEBIT, amount);
-        Transaction savedTransfer = transactionRepository.save(transfer);
+        List<Transaction> records = new ArrayList<>(batch.size());
+        List<Long> balances = new ArrayList<>(batch.size());
+        int[] recordIndex = new int[batch.size()];
+        Set<String> seenKeys = new HashSet<>();
+        metrics.time(LedgerMetrics.APPLY, COALESCED, () -> {
+            for (int i = 0; i < batch.size(); i++) {
+                TransactionRequest request = batch.get(i).item().request();
+                recordIndex[i] = -1;
+                // Keys already stored, or repeated within the window, are replayed once this batch has committed
+                if (existingKeys.contains(request.idempotencyKey()) || !seenKeys.add(request.idempotencyKey())) {
+                    outcomes.add(CoalescedOutcome.REPLAY);
+                    continue;
+                }
+                TransactionType type = TransactionType.fromString(request.type());
+                Money amount = Money.ofMinorUnits(request.amountInMinorUnits());
+                try {
+                    wallet.processTransaction(type, amount);
+                } catch (IllegalStateException e) {
+                    metrics.rejected(batch.get(i).item().operation(), "insufficient_funds");
+                    outcomes.add(CoalescedOutcome.failed(new BadRequestException("Insufficient balance: " + e.getMessage())));
+                    continue;
+                } catch (IllegalArgumentException e) {
+                    // A credit that would overflow the balance fails its own request, not the shared transaction
+                    metrics.rejected(batch.get(i).item().operation(), "balance_overflow");
+                    outcomes.add(CoalescedOutcome.failed(e));
+                    continue;
+                }
+                recordIndex[i] = records.size();
+                records.add(Transaction.create(wallet, type, amount));
+                balances.add(exactBalance ? wallet.getBalanceInMinorUnits() : null);
+                outcomes.add(null);
+            }
+        });
         
-        log.info("Transfer completed successfully: transactionId={}, sender={}, receiver={}, amount={}", 
-            savedTransfer.getTransactionId(), sender.getWalletId(), receiver.getWalletId(), amount);
+        // One balance update, then multi-row inserts of transactions, outbox events and keys at commit
+        List<Transaction> saved = metrics.time(LedgerMetrics.SAVE, COALESCED, () -> {
+            walletRepository.save(wallet);
+            List<Transaction> transactions = transactionRepository.saveAll(records);
+            List<OutboxEvent> events = new ArrayList<>(transactions.size());
+            for (int i = 0; i < transactions.size(); i++) {
+                events.add(OutboxEvent.of(transactions.get(i), balances.get(i)));
+            }
+            outboxEventRepository.saveAll(events);
+            return transactions;
+        });
+        walletBalanceCache.refreshAfterCommit(wallet);
+        
+        List<IdempotencyKey> newKeys = new ArrayList<>(saved.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (recordIndex[i] >= 0) {
+                CoalescedRequest item = batch.get(i).item();
+                TransactionResponse response = mapToTransactionResponse(saved.get(recordIndex[i]), walletId);
+                IdempotentResult result = new IdempotentResult(item.fingerprint(), response);
+                newKeys.add(idempotencyGuard.newKey(item.request().idempotencyKey(), result));
+                idempotencyGuard.recordAfterCommit(item.request().idempotencyKey(), result);
+                outcomes.set(i, CoalescedOutcome.succeeded(response));
+            }
+        }
+        idempotencyRepository.saveAll(newKeys);
         
-        return mapToTransactionResponse(savedTransfer);
+        log.info("Coalesced transactions committed: walletId={}, size={}, applied={}", walletId, batch.size(), saved.size());
+        return outcomes;
+    }
+    
+    private void complete(Pending<CoalescedRequest, TransactionResponse> pending, CoalescedOutcome outcome) {
+        if (outcome.response() != null) {
+            pending.complete(outcome.response());
+        } else if (outcome.error() != null) {
+            pending.fail(outcome.error());
+        } else {
+            CoalescedRequest item = pending.item();
+            try {
+                pending.complete(idempotencyGuard.replayCommitted(item.request().idempotencyKey(), item.fingerprint()));
+            } catch (RuntimeException e) {
+                pending.fail(e);
+            }
+        }
+    }
+    
+    private record CoalescedRequest(TransactionRequest request, String fingerprint, String operation) {
+    }
+    
+    // Exactly one of response and error is set, or neither for a request to be replayed from its key
+    private record CoalescedOutcome(TransactionResponse response, RuntimeException error) {
+        private static final CoalescedOutcome REPLAY = new CoalescedOutcome(null, null);
+        
+        private static CoalescedOutcome succeeded(TransactionResponse response) {
+            return new CoalescedOutcome(response, null);
+        }
+        
+        private static CoalescedOutcome failed(RuntimeException error) {
+            return new CoalescedOutcome(null, error);
+        }
+    }
+    
+    // Credit or debit without a prior row lock; empty if the wallet turned out to be striped
+    private Optional<TransactionResponse> applyConditionally(TransactionRequest request, TransactionType transactionType,
+                                                             Money amount, String fingerprint, String operation) {
+        long amountInMinorUnits = amount.getAmountInMinorUnits();
+        TransactionResponse response = new TransactionResponse(UUID.randomUUID().toString(), request.walletId(),
+            transactionType.name(), amountInMinorUnits, Money.toMajorUnits(amountInMinorUnits), LocalDateTime.now());
+        Optional<Wallet> updated = metrics.time(LedgerMetrics.SAVE, operation, () -> conditionalLedgerWriter.apply(
+            response, transactionType, request.idempotencyKey(), fingerprint, idempotencyGuard.toResponseBody(response)));
+        
+        if (updated.isEmpty()) {
+            // Rare path: one plain read tells a missing or striped wallet from an overdraft
+            Wallet wallet = walletRepository.findByWalletId(request.walletId()).orElseThrow(() -> {
+                log.warn("Wallet not found for transaction: {}", request.walletId());
+                return new NotFoundException("Wallet not found: " + request.walletId());
+            });
+            if (wallet.isStriped()) {
+                return Optional.empty();
+            }
+            log.warn("Insufficient balance for transaction: walletId={}, amount={}",
+                request.walletId(), amount.getAmountInMinorUnits());
+            metrics.rejected(operation, "insufficient_funds");
+            throw new BadRequestException("Insufficient balance");
+        }
+        
+        idempotencyGuard.recordAfterCommit(request.idempotencyKey(), new IdempotentResult(fingerprint, response));
+        // Merged by version like every other write, so a read-through of the old row cannot win afterwards
+        walletBalanceCache.refreshAfterCommit(updated.get());
+        
+        log.info("Transaction processed successfully: transactionId={}, walletId={}, type={}, amount={}", 
+            response.transactionId(), request.walletId(), transactionType, amount);
+        
+        return Optional.of(response);
+    }
+    
+    // Credits one random stripe of a hot wallet; empty if the wallet turned out not to be striped any more
+    private Optional<TransactionResponse> creditStripe(HotWalletLedger.HotWallet hotWallet, Money amount,
+                                                       String idempotencyKey, String fingerprint) {
+        Optional<WalletStripe> locked = metrics.time(LedgerMetrics.LOCK_WAIT, "credit",
+            () -> hotWalletLedger.lockRandomStripe(hotWallet));
+        if (locked.isEmpty()) {
+            return Optional.empty();
+        }
+        WalletStripe stripe = locked.get();
+        stripe.credit(amount);
+        
+        // The wallet's total is spread over its stripes, so the outbox event carries no balance
+        Transaction savedTransaction = metrics.time(LedgerMetrics.SAVE, "credit", () -> {
+            walletStripeRepository.save(stripe);
+            Transaction saved = transactionRepository.save(Transaction.create(stripe.getWallet(), TransactionType.CREDIT, amount));
+            outboxEventRepository.save(OutboxEvent.of(saved, hotWallet.walletId(), null));
+            return saved;
+        });
+        TransactionResponse response = mapToTransactionResponse(savedTransaction, hotWallet.walletId());
+        claimIdempotencyKey(idempotencyKey, new IdempotentResult(fingerprint, response));
+        
+        log.info("Hot wallet credit processed: transactionId={}, walletId={}, stripe={}, amount={}", 
+            savedTransaction.getTransactionId(), hotWallet.walletId(), stripe.getStripeIndex(), amount);
+        
+        return Optional.of(response);
+    }
+    
+    // Queues the idempotency key insert; the unique constraint is the final arbiter for concurrent duplicates
+    private void claimIdempotencyKey(String idempotencyKey, IdempotentResult result) {
+        idempotencyRepository.save(idempotencyGuard.newKey(idempotencyKey, result));
+        idempotencyGuard.recordAfterCommit(idempotencyKey, result);
+    }
+    
+    /**
+     * Runs a write transaction with transient-failure retry, holding a database bulkhead permit throughout.
+     * Sequence-generated ids let Hibernate defer and batch every insert until commit, so a concurrent
+     * duplicate idempotency key surfaces here as a unique violation rather than at save(); onDuplicateKey
+     * then runs outside the rolled-back transaction.
+     */
+    private <T> T executeWrite(String operation, Supplier<T> work, Supplier<T> onDuplicateKey) {
+        try {
+            return bulkhead.execute(operation, () -> retrier.execute(operation, work));
+        } catch (DataIntegrityViolationException e) {
+            if (!isIdempotencyKeyViolation(e)) {
+                throw e;
+            }
+            // Race condition - another request already saved this key
+            log.warn("Idempotency key collision during {}", operation);
+            return onDuplicateKey.get();
+        }
+    }
+    
+    // Bounded metric tag for processTransaction: credit, debit, or transaction for unparseable types
+    private static String operationTag(String type) {
+        if ("CREDIT".equalsIgnoreCase(type)) {
+            return "credit";
+        }
+        return "DEBIT".equalsIgnoreCase(type) ? "debit" : "transaction";
+    }
+    
+    private boolean isIdempotencyKeyViolation(DataIntegrityViolationException e) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && message.contains(IdempotencyKey.UNIQUE_CONSTRAINT);
     }
     
     private TransactionResponse mapToTransactionResponse(Transaction transaction) {
-        Money amount = transaction.getAmount();
-        return new TransactionResponse(
-            transaction.getTransactionId(),
-            transaction.getWallet().getWalletId(),
-            transaction.getTransactionType().name(),
-            amount.getAmountInMinorUnits(),
-            amount.toMajorUnits(),
-            transaction.getCreatedAt()
-        );
+        return mapToTransactionResponse(transaction, transaction.getWallet().getWalletId());
+    }
+    
+    private TransactionResponse mapToTransactionResponse(Transaction transaction, String walletId) {
+        return ResponseMapper.toTransactionResponse(transaction, walletId);
     }
 }
 
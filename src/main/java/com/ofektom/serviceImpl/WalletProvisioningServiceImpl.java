@@ -0,0 +1,231 @@
+package com.ofektom.serviceImpl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.response.BulkWalletResult;
+import com.ofektom.enums.BulkInputFormat;
+import com.ofektom.model.Wallet;
+import com.ofektom.service.WalletProvisioningService;
+import com.ofektom.sharding.ShardContext;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.sharding.WalletIds;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Service implementation for bulk wallet provisioning.
+ * Reads the request body line by line in fixed-size chunks, loads each chunk with the PostgreSQL COPY
+ * protocol (falling back to batched multi-row inserts on other databases) and streams the created
+ * walletIds back after each chunk commits, so memory use is bounded by the chunk size.
+ * With sharding, chunks go to the shards in turn: each chunk is loaded on one shard, with ids from that shard's
+ * wallets_seq and wallet ids that name the shard, the same as wallets created one at a time.
+ */
+@Service
+public class WalletProvisioningServiceImpl implements WalletProvisioningService {
+    
+    private static final Logger log = LoggerFactory.getLogger(WalletProvisioningServiceImpl.class);
+    private static final String COPY_WALLETS =
+        "COPY wallets (id, wallet_id, balance_in_minor_units, opening_balance_in_minor_units, stripe_count, created_at, updated_at, version) "
+            + "FROM STDIN WITH (FORMAT csv)";
+    private static final String INSERT_WALLET =
+        "INSERT INTO wallets (id, wallet_id, balance_in_minor_units, opening_balance_in_minor_units, stripe_count, created_at, updated_at, version) "
+            + "VALUES (?, ?, ?, ?, 0, ?, ?, 0)";
+    
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final int chunkSize;
+    
+    public WalletProvisioningServiceImpl(DataSource dataSource,
+                                         JdbcTemplate jdbcTemplate,
+                                         PlatformTransactionManager transactionManager,
+                                         ObjectMapper objectMapper,
+                                         ShardRouter shardRouter,
+                                         @Value("${wallet.provisioning.chunk-size:5000}") int chunkSize) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.shardRouter = shardRouter;
+        this.chunkSize = chunkSize;
+    }
+    
+    private record PendingWallet(long line, long balanceInMinorUnits) {
+    }
+    
+    /**
+     * Provisions one wallet per input line. Invalid lines are reported in the output stream and skipped;
+     * each chunk commits on its own, so wallets already streamed back stay created if a later chunk fails.
+     */
+    @Override
+    public void provisionWallets(InputStream input, BulkInputFormat format, OutputStream output) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        List<PendingWallet> chunk = new ArrayList<>(chunkSize);
+        List<BulkWalletResult> rejected = new ArrayList<>();
+        long lineNumber = 0;
+        long created = 0;
+        // Round-robin from a random shard, so concurrent uploads do not all start on the same one
+        int shard = ThreadLocalRandom.current().nextInt(shardRouter.shardCount());
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (format == BulkInputFormat.CSV && lineNumber == 1 && isCsvHeader(line))) {
+                continue;
+            }
+            try {
+                long balance = parseBalance(line, format);
+                chunk.add(new PendingWallet(lineNumber, balance));
+            } catch (IllegalArgumentException e) {
+                rejected.add(new BulkWalletResult(lineNumber, null, null, e.getMessage()));
+            }
+            if (chunk.size() == chunkSize) {
+                created += flushChunk(chunk, rejected, writer, shard);
+                shard = (shard + 1) % shardRouter.shardCount();
+            }
+        }
+        created += flushChunk(chunk, rejected, writer, shard);
+        
+        log.info("Bulk provisioning completed: created={}, lines={}", created, lineNumber);
+    }
+    
+    // Loads one chunk in its own transaction on the given shard, then streams its results in input order
+    private int flushChunk(List<PendingWallet> chunk, List<BulkWalletResult> rejected, BufferedWriter writer, int shard)
+            throws IOException {
+        List<String> walletIds = chunk.isEmpty()
+            ? List.of()
+            : shardRouter.on(shard, () -> transactionTemplate.execute(status -> load(chunk)));
+        int i = 0;
+        int j = 0;
+        while (i < chunk.size() || j < rejected.size()) {
+            BulkWalletResult next;
+            if (j >= rejected.size() || (i < chunk.size() && chunk.get(i).line() < rejected.get(j).line())) {
+                PendingWallet wallet = chunk.get(i);
+                next = new BulkWalletResult(wallet.line(), walletIds.get(i++), wallet.balanceInMinorUnits(), null);
+            } else {
+                next = rejected.get(j++);
+            }
+            writer.write(objectMapper.writeValueAsString(next));
+            writer.newLine();
+        }
+        writer.flush();
+        int created = chunk.size();
+        chunk.clear();
+        rejected.clear();
+        return created;
+    }
+    
+    // Runs on the bound shard: ids come from its wallets_seq, and wallet ids name it as Wallet.onCreate's do
+    private List<String> load(List<PendingWallet> chunk) {
+        long[] ids = reserveIds(chunk.size());
+        Integer shard = ShardContext.current();
+        List<String> walletIds = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            walletIds.add(WalletIds.generate(shard));
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            if (connection.isWrapperFor(PGConnection.class)) {
+                copy(connection.unwrap(PGConnection.class), chunk, ids, walletIds, now);
+            } else {
+                List<Object[]> rows = new ArrayList<>(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    PendingWallet wallet = chunk.get(i);
+                    rows.add(new Object[] {ids[i], walletIds.get(i), wallet.balanceInMinorUnits(), wallet.balanceInMinorUnits(), now, now});
+                }
+                jdbcTemplate.batchUpdate(INSERT_WALLET, rows);
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Bulk wallet load failed: " + e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+        return walletIds;
+    }
+    
+    private void copy(PGConnection connection, List<PendingWallet> chunk, long[] ids, List<String> walletIds, Timestamp now)
+            throws SQLException, IOException {
+        StringBuilder csv = new StringBuilder(chunk.size() * 96);
+        for (int i = 0; i < chunk.size(); i++) {
+            PendingWallet wallet = chunk.get(i);
+            csv.append(ids[i]).append(',')
+                .append(walletIds.get(i)).append(',')
+                .append(wallet.balanceInMinorUnits()).append(',')
+                .append(wallet.balanceInMinorUnits()).append(",0,")
+                .append(now).append(',')
+                .append(now).append(",0\n");
+        }
+        connection.getCopyAPI().copyIn(COPY_WALLETS, new StringReader(csv.toString()));
+    }
+    
+    // Reserves ids the way Hibernate's pooled-lo optimizer does: each nextval() owns a block of ID_ALLOCATION_SIZE
+    private long[] reserveIds(int count) {
+        int blocks = (count + Wallet.ID_ALLOCATION_SIZE - 1) / Wallet.ID_ALLOCATION_SIZE;
+        List<Long> blockStarts = jdbcTemplate.queryForList(
+            "SELECT nextval('wallets_seq') FROM generate_series(1, ?)", Long.class, blocks);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = blockStarts.get(i / Wallet.ID_ALLOCATION_SIZE) + (i % Wallet.ID_ALLOCATION_SIZE);
+        }
+        return ids;
+    }
+    
+    private long parseBalance(String line, BulkInputFormat format) {
+        Long balance;
+        if (format == BulkInputFormat.NDJSON) {
+            try {
+                CreateWalletRequest request = objectMapper.readValue(line, CreateWalletRequest.class);
+                balance = request.initialBalanceInMinorUnits();
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Malformed JSON line");
+            }
+        } else {
+            String value = line.split(",", 2)[0].trim();
+            try {
+                balance = value.isEmpty() ? null : Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid initial balance: " + value);
+            }
+        }
+        if (balance == null) {
+            return 0L;
+        }
+        if (balance < 0) {
+            throw new IllegalArgumentException("Initial balance cannot be negative");
+        }
+        return balance;
+    }
+    
+    private boolean isCsvHeader(String line) {
+        return line.trim().toLowerCase().startsWith("initialbalance");
+    }
+}
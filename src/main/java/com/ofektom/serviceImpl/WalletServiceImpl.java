@@ -1,39 +1,64 @@
 package com.ofektom.serviceImpl;
 
+import com.ofektom.cache.WalletBalanceCache;
 import com.ofektom.dto.request.CreateWalletRequest;
+import com.ofektom.dto.request.HotWalletRequest;
 import com.ofektom.dto.response.WalletResponse;
 import com.ofektom.exception.NotFoundException;
 import com.ofektom.model.Wallet;
+import com.ofektom.replica.ReplicaRouter;
 import com.ofektom.repository.WalletRepository;
 import com.ofektom.service.WalletService;
+import com.ofektom.sharding.ShardRouter;
 import com.ofektom.utils.Money;
+import com.ofektom.utils.ResponseMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
 
 /**
  * Service implementation for wallet operations.
  * Handles wallet creation and retrieval business logic.
+ * Every operation binds the wallet's shard before opening its transaction, so the whole transaction,
+ * including the inserts flushed at commit, runs on that shard.
  */
 @Service
 public class WalletServiceImpl implements WalletService {
     
     private static final Logger log = LoggerFactory.getLogger(WalletServiceImpl.class);
     private final WalletRepository walletRepository;
+    private final HotWalletLedger hotWalletLedger;
+    private final WalletBalanceCache walletBalanceCache;
+    private final ReplicaRouter replicaRouter;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate readWrite;
+    private final TransactionTemplate readOnly;
 
     @Autowired
-    public WalletServiceImpl(WalletRepository walletRepository) {
+    public WalletServiceImpl(WalletRepository walletRepository, HotWalletLedger hotWalletLedger,
+                             WalletBalanceCache walletBalanceCache, ReplicaRouter replicaRouter,
+                             ShardRouter shardRouter, PlatformTransactionManager transactionManager) {
         this.walletRepository = walletRepository;
+        this.hotWalletLedger = hotWalletLedger;
+        this.walletBalanceCache = walletBalanceCache;
+        this.replicaRouter = replicaRouter;
+        this.shardRouter = shardRouter;
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
     }
     
     /**
      * Creates a new wallet with optional initial balance.
-     * Balance defaults to zero if not specified.
+     * Balance defaults to zero if not specified. With sharding, the wallet is placed on a random shard,
+     * which its generated walletId records.
      */
     @Override
-    @Transactional
     public WalletResponse createWallet(CreateWalletRequest request) {
         log.debug("Creating new wallet");
         
@@ -44,7 +69,11 @@ public class WalletServiceImpl implements WalletService {
             wallet.setBalance(Money.ofMinorUnits(request.initialBalanceInMinorUnits()));
         }
         
-        Wallet saved = walletRepository.save(wallet);
+        Wallet saved = shardRouter.onNewWallet(() -> readWrite.execute(status -> {
+            Wallet persisted = walletRepository.save(wallet);
+            walletBalanceCache.refreshAfterCommit(persisted);
+            return persisted;
+        }));
         
         log.info("Wallet created successfully: walletId={}, initialBalance={}", 
             saved.getWalletId(), saved.getBalanceInMinorUnits());
@@ -54,29 +83,62 @@ public class WalletServiceImpl implements WalletService {
     
     /**
      * Retrieves wallet details by wallet ID.
-     * Throws NotFoundException if wallet does not exist.
+     * Served from the balance cache when possible; a miss opens a read-only transaction (on a replica when one
+     * is fresh enough) and fills the cache. Throws NotFoundException if wallet does not exist.
      */
     @Override
-    @Transactional(readOnly = true)
     public WalletResponse getWallet(String walletId) {
         log.debug("Retrieving wallet: {}", walletId);
         
-        return walletRepository.findByWalletId(walletId)
-            .map(this::mapToWalletResponse)
+        // The cache only knows this instance's writes, so a request carrying a consistency token bypasses it
+        if (!replicaRouter.hasRequirement()) {
+            Optional<WalletResponse> cached = walletBalanceCache.get(walletId);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        
+        return shardRouter.onWallet(walletId, () -> readOnly.execute(status -> walletRepository.findByWalletId(walletId)
+            .map(wallet -> {
+                WalletResponse response = ResponseMapper.toWalletResponse(wallet, hotWalletLedger.totalBalance(wallet),
+                    replicaRouter.servedToken());
+                walletBalanceCache.put(wallet, response);
+                return response;
+            })
             .orElseThrow(() -> {
                 log.warn("Wallet not found: {}", walletId);
                 return new NotFoundException("Wallet not found: " + walletId);
-            });
+            })));
+    }
+    
+    /**
+     * Switches a wallet into hot-wallet mode with the requested number of striped sub-balances,
+     * or back to a single row when the count is zero. Existing stripe funds are swept into the wallet first.
+     */
+    @Override
+    public WalletResponse configureStripes(String walletId, HotWalletRequest request) {
+        log.debug("Configuring stripes: walletId={}, stripeCount={}", walletId, request.stripeCount());
+        
+        WalletResponse response = shardRouter.onWallet(walletId, () -> readWrite.execute(status -> {
+            Wallet wallet = walletRepository.findByWalletIdWithLock(walletId)
+                .orElseThrow(() -> {
+                    log.warn("Wallet not found: {}", walletId);
+                    return new NotFoundException("Wallet not found: " + walletId);
+                });
+            
+            hotWalletLedger.restripe(wallet, request.stripeCount());
+            walletRepository.save(wallet);
+            walletBalanceCache.evictAfterCommit(walletId);
+            return mapToWalletResponse(wallet);
+        }));
+        
+        log.info("Wallet stripes configured: walletId={}, stripeCount={}", walletId, request.stripeCount());
+        
+        return response;
     }
     
     private WalletResponse mapToWalletResponse(Wallet wallet) {
-        Money balance = wallet.getBalance();
-        return new WalletResponse(
-            wallet.getWalletId(),
-            balance.getAmountInMinorUnits(),
-            balance.toMajorUnits(),
-            wallet.getCreatedAt(),
-            wallet.getUpdatedAt()
-        );
+        // Striped wallets report the row balance plus every stripe
+        return ResponseMapper.toWalletResponse(wallet, hotWalletLedger.totalBalance(wallet));
     }
 }
@@ -0,0 +1,25 @@
+package com.ofektom.sharding;
+
+/**
+ * The shard the current thread is working on, bound by ShardRouter for the duration of one unit of work.
+ * Nothing is bound when sharding is off, or on threads that never went through the router (shard 0 then).
+ */
+public final class ShardContext {
+    
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+    
+    private ShardContext() {
+    }
+    
+    public static Integer current() {
+        return CURRENT.get();
+    }
+    
+    static void bind(Integer shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+}
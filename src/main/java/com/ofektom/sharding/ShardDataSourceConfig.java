@@ -0,0 +1,109 @@
+package com.ofektom.sharding;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the auto-configured DataSource when wallet.shard.urls is set: shard 0 keeps every spring.datasource.*
+ * setting, each URL adds one shard, and the application-wide DataSource routes to the thread's bound shard.
+ * Flyway migrates every shard at startup, each with its own shard_index placeholder.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "wallet.shard.urls")
+public class ShardDataSourceConfig {
+    
+    public ShardDataSourceConfig(@Value("${wallet.replica.urls:}") String replicaUrls) {
+        if (!replicaUrls.isBlank()) {
+            throw new IllegalStateException("wallet.shard.urls and wallet.replica.urls cannot be combined");
+        }
+    }
+    
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+    
+    // Unlike replicas, every shard owns data, so a shard that is down at startup fails the startup
+    @Bean
+    public ShardPools shardPools(HikariDataSource primaryDataSource,
+                                 DataSourceProperties properties,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${wallet.shard.urls}") List<String> urls,
+                                 @Value("${wallet.shard.username:${spring.datasource.username:}}") String username,
+                                 @Value("${wallet.shard.password:${spring.datasource.password:}}") String password,
+                                 @Value("${wallet.shard.pool-size:10}") int poolSize) {
+        if (urls.size() + 1 > WalletIds.MAX_SHARDS) {
+            throw new IllegalArgumentException("At most " + (WalletIds.MAX_SHARDS - 1) + " wallet.shard.urls are supported");
+        }
+        List<HikariDataSource> others = new ArrayList<>();
+        for (String url : urls) {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("shard-" + (others.size() + 1));
+            config.setJdbcUrl(url.trim());
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setDriverClassName(properties.determineDriverClassName());
+            config.setMaximumPoolSize(poolSize);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            others.add(new HikariDataSource(config));
+        }
+        return new ShardPools(primaryDataSource, others);
+    }
+    
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardPools shardPools) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shardPools.count(); shard++) {
+            targets.put(shard, shardPools.get(shard));
+        }
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(shardPools.primary());
+        routing.afterPropertiesSet();
+        
+        // Defaults are given so the proxy never opens a connection just to learn them
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(routing);
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return proxy;
+    }
+    
+    // Shard 0 is migrated by the auto-configured Flyway (through the routing DataSource, which defaults to it)
+    @Bean
+    public FlywayMigrationStrategy shardMigrations(ShardPools shardPools) {
+        return flyway -> {
+            flyway.migrate();
+            for (int shard = 1; shard < shardPools.count(); shard++) {
+                Map<String, String> placeholders = new HashMap<>(flyway.getConfiguration().getPlaceholders());
+                placeholders.put("shard_index", String.valueOf(shard));
+                Flyway.configure()
+                    .configuration(flyway.getConfiguration())
+                    .dataSource(shardPools.get(shard))
+                    .placeholders(placeholders)
+                    .load()
+                    .migrate();
+            }
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package com.ofektom.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * One connection pool per shard: shard 0 is the spring.datasource pool, shards 1..N come from wallet.shard.urls.
+ * Only exists when wallet.shard.urls is set.
+ */
+public record ShardPools(DataSource primary, List<HikariDataSource> others) implements AutoCloseable {
+    
+    public int count() {
+        return 1 + others.size();
+    }
+    
+    public DataSource get(int shard) {
+        return shard == 0 ? primary : others.get(shard - 1);
+    }
+    
+    @Override
+    public void close() {
+        others.forEach(HikariDataSource::close);
+    }
+}
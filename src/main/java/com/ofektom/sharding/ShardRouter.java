@@ -0,0 +1,76 @@
+package com.ofektom.sharding;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Binds the shard a unit of work runs on. Every repository call and JdbcTemplate query made inside
+ * on()/onWallet() uses that shard's pool; work must not span shards inside one transaction, so callers
+ * bind the shard before opening it. Without wallet.shard.urls there is one shard and nothing is bound.
+ */
+@Component
+public class ShardRouter {
+    
+    private final int shardCount;
+    
+    public ShardRouter(ObjectProvider<ShardPools> shardPools) {
+        ShardPools pools = shardPools.getIfAvailable();
+        this.shardCount = pools == null ? 1 : pools.count();
+    }
+    
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+    
+    public int shardCount() {
+        return shardCount;
+    }
+    
+    // Ids naming a shard this deployment does not have cannot exist; shard 0 answers them with a 404
+    public int shardOf(String walletId) {
+        int shard = WalletIds.shardOf(walletId);
+        return shard < shardCount ? shard : 0;
+    }
+    
+    public boolean sameShard(String walletId, String otherWalletId) {
+        return shardOf(walletId) == shardOf(otherWalletId);
+    }
+    
+    public <T> T onWallet(String walletId, Supplier<T> work) {
+        return on(shardOf(walletId), work);
+    }
+    
+    // New wallets are spread uniformly; Wallet.onCreate embeds the bound shard in the wallet id
+    public <T> T onNewWallet(Supplier<T> work) {
+        return on(isSharded() ? ThreadLocalRandom.current().nextInt(shardCount) : 0, work);
+    }
+    
+    // Restores the previous binding afterwards, so a saga step can visit another shard and come back
+    public <T> T on(int shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        Integer previous = ShardContext.current();
+        ShardContext.bind(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardContext.bind(previous);
+        }
+    }
+    
+    // For jobs that maintain every database: runs the work once per shard, one shard at a time
+    public void forEachShard(IntConsumer work) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            on(current, () -> {
+                work.accept(current);
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.ofektom.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Picks the shard pool per physical connection from the thread's ShardContext, defaulting to shard 0.
+ * Wrapped in a LazyConnectionDataSourceProxy, so a transaction opened before the shard was bound
+ * still takes its connection from the right shard at its first statement.
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource {
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
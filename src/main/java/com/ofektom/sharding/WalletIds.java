@@ -0,0 +1,39 @@
+package com.ofektom.sharding;
+
+import java.util.UUID;
+
+/**
+ * Wallet ids that carry their shard, so any instance can route a wallet without a directory lookup.
+ * Sharded ids are version-8 (custom) UUIDs whose first byte is the shard index; version-4 ids were issued
+ * before sharding was turned on and live on shard 0, where they were created.
+ */
+public final class WalletIds {
+    
+    public static final int MAX_SHARDS = 256;
+    private static final char SHARDED_VERSION = '8';
+    
+    private WalletIds() {
+    }
+    
+    // A plain random UUID when no shard is bound, so unsharded deployments keep issuing the same ids as before
+    public static String generate(Integer shard) {
+        String uuid = UUID.randomUUID().toString();
+        if (shard == null) {
+            return uuid;
+        }
+        // Only one byte holds the shard; anything wider would change the id's length
+        if (shard < 0 || shard >= MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard index out of range: " + shard);
+        }
+        return String.format("%02x", shard) + uuid.substring(2, 14) + SHARDED_VERSION + uuid.substring(15);
+    }
+    
+    public static int shardOf(String walletId) {
+        if (walletId == null || walletId.length() != 36 || walletId.charAt(14) != SHARDED_VERSION) {
+            return 0;
+        }
+        int high = Character.digit(walletId.charAt(0), 16);
+        int low = Character.digit(walletId.charAt(1), 16);
+        return high < 0 || low < 0 ? 0 : high << 4 | low;
+    }
+}
@@ -0,0 +1,79 @@
+package com.ofektom.utils;
+
+import com.ofektom.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many write operations use the database at once, sized to the connection pool by default.
+ * Callers beyond the limit wait in a fair FIFO queue with their own deadline instead of racing for
+ * Hikari connections; with virtual threads this keeps thousands of requests from all hitting
+ * connection-timeout together. A caller that waits too long gets a 503 with Retry-After.
+ */
+@Component
+public class DatabaseBulkhead {
+    
+    private static final Logger log = LoggerFactory.getLogger(DatabaseBulkhead.class);
+    
+    private final Semaphore permits;
+    private final long maxWaitMs;
+    private final Timer waitTimer;
+    private final Counter rejected;
+    
+    public DatabaseBulkhead(@Value("${wallet.bulkhead.max-concurrent:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrent,
+                            @Value("${wallet.bulkhead.max-wait-ms:5000}") long maxWaitMs,
+                            MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxWaitMs = maxWaitMs;
+        this.waitTimer = Timer.builder("wallet.db.bulkhead.wait")
+            .description("Time spent queued for a database bulkhead permit")
+            .register(meterRegistry);
+        this.rejected = Counter.builder("wallet.db.bulkhead.rejected")
+            .description("Operations that gave up waiting for a database bulkhead permit")
+            .register(meterRegistry);
+        Gauge.builder("wallet.db.bulkhead.queue", permits, Semaphore::getQueueLength)
+            .description("Operations currently queued for a database bulkhead permit")
+            .register(meterRegistry);
+        Gauge.builder("wallet.db.bulkhead.available", permits, Semaphore::availablePermits)
+            .description("Database bulkhead permits currently free")
+            .register(meterRegistry);
+    }
+    
+    // Runs the action while holding a permit; throws ServiceUnavailableException if none frees up in time
+    // or the wait is interrupted
+    public <T> T execute(String operation, Supplier<T> action) {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // Usually shutdown; the request did nothing yet, so it is as safe to retry as a full bulkhead
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for a database permit for {}", operation);
+            throw new ServiceUnavailableException("Interrupted while waiting for a database permit, please retry",
+                Math.max(1L, maxWaitMs / 1000));
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            rejected.increment();
+            log.warn("Database bulkhead full, rejecting {} after {} ms", operation, maxWaitMs);
+            throw new ServiceUnavailableException("Service is busy, please retry", Math.max(1L, maxWaitMs / 1000));
+        }
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
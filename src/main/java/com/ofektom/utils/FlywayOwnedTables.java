@@ -0,0 +1,60 @@
+package com.ofektom.utils;
+
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.spi.SchemaFilter;
+import org.hibernate.tool.schema.spi.SchemaFilterProvider;
+
+import java.util.Set;
+
+/**
+ * Keeps Hibernate's ddl-auto update and validate away from tables whose schema only Flyway manages
+ * (the partitioned transactions table). Create and drop still see every table, for throwaway databases.
+ */
+public class FlywayOwnedTables implements SchemaFilterProvider {
+    
+    private static final Set<String> TABLES = Set.of("transactions");
+    
+    private static final SchemaFilter EXCLUDE_OWNED = new SchemaFilter() {
+        @Override
+        public boolean includeNamespace(Namespace namespace) {
+            return true;
+        }
+        
+        @Override
+        public boolean includeTable(Table table) {
+            return !TABLES.contains(table.getName().toLowerCase());
+        }
+        
+        @Override
+        public boolean includeSequence(Sequence sequence) {
+            return true;
+        }
+    };
+    
+    @Override
+    public SchemaFilter getCreateFilter() {
+        return SchemaFilter.ALL;
+    }
+    
+    @Override
+    public SchemaFilter getDropFilter() {
+        return SchemaFilter.ALL;
+    }
+    
+    @Override
+    public SchemaFilter getTruncatorFilter() {
+        return SchemaFilter.ALL;
+    }
+    
+    @Override
+    public SchemaFilter getMigrateFilter() {
+        return EXCLUDE_OWNED;
+    }
+    
+    @Override
+    public SchemaFilter getValidateFilter() {
+        return EXCLUDE_OWNED;
+    }
+}
@@ -6,8 +6,12 @@ import java.util.Objects;
 /**
  * Immutable Value Object representing monetary amounts.
  * Stores amounts in minor units (kobo) to avoid floating-point precision issues.
+ * The static long kernels let the balance update path do the same checked arithmetic without allocating.
  */
 public final class Money {
+    private static final Money ZERO = new Money(0L);
+    private static final int MINOR_UNITS_PER_MAJOR = 100;
+    
     private final long amountInMinorUnits;
     
     private Money(long amountInMinorUnits) {
@@ -22,22 +26,34 @@ public final class Money {
     }
     
     public static Money zero() {
-        return new Money(0L);
+        return ZERO;
+    }
+    
+    // Overflow-checked addition of minor-unit amounts
+    public static long addMinorUnits(long amountInMinorUnits, long otherInMinorUnits) {
+        try {
+            return Math.addExact(amountInMinorUnits, otherInMinorUnits);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount overflow: " + amountInMinorUnits + " + " + otherInMinorUnits);
+        }
+    }
+    
+    // Subtraction of minor-unit amounts that never goes below zero
+    public static long subtractMinorUnits(long amountInMinorUnits, long otherInMinorUnits) {
+        if (amountInMinorUnits < otherInMinorUnits) {
+            throw new IllegalStateException("Insufficient balance: " + amountInMinorUnits + " < " + otherInMinorUnits);
+        }
+        return Math.subtractExact(amountInMinorUnits, otherInMinorUnits);
     }
     
     public Money add(Money other) {
         Objects.requireNonNull(other, "Money to add cannot be null");
-        return new Money(this.amountInMinorUnits + other.amountInMinorUnits);
+        return new Money(addMinorUnits(this.amountInMinorUnits, other.amountInMinorUnits));
     }
     
     public Money subtract(Money other) {
         Objects.requireNonNull(other, "Money to subtract cannot be null");
-        if (this.amountInMinorUnits < other.amountInMinorUnits) {
-            throw new IllegalStateException(
-                String.format("Insufficient balance: %d < %d", this.amountInMinorUnits, other.amountInMinorUnits)
-            );
-        }
-        return new Money(this.amountInMinorUnits - other.amountInMinorUnits);
+        return new Money(subtractMinorUnits(this.amountInMinorUnits, other.amountInMinorUnits));
     }
     
     public boolean isLessThan(Money other) {
@@ -59,7 +75,22 @@ public final class Money {
     }
     
     public BigDecimal toMajorUnits() {
-        return BigDecimal.valueOf(amountInMinorUnits).divide(new BigDecimal(100));
+        return toMajorUnits(amountInMinorUnits);
+    }
+    
+    /**
+     * Converts minor units to major units without dividing. The scale matches the exact quotient
+     * minorUnits / 100 (0, 1 or 2 decimals, e.g. 1, 1.5, 1.25), so responses render exactly as before,
+     * and whole amounts up to 10 come from BigDecimal's own cache.
+     */
+    public static BigDecimal toMajorUnits(long amountInMinorUnits) {
+        if (amountInMinorUnits % MINOR_UNITS_PER_MAJOR == 0) {
+            return BigDecimal.valueOf(amountInMinorUnits / MINOR_UNITS_PER_MAJOR);
+        }
+        if (amountInMinorUnits % 10 == 0) {
+            return BigDecimal.valueOf(amountInMinorUnits / 10, 1);
+        }
+        return BigDecimal.valueOf(amountInMinorUnits, 2);
     }
     
     @Override
@@ -77,7 +108,7 @@ public final class Money {
     
     @Override
     public String toString() {
-        return String.format("Money{minorUnits=%d, majorUnits=%s}", amountInMinorUnits, toMajorUnits());
+        return "Money{minorUnits=" + amountInMinorUnits + ", majorUnits=" + toMajorUnits() + "}";
     }
 }
 
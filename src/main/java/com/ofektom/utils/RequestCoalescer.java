@@ -0,0 +1,138 @@
+package com.ofektom.utils;
+
+import com.ofektom.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Group commit: concurrent requests with the same key are collected into one batch and flushed together.
+ * The first request for a key leads the batch; it waits for the window (or until the batch is full), closes
+ * the batch and runs the flush on its own thread, while the other callers block until their result is set.
+ * Every request therefore waits up to one window, and no extra threads or connections are used.
+ */
+public class RequestCoalescer<T, R> {
+    
+    /**
+     * One caller's request; the flush must complete or fail every pending item it is given
+     * (anything left open when it returns is failed with a 503, as the fault is on the server side).
+     */
+    public static final class Pending<T, R> {
+        private final T item;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        
+        private Pending(T item) {
+            this.item = item;
+        }
+        
+        public T item() {
+            return item;
+        }
+        
+        public void complete(R value) {
+            result.complete(value);
+        }
+        
+        public void fail(RuntimeException error) {
+            result.completeExceptionally(error);
+        }
+    }
+    
+    private final class Batch {
+        private final List<Pending<T, R>> items = new ArrayList<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+    }
+    
+    private final Map<String, Batch> open = new ConcurrentHashMap<>();
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Consumer<List<Pending<T, R>>> flush;
+    private final DistributionSummary batchSizes;
+    private final Counter fullBatches;
+    
+    public RequestCoalescer(String name, Duration window, int maxBatchSize, Consumer<List<Pending<T, R>>> flush,
+                            MeterRegistry meterRegistry) {
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.flush = flush;
+        this.batchSizes = DistributionSummary.builder(name + ".batch.size")
+            .description("Requests flushed together in one coalesced batch")
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .register(meterRegistry);
+        this.fullBatches = Counter.builder(name + ".batch.full")
+            .description("Coalesced batches flushed early because they reached the maximum size")
+            .register(meterRegistry);
+    }
+    
+    // Blocks until the batch holding this request is flushed; rethrows the request's own failure
+    public R submit(String key, T item) {
+        Pending<T, R> pending = new Pending<>(item);
+        boolean[] leader = new boolean[1];
+        Object[] joined = new Object[1];
+        // Adding and closing happen inside compute, so a batch never gains items after it was closed
+        open.compute(key, (k, current) -> {
+            Batch batch = current;
+            if (batch == null) {
+                batch = new Batch();
+                leader[0] = true;
+            }
+            batch.items.add(pending);
+            joined[0] = batch;
+            if (batch.items.size() >= maxBatchSize) {
+                batch.full.countDown();
+                return null;
+            }
+            return batch;
+        });
+        
+        if (leader[0]) {
+            @SuppressWarnings("unchecked")
+            Batch batch = (Batch) joined[0];
+            flushWhenReady(key, batch);
+        }
+        
+        try {
+            return pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+    
+    private void flushWhenReady(String key, Batch batch) {
+        try {
+            if (batch.full.await(windowNanos, TimeUnit.NANOSECONDS)) {
+                fullBatches.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // No-op if the batch filled up and was already closed by the caller that completed it
+        open.remove(key, batch);
+        
+        List<Pending<T, R>> items = List.copyOf(batch.items);
+        batchSizes.record(items.size());
+        try {
+            flush.accept(items);
+        } catch (RuntimeException e) {
+            items.forEach(pending -> pending.fail(e));
+        } finally {
+            ServiceUnavailableException notCompleted =
+                new ServiceUnavailableException("Coalesced request was not completed, please retry", 1);
+            items.forEach(pending -> pending.fail(notCompleted));
+        }
+    }
+}
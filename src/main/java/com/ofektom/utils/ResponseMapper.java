@@ -0,0 +1,45 @@
+package com.ofektom.utils;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.dto.response.WalletResponse;
+import com.ofektom.model.Transaction;
+import com.ofektom.model.Wallet;
+
+/**
+ * Maps domain entities to response DTOs.
+ * Shared by the services and the balance cache so every path produces identical responses.
+ */
+public final class ResponseMapper {
+    
+    private ResponseMapper() {
+    }
+    
+    // Balance is passed in because striped wallets report more than their own row
+    public static WalletResponse toWalletResponse(Wallet wallet, Money balance) {
+        return toWalletResponse(wallet, balance, null);
+    }
+    
+    public static WalletResponse toWalletResponse(Wallet wallet, Money balance, String consistencyToken) {
+        return new WalletResponse(
+            wallet.getWalletId(),
+            balance.getAmountInMinorUnits(),
+            balance.toMajorUnits(),
+            wallet.getCreatedAt(),
+            wallet.getUpdatedAt(),
+            consistencyToken
+        );
+    }
+    
+    // Takes the walletId explicitly so a lazy wallet reference is never initialised just for the response
+    public static TransactionResponse toTransactionResponse(Transaction transaction, String walletId) {
+        long amountInMinorUnits = transaction.getAmountInMinorUnits();
+        return new TransactionResponse(
+            transaction.getTransactionId(),
+            walletId,
+            transaction.getTransactionType().name(),
+            amountInMinorUnits,
+            Money.toMajorUnits(amountInMinorUnits),
+            transaction.getCreatedAt()
+        );
+    }
+}
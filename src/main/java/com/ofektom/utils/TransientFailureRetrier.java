@@ -0,0 +1,136 @@
+package com.ofektom.utils;
+
+import com.ofektom.exception.ConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Re-runs a unit of work when the database rejects it for a transient concurrency reason
+ * (deadlock, lock timeout, serialization failure), using bounded exponential backoff with full jitter.
+ * Must wrap the whole transaction: a retried attempt always starts a fresh one.
+ */
+@Component
+public class TransientFailureRetrier {
+    
+    private static final Logger log = LoggerFactory.getLogger(TransientFailureRetrier.class);
+    
+    // PostgreSQL: serialization_failure, deadlock_detected, lock_not_available
+    private static final String SERIALIZATION_FAILURE = "40001";
+    private static final String DEADLOCK_DETECTED = "40P01";
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+    private static final Set<String> TRANSIENT_SQL_STATES = Set.of(SERIALIZATION_FAILURE, DEADLOCK_DETECTED, LOCK_NOT_AVAILABLE);
+    
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final MeterRegistry meterRegistry;
+    private final Counter deadlocks;
+    private final Counter lockTimeouts;
+    private final Counter exhausted;
+    
+    public TransientFailureRetrier(@Value("${wallet.retry.max-attempts:4}") int maxAttempts,
+                                   @Value("${wallet.retry.initial-backoff-ms:5}") long initialBackoffMs,
+                                   @Value("${wallet.retry.max-backoff-ms:100}") long maxBackoffMs,
+                                   MeterRegistry meterRegistry) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.meterRegistry = meterRegistry;
+        this.deadlocks = Counter.builder("wallet.tx.deadlocks")
+            .description("Transactions aborted by the database as a deadlock victim")
+            .register(meterRegistry);
+        this.lockTimeouts = Counter.builder("wallet.tx.lock.timeouts")
+            .description("Statements that gave up waiting for a row lock")
+            .register(meterRegistry);
+        this.exhausted = Counter.builder("wallet.tx.retries.exhausted")
+            .description("Operations that still failed transiently after the last retry")
+            .register(meterRegistry);
+    }
+    
+    // Runs the action, retrying transient failures; other exceptions propagate unchanged
+    public <T> T execute(String operation, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    throw e;
+                }
+                if (isDeadlock(e)) {
+                    deadlocks.increment();
+                } else if (isLockTimeout(e)) {
+                    lockTimeouts.increment();
+                }
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    log.warn("Giving up on {} after {} attempts: {}", operation, attempt, e.getMessage());
+                    throw new ConflictException("Operation could not be completed due to concurrent updates, please retry");
+                }
+                meterRegistry.counter("wallet.tx.retries", "operation", operation).increment();
+                log.debug("Retrying {} after transient failure (attempt {}): {}", operation, attempt, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+    
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        long sleepMs = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleepMs);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", ie);
+        }
+    }
+    
+    // Spring translates most lock/serialization errors to ConcurrencyFailureException; commit-time
+    // failures can arrive wrapped in other exception types, so the SQLState chain is checked too
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ConcurrencyFailureException) {
+                return true;
+            }
+            if (t instanceof SQLException sql && TRANSIENT_SQL_STATES.contains(sql.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    static boolean isLockTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof CannotAcquireLockException) {
+                return true;
+            }
+            if (t instanceof SQLException sql && LOCK_NOT_AVAILABLE.equals(sql.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    static boolean isDeadlock(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof DeadlockLoserDataAccessException) {
+                return true;
+            }
+            if (t instanceof SQLException sql && DEADLOCK_DETECTED.equals(sql.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
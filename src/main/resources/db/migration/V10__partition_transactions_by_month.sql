@@ -0,0 +1,69 @@
+-- Range-partitions transactions by created_at, one partition per month. The existing table becomes the
+-- partition for everything before the bound prepared in V9; TransactionPartitionMaintenanceJob creates the
+-- monthly partitions after it ahead of time and detaches expired ones into transactions_archive.
+-- All indexes and constraints the new parent needs already exist on the old table, so this is catalog-only.
+CREATE SCHEMA IF NOT EXISTS transactions_archive;
+
+DO $$
+DECLARE
+    bound_name  TEXT;
+    upper_bound TIMESTAMP;
+    pkey_name   TEXT;
+    month_start TIMESTAMP;
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'transactions'::regclass) THEN
+        RETURN;
+    END IF;
+
+    SELECT conname INTO STRICT bound_name FROM pg_constraint
+    WHERE conrelid = 'transactions'::regclass AND conname LIKE 'transactions_created_before_%';
+    upper_bound := to_timestamp(right(bound_name, 7), 'YYYY_MM');
+
+    LOCK TABLE transactions IN ACCESS EXCLUSIVE MODE;
+
+    -- Free the names the parent will use
+    ALTER TABLE transactions RENAME TO transactions_legacy;
+    ALTER INDEX IF EXISTS idx_transaction_wallet_created RENAME TO idx_transaction_legacy_wallet_created;
+    ALTER INDEX IF EXISTS idx_transaction_transfer_id RENAME TO idx_transaction_legacy_transfer_id;
+    ALTER INDEX IF EXISTS idx_transaction_legacy_transfer RENAME TO idx_transactions_legacy_counterparty;
+    DROP INDEX IF EXISTS idx_transaction_transaction_id;
+
+    -- Swap the key constraints onto the (…, created_at) indexes built in V9
+    SELECT conname INTO STRICT pkey_name FROM pg_constraint
+    WHERE conrelid = 'transactions_legacy'::regclass AND contype = 'p';
+    EXECUTE format('ALTER TABLE transactions_legacy DROP CONSTRAINT %I', pkey_name);
+    ALTER TABLE transactions_legacy ADD CONSTRAINT transactions_legacy_pkey PRIMARY KEY USING INDEX transactions_legacy_pkey;
+    ALTER TABLE transactions_legacy
+        ADD CONSTRAINT uk_transaction_legacy_transaction_id UNIQUE USING INDEX uk_transaction_legacy_transaction_id;
+
+    CREATE TABLE transactions (
+        id                     BIGINT       NOT NULL,
+        transaction_id         VARCHAR(36)  NOT NULL,
+        wallet_id              BIGINT       NOT NULL REFERENCES wallets (id),
+        transaction_type       VARCHAR(10)  NOT NULL,
+        amount_in_minor_units  BIGINT       NOT NULL,
+        created_at             TIMESTAMP(6) NOT NULL,
+        counterparty_wallet_id BIGINT       REFERENCES wallets (id),
+        transfer_id            VARCHAR(36),
+        CONSTRAINT transactions_transaction_type_check CHECK (transaction_type IN ('CREDIT', 'DEBIT')),
+        CONSTRAINT transactions_pkey PRIMARY KEY (id, created_at),
+        CONSTRAINT uk_transaction_transaction_id UNIQUE (transaction_id, created_at)
+    ) PARTITION BY RANGE (created_at);
+
+    -- Same definitions as on the old table, which are attached rather than rebuilt
+    CREATE INDEX idx_transaction_wallet_created ON transactions (wallet_id, created_at, id)
+        INCLUDE (transaction_id, transaction_type, amount_in_minor_units);
+    CREATE INDEX idx_transaction_transfer_id ON transactions (transfer_id) WHERE transfer_id IS NOT NULL;
+    CREATE INDEX idx_transaction_legacy_transfer ON transactions (counterparty_wallet_id, created_at)
+        INCLUDE (amount_in_minor_units) WHERE transfer_id IS NULL AND counterparty_wallet_id IS NOT NULL;
+
+    EXECUTE format('ALTER TABLE transactions ATTACH PARTITION transactions_legacy FOR VALUES FROM (MINVALUE) TO (%L)',
+        upper_bound);
+
+    -- The first three months; the maintenance job keeps extending this
+    FOR i IN 0..2 LOOP
+        month_start := upper_bound + make_interval(months => i);
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF transactions FOR VALUES FROM (%L) TO (%L)',
+            'transactions_' || to_char(month_start, 'YYYY_MM'), month_start, month_start + INTERVAL '1 month');
+    END LOOP;
+END $$;
@@ -0,0 +1,31 @@
+-- Transactional outbox: one row per balance change, inserted in the same transaction as the ledger row.
+-- position is NULL until the relay sequences the row; positions are handed out by a single relay at a time
+-- and committed in increasing order, so a consumer that has seen position N never misses a row below it.
+CREATE SEQUENCE IF NOT EXISTS outbox_events_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS outbox_event_position_seq;
+
+CREATE TABLE IF NOT EXISTS outbox_events (
+    id                           BIGINT       NOT NULL PRIMARY KEY,
+    position                     BIGINT,
+    event_type                   VARCHAR(20)  NOT NULL,
+    wallet_id                    VARCHAR(36)  NOT NULL,
+    counterparty_wallet_id       VARCHAR(36),
+    transaction_id               VARCHAR(36)  NOT NULL,
+    transfer_id                  VARCHAR(36),
+    amount_in_minor_units        BIGINT       NOT NULL,
+    balance_after_in_minor_units BIGINT,
+    created_at                   TIMESTAMP(6) NOT NULL
+);
+
+-- Rows still waiting for a position, in insertion order
+CREATE INDEX IF NOT EXISTS idx_outbox_event_unsequenced ON outbox_events (id) WHERE position IS NULL;
+-- Tailing and resuming, for all wallets and for one wallet
+CREATE UNIQUE INDEX IF NOT EXISTS uk_outbox_event_position ON outbox_events (position) WHERE position IS NOT NULL;
+CREATE INDEX IF NOT EXISTS idx_outbox_event_wallet_position ON outbox_events (wallet_id, position) WHERE position IS NOT NULL;
+
+-- Last position each sink has acknowledged; the relay resumes every sink from here after a restart
+CREATE TABLE IF NOT EXISTS outbox_sink_offsets (
+    sink       VARCHAR(64)  NOT NULL PRIMARY KEY,
+    position   BIGINT       NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL
+);
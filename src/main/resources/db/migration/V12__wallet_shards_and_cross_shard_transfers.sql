@@ -0,0 +1,40 @@
+-- Every shard hands out ids from its own range (shard index << 48). Hibernate's pooled-lo optimizer keeps one
+-- in-memory block per sequence, whichever shard it was fetched from, so ranges must not overlap across shards.
+-- ${shard_index} is set per shard at startup; shard 0, like an unsharded database, keeps its current values.
+DO $$
+DECLARE
+    s TEXT;
+    range_start BIGINT := ${shard_index}::BIGINT << 48;
+BEGIN
+    IF range_start > 0 THEN
+        FOREACH s IN ARRAY ARRAY['wallets_seq', 'transactions_seq', 'idempotency_keys_seq', 'wallet_stripes_seq', 'outbox_events_seq'] LOOP
+            EXECUTE format('SELECT setval(%L, GREATEST(%s, (SELECT last_value FROM %I) + 1), false)', s, range_start, s);
+        END LOOP;
+    END IF;
+END $$;
+
+-- Sender side of a cross-shard transfer: the DEBIT leg is written with the hold, the hold is COMMITTED once the
+-- receiver's shard has credited the CREDIT leg, or RELEASED with a reversing credit if the receiver cannot be credited
+CREATE TABLE IF NOT EXISTS transfer_holds (
+    transfer_id             VARCHAR(36)  NOT NULL PRIMARY KEY,
+    sender_wallet_id        VARCHAR(36)  NOT NULL,
+    receiver_wallet_id      VARCHAR(36)  NOT NULL,
+    amount_in_minor_units   BIGINT       NOT NULL,
+    idempotency_key         VARCHAR(255) NOT NULL,
+    request_fingerprint     VARCHAR(64),
+    response_body           TEXT         NOT NULL,
+    status                  VARCHAR(10)  NOT NULL CHECK (status IN ('HELD', 'COMMITTED', 'RELEASED')),
+    reversal_transaction_id VARCHAR(36),
+    created_at              TIMESTAMP(6) NOT NULL,
+    updated_at              TIMESTAMP(6) NOT NULL
+);
+
+-- Holds the recovery job has to drive forward, oldest first
+CREATE INDEX IF NOT EXISTS idx_transfer_hold_in_flight ON transfer_holds (updated_at) WHERE status = 'HELD';
+
+-- Receiver side: one row per credited transfer, so a retried or recovered credit is applied exactly once
+CREATE TABLE IF NOT EXISTS transfer_receipts (
+    transfer_id        VARCHAR(36)  NOT NULL PRIMARY KEY,
+    receiver_wallet_id BIGINT       NOT NULL REFERENCES wallets (id),
+    created_at         TIMESTAMP(6) NOT NULL
+);
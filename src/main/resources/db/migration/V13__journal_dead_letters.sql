@@ -0,0 +1,17 @@
+-- Journal entries of the partitioned engine that the database rejected (e.g. a missing month partition or a
+-- constraint violation). Their callers were already answered, so they are kept here for repair instead of blocking
+-- the journal; the wallet balance was written with the dead letter.
+CREATE TABLE IF NOT EXISTS journal_dead_letters (
+    transaction_id               VARCHAR(36)  NOT NULL PRIMARY KEY,
+    wallet_id                    VARCHAR(36)  NOT NULL,
+    transaction_type             VARCHAR(10)  NOT NULL,
+    amount_in_minor_units        BIGINT       NOT NULL,
+    balance_after_in_minor_units BIGINT       NOT NULL,
+    idempotency_key              VARCHAR(255),
+    request_fingerprint          VARCHAR(64),
+    counterparty_wallet_id       VARCHAR(36),
+    transfer_id                  VARCHAR(36),
+    entry_created_at             TIMESTAMP(6) NOT NULL,
+    error                        TEXT         NOT NULL,
+    created_at                   TIMESTAMP(6) NOT NULL
+);
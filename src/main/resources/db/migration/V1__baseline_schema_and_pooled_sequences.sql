@@ -0,0 +1,55 @@
+-- Baseline schema. Safe on an empty database and on one previously created by ddl-auto=update.
+
+CREATE TABLE IF NOT EXISTS wallets (
+    id                     BIGINT       NOT NULL PRIMARY KEY,
+    wallet_id              VARCHAR(36)  NOT NULL,
+    balance_in_minor_units BIGINT       NOT NULL,
+    stripe_count           INTEGER      DEFAULT 0 NOT NULL,
+    created_at             TIMESTAMP(6) NOT NULL,
+    updated_at             TIMESTAMP(6) NOT NULL,
+    version                BIGINT
+);
+ALTER TABLE wallets ADD COLUMN IF NOT EXISTS stripe_count INTEGER DEFAULT 0 NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS idx_wallet_wallet_id ON wallets (wallet_id);
+
+CREATE TABLE IF NOT EXISTS transactions (
+    id                    BIGINT       NOT NULL PRIMARY KEY,
+    transaction_id        VARCHAR(36)  NOT NULL,
+    wallet_id             BIGINT       NOT NULL REFERENCES wallets (id),
+    transaction_type      VARCHAR(10)  NOT NULL CHECK (transaction_type IN ('CREDIT', 'DEBIT')),
+    amount_in_minor_units BIGINT       NOT NULL,
+    created_at            TIMESTAMP(6) NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_transaction_wallet_id ON transactions (wallet_id);
+CREATE UNIQUE INDEX IF NOT EXISTS idx_transaction_transaction_id ON transactions (transaction_id);
+
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    id         BIGINT       NOT NULL PRIMARY KEY,
+    key_value  VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT uk_idempotency_key UNIQUE (key_value)
+);
+
+CREATE TABLE IF NOT EXISTS wallet_stripes (
+    id                     BIGINT       NOT NULL PRIMARY KEY,
+    wallet_id              BIGINT       NOT NULL REFERENCES wallets (id),
+    stripe_index           INTEGER      NOT NULL,
+    balance_in_minor_units BIGINT       NOT NULL,
+    updated_at             TIMESTAMP(6) NOT NULL,
+    version                BIGINT,
+    CONSTRAINT uk_wallet_stripe UNIQUE (wallet_id, stripe_index)
+);
+
+-- Replace IDENTITY columns with pooled sequences (increment = Hibernate allocationSize) so inserts can be
+-- JDBC-batched. Each sequence starts above the highest existing id.
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['wallets', 'transactions', 'idempotency_keys', 'wallet_stripes'] LOOP
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', t);
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP DEFAULT', t);
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I INCREMENT BY 50', t || '_seq');
+        EXECUTE format('SELECT setval(%L, COALESCE((SELECT MAX(id) FROM %I), 0) + 1, false)', t || '_seq', t);
+    END LOOP;
+END $$;
@@ -0,0 +1,2 @@
+-- Supports the TTL purge job, which deletes expired idempotency keys oldest-first in small batches.
+CREATE INDEX IF NOT EXISTS idx_idempotency_created_at ON idempotency_keys (created_at);
@@ -0,0 +1,3 @@
+-- Lets a retried request be answered with its original response instead of a 409.
+ALTER TABLE idempotency_keys ADD COLUMN IF NOT EXISTS request_fingerprint VARCHAR(64);
+ALTER TABLE idempotency_keys ADD COLUMN IF NOT EXISTS response_body TEXT;
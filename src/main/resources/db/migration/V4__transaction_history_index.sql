@@ -0,0 +1,8 @@
+-- Keyset pagination for GET /wallets/{id}/transactions walks this index backwards; the INCLUDE columns
+-- make each page an index-only scan. It also serves wallet_id lookups, so the single-column index goes.
+-- Built CONCURRENTLY (see the .conf file) so writes to large transaction tables are not blocked.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_transaction_wallet_created
+    ON transactions (wallet_id, created_at, id)
+    INCLUDE (transaction_id, transaction_type, amount_in_minor_units);
+
+DROP INDEX CONCURRENTLY IF EXISTS idx_transaction_wallet_id;
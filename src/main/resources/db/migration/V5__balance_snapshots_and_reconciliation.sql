@@ -0,0 +1,26 @@
+-- Transfers are recorded once, as the sender's DEBIT; the receiver is stored on that row so reconciliation
+-- can count the incoming side.
+ALTER TABLE transactions ADD COLUMN IF NOT EXISTS counterparty_wallet_id BIGINT REFERENCES wallets (id);
+
+-- Balance a wallet was created with. NULL for wallets created before this migration; the reconciliation
+-- job baselines those from their current balance on its first run.
+ALTER TABLE wallets ADD COLUMN IF NOT EXISTS opening_balance_in_minor_units BIGINT;
+
+-- Latest checkpoint per wallet: its balance as derived from the ledger up to snapshot_at. Each run only
+-- sums the transactions created after the checkpoint, then moves it forward.
+CREATE TABLE IF NOT EXISTS wallet_balance_snapshots (
+    wallet_id              BIGINT       NOT NULL PRIMARY KEY REFERENCES wallets (id),
+    balance_in_minor_units BIGINT       NOT NULL,
+    last_transaction_id    BIGINT,
+    snapshot_at            TIMESTAMP(6) NOT NULL
+);
+
+-- Wallets whose stored balance disagreed with the ledger, one row per wallet per run
+CREATE TABLE IF NOT EXISTS reconciliation_drift (
+    id                      BIGSERIAL    NOT NULL PRIMARY KEY,
+    run_at                  TIMESTAMP(6) NOT NULL,
+    wallet_id               BIGINT       NOT NULL REFERENCES wallets (id),
+    expected_in_minor_units BIGINT       NOT NULL,
+    actual_in_minor_units   BIGINT       NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_reconciliation_drift_run_at ON reconciliation_drift (run_at);
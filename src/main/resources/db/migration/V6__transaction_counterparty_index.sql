@@ -0,0 +1,6 @@
+-- Incoming transfers per wallet since its last checkpoint. Partial, since most rows have no counterparty;
+-- built CONCURRENTLY (see the .conf file) so writes are not blocked.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_transaction_counterparty_created
+    ON transactions (counterparty_wallet_id, created_at)
+    INCLUDE (amount_in_minor_units)
+    WHERE counterparty_wallet_id IS NOT NULL;
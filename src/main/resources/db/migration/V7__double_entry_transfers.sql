@@ -0,0 +1,3 @@
+-- Transfers are recorded as two legs, the sender's DEBIT and the receiver's CREDIT, sharing a transfer_id and
+-- naming each other as counterparty. Older transfers keep their single DEBIT row with a NULL transfer_id.
+ALTER TABLE transactions ADD COLUMN IF NOT EXISTS transfer_id VARCHAR(36);
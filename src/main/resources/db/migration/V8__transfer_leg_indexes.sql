@@ -0,0 +1,14 @@
+-- Finds both legs of a transfer.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_transaction_transfer_id
+    ON transactions (transfer_id)
+    WHERE transfer_id IS NOT NULL;
+
+-- Receivers of single-entry transfers recorded before double entry still need their incoming side counted by
+-- reconciliation. New transfer rows all carry a transfer_id, so this index stops growing; it replaces the
+-- counterparty index, which would otherwise cover every new leg.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_transaction_legacy_transfer
+    ON transactions (counterparty_wallet_id, created_at)
+    INCLUDE (amount_in_minor_units)
+    WHERE transfer_id IS NULL AND counterparty_wallet_id IS NOT NULL;
+
+DROP INDEX CONCURRENTLY IF EXISTS idx_transaction_counterparty_created;
@@ -0,0 +1,31 @@
+-- Groundwork for V10, which turns transactions into a table range-partitioned by created_at with the current
+-- table attached as its first partition. Everything that needs a scan or an index build happens here, without
+-- blocking writes, so V10 only changes the catalog.
+
+-- A partitioned table's primary key and unique constraints must include the partition key
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS transactions_legacy_pkey ON transactions (id, created_at);
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS uk_transaction_legacy_transaction_id ON transactions (transaction_id, created_at);
+
+-- A validated upper bound lets ATTACH PARTITION skip its own scan. New rows keep landing in this table until
+-- V10 runs, so the bound is two months out; its name records it for V10.
+DO $$
+DECLARE
+    upper_bound DATE := date_trunc('month', now()) + INTERVAL '2 months';
+    bound_name  TEXT := 'transactions_created_before_' || to_char(upper_bound, 'YYYY_MM');
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint
+                   WHERE conrelid = 'transactions'::regclass AND conname LIKE 'transactions_created_before_%') THEN
+        EXECUTE format('ALTER TABLE transactions ADD CONSTRAINT %I CHECK (created_at < %L) NOT VALID', bound_name, upper_bound);
+    END IF;
+END $$;
+
+DO $$
+DECLARE
+    bound_name TEXT;
+BEGIN
+    SELECT conname INTO bound_name FROM pg_constraint
+    WHERE conrelid = 'transactions'::regclass AND conname LIKE 'transactions_created_before_%' AND NOT convalidated;
+    IF bound_name IS NOT NULL THEN
+        EXECUTE format('ALTER TABLE transactions VALIDATE CONSTRAINT %I', bound_name);
+    END IF;
+END $$;
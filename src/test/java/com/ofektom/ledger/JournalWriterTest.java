@@ -0,0 +1,113 @@
+package com.ofektom.ledger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class JournalWriterTest {
+    
+    private final JournalTables tables = new JournalTables();
+    private final Counter deadLetters = new SimpleMeterRegistry().counter("wallet.engine.journal.dead.letters");
+    private final List<JournalEntry> flushed = new ArrayList<>();
+    
+    @Test
+    void writesOneBalanceUpdatePerWalletWithItsLatestBalance() throws Exception {
+        run(List.of(entry("t1", 1L, 100L), entry("t2", 2L, 50L), entry("t3", 1L, 70L)));
+        
+        assertThat(tables.transactions).containsExactly("t1", "t2", "t3");
+        assertThat(tables.balances).containsExactly(List.of(70L, 1L), List.of(50L, 2L));
+        assertThat(tables.flushes).isEqualTo(1);
+        assertThat(flushed).hasSize(3);
+    }
+    
+    @Test
+    void transientFailuresAreRetriedWithoutDeadLettering() throws Exception {
+        tables.transientFailures = 2;
+        
+        run(List.of(entry("t1", 1L, 100L), entry("t2", 1L, 150L)));
+        
+        assertThat(tables.transactions).containsExactly("t1", "t2");
+        assertThat(tables.deadLetters).isEmpty();
+        assertThat(deadLetters.count()).isZero();
+    }
+    
+    @Test
+    void aRejectedEntryIsIsolatedAndDeadLetteredWhileTheRestOfTheBatchIsWritten() throws Exception {
+        tables.rejected = Set.of("t3");
+        
+        run(List.of(entry("t1", 1L, 100L), entry("t2", 2L, 50L), entry("t3", 1L, 80L), entry("t4", 1L, 90L)));
+        
+        assertThat(tables.transactions).containsExactly("t1", "t2", "t4");
+        assertThat(tables.deadLetters).containsExactly("t3");
+        // The dead letter still moves the balance, and the later entry lands on top of it
+        assertThat(tables.balances).containsSubsequence(List.of(80L, 1L), List.of(90L, 1L));
+        assertThat(deadLetters.count()).isEqualTo(1.0);
+        assertThat(flushed).extracting(JournalEntry::transactionId).containsExactly("t1", "t2", "t3", "t4");
+    }
+    
+    private void run(List<JournalEntry> entries) throws InterruptedException {
+        JournalWriter writer = new JournalWriter(tables, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+            100, 10, 10L, 3, deadLetters, response -> "{}", flushed::addAll);
+        writer.append(entries);
+        writer.start();
+        writer.stop();
+    }
+    
+    private static JournalEntry entry(String transactionId, long walletPk, long balanceAfter) {
+        return new JournalEntry(transactionId, walletPk, "wallet-" + walletPk, "CREDIT", 10L, balanceAfter,
+            "key-" + transactionId, "fp", null, null, LocalDateTime.now());
+    }
+    
+    // Records what each statement wrote; a batch holding a rejected entry fails as a constraint violation would
+    private static final class JournalTables extends JdbcTemplate {
+        private final List<String> transactions = new ArrayList<>();
+        private final List<List<Long>> balances = new ArrayList<>();
+        private final List<String> deadLetters = new ArrayList<>();
+        private Set<String> rejected = Set.of();
+        private int transientFailures;
+        private int flushes;
+        
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (sql.startsWith("INSERT INTO transactions")) {
+                if (transientFailures > 0) {
+                    transientFailures--;
+                    throw new TransientDataAccessResourceException("Connection reset");
+                }
+                for (Object[] row : batchArgs) {
+                    if (rejected.contains((String) row[0])) {
+                        throw new DataIntegrityViolationException("Rejected " + row[0]);
+                    }
+                }
+                batchArgs.forEach(row -> transactions.add((String) row[0]));
+                flushes++;
+            } else if (sql.startsWith("UPDATE wallets")) {
+                batchArgs.forEach(row -> balances.add(List.of((Long) row[0], (Long) row[2])));
+            }
+            return new int[batchArgs.size()];
+        }
+        
+        @Override
+        public int update(String sql, Object... args) {
+            if (sql.startsWith("INSERT INTO journal_dead_letters")) {
+                deadLetters.add((String) args[0]);
+            } else if (sql.startsWith("UPDATE wallets")) {
+                balances.add(List.of((Long) args[0], (Long) args[2]));
+            }
+            return 1;
+        }
+    }
+}
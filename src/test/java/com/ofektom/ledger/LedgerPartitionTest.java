@@ -0,0 +1,112 @@
+package com.ofektom.ledger;
+
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class LedgerPartitionTest {
+    
+    private final List<JournalEntry> journal = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> loaded = Collections.synchronizedList(new ArrayList<>());
+    private LedgerPartition partition;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        JournalWriter journalWriter = mock(JournalWriter.class);
+        doAnswer(invocation -> journal.addAll(invocation.getArgument(0))).when(journalWriter).append(anyList());
+        partition = new LedgerPartition(0, 16, walletId -> {
+            loaded.add(walletId);
+            return walletId.startsWith("late-") ? Optional.of(new LedgerPartition.LoadedWallet(99L, 250L)) : Optional.empty();
+        }, journalWriter);
+        partition.preload("wallet-1", 1L, 1_000L);
+        partition.preload("rich", 2L, Long.MAX_VALUE - 100L);
+        partition.start();
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        partition.stop();
+    }
+    
+    @Test
+    void appliesCreditsAndDebitsInOrderAndJournalsTheBalanceAfterEach() throws Exception {
+        TransactionResponse credit = await(LedgerCommand.apply("wallet-1", TransactionType.CREDIT, 500L, "key-1", "fp-1"));
+        await(LedgerCommand.apply("wallet-1", TransactionType.DEBIT, 200L, "key-2", "fp-2"));
+        
+        assertThat(credit.transactionId()).isEqualTo(journal.get(0).transactionId());
+        assertThat(journal).extracting(JournalEntry::balanceAfter).containsExactly(1_500L, 1_300L);
+        assertThat(journal).extracting(JournalEntry::idempotencyKey).containsExactly("key-1", "key-2");
+        assertThat(journal).extracting(JournalEntry::walletPk).containsOnly(1L);
+    }
+    
+    @Test
+    void aDebitBeyondTheBalanceFailsWithoutAJournalEntry() {
+        LedgerCommand debit = partition.submit(LedgerCommand.apply("wallet-1", TransactionType.DEBIT, 1_001L, "key-1", "fp-1"));
+        
+        assertThatThrownBy(() -> debit.result().get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(BadRequestException.class);
+        assertThat(journal).isEmpty();
+    }
+    
+    @Test
+    void walletsCreatedAfterStartupAreLoadedOnceOnFirstUse() throws Exception {
+        await(LedgerCommand.apply("late-1", TransactionType.CREDIT, 50L, "key-1", "fp-1"));
+        await(LedgerCommand.apply("late-1", TransactionType.CREDIT, 50L, "key-2", "fp-2"));
+        
+        assertThat(loaded).containsExactly("late-1");
+        assertThat(journal).extracting(JournalEntry::balanceAfter).containsExactly(300L, 350L);
+        assertThat(journal.get(0).walletPk()).isEqualTo(99L);
+    }
+    
+    @Test
+    void anUnknownWalletIsNotFound() {
+        LedgerCommand credit = partition.submit(LedgerCommand.apply("missing", TransactionType.CREDIT, 1L, "key-1", "fp-1"));
+        
+        assertThatThrownBy(() -> credit.result().get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(NotFoundException.class);
+    }
+    
+    @Test
+    void reservedTransferCreditsKeepHeadroomUntilReleased() throws Exception {
+        await(LedgerCommand.reserveCredit("rich", 60L));
+        
+        LedgerCommand credit = partition.submit(LedgerCommand.apply("rich", TransactionType.CREDIT, 50L, "key-1", "fp-1"));
+        assertThatThrownBy(() -> credit.result().get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        
+        await(LedgerCommand.releaseCredit("rich", 60L));
+        await(LedgerCommand.apply("rich", TransactionType.CREDIT, 50L, "key-2", "fp-2"));
+        assertThat(journal).extracting(JournalEntry::balanceAfter).containsExactly(Long.MAX_VALUE - 50L);
+    }
+    
+    @Test
+    void settlingATransferCreditsTheReservationAndJournalsTheReceivingLeg() throws Exception {
+        await(LedgerCommand.reserveCredit("wallet-1", 300L));
+        await(LedgerCommand.settle("wallet-1", "sender", 300L, "transfer-1"));
+        
+        assertThat(journal).hasSize(1);
+        JournalEntry leg = journal.get(0);
+        assertThat(leg.transactionType()).isEqualTo("CREDIT");
+        assertThat(leg.balanceAfter()).isEqualTo(1_300L);
+        assertThat(leg.counterpartyWalletId()).isEqualTo("sender");
+        assertThat(leg.transferId()).isEqualTo("transfer-1");
+        assertThat(leg.idempotencyKey()).isNull();
+    }
+    
+    private TransactionResponse await(LedgerCommand command) throws Exception {
+        return partition.submit(command).result().get(5, TimeUnit.SECONDS);
+    }
+}
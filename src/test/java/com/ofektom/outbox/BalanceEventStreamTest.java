@@ -0,0 +1,201 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.ServiceUnavailableException;
+import com.ofektom.sharding.ShardContext;
+import com.ofektom.sharding.ShardPools;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.sharding.WalletIds;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BalanceEventStreamTest {
+    
+    private static final String WALLET_A = WalletIds.generate(null);
+    private static final String WALLET_B = WalletIds.generate(null);
+    
+    private final OutboxTables outbox = new OutboxTables();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    
+    @Test
+    void aResumingSubscriberCatchesUpInPagesAndThenFollowsTheTail() throws Exception {
+        outbox.append(0, WALLET_A, WALLET_B, WALLET_A, WALLET_A, WALLET_B, WALLET_A);
+        BalanceEventStream stream = stream(1, 2);
+        RecordingEmitter resuming = (RecordingEmitter) stream.subscribe(WALLET_A, 0L);
+        RecordingEmitter live = (RecordingEmitter) stream.subscribe(WALLET_B, null);
+        
+        stream.poll();
+        assertThat(resuming.positions).containsExactly(1L, 3L);
+        
+        outbox.append(0, WALLET_A, WALLET_B);
+        stream.poll();
+        stream.poll();
+        
+        assertThat(resuming.positions).containsExactly(1L, 3L, 4L, 6L, 7L);
+        assertThat(live.positions).containsExactly(8L);
+    }
+    
+    @Test
+    void eventsAlreadySentAreNotRepeatedWhenTheFreshPageOverlapsTheResumePoint() throws Exception {
+        outbox.append(0, WALLET_A, WALLET_A);
+        BalanceEventStream stream = stream(1, 10);
+        stream.subscribe(WALLET_B, null);
+        stream.poll();
+        
+        outbox.append(0, WALLET_A, WALLET_B, WALLET_A);
+        RecordingEmitter everything = (RecordingEmitter) stream.subscribe(null, 3L);
+        stream.poll();
+        
+        assertThat(everything.positions).containsExactly(4L, 5L);
+    }
+    
+    @Test
+    void aWalletIsTailedOnItsOwnShard() throws Exception {
+        String onShardOne = WalletIds.generate(1);
+        outbox.append(0, WALLET_A);
+        outbox.append(1, onShardOne, onShardOne);
+        BalanceEventStream stream = stream(2, 10);
+        RecordingEmitter emitter = (RecordingEmitter) stream.subscribe(onShardOne, 0L);
+        
+        stream.poll();
+        outbox.append(1, onShardOne);
+        stream.poll();
+        
+        assertThat(emitter.positions).containsExactly(1L, 2L, 3L);
+    }
+    
+    @Test
+    void theAllWalletsStreamIsRejectedWhenSharded() {
+        BalanceEventStream stream = stream(2, 10);
+        
+        assertThatThrownBy(() -> stream.subscribe(null, null)).isInstanceOf(BadRequestException.class);
+    }
+    
+    @Test
+    void subscriptionsBeyondTheLimitAreRejected() {
+        BalanceEventStream stream = new TestStream(outbox, router(1), meterRegistry, 10, 1);
+        stream.subscribe(WALLET_A, null);
+        
+        assertThatThrownBy(() -> stream.subscribe(WALLET_B, null)).isInstanceOf(ServiceUnavailableException.class);
+    }
+    
+    @Test
+    void aSubscriberWhoseClientWentAwayIsDropped() throws Exception {
+        outbox.append(0, WALLET_A);
+        BalanceEventStream stream = stream(1, 10);
+        RecordingEmitter gone = (RecordingEmitter) stream.subscribe(WALLET_A, 0L);
+        gone.failing = true;
+        
+        stream.poll();
+        
+        assertThat(meterRegistry.get("wallet.outbox.stream.subscribers").gauge().value()).isZero();
+    }
+    
+    private BalanceEventStream stream(int shards, int pageSize) {
+        return new TestStream(outbox, router(shards), meterRegistry, pageSize, 100);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static ShardRouter router(int shards) {
+        ObjectProvider<ShardPools> provider = mock(ObjectProvider.class);
+        if (shards > 1) {
+            List<HikariDataSource> others = new ArrayList<>();
+            for (int i = 1; i < shards; i++) {
+                others.add(mock(HikariDataSource.class));
+            }
+            when(provider.getIfAvailable()).thenReturn(new ShardPools(mock(DataSource.class), others));
+        }
+        return new ShardRouter(provider);
+    }
+    
+    private static final class TestStream extends BalanceEventStream {
+        
+        private TestStream(JdbcTemplate jdbcTemplate, ShardRouter shardRouter, SimpleMeterRegistry meterRegistry,
+                           int pageSize, int maxSubscribers) {
+            super(jdbcTemplate, shardRouter, meterRegistry, 250, Duration.ofHours(1), Duration.ofMinutes(30),
+                maxSubscribers, pageSize);
+        }
+        
+        @Override
+        SseEmitter newEmitter() {
+            return new RecordingEmitter();
+        }
+    }
+    
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<Long> positions = new ArrayList<>();
+        private boolean failing;
+        
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof BalanceEventResponse event) {
+                    positions.add(event.position());
+                }
+            }
+        }
+    }
+    
+    // Each shard's outbox_events, answering the stream's four queries for whichever shard is bound
+    private static final class OutboxTables extends JdbcTemplate {
+        private final Map<Integer, List<BalanceEventResponse>> shards = new HashMap<>();
+        
+        private void append(int shard, String... walletIds) {
+            List<BalanceEventResponse> events = shards.computeIfAbsent(shard, s -> new ArrayList<>());
+            for (String walletId : walletIds) {
+                events.add(new BalanceEventResponse(events.size() + 1L, "CREDIT", walletId, null,
+                    "txn-" + events.size(), null, 100L, null, LocalDateTime.now()));
+            }
+        }
+        
+        private List<BalanceEventResponse> bound() {
+            Integer shard = ShardContext.current();
+            return shards.getOrDefault(shard == null ? 0 : shard, List.of());
+        }
+        
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType) {
+            List<BalanceEventResponse> events = bound();
+            return requiredType.cast(events.isEmpty() ? 0L : events.get(events.size() - 1).position());
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            String walletId = sql.contains("wallet_id = ?") ? (String) args[0] : null;
+            int offset = walletId == null ? 0 : 1;
+            long after = (Long) args[offset];
+            long upTo = sql.contains("position <= ?") ? (Long) args[offset + 1] : Long.MAX_VALUE;
+            int limit = (Integer) args[args.length - 1];
+            return (List<T>) bound().stream()
+                .filter(event -> event.position() > after && event.position() <= upTo)
+                .filter(event -> walletId == null || walletId.equals(event.walletId()))
+                .limit(limit)
+                .toList();
+        }
+    }
+}
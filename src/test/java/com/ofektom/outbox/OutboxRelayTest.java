@@ -0,0 +1,235 @@
+package com.ofektom.outbox;
+
+import com.ofektom.dto.response.BalanceEventResponse;
+import com.ofektom.sharding.ShardPools;
+import com.ofektom.sharding.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OutboxRelayTest {
+    
+    private final OutboxTables outbox = new OutboxTables();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    
+    @Test
+    void sequencesEveryPendingRowAndDeliversThemToEachSinkInPositionOrder() {
+        outbox.pending(5);
+        RecordingSink first = new RecordingSink("first");
+        RecordingSink second = new RecordingSink("second");
+        
+        relay(2, first, second).relay();
+        
+        assertThat(first.batches).containsExactly(List.of(1L, 2L), List.of(3L, 4L), List.of(5L));
+        assertThat(second.batches).containsExactly(List.of(1L, 2L), List.of(3L, 4L), List.of(5L));
+        assertThat(outbox.offsets).containsEntry("first", 5L).containsEntry("second", 5L);
+        assertThat(meterRegistry.get("wallet.outbox.sequenced").counter().count()).isEqualTo(5.0);
+        assertThat(meterRegistry.get("wallet.outbox.published").tag("sink", "first").counter().count()).isEqualTo(5.0);
+    }
+    
+    @Test
+    void aFailedBatchIsOfferedAgainFromTheSameOffsetWithoutHoldingUpOtherSinks() {
+        outbox.pending(3);
+        RecordingSink flaky = new RecordingSink("flaky");
+        flaky.failuresLeft = 1;
+        RecordingSink healthy = new RecordingSink("healthy");
+        OutboxRelay relay = relay(10, flaky, healthy);
+        
+        relay.relay();
+        assertThat(outbox.offsets).containsEntry("flaky", 0L).containsEntry("healthy", 3L);
+        assertThat(meterRegistry.get("wallet.outbox.publish.failures").tag("sink", "flaky").counter().count()).isEqualTo(1.0);
+        
+        relay.relay();
+        assertThat(flaky.batches).containsExactly(List.of(1L, 2L, 3L));
+        assertThat(healthy.batches).containsExactly(List.of(1L, 2L, 3L));
+        assertThat(outbox.offsets).containsEntry("flaky", 3L);
+    }
+    
+    @Test
+    void nothingIsSequencedOrDeliveredWhileAnotherInstanceHoldsTheLocks() {
+        outbox.pending(2);
+        outbox.heldLocks.add("outbox-sequencer");
+        outbox.heldLocks.add("outbox-sink:first");
+        RecordingSink sink = new RecordingSink("first");
+        
+        relay(10, sink).relay();
+        
+        assertThat(outbox.events).extracting(event -> event.position).containsOnlyNulls();
+        assertThat(sink.batches).isEmpty();
+    }
+    
+    @Test
+    void everyShardIsSequencedAndDeliveredSeparately() {
+        outbox.pending(2);
+        RecordingSink sink = new RecordingSink("first");
+        
+        new OutboxRelay(outbox, mock(PlatformTransactionManager.class), router(2), List.of(sink), meterRegistry,
+            10, Duration.ofDays(3)).relay();
+        
+        // The fake keeps one outbox for both shards, so the second pass finds nothing new
+        assertThat(outbox.sequenceCalls).isEqualTo(2);
+        assertThat(sink.batches).containsExactly(List.of(1L, 2L));
+    }
+    
+    @Test
+    void purgeStopsAtTheSlowestSinksOffset() {
+        outbox.offsets.put("fast", 40L);
+        outbox.offsets.put("slow", 12L);
+        
+        relay(10, new RecordingSink("fast"), new RecordingSink("slow")).purge();
+        
+        assertThat(outbox.purgeFloors).containsExactly(12L);
+    }
+    
+    private OutboxRelay relay(int batchSize, BalanceEventSink... sinks) {
+        return new OutboxRelay(outbox, mock(PlatformTransactionManager.class), router(1), List.of(sinks), meterRegistry,
+            batchSize, Duration.ofDays(3));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static ShardRouter router(int shards) {
+        ObjectProvider<ShardPools> provider = mock(ObjectProvider.class);
+        if (shards > 1) {
+            List<HikariDataSource> others = new ArrayList<>();
+            for (int i = 1; i < shards; i++) {
+                others.add(mock(HikariDataSource.class));
+            }
+            when(provider.getIfAvailable()).thenReturn(new ShardPools(mock(DataSource.class), others));
+        }
+        return new ShardRouter(provider);
+    }
+    
+    private static final class RecordingSink implements BalanceEventSink {
+        private final String name;
+        private final List<List<Long>> batches = new ArrayList<>();
+        private int failuresLeft;
+        
+        private RecordingSink(String name) {
+            this.name = name;
+        }
+        
+        @Override
+        public String name() {
+            return name;
+        }
+        
+        @Override
+        public void publish(List<BalanceEventResponse> events) {
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new IllegalStateException("Sink unavailable");
+            }
+            batches.add(events.stream().map(BalanceEventResponse::position).toList());
+        }
+    }
+    
+    private static final class Row {
+        private final String transactionId;
+        private Long position;
+        
+        private Row(String transactionId) {
+            this.transactionId = transactionId;
+        }
+    }
+    
+    // outbox_events and outbox_sink_offsets, answering the relay's statements; advisory locks named in heldLocks are taken
+    private static final class OutboxTables extends JdbcTemplate {
+        private final List<Row> events = new ArrayList<>();
+        private final Map<String, Long> offsets = new HashMap<>();
+        private final Set<String> heldLocks = new HashSet<>();
+        private final List<Long> purgeFloors = new ArrayList<>();
+        private long nextPosition = 1;
+        private int sequenceCalls;
+        
+        private void pending(int count) {
+            for (int i = 0; i < count; i++) {
+                events.add(new Row("txn-" + events.size()));
+            }
+        }
+        
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            if (sql.contains("pg_try_advisory_xact_lock")) {
+                return requiredType.cast(!heldLocks.contains((String) args[0]));
+            }
+            return requiredType.cast(offsets.get((String) args[0]));
+        }
+        
+        @Override
+        public int update(String sql, Object... args) {
+            if (sql.contains("nextval('outbox_event_position_seq')")) {
+                sequenceCalls++;
+                int limit = (Integer) args[0];
+                int sequenced = 0;
+                for (Row row : events) {
+                    if (row.position == null && sequenced < limit) {
+                        row.position = nextPosition++;
+                        sequenced++;
+                    }
+                }
+                return sequenced;
+            }
+            if (sql.startsWith("INSERT INTO outbox_sink_offsets")) {
+                offsets.putIfAbsent((String) args[0], 0L);
+                return 1;
+            }
+            if (sql.startsWith("UPDATE outbox_sink_offsets")) {
+                offsets.put((String) args[2], (Long) args[0]);
+                return 1;
+            }
+            if (sql.contains("DELETE FROM outbox_events")) {
+                purgeFloors.add((Long) args[0]);
+                return 0;
+            }
+            throw new IllegalArgumentException("Unexpected update: " + sql);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            long after = (Long) args[0];
+            int limit = (Integer) args[1];
+            return (List<T>) events.stream()
+                .filter(row -> row.position != null && row.position > after)
+                .limit(limit)
+                .map(row -> new BalanceEventResponse(row.position, "CREDIT", "wallet-1", null, row.transactionId, null,
+                    100L, 100L, LocalDateTime.now()))
+                .toList();
+        }
+        
+        @Override
+        public void query(String sql, RowCallbackHandler rch) {
+            try {
+                for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+                    ResultSet rs = mock(ResultSet.class);
+                    when(rs.getString(1)).thenReturn(offset.getKey());
+                    when(rs.getLong(2)).thenReturn(offset.getValue());
+                    rch.processRow(rs);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ofektom.reconciliation;
+
+import com.ofektom.sharding.ShardRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LedgerReconciliationJobTest {
+    
+    private final LedgerTables ledger = new LedgerTables();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    
+    @Test
+    void aBalanceMatchingItsOpeningPlusTheLedgerIsCleanAndCheckpointed() {
+        ledger.wallet(1L).opening(1_000L).actual(1_500L).unreconciled(500L).settled(300L, 42L);
+        
+        ReconciliationResult result = job(10).reconcile();
+        
+        assertThat(result.walletsChecked()).isEqualTo(1);
+        assertThat(result.walletsDrifted()).isZero();
+        assertThat(ledger.drifts).isEmpty();
+        assertThat(ledger.snapshots).hasSize(1);
+        Object[] snapshot = ledger.snapshots.get(0);
+        assertThat(snapshot[0]).isEqualTo(1L);
+        assertThat(snapshot[1]).isEqualTo(1_300L);
+        assertThat(snapshot[2]).isEqualTo(42L);
+        assertThat(((Timestamp) snapshot[3]).toLocalDateTime()).isEqualTo(result.cutoff());
+    }
+    
+    @Test
+    void driftIsMeasuredFromTheCheckpointAndRecorded() {
+        ledger.wallet(1L).snapshot(2_000L, 40L).actual(1_850L).unreconciled(-100L);
+        ledger.wallet(2L).snapshot(500L, 41L).actual(500L);
+        LedgerReconciliationJob job = job(10);
+        
+        ReconciliationResult result = job.reconcile();
+        
+        assertThat(result.walletsChecked()).isEqualTo(2);
+        assertThat(result.walletsDrifted()).isEqualTo(1);
+        assertThat(result.totalAbsoluteDrift()).isEqualTo(50L);
+        assertThat(ledger.drifts).hasSize(1);
+        assertThat(ledger.drifts.get(0)).containsSubsequence(1L, 1_900L, 1_850L);
+        assertThat(meterRegistry.get("wallet.reconciliation.drifted.wallets").gauge().value()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("wallet.reconciliation.drift.total").gauge().value()).isEqualTo(50.0);
+    }
+    
+    @Test
+    void anUnchangedCheckpointIsNotRewritten() {
+        ledger.wallet(1L).snapshot(500L, 41L).actual(500L);
+        
+        job(10).reconcile();
+        
+        assertThat(ledger.snapshots).isEmpty();
+    }
+    
+    @Test
+    void aWalletWithoutOpeningBalanceOrCheckpointIsBaselinedFromItsCurrentBalance() {
+        ledger.wallet(1L).actual(700L).unreconciled(200L).settled(50L, 9L);
+        
+        ReconciliationResult result = job(10).reconcile();
+        
+        assertThat(result.walletsBaselined()).isEqualTo(1);
+        assertThat(result.walletsDrifted()).isZero();
+        assertThat(ledger.snapshots.get(0)).containsSubsequence(1L, 550L, 9L);
+    }
+    
+    @Test
+    void rangesStartAtEveryRangeSizethWalletAndCoverTheGaps() {
+        for (long walletPk : new long[] {1L, 2L, 5L, 9L, 10L}) {
+            ledger.wallet(walletPk).opening(0L);
+        }
+        
+        ReconciliationResult result = job(2).reconcile();
+        
+        assertThat(result.walletsChecked()).isEqualTo(5);
+        assertThat(ledger.ranges).containsExactlyInAnyOrder(
+            List.of(1L, 4L), List.of(5L, 9L), List.of(10L, Long.MAX_VALUE));
+    }
+    
+    @Test
+    void aRangeSizeOfOneReconcilesEveryWalletOnItsOwn() {
+        ledger.wallet(3L).opening(0L);
+        ledger.wallet(7L).opening(0L);
+        
+        ReconciliationResult result = job(1).reconcile();
+        
+        assertThat(result.walletsChecked()).isEqualTo(2);
+        assertThat(ledger.ranges).containsExactlyInAnyOrder(List.of(3L, 6L), List.of(7L, Long.MAX_VALUE));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private LedgerReconciliationJob job(long rangeSize) {
+        ShardRouter shardRouter = new ShardRouter(mock(ObjectProvider.class));
+        return new LedgerReconciliationJob(ledger, shardRouter, mock(PlatformTransactionManager.class), meterRegistry,
+            Duration.ofMinutes(10), 2, rangeSize);
+    }
+    
+    private static final class Row {
+        private final Map<String, Long> columns = new HashMap<>();
+        
+        private Row(long walletPk) {
+            columns.put("id", walletPk);
+            columns.put("actual", 0L);
+            columns.put("unreconciled", 0L);
+            columns.put("settled", 0L);
+        }
+        
+        private Row opening(long balance) {
+            columns.put("opening", balance);
+            return this;
+        }
+        
+        private Row snapshot(long balance, long lastTransactionId) {
+            columns.put("snapshot_balance", balance);
+            columns.put("snapshot_last_id", lastTransactionId);
+            return this;
+        }
+        
+        private Row actual(long balance) {
+            columns.put("actual", balance);
+            return this;
+        }
+        
+        private Row unreconciled(long net) {
+            columns.put("unreconciled", net);
+            return this;
+        }
+        
+        private Row settled(long net, long lastTransactionId) {
+            columns.put("settled", net);
+            columns.put("settled_last_id", lastTransactionId);
+            return this;
+        }
+        
+        // Reads like a JDBC row: getLong answers 0 for SQL NULL and wasNull reports it
+        private ResultSet resultSet() throws SQLException {
+            ResultSet rs = mock(ResultSet.class);
+            boolean[] lastWasNull = new boolean[1];
+            when(rs.getLong(anyString())).thenAnswer(invocation -> {
+                Long value = columns.get(invocation.<String>getArgument(0));
+                lastWasNull[0] = value == null;
+                return value == null ? 0L : value;
+            });
+            when(rs.wasNull()).thenAnswer(invocation -> lastWasNull[0]);
+            return rs;
+        }
+    }
+    
+    // The wallets as RANGE_QUERY would aggregate them, plus the statements the job writes back
+    private static final class LedgerTables extends JdbcTemplate {
+        private final TreeMap<Long, Row> wallets = new TreeMap<>();
+        private final List<List<Long>> ranges = Collections.synchronizedList(new ArrayList<>());
+        private final List<Object[]> snapshots = Collections.synchronizedList(new ArrayList<>());
+        private final List<Object[]> drifts = Collections.synchronizedList(new ArrayList<>());
+        
+        private Row wallet(long walletPk) {
+            return wallets.computeIfAbsent(walletPk, Row::new);
+        }
+        
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            long rangeSize = (Long) args[0];
+            List<T> starts = new ArrayList<>();
+            int n = 0;
+            for (Long walletPk : wallets.keySet()) {
+                if (n++ % rangeSize == 0) {
+                    starts.add(elementType.cast(walletPk));
+                }
+            }
+            return starts;
+        }
+        
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            long fromId = (Long) args[args.length - 2];
+            long toId = (Long) args[args.length - 1];
+            ranges.add(List.of(fromId, toId));
+            try {
+                for (Row row : wallets.subMap(fromId, true, toId, true).values()) {
+                    rch.processRow(row.resultSet());
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            if (sql.startsWith("INSERT INTO wallet_balance_snapshots")) {
+                snapshots.addAll(batchArgs);
+            } else if (sql.startsWith("INSERT INTO reconciliation_drift")) {
+                drifts.addAll(batchArgs);
+            } else {
+                throw new IllegalArgumentException("Unexpected batch: " + sql);
+            }
+            return new int[batchArgs.size()];
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.ofektom.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRouterTest {
+    
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong primaryLsn = new AtomicLong(1_000L);
+    private ReplicaRouter router;
+    
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        if (router != null) {
+            router.clear();
+        }
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void withoutReplicasEverythingGoesToThePrimary() {
+        router = new ReplicaRouter(mock(ObjectProvider.class), meterRegistry, Duration.ofSeconds(1));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        
+        router.poll();
+        
+        assertThat(router.isEnabled()).isFalse();
+        assertThat(router.route()).isEqualTo(ReplicaRouter.PRIMARY);
+        assertThat(router.servedToken()).isNull();
+    }
+    
+    @Test
+    void readWriteTransactionsAlwaysUseThePrimary() {
+        router = router(Duration.ofSeconds(1), Map.of("replica-0", replica(new AtomicLong(1_000L))));
+        router.poll();
+        
+        assertThat(router.route()).isEqualTo(ReplicaRouter.PRIMARY);
+    }
+    
+    @Test
+    void aCaughtUpReplicaServesReadOnlyTransactions() {
+        router = router(Duration.ofSeconds(1), Map.of("replica-0", replica(new AtomicLong(1_000L))));
+        router.poll();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        
+        assertThat(router.route()).isEqualTo("replica-0");
+        assertThat(router.servedToken()).isEqualTo(ConsistencyToken.encode(1_000L));
+        assertThat(meterRegistry.get("wallet.replica.lag").tag("replica", "replica-0").gauge().value()).isZero();
+    }
+    
+    @Test
+    void replicasAreTriedRoundRobin() {
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", replica(new AtomicLong(1_000L)));
+        replicas.put("replica-1", replica(new AtomicLong(1_000L)));
+        router = router(Duration.ofSeconds(1), replicas);
+        router.poll();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        
+        Object first = router.route();
+        Object second = router.route();
+        
+        assertThat(first).isNotEqualTo(second);
+        assertThat(router.route()).isEqualTo(first);
+    }
+    
+    @Test
+    void aReplicaBehindTheRequestsTokenIsSkipped() {
+        router = router(Duration.ofSeconds(1), Map.of("replica-0", replica(new AtomicLong(1_000L))));
+        router.poll();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        router.requireAtLeast(1_001L);
+        
+        assertThat(router.route()).isEqualTo(ReplicaRouter.PRIMARY);
+        // The primary may have moved on, but the token never goes backwards from what the client sent
+        assertThat(router.servedToken()).isEqualTo(ConsistencyToken.encode(1_001L));
+        assertThat(meterRegistry.get("wallet.replica.fallbacks").counter().count()).isEqualTo(1.0);
+    }
+    
+    @Test
+    void lagIsTheAgeOfTheNewestPrimarySampleTheReplicaHasReplayed() throws Exception {
+        AtomicLong replayed = new AtomicLong(1_000L);
+        router = router(Duration.ofMinutes(1), Map.of("replica-0", replica(replayed)));
+        router.poll();
+        Thread.sleep(20);
+        primaryLsn.set(2_000L);
+        
+        router.poll();
+        
+        double lagSeconds = meterRegistry.get("wallet.replica.lag").tag("replica", "replica-0").gauge().value();
+        assertThat(lagSeconds).isGreaterThanOrEqualTo(0.02).isLessThan(60.0);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(router.route()).isEqualTo("replica-0");
+    }
+    
+    @Test
+    void aReplicaLaggingBeyondTheLimitIsNotUsed() throws Exception {
+        router = router(Duration.ofMillis(5), Map.of("replica-0", replica(new AtomicLong(1_000L))));
+        router.poll();
+        Thread.sleep(20);
+        primaryLsn.set(2_000L);
+        
+        router.poll();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        
+        assertThat(router.route()).isEqualTo(ReplicaRouter.PRIMARY);
+        assertThat(router.servedToken()).isEqualTo(ConsistencyToken.encode(2_000L));
+    }
+    
+    @Test
+    void anIdleReplicaThatReplayedEverythingIsNotLagging() throws Exception {
+        router = router(Duration.ofMillis(5), Map.of("replica-0", replica(new AtomicLong(1_000L))));
+        router.poll();
+        Thread.sleep(20);
+        
+        // No writes in between: the latest sample is still replayed, however old it is
+        router.poll();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        
+        assertThat(router.route()).isEqualTo("replica-0");
+    }
+    
+    @Test
+    void anUnreachableReplicaIsUnavailable() throws Exception {
+        HikariDataSource broken = mock(HikariDataSource.class);
+        when(broken.getConnection()).thenThrow(new SQLException("connection refused"));
+        router = router(Duration.ofSeconds(1), Map.of("replica-0", broken));
+        
+        router.poll();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        
+        assertThat(router.route()).isEqualTo(ReplicaRouter.PRIMARY);
+        assertThat(meterRegistry.get("wallet.replica.lag").tag("replica", "replica-0").gauge().value()).isNaN();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private ReplicaRouter router(Duration maxLag, Map<String, HikariDataSource> replicas) {
+        try {
+            DataSource primary = mock(DataSource.class);
+            Connection connection = positions(primaryLsn);
+            when(primary.getConnection()).thenReturn(connection);
+            ObjectProvider<ReplicaPools> provider = mock(ObjectProvider.class);
+            when(provider.getIfAvailable()).thenReturn(new ReplicaPools(primary, replicas));
+            return new ReplicaRouter(provider, meterRegistry, maxLag);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static HikariDataSource replica(AtomicLong replayedLsn) {
+        try {
+            HikariDataSource replica = mock(HikariDataSource.class);
+            Connection connection = positions(replayedLsn);
+            when(replica.getConnection()).thenReturn(connection);
+            return replica;
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    // A connection whose every single-value query answers with the current WAL position
+    private static Connection positions(AtomicLong lsn) throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenAnswer(invocation -> row(lsn.get()));
+        return connection;
+    }
+    
+    private static ResultSet row(long value) throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong(1)).thenReturn(value);
+        return resultSet;
+    }
+}
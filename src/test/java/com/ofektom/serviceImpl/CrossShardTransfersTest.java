@@ -0,0 +1,268 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.cache.WalletBalanceCache;
+import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.exception.ServiceUnavailableException;
+import com.ofektom.idempotency.IdempotencyGuard;
+import com.ofektom.model.Transaction;
+import com.ofektom.model.Wallet;
+import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.repository.OutboxEventRepository;
+import com.ofektom.repository.TransactionRepository;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.sharding.ShardPools;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.sharding.WalletIds;
+import com.ofektom.utils.DatabaseBulkhead;
+import com.ofektom.utils.LedgerMetrics;
+import com.ofektom.utils.TransientFailureRetrier;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CrossShardTransfersTest {
+    
+    private static final long AMOUNT = 300L;
+    
+    private final String senderId = WalletIds.generate(0);
+    private final String receiverId = WalletIds.generate(1);
+    private final Wallet sender = wallet(1L, senderId, 1_000L);
+    private final Wallet receiver = wallet(2L, receiverId, 0L);
+    private final WalletRepository walletRepository = mock(WalletRepository.class);
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final List<Transaction> ledger = new ArrayList<>();
+    private final ShardTables tables = new ShardTables();
+    private CrossShardTransfers transfers;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(walletRepository.existsByWalletId(receiverId)).thenReturn(true);
+        when(walletRepository.findByWalletIdWithLock(senderId)).thenReturn(Optional.of(sender));
+        when(walletRepository.findByWalletIdWithLock(receiverId)).thenReturn(Optional.of(receiver));
+        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
+            ledger.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        
+        LedgerMetrics metrics = mock(LedgerMetrics.class);
+        when(metrics.time(anyString(), anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(2)).get());
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(2)).run();
+            return null;
+        }).when(metrics).time(anyString(), anyString(), any(Runnable.class));
+        TransientFailureRetrier retrier = mock(TransientFailureRetrier.class);
+        when(retrier.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        DatabaseBulkhead bulkhead = mock(DatabaseBulkhead.class);
+        when(bulkhead.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        
+        ObjectProvider<ShardPools> shardPools = mock(ObjectProvider.class);
+        when(shardPools.getIfAvailable())
+            .thenReturn(new ShardPools(mock(DataSource.class), List.of(mock(HikariDataSource.class))));
+        
+        transfers = new CrossShardTransfers(walletRepository, transactionRepository, mock(IdempotencyRepository.class),
+            mock(OutboxEventRepository.class), mock(IdempotencyGuard.class), mock(HotWalletLedger.class),
+            mock(WalletBalanceCache.class), new ShardRouter(shardPools), tables, retrier, bulkhead, metrics,
+            new SimpleMeterRegistry(), mock(PlatformTransactionManager.class), Duration.ofSeconds(30), 100);
+    }
+    
+    @Test
+    void creditsTheReceiverAndCommitsTheHold() {
+        TransactionResponse response = transfers.transfer(request(), "fingerprint");
+        
+        assertThat(response.transactionType()).isEqualTo("DEBIT");
+        assertThat(sender.getBalanceInMinorUnits()).isEqualTo(700L);
+        assertThat(receiver.getBalanceInMinorUnits()).isEqualTo(AMOUNT);
+        assertThat(tables.onlyHoldStatus()).isEqualTo("COMMITTED");
+        assertThat(tables.storedResponses).isEqualTo(1);
+    }
+    
+    @Test
+    void aMissingReceiverIsRejectedBeforeAnyFundsMove() {
+        when(walletRepository.existsByWalletId(receiverId)).thenReturn(false);
+        
+        assertThatThrownBy(() -> transfers.transfer(request(), "fingerprint")).isInstanceOf(NotFoundException.class);
+        assertThat(sender.getBalanceInMinorUnits()).isEqualTo(1_000L);
+        assertThat(tables.holds).isEmpty();
+    }
+    
+    @Test
+    void aReceiverThatDisappearsAfterTheHoldIsCompensated() {
+        when(walletRepository.findByWalletIdWithLock(receiverId)).thenReturn(Optional.empty());
+        
+        assertThatThrownBy(() -> transfers.transfer(request(), "fingerprint")).isInstanceOf(NotFoundException.class);
+        
+        assertThat(sender.getBalanceInMinorUnits()).isEqualTo(1_000L);
+        assertThat(tables.onlyHoldStatus()).isEqualTo("RELEASED");
+        assertThat(tables.droppedKeys).containsExactly("transfer-key");
+        // The reversal is traceable to the DEBIT leg it reverses
+        assertThat(ledger).hasSize(2);
+        assertThat(ledger.get(1).getTransactionType()).isEqualTo(TransactionType.CREDIT);
+        assertThat(ledger.get(1).getTransferId()).isEqualTo(ledger.get(0).getTransferId()).isNotNull();
+    }
+    
+    @Test
+    void aTransientCreditFailureLeavesTheHoldForRecovery() {
+        when(walletRepository.findByWalletIdWithLock(receiverId))
+            .thenThrow(new QueryTimeoutException("shard 1 did not answer"))
+            .thenReturn(Optional.of(receiver));
+        
+        assertThatThrownBy(() -> transfers.transfer(request(), "fingerprint"))
+            .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(sender.getBalanceInMinorUnits()).isEqualTo(700L);
+        assertThat(receiver.getBalanceInMinorUnits()).isZero();
+        assertThat(tables.onlyHoldStatus()).isEqualTo("HELD");
+        
+        transfers.recover();
+        
+        assertThat(receiver.getBalanceInMinorUnits()).isEqualTo(AMOUNT);
+        assertThat(tables.onlyHoldStatus()).isEqualTo("COMMITTED");
+        assertThat(tables.storedResponses).isEqualTo(1);
+    }
+    
+    @Test
+    void recoveryRacingTheRequestCreditsAndCommitsOnlyOnce() {
+        // Recovery picks the hold up while the request is inside its credit step, right after the receipt insert
+        tables.onFirstReceipt = transfers::recover;
+        
+        TransactionResponse response = transfers.transfer(request(), "fingerprint");
+        
+        assertThat(response).isNotNull();
+        assertThat(receiver.getBalanceInMinorUnits()).isEqualTo(AMOUNT);
+        assertThat(ledger).filteredOn(leg -> leg.getTransactionType() == TransactionType.CREDIT).hasSize(1);
+        assertThat(tables.onlyHoldStatus()).isEqualTo("COMMITTED");
+        assertThat(tables.storedResponses).isEqualTo(1);
+    }
+    
+    private TransferRequest request() {
+        return new TransferRequest(senderId, receiverId, AMOUNT, "transfer-key");
+    }
+    
+    private static Wallet wallet(long id, String walletId, long balance) {
+        Wallet wallet = new Wallet(id, walletId, balance, LocalDateTime.now(), LocalDateTime.now(), 0L);
+        wallet.setStripeCount(0);
+        return wallet;
+    }
+    
+    /**
+     * In-memory stand-in for the saga tables of both shards, keyed by the statements CrossShardTransfers issues.
+     * The recovery claim returns every HELD hold, as if stale-after had already passed.
+     */
+    private static final class ShardTables extends JdbcTemplate {
+        private final Map<String, Object[]> holds = new LinkedHashMap<>();
+        private final Map<String, String> statuses = new LinkedHashMap<>();
+        private final Set<String> receipts = new HashSet<>();
+        private final List<String> droppedKeys = new ArrayList<>();
+        private int storedResponses;
+        private Runnable onFirstReceipt;
+        
+        @Override
+        public int update(String sql, Object... args) {
+            if (sql.startsWith("INSERT INTO transfer_holds")) {
+                holds.put((String) args[0], args);
+                statuses.put((String) args[0], "HELD");
+                return 1;
+            }
+            if (sql.startsWith("INSERT INTO transfer_receipts")) {
+                boolean inserted = receipts.add((String) args[0]);
+                if (inserted && onFirstReceipt != null) {
+                    Runnable hook = onFirstReceipt;
+                    onFirstReceipt = null;
+                    hook.run();
+                }
+                return inserted ? 1 : 0;
+            }
+            if (sql.startsWith("UPDATE transfer_holds")) {
+                String transferId = (String) args[3];
+                if (!"HELD".equals(statuses.get(transferId))) {
+                    return 0;
+                }
+                statuses.put(transferId, (String) args[0]);
+                return 1;
+            }
+            if (sql.startsWith("UPDATE idempotency_keys")) {
+                storedResponses++;
+                return 1;
+            }
+            if (sql.startsWith("DELETE FROM idempotency_keys")) {
+                droppedKeys.add((String) args[0]);
+                return 1;
+            }
+            throw new IllegalArgumentException("Unexpected update: " + sql);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            String transferId = (String) args[0];
+            return "HELD".equals(statuses.get(transferId)) ? List.of((T) transferId) : List.of();
+        }
+        
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            List<T> claimed = new ArrayList<>();
+            for (Map.Entry<String, Object[]> hold : holds.entrySet()) {
+                if ("HELD".equals(statuses.get(hold.getKey()))) {
+                    claimed.add(mapHold(rowMapper, hold.getValue(), claimed.size()));
+                }
+            }
+            return claimed;
+        }
+        
+        // INSERT_HOLD arguments: transfer_id, sender, receiver, amount, key, fingerprint, response_body, ...
+        private static <T> T mapHold(RowMapper<T> rowMapper, Object[] hold, int rowNum) {
+            try {
+                ResultSet row = mock(ResultSet.class);
+                when(row.getString("transfer_id")).thenReturn((String) hold[0]);
+                when(row.getString("sender_wallet_id")).thenReturn((String) hold[1]);
+                when(row.getString("receiver_wallet_id")).thenReturn((String) hold[2]);
+                when(row.getLong("amount_in_minor_units")).thenReturn((Long) hold[3]);
+                when(row.getString("idempotency_key")).thenReturn((String) hold[4]);
+                when(row.getString("request_fingerprint")).thenReturn((String) hold[5]);
+                when(row.getString("response_body")).thenReturn((String) hold[6]);
+                return rowMapper.mapRow(row, rowNum);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        private String onlyHoldStatus() {
+            assertThat(statuses).hasSize(1);
+            return statuses.values().iterator().next();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.cache.WalletBalanceCache;
+import com.ofektom.dto.request.BatchTransferRequest;
+import com.ofektom.dto.request.TransferRequest;
+import com.ofektom.dto.response.BatchTransferItemResult;
+import com.ofektom.dto.response.BatchTransferResponse;
+import com.ofektom.idempotency.IdempotencyGuard;
+import com.ofektom.model.Transaction;
+import com.ofektom.model.Wallet;
+import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.repository.OutboxEventRepository;
+import com.ofektom.repository.TransactionRepository;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.repository.WalletStripeRepository;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.DatabaseBulkhead;
+import com.ofektom.utils.LedgerMetrics;
+import com.ofektom.utils.TransientFailureRetrier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TransactionServiceImplBatchTransferTest {
+    
+    private final WalletRepository walletRepository = mock(WalletRepository.class);
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final IdempotencyGuard idempotencyGuard = mock(IdempotencyGuard.class);
+    private final LedgerMetrics metrics = mock(LedgerMetrics.class);
+    private final Wallet payer = wallet(1L, "payer", 1_000L);
+    private final Wallet payee = wallet(2L, "payee", 0L);
+    private final Wallet full = wallet(3L, "full", Long.MAX_VALUE - 10);
+    private TransactionServiceImpl service;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(metrics.observe(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(metrics.time(anyString(), anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(2)).get());
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(2)).run();
+            return null;
+        }).when(metrics).time(anyString(), anyString(), any(Runnable.class));
+        TransientFailureRetrier retrier = mock(TransientFailureRetrier.class);
+        when(retrier.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        DatabaseBulkhead bulkhead = mock(DatabaseBulkhead.class);
+        when(bulkhead.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(walletRepository.findAllByWalletIdInWithLock(any())).thenReturn(List.of(payer, payee, full));
+        when(transactionRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(idempotencyGuard.findCommittedDuplicates(any())).thenReturn(Set.of("key-committed"));
+        
+        service = new TransactionServiceImpl(walletRepository, transactionRepository, mock(IdempotencyRepository.class),
+            idempotencyGuard, mock(OutboxEventRepository.class), mock(WalletStripeRepository.class),
+            mock(HotWalletLedger.class), mock(ConditionalLedgerWriter.class), mock(CrossShardTransfers.class),
+            new ShardRouter(mock(ObjectProvider.class)), mock(WalletBalanceCache.class), retrier, bulkhead, metrics,
+            mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), "locking", false, Duration.ofMillis(1), 1);
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void everyItemGetsItsOwnStatusAgainstRunningBalances() {
+        BatchTransferResponse response = service.batchTransfer(new BatchTransferRequest(List.of(
+            new TransferRequest("payer", "payee", 100L, "key-1"),
+            new TransferRequest("payer", "payee", 100L, "key-1"),
+            new TransferRequest("payer", "payee", 50L, "key-committed"),
+            new TransferRequest("payer", "full", 20L, "key-2"),
+            new TransferRequest("payee", "payer", 500L, "key-3"),
+            new TransferRequest("payer", "missing", 10L, "key-4"),
+            new TransferRequest("payer", "payer", 10L, "key-5"),
+            new TransferRequest("payer", "payee", 900L, "key-6"))));
+        
+        assertThat(response.results()).extracting(BatchTransferItemResult::status).containsExactly(
+            "APPLIED", "DUPLICATE", "DUPLICATE", "BALANCE_OVERFLOW", "INSUFFICIENT_FUNDS", "WALLET_NOT_FOUND",
+            "INVALID", "APPLIED");
+        assertThat(response.applied()).isEqualTo(2);
+        assertThat(response.rejected()).isEqualTo(6);
+        assertThat(payer.getBalanceInMinorUnits()).isZero();
+        assertThat(payee.getBalanceInMinorUnits()).isEqualTo(1_000L);
+        assertThat(full.getBalanceInMinorUnits()).isEqualTo(Long.MAX_VALUE - 10);
+        
+        ArgumentCaptor<List<Transaction>> legs = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).saveAll(legs.capture());
+        assertThat(legs.getValue()).hasSize(4);
+        verify(metrics).rejected("batch_transfer", "balance_overflow");
+        verify(metrics).rejected("batch_transfer", "insufficient_funds");
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void everyKeyInTheBatchIsCheckedAgainstTheDatabaseInOneCall() {
+        service.batchTransfer(new BatchTransferRequest(List.of(
+            new TransferRequest("payer", "payee", 1L, "key-1"),
+            new TransferRequest("payer", "payee", 1L, "key-2"))));
+        
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        verify(idempotencyGuard).findCommittedDuplicates(keys.capture());
+        assertThat(keys.getValue()).containsExactly("key-1", "key-2");
+    }
+    
+    private static Wallet wallet(long id, String walletId, long balance) {
+        Wallet wallet = new Wallet(id, walletId, balance, LocalDateTime.now(), LocalDateTime.now(), 0L);
+        wallet.setStripeCount(0);
+        return wallet;
+    }
+}
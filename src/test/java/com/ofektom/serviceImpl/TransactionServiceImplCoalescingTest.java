@@ -0,0 +1,165 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.cache.WalletBalanceCache;
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.idempotency.IdempotencyGuard;
+import com.ofektom.model.Transaction;
+import com.ofektom.model.Wallet;
+import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.repository.OutboxEventRepository;
+import com.ofektom.repository.TransactionRepository;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.repository.WalletStripeRepository;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.DatabaseBulkhead;
+import com.ofektom.utils.LedgerMetrics;
+import com.ofektom.utils.TransientFailureRetrier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TransactionServiceImplCoalescingTest {
+    
+    private static final String WALLET_ID = "wallet-1";
+    private static final long OPENING_BALANCE = Long.MAX_VALUE - 100;
+    
+    private final WalletRepository walletRepository = mock(WalletRepository.class);
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final IdempotencyGuard idempotencyGuard = mock(IdempotencyGuard.class);
+    private final DatabaseBulkhead bulkhead = mock(DatabaseBulkhead.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newFixedThreadPool(3);
+    private Wallet wallet;
+    private TransactionServiceImpl service;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        wallet = new Wallet(1L, WALLET_ID, OPENING_BALANCE, LocalDateTime.now(), LocalDateTime.now(), 0L);
+        wallet.setStripeCount(0);
+        when(walletRepository.findByWalletIdWithLock(WALLET_ID)).thenReturn(Optional.of(wallet));
+        when(transactionRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        LedgerMetrics metrics = mock(LedgerMetrics.class);
+        when(metrics.observe(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(metrics.time(anyString(), anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(2)).get());
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(2)).run();
+            return null;
+        }).when(metrics).time(anyString(), anyString(), any(Runnable.class));
+        TransientFailureRetrier retrier = mock(TransientFailureRetrier.class);
+        when(retrier.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(bulkhead.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        
+        // A window long enough that the batch is flushed by reaching the maximum size of three
+        service = new TransactionServiceImpl(walletRepository, transactionRepository, mock(IdempotencyRepository.class),
+            idempotencyGuard, mock(OutboxEventRepository.class), mock(WalletStripeRepository.class),
+            mock(HotWalletLedger.class), mock(ConditionalLedgerWriter.class), mock(CrossShardTransfers.class),
+            new ShardRouter(mock(ObjectProvider.class)), mock(WalletBalanceCache.class), retrier, bulkhead, metrics,
+            mock(PlatformTransactionManager.class), meterRegistry, "locking", true, Duration.ofSeconds(10), 3);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void overdraftAndOverflowFailOnlyTheirOwnRequestsInAWindow() throws Exception {
+        Future<TransactionResponse> overdraft = submit("debit", Long.MAX_VALUE, "key-overdraft");
+        Future<TransactionResponse> overflow = submit("credit", 1_000L, "key-overflow");
+        Future<TransactionResponse> valid = submit("credit", 50L, "key-valid");
+        
+        assertThat(valid.get(5, TimeUnit.SECONDS).amountInMinorUnits()).isEqualTo(50L);
+        assertThatThrownBy(() -> overdraft.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> overflow.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(IllegalArgumentException.class);
+        
+        // One shared transaction wrote the wallet once with only the valid credit applied
+        assertThat(wallet.getBalanceInMinorUnits()).isEqualTo(OPENING_BALANCE + 50);
+        verify(walletRepository, times(1)).findByWalletIdWithLock(eq(WALLET_ID));
+        ArgumentCaptor<List<Transaction>> records = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).saveAll(records.capture());
+        assertThat(records.getValue()).hasSize(1);
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void aKeyRepeatedWithinTheWindowIsReplayedFromItsFirstUse() throws Exception {
+        TransactionResponse original = new TransactionResponse("txn-1", WALLET_ID, "CREDIT", 10L, null, LocalDateTime.now());
+        when(idempotencyGuard.replayCommitted(eq("key-a"), anyString())).thenReturn(original);
+        
+        Future<TransactionResponse> first = submit("credit", 10L, "key-a");
+        Future<TransactionResponse> repeat = submit("credit", 10L, "key-a");
+        Future<TransactionResponse> other = submit("credit", 30L, "key-b");
+        
+        assertThat(other.get(5, TimeUnit.SECONDS).amountInMinorUnits()).isEqualTo(30L);
+        // Arrival order decides which of the two is applied; the other gets the committed response back
+        assertThat(List.of(first.get(5, TimeUnit.SECONDS), repeat.get(5, TimeUnit.SECONDS))).contains(original);
+        assertThat(wallet.getBalanceInMinorUnits()).isEqualTo(OPENING_BALANCE + 40);
+        ArgumentCaptor<List<Transaction>> records = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).saveAll(records.capture());
+        assertThat(records.getValue()).hasSize(2);
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    void aKeyCollisionAtCommitReRunsEveryRequestOnItsOwn() throws Exception {
+        doThrow(new DataIntegrityViolationException("duplicate key value violates unique constraint \"uk_idempotency_key\""))
+            .when(bulkhead).execute(eq("coalesced"), any(Supplier.class));
+        when(transactionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        List<Future<TransactionResponse>> results = List.of(
+            submit("credit", 10L, "key-1"), submit("credit", 20L, "key-2"), submit("credit", 30L, "key-3"));
+        
+        for (Future<TransactionResponse> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isNotNull();
+        }
+        assertThat(wallet.getBalanceInMinorUnits()).isEqualTo(OPENING_BALANCE + 60);
+        verify(walletRepository, times(3)).findByWalletIdWithLock(eq(WALLET_ID));
+        assertThat(meterRegistry.get("wallet.coalescing.fallbacks").counter().count()).isEqualTo(1.0);
+    }
+    
+    private Future<TransactionResponse> submit(String type, long amount, String idempotencyKey) {
+        return callers.submit(() -> service.processTransaction(new TransactionRequest(WALLET_ID, type, amount, idempotencyKey)));
+    }
+}
@@ -0,0 +1,139 @@
+package com.ofektom.serviceImpl;
+
+import com.ofektom.cache.WalletBalanceCache;
+import com.ofektom.dto.request.TransactionRequest;
+import com.ofektom.dto.response.TransactionResponse;
+import com.ofektom.enums.TransactionType;
+import com.ofektom.exception.BadRequestException;
+import com.ofektom.exception.NotFoundException;
+import com.ofektom.idempotency.IdempotencyGuard;
+import com.ofektom.model.Wallet;
+import com.ofektom.repository.IdempotencyRepository;
+import com.ofektom.repository.OutboxEventRepository;
+import com.ofektom.repository.TransactionRepository;
+import com.ofektom.repository.WalletRepository;
+import com.ofektom.repository.WalletStripeRepository;
+import com.ofektom.sharding.ShardRouter;
+import com.ofektom.utils.DatabaseBulkhead;
+import com.ofektom.utils.LedgerMetrics;
+import com.ofektom.utils.TransientFailureRetrier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TransactionServiceImplConditionalTest {
+    
+    private static final String WALLET_ID = "wallet-1";
+    
+    private final WalletRepository walletRepository = mock(WalletRepository.class);
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final IdempotencyGuard idempotencyGuard = mock(IdempotencyGuard.class);
+    private final ConditionalLedgerWriter conditionalLedgerWriter = mock(ConditionalLedgerWriter.class);
+    private final WalletBalanceCache walletBalanceCache = mock(WalletBalanceCache.class);
+    private final LedgerMetrics metrics = mock(LedgerMetrics.class);
+    private TransactionServiceImpl service;
+    
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(metrics.observe(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(metrics.time(anyString(), anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(2)).get());
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(2)).run();
+            return null;
+        }).when(metrics).time(anyString(), anyString(), any(Runnable.class));
+        TransientFailureRetrier retrier = mock(TransientFailureRetrier.class);
+        when(retrier.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        DatabaseBulkhead bulkhead = mock(DatabaseBulkhead.class);
+        when(bulkhead.execute(anyString(), any(Supplier.class)))
+            .thenAnswer(invocation -> ((Supplier<?>) invocation.getArgument(1)).get());
+        when(transactionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        service = new TransactionServiceImpl(walletRepository, transactionRepository, mock(IdempotencyRepository.class),
+            idempotencyGuard, mock(OutboxEventRepository.class), mock(WalletStripeRepository.class),
+            mock(HotWalletLedger.class), conditionalLedgerWriter, mock(CrossShardTransfers.class),
+            new ShardRouter(mock(ObjectProvider.class)), walletBalanceCache, retrier, bulkhead, metrics,
+            mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), "conditional", false, Duration.ofMillis(1), 1);
+    }
+    
+    @Test
+    void aConditionalWriteSkipsTheRowLockAndCachesTheUpdatedWallet() {
+        Wallet updated = wallet(1_500L, 0);
+        when(conditionalLedgerWriter.apply(any(), eq(TransactionType.CREDIT), eq("key-1"), anyString(), any()))
+            .thenReturn(Optional.of(updated));
+        
+        TransactionResponse response = service.processTransaction(new TransactionRequest(WALLET_ID, "credit", 500L, "key-1"));
+        
+        ArgumentCaptor<TransactionResponse> written = ArgumentCaptor.forClass(TransactionResponse.class);
+        verify(conditionalLedgerWriter).apply(written.capture(), eq(TransactionType.CREDIT), eq("key-1"), anyString(), any());
+        assertThat(response).isEqualTo(written.getValue());
+        assertThat(response.walletId()).isEqualTo(WALLET_ID);
+        assertThat(response.amountInMinorUnits()).isEqualTo(500L);
+        verify(walletBalanceCache).refreshAfterCommit(updated);
+        verify(idempotencyGuard).recordAfterCommit(eq("key-1"), any());
+        verify(walletRepository, never()).findByWalletIdWithLock(anyString());
+    }
+    
+    @Test
+    void anOverdraftIsAPlainInsufficientBalanceError() {
+        when(conditionalLedgerWriter.apply(any(), any(), anyString(), anyString(), any())).thenReturn(Optional.empty());
+        when(walletRepository.findByWalletId(WALLET_ID)).thenReturn(Optional.of(wallet(100L, 0)));
+        
+        assertThatThrownBy(() -> service.processTransaction(new TransactionRequest(WALLET_ID, "debit", 500L, "key-1")))
+            .isInstanceOf(BadRequestException.class)
+            .hasMessage("Insufficient balance");
+        verify(metrics).rejected("debit", "insufficient_funds");
+        verify(walletRepository, never()).findByWalletIdWithLock(anyString());
+    }
+    
+    @Test
+    void aMissingWalletIsNotFound() {
+        when(conditionalLedgerWriter.apply(any(), any(), anyString(), anyString(), any())).thenReturn(Optional.empty());
+        when(walletRepository.findByWalletId(WALLET_ID)).thenReturn(Optional.empty());
+        
+        assertThatThrownBy(() -> service.processTransaction(new TransactionRequest(WALLET_ID, "credit", 500L, "key-1")))
+            .isInstanceOf(NotFoundException.class);
+    }
+    
+    @Test
+    void aWalletThatBecameStripedFallsBackToTheLockingPath() {
+        Wallet striped = wallet(1_000L, 4);
+        when(conditionalLedgerWriter.apply(any(), any(), anyString(), anyString(), any())).thenReturn(Optional.empty());
+        when(walletRepository.findByWalletId(WALLET_ID)).thenReturn(Optional.of(striped));
+        when(walletRepository.findByWalletIdWithLock(WALLET_ID)).thenReturn(Optional.of(striped));
+        
+        TransactionResponse response = service.processTransaction(new TransactionRequest(WALLET_ID, "credit", 500L, "key-1"));
+        
+        assertThat(response.amountInMinorUnits()).isEqualTo(500L);
+        assertThat(striped.getBalanceInMinorUnits()).isEqualTo(1_500L);
+        verify(walletRepository).findByWalletIdWithLock(WALLET_ID);
+    }
+    
+    private static Wallet wallet(long balance, int stripes) {
+        Wallet wallet = new Wallet(1L, WALLET_ID, balance, LocalDateTime.now(), LocalDateTime.now(), 0L);
+        wallet.setStripeCount(stripes);
+        return wallet;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ofektom.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ShardRouterTest {
+    
+    @Test
+    void routesByTheShardInTheWalletId() {
+        ShardRouter router = router(3);
+        
+        assertThat(router.shardOf(WalletIds.generate(2))).isEqualTo(2);
+        assertThat(router.sameShard(WalletIds.generate(1), WalletIds.generate(1))).isTrue();
+        assertThat(router.sameShard(WalletIds.generate(1), WalletIds.generate(2))).isFalse();
+    }
+    
+    @Test
+    void legacyIdsAndShardsThisDeploymentDoesNotHaveRouteToShardZero() {
+        ShardRouter router = router(2);
+        
+        assertThat(router.shardOf(WalletIds.generate(null))).isZero();
+        assertThat(router.shardOf(WalletIds.generate(5))).isZero();
+    }
+    
+    @Test
+    void bindsTheShardForTheWorkAndRestoresThePreviousBinding() {
+        ShardRouter router = router(3);
+        String walletId = WalletIds.generate(2);
+        
+        Integer seen = router.on(1, () -> {
+            assertThat(router.onWallet(walletId, ShardContext::current)).isEqualTo(2);
+            return ShardContext.current();
+        });
+        
+        assertThat(seen).isEqualTo(1);
+        assertThat(ShardContext.current()).isNull();
+    }
+    
+    @Test
+    void newWalletsAreCreatedOnTheBoundShard() {
+        ShardRouter router = router(4);
+        
+        for (int i = 0; i < 20; i++) {
+            String walletId = router.onNewWallet(() -> WalletIds.generate(ShardContext.current()));
+            assertThat(router.shardOf(walletId)).isBetween(0, 3);
+        }
+    }
+    
+    @Test
+    void visitsEveryShardOnce() {
+        List<Integer> visited = new ArrayList<>();
+        
+        router(3).forEachShard(shard -> visited.add(ShardContext.current()));
+        
+        assertThat(visited).containsExactly(0, 1, 2);
+    }
+    
+    @Test
+    void bindsNothingWhenUnsharded() {
+        ShardRouter router = router(1);
+        
+        assertThat(router.isSharded()).isFalse();
+        assertThat(router.onWallet(WalletIds.generate(3), ShardContext::current)).isNull();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static ShardRouter router(int shards) {
+        ObjectProvider<ShardPools> provider = mock(ObjectProvider.class);
+        if (shards > 1) {
+            List<HikariDataSource> others = new ArrayList<>();
+            for (int i = 1; i < shards; i++) {
+                others.add(mock(HikariDataSource.class));
+            }
+            when(provider.getIfAvailable()).thenReturn(new ShardPools(mock(DataSource.class), others));
+        }
+        return new ShardRouter(provider);
+    }
+}
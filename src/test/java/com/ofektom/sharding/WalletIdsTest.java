@@ -0,0 +1,58 @@
+package com.ofektom.sharding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WalletIdsTest {
+    
+    @Test
+    void unshardedIdsArePlainRandomUuidsOnShardZero() {
+        String walletId = WalletIds.generate(null);
+        
+        assertThat(UUID.fromString(walletId).version()).isEqualTo(4);
+        assertThat(WalletIds.shardOf(walletId)).isZero();
+    }
+    
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 15, 16, 200, 255})
+    void shardedIdsAreVersion8UuidsThatCarryTheirShard(int shard) {
+        String walletId = WalletIds.generate(shard);
+        
+        UUID uuid = UUID.fromString(walletId);
+        assertThat(walletId).hasSize(36);
+        assertThat(uuid.version()).isEqualTo(8);
+        assertThat(uuid.variant()).isEqualTo(2);
+        assertThat(WalletIds.shardOf(walletId)).isEqualTo(shard);
+    }
+    
+    @Test
+    void shardedIdsStayRandom() {
+        assertThat(WalletIds.generate(3)).isNotEqualTo(WalletIds.generate(3));
+    }
+    
+    @Test
+    void legacyVersion4IdsLiveOnShardZeroWhateverTheirFirstByte() {
+        assertThat(WalletIds.shardOf("7f3e2a10-9c4b-4d21-8e6f-0123456789ab")).isZero();
+        assertThat(WalletIds.shardOf("ff000000-0000-4000-8000-000000000000")).isZero();
+    }
+    
+    @Test
+    void malformedIdsFallBackToShardZero() {
+        assertThat(WalletIds.shardOf(null)).isZero();
+        assertThat(WalletIds.shardOf("")).isZero();
+        assertThat(WalletIds.shardOf("not-a-wallet-id")).isZero();
+        assertThat(WalletIds.shardOf("zz000000-0000-8000-8000-000000000000")).isZero();
+    }
+    
+    @ParameterizedTest
+    @ValueSource(ints = {-1, WalletIds.MAX_SHARDS, 1000})
+    void shardsThatDoNotFitInOneByteAreRejected(int shard) {
+        assertThatThrownBy(() -> WalletIds.generate(shard)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
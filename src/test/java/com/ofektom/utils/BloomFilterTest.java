@@ -0,0 +1,103 @@
+package com.ofektom.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+    
+    @Test
+    void neverReportsAKeyThatWasPutAsAbsent() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String key = UUID.randomUUID().toString();
+            keys.add(key);
+            filter.put(key);
+        }
+        
+        assertThat(keys).allMatch(filter::mightContain);
+    }
+    
+    @Test
+    void anEmptyFilterContainsNothing() {
+        BloomFilter filter = BloomFilter.create(1_000, 0.01);
+        
+        assertThat(filter.mightContain("key-1")).isFalse();
+        assertThat(filter.mightContain("")).isFalse();
+    }
+    
+    @Test
+    void falsePositivesStayNearTheTargetRateAtCapacity() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("present-" + i);
+        }
+        
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("absent-" + i)) {
+                falsePositives++;
+            }
+        }
+        // Twice the target leaves room for variance without hiding a broken hash
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+    
+    @Test
+    void isSaturatedOnceMoreKeysThanExpectedWereAdded() {
+        BloomFilter filter = BloomFilter.create(2, 0.01);
+        filter.put("a");
+        filter.put("b");
+        assertThat(filter.isSaturated()).isFalse();
+        
+        filter.put("c");
+        assertThat(filter.isSaturated()).isTrue();
+    }
+    
+    @Test
+    void concurrentPutsAreAllVisible() throws Exception {
+        BloomFilter filter = BloomFilter.create(40_000, 0.01);
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                done.add(writers.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        filter.put(thread + "-" + i);
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            writers.shutdownNow();
+        }
+        
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 10_000; i++) {
+                assertThat(filter.mightContain(t + "-" + i)).isTrue();
+            }
+        }
+    }
+    
+    @ParameterizedTest
+    @CsvSource({"0, 0.01", "-1, 0.01", "100, 0", "100, 1", "100, -0.5"})
+    void rejectsInvalidSizing(long expectedInsertions, double falsePositiveProbability) {
+        assertThatThrownBy(() -> BloomFilter.create(expectedInsertions, falsePositiveProbability))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
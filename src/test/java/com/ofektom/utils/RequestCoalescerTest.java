@@ -0,0 +1,119 @@
+package com.ofektom.utils;
+
+import com.ofektom.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestCoalescerTest {
+    
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+    private final List<List<Integer>> flushed = new CopyOnWriteArrayList<>();
+    
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+    
+    @Test
+    void concurrentRequestsForOneKeyAreFlushedTogetherOnceTheBatchIsFull() throws Exception {
+        RequestCoalescer<Integer, Integer> coalescer = coalescer(Duration.ofSeconds(10), 3, this::doubleEach);
+        
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            int item = i;
+            results.add(callers.submit(() -> coalescer.submit("wallet", item)));
+        }
+        
+        for (int i = 0; i < 3; i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(2 * (i + 1));
+        }
+        assertThat(flushed).hasSize(1);
+        assertThat(flushed.get(0)).containsExactlyInAnyOrder(1, 2, 3);
+    }
+    
+    @Test
+    void aPartialBatchIsFlushedWhenTheWindowEnds() {
+        RequestCoalescer<Integer, Integer> coalescer = coalescer(Duration.ofMillis(10), 100, this::doubleEach);
+        
+        assertThat(coalescer.submit("wallet", 21)).isEqualTo(42);
+        assertThat(flushed).containsExactly(List.of(21));
+    }
+    
+    @Test
+    void differentKeysAreNeverBatchedTogether() throws Exception {
+        RequestCoalescer<Integer, Integer> coalescer = coalescer(Duration.ofMillis(50), 100, this::doubleEach);
+        
+        Future<Integer> first = callers.submit(() -> coalescer.submit("wallet-a", 1));
+        Future<Integer> second = callers.submit(() -> coalescer.submit("wallet-b", 2));
+        
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(4);
+        assertThat(flushed).containsExactlyInAnyOrder(List.of(1), List.of(2));
+    }
+    
+    @Test
+    void eachCallerGetsItsOwnFailure() throws Exception {
+        RequestCoalescer<Integer, Integer> coalescer = coalescer(Duration.ofSeconds(10), 2, batch -> batch.forEach(pending -> {
+            if (pending.item() < 0) {
+                pending.fail(new IllegalArgumentException("negative: " + pending.item()));
+            } else {
+                pending.complete(pending.item());
+            }
+        }));
+        
+        Future<Integer> rejected = callers.submit(() -> coalescer.submit("wallet", -1));
+        Future<Integer> accepted = callers.submit(() -> coalescer.submit("wallet", 1));
+        
+        assertThat(accepted.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThatThrownBy(() -> rejected.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void aFailingFlushFailsEveryCallerWithItsError() {
+        RequestCoalescer<Integer, Integer> coalescer = coalescer(Duration.ofMillis(1), 100, batch -> {
+            throw new IllegalStateException("database down");
+        });
+        
+        assertThatThrownBy(() -> coalescer.submit("wallet", 1))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessage("database down");
+    }
+    
+    @Test
+    void aRequestTheFlushLeavesOpenFailsAsUnavailable() {
+        RequestCoalescer<Integer, Integer> coalescer = coalescer(Duration.ofMillis(1), 100, batch -> {
+        });
+        
+        assertThatThrownBy(() -> coalescer.submit("wallet", 1))
+            .isInstanceOf(ServiceUnavailableException.class);
+    }
+    
+    private RequestCoalescer<Integer, Integer> coalescer(Duration window, int maxBatchSize,
+                                                         Consumer<List<RequestCoalescer.Pending<Integer, Integer>>> flush) {
+        return new RequestCoalescer<>("test.coalescing", window, maxBatchSize, batch -> {
+            flushed.add(batch.stream().map(RequestCoalescer.Pending::item).toList());
+            flush.accept(batch);
+        }, new SimpleMeterRegistry());
+    }
+    
+    private void doubleEach(List<RequestCoalescer.Pending<Integer, Integer>> batch) {
+        batch.forEach(pending -> pending.complete(pending.item() * 2));
+    }
+}
@@ -0,0 +1,67 @@
+package com.ofektom.utils;
+
+import com.ofektom.exception.BadRequestException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransactionCursorTest {
+    
+    @Test
+    void decodesWhatItEncodes() {
+        TransactionCursor cursor = new TransactionCursor(LocalDateTime.of(2026, 3, 14, 15, 9, 26, 535_897_000), 42L);
+        
+        assertThat(TransactionCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+    
+    @Test
+    void roundTripsTimestampsWithoutFractionalSecondsAndLargeIds() {
+        TransactionCursor cursor = new TransactionCursor(LocalDateTime.of(2026, 1, 1, 0, 0), Long.MAX_VALUE);
+        
+        assertThat(TransactionCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+    
+    @Test
+    void encodesAsUrlSafeBase64WithoutPadding() {
+        String encoded = new TransactionCursor(LocalDateTime.of(2026, 3, 14, 15, 9, 26), 7L).encode();
+        
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "2026-03-14T15:09:26",          // no separator
+        "2026-03-14T15:09:26|",         // no id
+        "2026-03-14T15:09:26|abc",      // id is not a number
+        "2026-03-14T15:09:26|99999999999999999999",
+        "yesterday|42",                 // timestamp is not ISO-8601
+        "2026-13-40T25:61:00|42",
+        "|42"
+    })
+    void rejectsTamperedPayloads(String raw) {
+        String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        
+        assertThatThrownBy(() -> TransactionCursor.decode(cursor)).isInstanceOf(BadRequestException.class);
+    }
+    
+    @ParameterizedTest
+    @ValueSource(strings = {"", "not base64!", "====", "a", "MjAyNi0wMy0xNFQxNTowOToyNnw0Mg=x"})
+    void rejectsMalformedCursors(String cursor) {
+        assertThatThrownBy(() -> TransactionCursor.decode(cursor)).isInstanceOf(BadRequestException.class);
+    }
+    
+    @Test
+    void rejectsAnEncodedCursorWithACharacterChanged() {
+        String encoded = new TransactionCursor(LocalDateTime.of(2026, 3, 14, 15, 9, 26), 42L).encode();
+        String tampered = "!" + encoded.substring(1);
+        
+        assertThatThrownBy(() -> TransactionCursor.decode(tampered)).isInstanceOf(BadRequestException.class);
+    }
+}